@@ -36,6 +36,9 @@ public interface EventHandler<EC> extends PostInit {
 
   /**
    * Handle multiple events at once in a batch. This can be more performant because it avoids context switching
+   * <p>
+   * Stages only call this when configured with a seda.&lt;stage&gt;.batchSize greater than 1.  The events are in the
+   * order they were queued and the collection is only valid for the duration of the call.
    * 
    * @param context
    * @throws EventHandlerException
@@ -27,4 +27,10 @@ import com.tc.async.api.EventHandlerException;
    */
 public interface ContextWrapper<EC> {
   public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException;
+
+  /**
+   * @return The wrapped context if it can be handed to the handler in a batch with its neighbours, or null if this
+   *         wrapper must be run on its own
+   */
+  public EC getBatchableContext();
 }
@@ -0,0 +1,475 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.EventHandler;
+import com.tc.async.api.EventHandlerException;
+import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.Source;
+import com.tc.async.api.SpecializedEventContext;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLoggerProvider;
+import com.tc.stats.Stats;
+import com.tc.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stage queue which, instead of hashing each scheduling key to a fixed worker thread, keeps a queue per key and lets
+ * any idle worker take the next key which has work.  A key is only ever held by one worker at a time, so contexts with
+ * the same key still run one at a time in the order they were added, but a busy key no longer stalls the other keys
+ * which happen to hash to the same thread.
+ * <p>
+ * A worker hands its key back after running MAX_RUN_LENGTH of its contexts so that a hot key can't starve the others
+ * when there are more busy keys than threads.  Contexts without a scheduling key are each given a key of their own, and
+ * single-threaded contexts all share one key.
+ * <p>
+ * A flushing context runs once every context added before it has run:  a marker is added to every key which has work
+ * and the last marker to be reached runs the context, on the thread which reached it.  The markers themselves are not
+ * counted as queued contexts.
+ * <p>
+ * The sink capacity is shared by all keys:  once that many contexts are waiting, adding another blocks until a worker
+ * takes one, just as it would in a full StageQueueImpl.
+ */
+public class KeyAffineStageQueueImpl<EC> implements StageQueue<EC> {
+  private static final int    MAX_RUN_LENGTH      = 64;
+  private static final int    REPORTED_KEYS       = 5;
+  private static final Object SINGLE_THREADED_KEY = new Object() {
+    @Override
+    public String toString() {
+      return "single-threaded";
+    }
+  };
+
+  private final String                         stageName;
+  private final TCLogger                       logger;
+  private final ConcurrentMap<Object, KeyQueue> keys  = new ConcurrentHashMap<Object, KeyQueue>();
+  private final BlockingQueue<KeyQueue>         ready = new LinkedBlockingQueue<KeyQueue>();
+  private final AtomicInteger                  size  = new AtomicInteger();
+  // null when the capacity is unbounded.
+  private final Semaphore                      capacity;
+  private final KeyAffineSource[]              sources;
+  private volatile boolean                     closed = false;
+  private volatile boolean                     statsEnabled = false;
+
+  @SuppressWarnings("unchecked")
+  public KeyAffineStageQueueImpl(int threadCount, TCLoggerProvider loggerProvider, String stageName, int queueSize) {
+    Assert.eval(threadCount > 0);
+    this.logger = loggerProvider.getLogger(KeyAffineStageQueueImpl.class.getName() + ": " + stageName);
+    this.stageName = stageName;
+    Assert.eval(queueSize > 0);
+    this.capacity = (queueSize == Integer.MAX_VALUE) ? null : new Semaphore(queueSize);
+    this.sources = new KeyAffineStageQueueImpl.KeyAffineSource[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      this.sources[i] = new KeyAffineSource(String.valueOf(i));
+    }
+  }
+
+  @Override
+  public Source<ContextWrapper<EC>> getSource(int index) {
+    return (index < 0 || index >= this.sources.length) ? null : this.sources[index];
+  }
+
+  @Override
+  public void setClosed(boolean closed) {
+    this.closed = closed;
+  }
+
+  @Override
+  public void addSingleThreaded(EC context) {
+    Assert.assertNotNull(context);
+    Assert.assertFalse(context instanceof MultiThreadedEventContext);
+    checkOpen(context);
+    reserve();
+    enqueue(SINGLE_THREADED_KEY, new StageQueueImpl.HandledContext<EC>(context));
+  }
+
+  @Override
+  public void addMultiThreaded(EC context) {
+    Assert.assertNotNull(context);
+    Assert.assertTrue(context instanceof MultiThreadedEventContext);
+    checkOpen(context);
+    reserve();
+    MultiThreadedEventContext cxt = (MultiThreadedEventContext) context;
+    add(cxt, new StageQueueImpl.HandledContext<EC>(context));
+  }
+
+  @Override
+  public void addSpecialized(SpecializedEventContext specialized) {
+    checkOpen(specialized);
+    reserve();
+    add(specialized, new StageQueueImpl.DirectExecuteContext<EC>(specialized));
+  }
+
+  private void checkOpen(Object context) {
+    if (closed) {
+      throw new IllegalStateException("closed");
+    }
+    if (this.logger.isDebugEnabled()) {
+      this.logger.debug("Added:" + context + " to:" + this.stageName);
+    }
+  }
+
+  /**
+   * Counts a context which is about to be added, waiting for room if the queue is at capacity.
+   */
+  private void reserve() {
+    if (null != this.capacity) {
+      boolean interrupted = Thread.interrupted();
+      try {
+        while (true) {
+          try {
+            this.capacity.acquire();
+            break;
+          } catch (InterruptedException e) {
+            this.logger.debug("StageQueue Add: " + e);
+            interrupted = true;
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    this.size.incrementAndGet();
+  }
+
+  /**
+   * Releases the room held by count contexts which have been taken from the queue (or dropped).
+   */
+  private void release(int count) {
+    if (count > 0) {
+      this.size.addAndGet(-count);
+      if (null != this.capacity) {
+        this.capacity.release(count);
+      }
+    }
+  }
+
+  private void add(MultiThreadedEventContext context, ContextWrapper<EC> wrapper) {
+    Object key = context.getSchedulingKey();
+    if (null == key) {
+      key = new Object();
+    }
+    if (context.flush()) {
+      addFlushing(key, wrapper);
+    } else {
+      enqueue(key, wrapper);
+    }
+  }
+
+  private void enqueue(Object key, ContextWrapper<EC> wrapper) {
+    while (true) {
+      KeyQueue queue = this.keys.get(key);
+      if (null == queue) {
+        KeyQueue created = new KeyQueue(key);
+        queue = this.keys.putIfAbsent(key, created);
+        if (null == queue) {
+          queue = created;
+        }
+      }
+      synchronized (queue) {
+        // A key which ran dry was removed while we were looking it up so look it up again.
+        if (!queue.removed) {
+          queue.pending.add(wrapper);
+          queue.schedule();
+          return;
+        }
+      }
+    }
+  }
+
+  private void addFlushing(Object key, ContextWrapper<EC> wrapper) {
+    FlushBarrier barrier = new FlushBarrier(wrapper);
+    for (KeyQueue queue : this.keys.values()) {
+      synchronized (queue) {
+        if (!queue.removed) {
+          barrier.remaining.incrementAndGet();
+          queue.pending.add(new FlushMarker(barrier));
+          queue.schedule();
+        }
+      }
+    }
+    // If every marker has already been passed (or there was no work at all), the context can be queued normally.
+    if (0 == barrier.remaining.decrementAndGet()) {
+      enqueue(key, wrapper);
+    }
+  }
+
+  /**
+   * @return The number of entries (including any flush markers) waiting for each key which has any
+   */
+  public Map<Object, Integer> getBacklog() {
+    Map<Object, Integer> backlog = new HashMap<Object, Integer>();
+    for (KeyQueue queue : this.keys.values()) {
+      int depth;
+      synchronized (queue) {
+        depth = queue.pending.size();
+      }
+      if (depth > 0) {
+        backlog.put(queue.key, depth);
+      }
+    }
+    return backlog;
+  }
+
+  @Override
+  public int size() {
+    return this.size.get();
+  }
+
+  @Override
+  public String toString() {
+    return "KeyAffineStageQueue(" + this.stageName + ")";
+  }
+
+  @Override
+  public void clear() {
+    int clearCount = 0;
+    for (KeyQueue queue : this.keys.values()) {
+      synchronized (queue) {
+        for (ContextWrapper<EC> wrapper : queue.pending) {
+          if (wrapper instanceof KeyAffineStageQueueImpl.FlushMarker) {
+            // A flushing context is dropped, and its room released, along with its last marker.
+            ((FlushMarker) wrapper).pass();
+          } else {
+            clearCount += 1;
+          }
+        }
+        queue.pending.clear();
+      }
+    }
+    release(clearCount);
+    this.logger.info("Cleared " + clearCount);
+  }
+
+  @Override
+  public void enableStatsCollection(boolean enable) {
+    this.statsEnabled = enable;
+  }
+
+  @Override
+  public boolean isStatsCollectionEnabled() {
+    return this.statsEnabled;
+  }
+
+  @Override
+  public Stats getStats(long frequency) {
+    return new Stats() {
+      @Override
+      public String getDetails() {
+        if (!statsEnabled) {
+          return stageName + " : Not Monitored";
+        }
+        List<Map.Entry<Object, Integer>> backlog = new ArrayList<Map.Entry<Object, Integer>>(getBacklog().entrySet());
+        Collections.sort(backlog, (left, right) -> right.getValue().compareTo(left.getValue()));
+        StringBuilder build = new StringBuilder();
+        build.append(stageName).append(" : ").append(size()).append(" in ").append(backlog.size()).append(" keys");
+        for (Map.Entry<Object, Integer> entry : backlog.subList(0, Math.min(REPORTED_KEYS, backlog.size()))) {
+          build.append("\n  key ").append(entry.getKey()).append(" : ").append(entry.getValue());
+        }
+        return build.toString();
+      }
+
+      @Override
+      public void logDetails(TCLogger statsLogger) {
+        statsLogger.info(getDetails());
+      }
+    };
+  }
+
+  @Override
+  public Stats getStatsAndReset(long frequency) {
+    return getStats(frequency);
+  }
+
+  @Override
+  public void resetStats() {
+    // Nothing is accumulated.
+  }
+
+  /**
+   * The contexts waiting for one key.  A scheduled key is either in the ready queue or held by a worker, and only the
+   * worker holding it takes contexts from it.  A key which runs dry is removed from the map.
+   */
+  private final class KeyQueue {
+    private final Object                        key;
+    private final ArrayDeque<ContextWrapper<EC>> pending = new ArrayDeque<ContextWrapper<EC>>();
+    private boolean                             scheduled;
+    private boolean                             removed;
+
+    KeyQueue(Object key) {
+      this.key = key;
+    }
+
+    // Called while holding the lock of this queue.
+    void schedule() {
+      if (!this.scheduled) {
+        this.scheduled = true;
+        ready.add(this);
+      }
+    }
+  }
+
+  private final class KeyAffineSource implements Source<ContextWrapper<EC>> {
+    private final String sourceName;
+    // Only ever used by the worker thread which owns this source.
+    private KeyQueue     current;
+    private int          runLength;
+
+    KeyAffineSource(String sourceName) {
+      this.sourceName = sourceName;
+    }
+
+    @Override
+    public ContextWrapper<EC> poll(long timeout) throws InterruptedException {
+      if (null != this.current) {
+        ContextWrapper<EC> next = takeFromCurrent();
+        if (null != next) {
+          return next;
+        }
+      }
+      KeyQueue queue = ready.poll(timeout, TimeUnit.MILLISECONDS);
+      if (null == queue) {
+        return null;
+      }
+      this.current = queue;
+      this.runLength = 0;
+      return takeFromCurrent();
+    }
+
+    @Override
+    public int drainTo(Collection<? super ContextWrapper<EC>> target, int maxElements) {
+      KeyQueue queue = this.current;
+      if (null == queue) {
+        return 0;
+      }
+      int drained = 0;
+      int markers = 0;
+      synchronized (queue) {
+        while (drained < maxElements && this.runLength < MAX_RUN_LENGTH && !queue.pending.isEmpty()) {
+          ContextWrapper<EC> next = queue.pending.poll();
+          if (next instanceof KeyAffineStageQueueImpl.FlushMarker) {
+            markers += 1;
+          }
+          target.add(next);
+          drained += 1;
+          this.runLength += 1;
+        }
+      }
+      release(drained - markers);
+      return drained;
+    }
+
+    /**
+     * Takes the next context of the key this worker holds or, if it has none left or has had its turn, hands the key
+     * back.
+     */
+    private ContextWrapper<EC> takeFromCurrent() {
+      KeyQueue queue = this.current;
+      synchronized (queue) {
+        if (this.runLength < MAX_RUN_LENGTH) {
+          ContextWrapper<EC> next = queue.pending.poll();
+          if (null != next) {
+            this.runLength += 1;
+            if (!(next instanceof KeyAffineStageQueueImpl.FlushMarker)) {
+              release(1);
+            }
+            return next;
+          }
+        }
+        this.current = null;
+        if (queue.pending.isEmpty()) {
+          queue.scheduled = false;
+          queue.removed = true;
+          keys.remove(queue.key, queue);
+        } else {
+          ready.add(queue);
+        }
+        return null;
+      }
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return 0 == size.get();
+    }
+
+    @Override
+    public String getSourceName() {
+      return this.sourceName;
+    }
+  }
+
+  private final class FlushBarrier {
+    private final ContextWrapper<EC> context;
+    // Starts at one for the thread adding the markers so the context can't run before they are all added.
+    private final AtomicInteger      remaining = new AtomicInteger(1);
+
+    FlushBarrier(ContextWrapper<EC> context) {
+      this.context = context;
+    }
+  }
+
+  private final class FlushMarker implements ContextWrapper<EC> {
+    private final FlushBarrier barrier;
+
+    FlushMarker(FlushBarrier barrier) {
+      this.barrier = barrier;
+    }
+
+    /**
+     * @return true if this was the last marker of its barrier, after which the flushing context is no longer queued
+     */
+    boolean pass() {
+      if (0 == this.barrier.remaining.decrementAndGet()) {
+        release(1);
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException {
+      if (pass()) {
+        // This was the last key with work queued before the flush so it is now safe to run.
+        this.barrier.context.runWithHandler(handler);
+      }
+    }
+
+    @Override
+    public EC getBatchableContext() {
+      return null;
+    }
+  }
+}
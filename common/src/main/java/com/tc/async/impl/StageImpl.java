@@ -33,6 +33,9 @@ import com.tc.text.PrettyPrinter;
 import com.tc.util.concurrent.QueueFactory;
 import com.tc.util.concurrent.ThreadUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The SEDA Stage
  */
@@ -41,12 +44,13 @@ public class StageImpl<EC> implements Stage<EC> {
                                                 // stage
   private final String         name;
   private final EventHandler<EC> handler;
-  private final StageQueueImpl<EC> stageQueue;
+  private final StageQueue<EC> stageQueue;
   private final WorkerThread<EC>[] threads;
   private final ThreadGroup    group;
   private final TCLogger       logger;
   private final int            sleepMs;
   private final boolean        pausable;
+  private final int            batchSize;
 
   private volatile boolean     paused;
   private volatile boolean     shutdown = true;
@@ -74,7 +78,16 @@ public class StageImpl<EC> implements Stage<EC> {
     this.name = name;
     this.handler = handler;
     this.threads = new WorkerThread[queueCount];
-    this.stageQueue = new StageQueueImpl<EC>(queueCount, queueFactory, loggerProvider, name, queueSize);
+    if (TCPropertiesImpl.getProperties().getBoolean("seda." + name + ".workStealing", false)) {
+      logger.info("Work stealing between the threads of stage " + name);
+      this.stageQueue = new KeyAffineStageQueueImpl<EC>(queueCount, loggerProvider, name, queueSize);
+    } else {
+      String queueType = TCPropertiesImpl.getProperties().getProperty("seda." + name + ".queue", true);
+      if (queueType != null) {
+        logger.info("Using " + queueType + " queues for stage " + name);
+      }
+      this.stageQueue = new StageQueueImpl<EC>(queueCount, queueFactory, loggerProvider, name, queueSize, queueType);
+    }
     this.group = group;
     this.sleepMs = TCPropertiesImpl.getProperties().getInt("seda." + name + ".sleepMs", 0);
     if (this.sleepMs > 0) {
@@ -84,6 +97,11 @@ public class StageImpl<EC> implements Stage<EC> {
     if (this.pausable) {
       logger.warn("Stage pausing is enabled for stage " + name);
     }
+    // Batches are opt-in since a handler only benefits if it overrides handleEvents().
+    this.batchSize = Math.max(1, TCPropertiesImpl.getProperties().getInt("seda." + name + ".batchSize", 1));
+    if (this.batchSize > 1) {
+      logger.info("Handling batches of up to " + this.batchSize + " events for stage " + name);
+    }
   }
 
   @Override
@@ -129,7 +147,7 @@ public class StageImpl<EC> implements Stage<EC> {
       } else {
         threadName = threadName + ")";
       }
-      threads[i] = new WorkerThread<EC>(threadName, this.stageQueue.getSource(i), handler, group, logger, sleepMs, pausable, name);
+      threads[i] = new WorkerThread<EC>(threadName, this.stageQueue.getSource(i), handler, group, logger, sleepMs, pausable, batchSize, name);
       threads[i].start();
     }
   }
@@ -161,9 +179,10 @@ public class StageImpl<EC> implements Stage<EC> {
     private final TCLogger     tcLogger;
     private final int          sleepMs;
     private final boolean      pausable;
+    private final int          batchSize;
     private final String       stageName;
 
-    public WorkerThread(String name, Source<ContextWrapper<EC>> source, EventHandler<EC> handler, ThreadGroup group, TCLogger logger, int sleepMs, boolean pausable, String stageName) {
+    public WorkerThread(String name, Source<ContextWrapper<EC>> source, EventHandler<EC> handler, ThreadGroup group, TCLogger logger, int sleepMs, boolean pausable, int batchSize, String stageName) {
       super(group, name);
       tcLogger = logger;
       setDaemon(true);
@@ -171,6 +190,7 @@ public class StageImpl<EC> implements Stage<EC> {
       this.handler = handler;
       this.sleepMs = sleepMs;
       this.pausable = pausable;
+      this.batchSize = batchSize;
       this.stageName = stageName;
     }
 
@@ -188,34 +208,85 @@ public class StageImpl<EC> implements Stage<EC> {
 
     @Override
     public void run() {
+      List<ContextWrapper<EC>> drained = new ArrayList<ContextWrapper<EC>>(batchSize);
+      List<EC> batch = new ArrayList<EC>(batchSize);
       while (!shutdown || !source.isEmpty()) {
         ContextWrapper<EC> ctxt = null;
         try {
           ctxt = source.poll(pollTime);
           if (ctxt != null) {
             handleStageDebugPauses();
-            ctxt.runWithHandler(handler);
+            if (batchSize > 1) {
+              drained.add(ctxt);
+              source.drainTo(drained, batchSize - 1);
+              runBatch(drained, batch);
+            } else {
+              runContext(ctxt);
+            }
           }
         } catch (InterruptedException ie) {
           if (shutdown) { continue; }
           throw new TCRuntimeException(ie);
-        } catch (EventHandlerException ie) {
-          if (shutdown) { continue; }
-          throw new TCRuntimeException(ie);
-        } catch (Exception e) {
-          if (isTCNotRunningException(e)) {
-            if (shutdown) { continue; }
-            tcLogger.info("Ignoring " + TCNotRunningException.class.getSimpleName() + " while handling context: "
-                          + ctxt);
-          } else {
-            throw new TCRuntimeException("Uncaught exception in stage", e);
-          }
         } finally {
           // Aggressively null out the reference before going around the loop again. If you don't do this, the reference
           // to the context will exist until another context comes in. This can potentially keep many objects in memory
           // longer than necessary
           ctxt = null;
+          drained.clear();
+          batch.clear();
+        }
+      }
+    }
+
+    /**
+     * Hands consecutive batchable contexts to the handler together.  Any other context (such as a flush or a specialized
+     * context) is run on its own, after the batch which precedes it, so the queue order is preserved.
+     */
+    private void runBatch(List<ContextWrapper<EC>> wrappers, List<EC> batch) {
+      for (ContextWrapper<EC> wrapper : wrappers) {
+        EC context = wrapper.getBatchableContext();
+        if (context != null) {
+          batch.add(context);
+        } else {
+          handleBatch(batch);
+          runContext(wrapper);
+        }
+      }
+      handleBatch(batch);
+    }
+
+    private void handleBatch(List<EC> batch) {
+      try {
+        if (batch.size() == 1) {
+          handler.handleEvent(batch.get(0));
+        } else if (!batch.isEmpty()) {
+          handler.handleEvents(batch);
         }
+      } catch (Exception e) {
+        handleFailure(e, batch);
+      } finally {
+        batch.clear();
+      }
+    }
+
+    private void runContext(ContextWrapper<EC> ctxt) {
+      try {
+        ctxt.runWithHandler(handler);
+      } catch (Exception e) {
+        handleFailure(e, ctxt);
+      }
+    }
+
+    private void handleFailure(Exception e, Object ctxt) {
+      if (e instanceof EventHandlerException) {
+        if (shutdown) { return; }
+        throw new TCRuntimeException(e);
+      } else if (isTCNotRunningException(e)) {
+        if (shutdown) { return; }
+        tcLogger.info("Ignoring " + TCNotRunningException.class.getSimpleName() + " while handling context: "
+                      + ctxt);
+      } else {
+        throw new TCRuntimeException("Uncaught exception in stage", e);
       }
     }
   }
@@ -0,0 +1,32 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.Sink;
+import com.tc.async.api.Source;
+
+/**
+ * The sink of a stage along with the sources its worker threads take contexts from.
+ */
+public interface StageQueue<EC> extends Sink<EC> {
+  /**
+   * @return The source for the worker thread with the given index, or null if there is no such thread
+   */
+  public Source<ContextWrapper<EC>> getSource(int index);
+}
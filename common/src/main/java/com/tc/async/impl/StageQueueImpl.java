@@ -31,7 +31,9 @@ import com.tc.logging.TCLoggerProvider;
 import com.tc.stats.Stats;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.QueueFactory;
+import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -40,11 +42,12 @@ import java.util.concurrent.atomic.AtomicInteger;
  * since our queues are locally processed. This class can be replaced with a distributed queue to enable processing
  * across process boundaries.
  */
-public class StageQueueImpl<EC> implements Sink<EC> {
+public class StageQueueImpl<EC> implements StageQueue<EC> {
 
   private final String            stageName;
   private final TCLogger          logger;
   private final SourceQueueImpl<ContextWrapper<EC>>[] sourceQueues;
+  private final AtomicInteger     unkeyedTurn = new AtomicInteger();
   private volatile boolean closed = false;
   /**
    * The Constructor.
@@ -60,17 +63,25 @@ public class StageQueueImpl<EC> implements Sink<EC> {
    * @param stageName : The stage name
    * @param queueSize : Max queue Size allowed
    */
-  @SuppressWarnings("unchecked")
   public StageQueueImpl(int queueCount, QueueFactory<ContextWrapper<EC>> queueFactory,
                         TCLoggerProvider loggerProvider, String stageName, int queueSize) {
+    this(queueCount, queueFactory, loggerProvider, stageName, queueSize, null);
+  }
+
+  /**
+   * @param queueType : The QueueFactory queue type used for each internal queue, or null for the factory's default
+   */
+  @SuppressWarnings("unchecked")
+  public StageQueueImpl(int queueCount, QueueFactory<ContextWrapper<EC>> queueFactory,
+                        TCLoggerProvider loggerProvider, String stageName, int queueSize, String queueType) {
     Assert.eval(queueCount > 0);
     this.logger = loggerProvider.getLogger(Sink.class.getName() + ": " + stageName);
     this.stageName = stageName;
     this.sourceQueues = new SourceQueueImpl[queueCount];
-    createWorkerQueues(queueCount, queueFactory, queueSize, stageName);
+    createWorkerQueues(queueCount, queueFactory, queueSize, stageName, queueType);
   }
 
-  private void createWorkerQueues(int queueCount, QueueFactory<ContextWrapper<EC>> queueFactory, int queueSize, String stage) {
+  private void createWorkerQueues(int queueCount, QueueFactory<ContextWrapper<EC>> queueFactory, int queueSize, String stage, String queueType) {
     StageQueueStatsCollector statsCollector = new NullStageQueueStatsCollector(stage);
     BlockingQueue<ContextWrapper<EC>> q = null;
 
@@ -80,11 +91,12 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     Assert.eval(queueSize > 0);
 
     for (int i = 0; i < queueCount; i++) {
-      q = queueFactory.createInstance(queueSize);
+      q = (null == queueType) ? queueFactory.createInstance(queueSize) : queueFactory.createInstance(queueType, queueSize);
       this.sourceQueues[i] = new SourceQueueImpl<ContextWrapper<EC>>(q, String.valueOf(queueCount), statsCollector);
     }
   }
 
+  @Override
   public Source<ContextWrapper<EC>> getSource(int index) {
     return (index < 0 || index >= this.sourceQueues.length) ? null : this.sourceQueues[index];
   }
@@ -139,7 +151,10 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     boolean interrupted = Thread.interrupted();
     MultiThreadedEventContext cxt = (MultiThreadedEventContext)context;
     int index = getSourceQueueFor(cxt);
-    ContextWrapper<EC> wrapper = (cxt.flush()) ? new FlushingHandledContext(context, index) : new HandledContext<EC>(context);
+    ContextWrapper<EC> wrapper = new HandledContext<EC>(context);
+    if (cxt.flush()) {
+      wrapper = new FlushingHandledContext(wrapper, index);
+    }
     try {
       while (true) {
         try {
@@ -165,6 +180,9 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     ContextWrapper<EC> wrapper = new DirectExecuteContext<EC>(specialized);
     boolean interrupted = Thread.interrupted();
     int index = getSourceQueueFor(specialized);
+    if (specialized.flush()) {
+      wrapper = new FlushingHandledContext(wrapper, index);
+    }
     try {
       while (true) {
         try {
@@ -182,35 +200,30 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     }
   }
   
-  private volatile int fcheck = 0;
-//  TODO:  Way too busy. need a better way
-  private int findShortestQueueIndex() {
-      int stop = (fcheck++) % this.sourceQueues.length;
-      int pointer = stop+1;
-      int min = Integer.MAX_VALUE;
-      int can = -1;
-// special case where context can go to any queue, pick the shortest
-      while (pointer != stop) {
-        if (++pointer >= this.sourceQueues.length) {
-          pointer = 0;
-        }
-        SourceQueueImpl<ContextWrapper<EC>> impl = this.sourceQueues[pointer];
-        if (impl.isEmpty()) {
-          return pointer;
-        } else {
-          if (Math.min(min, impl.size()) != min) {
-            can = pointer;
-            min = impl.size();
-          }
-        }
-      }
-      return can;
+  /**
+   * Picks a queue for a context which can run on any of them using two choices:  the shorter of the next queue in turn
+   * and one other chosen at random, keeping the queue in turn on a tie.  Taking turns means no queue gets more than its
+   * share of the contexts, as with round robin, while the random choice steers contexts away from a queue that is
+   * draining slowly.  Only two queues are looked at, so the cost doesn't grow with the number of threads in the stage.
+   */
+  private int chooseUnkeyedQueueIndex() {
+    int count = this.sourceQueues.length;
+    if (count == 1) {
+      return 0;
+    }
+    int first = Math.floorMod(this.unkeyedTurn.getAndIncrement(), count);
+    // Pick a different second queue by skipping over the first.
+    int second = ThreadLocalRandom.current().nextInt(count - 1);
+    if (second >= first) {
+      second += 1;
+    }
+    return (this.sourceQueues[second].size() < this.sourceQueues[first].size()) ? second : first;
   }
 
   private int getSourceQueueFor(MultiThreadedEventContext context) {
     Object schedulingKey = context.getSchedulingKey();
     if (null == schedulingKey) {
-      return findShortestQueueIndex();
+      return chooseUnkeyedQueueIndex();
     } else {
       int index = hashCodeToArrayIndex(schedulingKey.hashCode(), this.sourceQueues.length);
       return index;
@@ -282,6 +295,7 @@ public class StageQueueImpl<EC> implements Sink<EC> {
             }
             stats = current;
           }
+          build.append('\n').append(getImbalanceDetails());
           return build.toString();
         }
 
@@ -293,6 +307,24 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     }
   }
 
+  /**
+   * Describes how unevenly the contexts are spread across the queues of this stage, at this moment.  The spread is the
+   * difference between the deepest and shallowest queue.
+   */
+  String getImbalanceDetails() {
+    int min = Integer.MAX_VALUE;
+    int max = 0;
+    long total = 0;
+    for (SourceQueueImpl<ContextWrapper<EC>> impl : this.sourceQueues) {
+      int depth = impl.size();
+      min = Math.min(min, depth);
+      max = Math.max(max, depth);
+      total += depth;
+    }
+    return this.stageName + " queue imbalance : min " + min + " max " + max + " spread " + (max - min)
+           + " mean " + (total / this.sourceQueues.length);
+  }
+
   @Override
   public Stats getStatsAndReset(long frequency) {
     return getStats(frequency);
@@ -357,6 +389,15 @@ public class StageQueueImpl<EC> implements Sink<EC> {
       return rv;
     }
 
+    @Override
+    public int drainTo(Collection<? super W> target, int maxElements) {
+      int drained = this.queue.drainTo(target, maxElements);
+      for (int i = 0; i < drained; ++i) {
+        this.statsCollector.contextRemoved();
+      }
+      return drained;
+    }
+
     public void put(W context) throws InterruptedException {
       this.queue.put(context);
       this.statsCollector.contextAdded();
@@ -481,7 +522,7 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     }
   }
   
-  private static class DirectExecuteContext<EC> implements ContextWrapper<EC> {
+  static class DirectExecuteContext<EC> implements ContextWrapper<EC> {
     private final SpecializedEventContext context;
     public DirectExecuteContext(SpecializedEventContext context) {
       this.context = context;
@@ -490,9 +531,14 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException {
       this.context.execute();
     }
+
+    @Override
+    public EC getBatchableContext() {
+      return null;
+    }
   }
   
-  private static class HandledContext<EC> implements ContextWrapper<EC> {
+  static class HandledContext<EC> implements ContextWrapper<EC> {
     private final EC context;
     public HandledContext(EC context) {
       this.context = context;
@@ -502,6 +548,11 @@ public class StageQueueImpl<EC> implements Sink<EC> {
       handler.handleEvent(this.context);
     }
 
+    @Override
+    public EC getBatchableContext() {
+      return this.context;
+    }
+
     @Override
     public boolean equals(Object obj) {
       if (context.getClass().isInstance(obj)) {
@@ -512,10 +563,10 @@ public class StageQueueImpl<EC> implements Sink<EC> {
   }
   
   private class FlushingHandledContext<T extends EC> implements ContextWrapper<EC> {
-    private final EC context;
+    private final ContextWrapper<EC> context;
     private final int offset;
     private int executionCount = 0;
-    public FlushingHandledContext(EC context, int offset) {
+    public FlushingHandledContext(ContextWrapper<EC> context, int offset) {
       this.context = context;
       this.offset = offset;
     }
@@ -524,7 +575,7 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException {
       if (++executionCount == sourceQueues.length) {
 //  been through all the queues.  execute now.
-        handler.handleEvent(this.context);
+        this.context.runWithHandler(handler);
       } else {
 //  move to next queue
         boolean interrupted = false;
@@ -546,12 +597,15 @@ public class StageQueueImpl<EC> implements Sink<EC> {
       }
     }
 
+    @Override
+    public EC getBatchableContext() {
+      // This must visit every queue before it runs so it can never be part of a batch.
+      return null;
+    }
+
     @Override
     public boolean equals(Object obj) {
-      if (context.getClass().isInstance(obj)) {
-        return context.equals(obj);
-      }
-      return super.equals(obj);
+      return this == obj || context.equals(obj);
     }
   }  
 }
@@ -55,6 +55,33 @@ class ClearTextBufferManager implements BufferManager {
     return written;
   }
 
+  /**
+   * Writes the buffers straight to the channel as a gathering write, without staging them in the send buffer. The
+   * send buffer must be empty, which it always is for a connection that only writes through here.
+   */
+  long sendGathered(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    long written = this.channel.write(srcs, offset, length);
+    if (written == -1) { throw new EOFException(); }
+    return written;
+  }
+
+  /**
+   * Reads from the channel straight into the given buffers as a scattering read, without staging the bytes in the
+   * receive buffer. Bytes already staged by an earlier read are handed over first so the stream stays in order.
+   */
+  long recvScattered(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    if (recvBuffer.position() > 0) {
+      long forwarded = 0;
+      for (int i = offset; i < offset + length; i++) {
+        forwarded += forwardFromReadBuffer(dsts[i]);
+      }
+      return forwarded;
+    }
+    long read = this.channel.read(dsts, offset, length);
+    if (read == -1) { throw new EOFException(); }
+    return read;
+  }
+
   @Override
   public int recvToBuffer() throws IOException {
     int read = this.channel.read(recvBuffer);
@@ -27,6 +27,8 @@ import com.tc.net.core.event.TCConnectionEvent;
 import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.core.event.TCListenerEvent;
 import com.tc.net.core.event.TCListenerEventListener;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.Util;
 import com.tc.util.concurrent.SetOnceFlag;
@@ -48,11 +50,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -64,6 +68,12 @@ import java.util.concurrent.atomic.AtomicLong;
 
 class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListener {
   private static final TCLogger                logger        = TCLogging.getLogger(CoreNIOServices.class);
+  // how long a migration waits for the comm threads to let go of a connection before it gives up
+  private static final long                    MIGRATE_TIMEOUT_MILLIS = 1000;
+  private static final boolean                 SPLIT_COMM_THREADS = TCPropertiesImpl
+                                                                      .getProperties()
+                                                                      .getBoolean(TCPropertiesConsts.NET_CORE_COMMTHREAD_SPLIT_ENABLED,
+                                                                                  true);
   private final TCWorkerCommManager            workerCommMgr;
   private final String                         commThreadName;
   private final SocketParams                   socketParams;
@@ -72,39 +82,55 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   private final SetOnceFlag                    stopRequested = new SetOnceFlag();
 
   // maintains weight of all L1 Connections which is handled by this WorkerComm
-  private final HashMap<TCConnection, Integer> managedConnectionsMap;
+  private final HashMap<TCConnectionImpl, Integer> managedConnectionsMap;
   private int                                  clientWeights;
   private final List<TCListener>               listeners     = new ArrayList<TCListener>();
   private String                               listenerString;
 
   private static enum COMM_THREAD_MODE {
-    NIO_READER, NIO_WRITER
+    NIO_READER, NIO_WRITER, NIO_READER_WRITER
   }
 
   public CoreNIOServices(String commThreadName, TCWorkerCommManager workerCommManager, SocketParams socketParams) {
     this.commThreadName = commThreadName;
     this.workerCommMgr = workerCommManager;
     this.socketParams = socketParams;
-    this.managedConnectionsMap = new HashMap<TCConnection, Integer>();
-    this.readerComm = new CommThread(COMM_THREAD_MODE.NIO_READER);
-    this.writerComm = new CommThread(COMM_THREAD_MODE.NIO_WRITER);
+    this.managedConnectionsMap = new HashMap<TCConnectionImpl, Integer>();
+    if (SPLIT_COMM_THREADS) {
+      this.readerComm = new CommThread(COMM_THREAD_MODE.NIO_READER);
+      this.writerComm = new CommThread(COMM_THREAD_MODE.NIO_WRITER);
+    } else {
+      // one selector thread does both, the reader and the writer are the same thread
+      this.readerComm = new CommThread(COMM_THREAD_MODE.NIO_READER_WRITER);
+      this.writerComm = this.readerComm;
+    }
+  }
+
+  private boolean isSplit() {
+    return this.readerComm != this.writerComm;
   }
 
   public void start() {
     readerComm.start();
-    writerComm.start();
+    if (isSplit()) {
+      writerComm.start();
+    }
   }
 
   public void requestStop() {
     if (stopRequested.attemptSet()) {
       readerComm.requestStop();
-      writerComm.requestStop();
+      if (isSplit()) {
+        writerComm.requestStop();
+      }
     }
   }
 
   public void cleanupChannel(SocketChannel channel, Runnable callback) {
     readerComm.cleanupChannel(channel, callback);
-    writerComm.cleanupChannel(channel, callback);
+    if (isSplit()) {
+      writerComm.cleanupChannel(channel, callback);
+    }
   }
 
   @Override
@@ -128,14 +154,18 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     Assert.eval(removed);
     updateListenerString();
     readerComm.updateThreadName();
-    writerComm.updateThreadName();
+    if (isSplit()) {
+      writerComm.updateThreadName();
+    }
   }
 
   private synchronized void listenerAdded(TCListener listener) {
     listeners.add(listener);
     updateListenerString();
     readerComm.updateThreadName();
-    writerComm.updateThreadName();
+    if (isSplit()) {
+      writerComm.updateThreadName();
+    }
   }
 
   private void updateListenerString() {
@@ -157,16 +187,28 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     listenerString = buf.toString();
   }
 
+  String getName() {
+    return this.commThreadName;
+  }
+
   private synchronized String getListenerString() {
     return this.listenerString;
   }
 
   public long getTotalBytesRead() {
-    return readerComm.getTotalBytesRead() + writerComm.getTotalBytesRead();
+    return isSplit() ? readerComm.getTotalBytesRead() + writerComm.getTotalBytesRead() : readerComm.getTotalBytesRead();
   }
 
   public long getTotalBytesWritten() {
-    return readerComm.getTotalBytesWritten() + writerComm.getTotalBytesWritten();
+    return isSplit() ? readerComm.getTotalBytesWritten() + writerComm.getTotalBytesWritten() : readerComm
+        .getTotalBytesWritten();
+  }
+
+  /**
+   * @return the number of reads and writes done on the connections of this worker comm
+   */
+  public long getTotalIoEvents() {
+    return isSplit() ? readerComm.getTotalIoEvents() + writerComm.getTotalIoEvents() : readerComm.getTotalIoEvents();
   }
 
   public int getWeight() {
@@ -175,6 +217,18 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     }
   }
 
+  int getConnectionCount() {
+    synchronized (managedConnectionsMap) {
+      return this.managedConnectionsMap.size();
+    }
+  }
+
+  List<TCConnectionImpl> getManagedConnections() {
+    synchronized (managedConnectionsMap) {
+      return new ArrayList<TCConnectionImpl>(this.managedConnectionsMap.keySet());
+    }
+  }
+
   protected CommThread getReaderComm() {
     return this.readerComm;
   }
@@ -222,17 +276,83 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     }
   }
 
-  @Override
-  public void closeEvent(TCConnectionEvent event) {
+  /**
+   * Move a connection, and its weight, to another worker comm while it stays open. This waits for the comm threads of
+   * this worker comm to let go of the connection so it must not be called from one of them.
+   *
+   * @return false if the connection isn't managed by this worker comm (any more) or can't be moved
+   */
+  boolean migrate(TCConnectionImpl connection, CoreNIOServices to) {
+    Assert.eval(to != this);
+    if (stopRequested.isSet() || to.stopRequested.isSet() || !connection.isMigratable()) { return false; }
+
+    final Integer weight;
+    synchronized (managedConnectionsMap) {
+      weight = this.managedConnectionsMap.get(connection);
+    }
+    if (weight == null) { return false; }
+
+    final SocketChannel channel = connection.getChannel();
+    to.addConnection(connection, weight);
+    // interest requests made from now on go to the new worker comm and modifyInterest() forwards any stale ones there
+    connection.setCommWorker(to);
+    removeConnection(connection);
+    boolean unregistered = readerComm.unregister(channel, MIGRATE_TIMEOUT_MILLIS);
+    if (unregistered && isSplit()) {
+      unregistered = writerComm.unregister(channel, MIGRATE_TIMEOUT_MILLIS);
+    }
+    if (!unregistered) {
+      logger.warn("Gave up moving " + connection + " from " + getName() + " to " + to.getName() + ", " + getName()
+                  + " did not let go of it within " + MIGRATE_TIMEOUT_MILLIS + "ms");
+      abortMigration(connection, to, channel, weight);
+      return false;
+    }
+
+    if (connection.isClosed()) {
+      // closed while it was being moved, the close event may have gone to either worker comm
+      to.removeConnection(connection);
+      return false;
+    }
+    to.requestReadWriteInterest(connection, channel);
+    return true;
+  }
+
+  /**
+   * Puts a connection whose migration timed out back on this worker comm. One of the comm threads may already have
+   * unregistered it, and requests forwarded in the meantime may have registered it with the other worker comm.
+   */
+  private void abortMigration(TCConnectionImpl connection, CoreNIOServices to, SocketChannel channel, int weight) {
+    addConnection(connection, weight);
+    connection.setCommWorker(this);
+    to.removeConnection(connection);
+    to.readerComm.releaseIfMigrated(connection, channel);
+    if (to.isSplit()) {
+      to.writerComm.releaseIfMigrated(connection, channel);
+    }
+    if (isSplit()) {
+      readerComm.reregister(connection, channel, SelectionKey.OP_READ);
+      writerComm.reregister(connection, channel, SelectionKey.OP_WRITE);
+    } else {
+      readerComm.reregister(connection, channel, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+  }
+
+  private void removeConnection(TCConnection connection) {
     synchronized (managedConnectionsMap) {
-      Assert.eval(managedConnectionsMap.containsKey(event.getSource()));
-      int closedCientWeight = managedConnectionsMap.get(event.getSource());
-      this.clientWeights -= closedCientWeight;
-      managedConnectionsMap.remove(event.getSource());
-      event.getSource().removeListener(this);
+      // a connection closed while it was being migrated is removed by both the close event and migrate()
+      Integer closedClientWeight = managedConnectionsMap.remove(connection);
+      if (closedClientWeight != null) {
+        this.clientWeights -= closedClientWeight;
+      }
+      connection.removeListener(this);
     }
   }
 
+  @Override
+  public void closeEvent(TCConnectionEvent event) {
+    removeConnection(event.getSource());
+  }
+
   @Override
   public void connectEvent(TCConnectionEvent event) {
     //
@@ -277,6 +397,15 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     writerComm.removeWriteInterest(conn, channel);
   }
 
+  /**
+   * Takes the write interest of a connection away and requests it again once the given delay is up. Called by the
+   * writer comm thread when it holds a write back, so that the selector doesn't keep coming back to the connection in
+   * the meantime.
+   */
+  void holdBackWrite(TCConnectionImpl conn, SocketChannel channel, long delayNanos) {
+    writerComm.holdBackWrite(conn, channel, delayNanos);
+  }
+
   private void requestReadWriteInterest(TCConnectionImpl conn, SocketChannel sc) {
     readerComm.requestReadInterest(conn, sc);
     writerComm.requestWriteInterest(conn, sc);
@@ -288,10 +417,13 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     private final String                        name;
     private final AtomicLong                    bytesRead    = new AtomicLong(0);
     private final AtomicLong                    bytesWritten = new AtomicLong(0);
+    private final AtomicLong                    ioEvents     = new AtomicLong(0);
     private final COMM_THREAD_MODE              mode;
+    // tasks due at a given time, ordered by deadline and only used by this thread
+    private final PriorityQueue<TimedTask>      timedTasks   = new PriorityQueue<TimedTask>();
 
     public CommThread(COMM_THREAD_MODE mode) {
-      name = commThreadName + (mode == COMM_THREAD_MODE.NIO_READER ? "_R" : "_W");
+      name = commThreadName + threadNameSuffix(mode);
       setDaemon(true);
       setName(name);
 
@@ -300,8 +432,23 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       this.mode = mode;
     }
 
-    private boolean isReader() {
-      return (this.mode == COMM_THREAD_MODE.NIO_READER);
+    private String threadNameSuffix(COMM_THREAD_MODE threadMode) {
+      switch (threadMode) {
+        case NIO_READER:
+          return "_R";
+        case NIO_WRITER:
+          return "_W";
+        default:
+          return "_RW";
+      }
+    }
+
+    private boolean canRead() {
+      return (this.mode != COMM_THREAD_MODE.NIO_WRITER);
+    }
+
+    private boolean canWrite() {
+      return (this.mode != COMM_THREAD_MODE.NIO_READER);
     }
 
     @Override
@@ -408,6 +555,87 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       }
     }
 
+    /**
+     * Unregisters the channel from the selector of this comm thread, giving up if the comm thread doesn't get to it
+     * within the timeout. The channel stays registered when this gives up.
+     *
+     * @return false if this timed out
+     */
+    boolean unregister(final SelectableChannel channel, long timeoutMillis) {
+      Assert.eval(Thread.currentThread() != this);
+
+      final AtomicBoolean claimed = new AtomicBoolean(false);
+      final CountDownLatch latch = new CountDownLatch(1);
+      this.addSelectorTask(new Runnable() {
+        @Override
+        public void run() {
+          if (claimed.compareAndSet(false, true)) {
+            CommThread.this.unregister(channel);
+          }
+          latch.countDown();
+        }
+      });
+
+      boolean interrupted = false;
+      try {
+        if (latch.await(timeoutMillis, TimeUnit.MILLISECONDS)) { return true; }
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+      try {
+        // the task won't touch the channel once it has been claimed here
+        if (claimed.compareAndSet(false, true)) { return false; }
+        // the comm thread is unregistering it right now
+        while (true) {
+          try {
+            latch.await();
+            return true;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      } finally {
+        Util.selfInterruptIfNeeded(interrupted);
+      }
+    }
+
+    /**
+     * Unregisters the channel of a connection whose migration to this worker comm was abandoned, if a forwarded interest
+     * request registered it here.
+     */
+    void releaseIfMigrated(final TCConnectionImpl conn, final SelectableChannel channel) {
+      addSelectorTask(new Runnable() {
+        @Override
+        public void run() {
+          if (conn.getCommWorker() != CoreNIOServices.this) {
+            CommThread.this.unregister(channel);
+          }
+        }
+      });
+    }
+
+    /**
+     * Registers the channel again with the given interest, if need be after the cancelled key it had with this selector
+     * has been flushed out.
+     */
+    void reregister(final TCConnectionImpl conn, final SelectableChannel channel, final int interestOps) {
+      addSelectorTask(new Runnable() {
+        @Override
+        public void run() {
+          SelectionKey key = channel.keyFor(selector);
+          if (key != null && !key.isValid() && channel.isOpen()) {
+            try {
+              // a cancelled key is only dropped by the next select, the channel can't be registered again until then
+              selector.selectNow();
+            } catch (IOException e) {
+              logger.warn("Exception flushing the cancelled key of " + conn + ": " + e);
+            }
+          }
+          modifyInterest(InterestRequest.createAddInterestRequest(channel, conn, interestOps, CommThread.this));
+        }
+      });
+    }
+
     void stopListener(final ServerSocketChannel ssc, final Runnable callback) {
       if (Thread.currentThread() != this) {
         Runnable task = new Runnable() {
@@ -563,7 +791,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       while (true) {
         final int numKeys;
         try {
-          numKeys = localSelector.select();
+          numKeys = select(localSelector);
         } catch (IOException ioe) {
           if (NIOWorkarounds.linuxSelectWorkaround(ioe)) {
             logger.warn("working around Sun bug 4504001");
@@ -613,6 +841,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
           }
         }
         Util.selfInterruptIfNeeded(isInterrupted);
+        runDueTimedTasks();
 
         final Set<SelectionKey> selectedKeys = localSelector.selectedKeys();
         if ((0 == numKeys) && (0 == selectedKeys.size())) {
@@ -640,18 +869,20 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
               continue;
             }
 
-            if (isReader() && key.isValid() && key.isReadable()) {
+            if (canRead() && key.isValid() && key.isReadable()) {
               int read;
               TCChannelReader reader = (TCChannelReader) key.attachment();
               do {
                 read = reader.doRead();
                 this.bytesRead.addAndGet(read);
+                this.ioEvents.incrementAndGet();
               } while ((read != 0) && key.isReadable());
             }
 
-            if (key.isValid() && !isReader() && key.isWritable()) {
+            if (key.isValid() && canWrite() && key.isWritable()) {
               int written = ((TCChannelWriter) key.attachment()).doWrite();
               this.bytesWritten.addAndGet(written);
+              this.ioEvents.incrementAndGet();
             }
 
             TCConnection conn = (TCConnection) key.attachment();
@@ -674,6 +905,63 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       } // while (true)
     }
 
+    /**
+     * Selects, waking up in time for the next timed task if there is one. Select timeouts are in milliseconds, so the
+     * wait is rounded up and a timed task may run up to a millisecond late unless some other event wakes the selector.
+     */
+    private int select(Selector localSelector) throws IOException {
+      TimedTask next = timedTasks.peek();
+      if (next == null) { return localSelector.select(); }
+      long remaining = next.deadline - System.nanoTime();
+      if (remaining <= 0) { return localSelector.selectNow(); }
+      // rounded up, a timeout of 0 would block until the next event
+      return localSelector.select(TimeUnit.NANOSECONDS.toMillis(remaining - 1) + 1);
+    }
+
+    private void runDueTimedTasks() {
+      long now = System.nanoTime();
+      TimedTask next;
+      while ((next = timedTasks.peek()) != null && next.deadline - now <= 0) {
+        timedTasks.poll();
+        try {
+          next.task.run();
+        } catch (Exception e) {
+          logger.error("error running timed selector task", e);
+        }
+      }
+    }
+
+    void holdBackWrite(final TCConnectionImpl conn, final SocketChannel channel, final long delayNanos) {
+      if (Thread.currentThread() != this) {
+        // the connection has been migrated since this thread selected it for writing
+        addSelectorTask(new Runnable() {
+          @Override
+          public void run() {
+            holdBackWrite(conn, channel, delayNanos);
+          }
+        });
+        return;
+      }
+
+      SelectionKey key = channel.keyFor(selector);
+      if (key == null || !key.isValid()) {
+        // not (or no longer) registered here, leave the write to the comm thread that has the connection now
+        requestWriteInterest(conn, channel);
+        return;
+      }
+      // straight on the key, a removeWriteInterest() would see the messages waiting and keep the interest
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      timedTasks.add(new TimedTask(System.nanoTime() + delayNanos, new Runnable() {
+        @Override
+        public void run() {
+          if (!conn.isClosed()) {
+            // handed on to the new owner if the connection has been migrated in the meantime
+            requestWriteInterest(conn, channel);
+          }
+        }
+      }));
+    }
+
     @SuppressWarnings("resource")
     private void doAccept(SelectionKey key) {
       SocketChannel sc = null;
@@ -736,6 +1024,10 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       return this.bytesWritten.get();
     }
 
+    public long getTotalIoEvents() {
+      return this.ioEvents.get();
+    }
+
     private void handleRequest(final InterestRequest req) {
       // ignore the request if we are stopped/stopping
       if (isStopRequested()) { return; }
@@ -761,6 +1053,8 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     private void modifyInterest(InterestRequest request) {
       Assert.eval(Thread.currentThread() == this);
 
+      if (forwardIfMigrated(request)) { return; }
+
       Selector localSelector = null;
       localSelector = selector;
 
@@ -788,7 +1082,15 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
         } else if (request.set) {
           request.channel.register(localSelector, request.interestOps, request.attachment);
         } else if (request.remove) {
-          request.channel.register(localSelector, existingOps ^ request.interestOps, request.attachment);
+          int ops = existingOps & ~request.interestOps;
+          // The writer clears write interest once it has caught up, while a message put in the meantime requests it
+          // again. If the connection has been migrated the two requests can reach this thread in either order, so
+          // the queue is checked again here to make sure such a message still gets written.
+          if ((request.interestOps & SelectionKey.OP_WRITE) != 0 && request.attachment instanceof TCConnectionImpl
+              && ((TCConnectionImpl) request.attachment).hasQueuedWrites()) {
+            ops |= SelectionKey.OP_WRITE;
+          }
+          request.channel.register(localSelector, ops, request.attachment);
         } else {
           throw new TCInternalError();
         }
@@ -799,38 +1101,70 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       }
     }
 
+    /**
+     * A read or write interest request for a connection that has been migrated to another worker comm since the request
+     * was made is handed to the comm thread that now owns the connection.
+     */
+    private boolean forwardIfMigrated(InterestRequest request) {
+      if (!(request.attachment instanceof TCConnectionImpl)) { return false; }
+      if (request.interestOps != SelectionKey.OP_READ && request.interestOps != SelectionKey.OP_WRITE) { return false; }
+
+      final CoreNIOServices owner = ((TCConnectionImpl) request.attachment).getCommWorker();
+      if (owner == null || owner == CoreNIOServices.this) { return false; }
+
+      final CommThread target = (request.interestOps == SelectionKey.OP_READ) ? owner.readerComm : owner.writerComm;
+      target.handleRequest(new InterestRequest(request.channel, request.attachment, request.interestOps, request.set,
+                                               request.add, request.remove, target));
+      return true;
+    }
+
     void requestConnectInterest(TCConnectionImpl conn, SocketChannel sc) {
       handleRequest(InterestRequest.createSetInterestRequest(sc, conn, SelectionKey.OP_CONNECT, this));
     }
 
     void requestReadInterest(TCChannelReader reader, ScatteringByteChannel channel) {
-      Assert.eval(isReader());
+      Assert.eval(canRead());
       handleRequest(InterestRequest.createAddInterestRequest((SelectableChannel) channel, reader, SelectionKey.OP_READ,
                                                              this));
     }
 
     void requestWriteInterest(TCChannelWriter writer, GatheringByteChannel channel) {
-      Assert.eval(!isReader());
+      Assert.eval(canWrite());
       handleRequest(InterestRequest.createAddInterestRequest((SelectableChannel) channel, writer,
                                                              SelectionKey.OP_WRITE, this));
     }
 
     private void requestAcceptInterest(TCListenerImpl lsnr, ServerSocketChannel ssc) {
-      Assert.eval(isReader());
+      Assert.eval(canRead());
       handleRequest(InterestRequest.createSetInterestRequest(ssc, lsnr, SelectionKey.OP_ACCEPT, this));
     }
 
     void removeWriteInterest(TCConnectionImpl conn, SelectableChannel channel) {
-      Assert.eval(!isReader());
+      Assert.eval(canWrite());
       handleRequest(InterestRequest.createRemoveInterestRequest(channel, conn, SelectionKey.OP_WRITE, this));
     }
 
     void removeReadInterest(TCConnectionImpl conn, SelectableChannel channel) {
-      Assert.eval(isReader());
+      Assert.eval(canRead());
       handleRequest(InterestRequest.createRemoveInterestRequest(channel, conn, SelectionKey.OP_READ, this));
     }
   }
 
+  private static class TimedTask implements Comparable<TimedTask> {
+    private final long     deadline;
+    private final Runnable task;
+
+    TimedTask(long deadline, Runnable task) {
+      this.deadline = deadline;
+      this.task = task;
+    }
+
+    @Override
+    public int compareTo(TimedTask other) {
+      return Long.signum(deadline - other.deadline);
+    }
+  }
+
   private static class InterestRequest {
     final SelectableChannel channel;
     final Object            attachment;
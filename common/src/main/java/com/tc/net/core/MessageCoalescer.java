@@ -0,0 +1,98 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+/**
+ * Decides, for the writer of one connection, whether to hold a flush back so that more messages join the group it
+ * writes, much like Nagle's algorithm but at the message layer. A flush is only held back while the connection is
+ * busy:  when the previous flush was recent and the recent send rate predicts at least a couple more messages before
+ * the delay runs out. The first message after an idle spell is always written at once, and no flush is held back for
+ * longer than the maximum delay.
+ * <p>
+ * Only the writer thread calls in here, except for {@link #getStats()}.
+ */
+class MessageCoalescer {
+  // weight of the latest flush in the send rate estimate
+  private static final double ALPHA                 = 0.25;
+  private static final double MIN_EXPECTED_MESSAGES = 2;
+
+  private final boolean       adaptive;
+  private final long          maxDelayNanos;
+
+  // messages per nanosecond
+  private double              rate;
+  private long                lastFlushNanos;
+  private boolean             holding;
+
+  private volatile long       flushes;
+  private volatile long       messages;
+  private volatile long       delayedFlushes;
+  private volatile long       totalDelayNanos;
+  private volatile long       longestDelayNanos;
+
+  MessageCoalescer(boolean adaptive, long maxDelayNanos) {
+    this.adaptive = adaptive;
+    this.maxDelayNanos = maxDelayNanos;
+  }
+
+  /**
+   * @param requestedNanos when the first message waiting to be flushed was queued
+   * @return true if the flush should wait for more messages
+   */
+  boolean holdBack(long requestedNanos, long now) {
+    if (!adaptive || now - requestedNanos >= maxDelayNanos) { return false; }
+    // idle, or not enough traffic that waiting would gain anything
+    if (requestedNanos - lastFlushNanos >= maxDelayNanos || rate * maxDelayNanos < MIN_EXPECTED_MESSAGES) { return false; }
+    holding = true;
+    return true;
+  }
+
+  /**
+   * @return How much longer a flush which is held back may wait, in nanoseconds
+   */
+  long remainingDelay(long requestedNanos, long now) {
+    return Math.max(maxDelayNanos - (now - requestedNanos), 0);
+  }
+
+  /**
+   * Records a flush of the given number of messages.
+   */
+  void flushed(int messageCount, long requestedNanos, long now) {
+    if (flushes > 0) {
+      long interval = Math.max(now - lastFlushNanos, 1);
+      rate += ALPHA * ((double) messageCount / interval - rate);
+    }
+    lastFlushNanos = now;
+    flushes += 1;
+    messages += messageCount;
+    if (holding) {
+      holding = false;
+      long delay = now - requestedNanos;
+      delayedFlushes += 1;
+      totalDelayNanos += delay;
+      if (delay > longestDelayNanos) {
+        longestDelayNanos = delay;
+      }
+    }
+  }
+
+  MessageGroupingStats getStats() {
+    return new MessageGroupingStats(flushes, messages, delayedFlushes, totalDelayNanos, longestDelayNanos);
+  }
+}
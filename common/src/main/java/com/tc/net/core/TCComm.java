@@ -18,6 +18,8 @@
  */
 package com.tc.net.core;
 
+import java.util.List;
+
 /**
  * The common interface for TCComm instances. A TCComm instance is used for managing the lowest level network details
  * (ie. reading/writing bytes, and opening/closing connections)
@@ -34,4 +36,9 @@ public interface TCComm {
 
   public boolean isStopped();
 
+  /**
+   * @return The load of each worker comm, empty if connections aren't handed to worker comms
+   */
+  public List<WorkerCommLoad> getWorkerCommLoads();
+
 }
@@ -21,6 +21,9 @@ package com.tc.net.core;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Implementation for TCComm. Manages communication threads for new connection and listeners at a high level.
  * 
@@ -52,6 +55,17 @@ class TCCommImpl implements TCComm {
     return 0;
   }
 
+  @Override
+  public List<WorkerCommLoad> getWorkerCommLoads() {
+    if (workerCommMgr != null) { return workerCommMgr.getWorkerCommLoads(); }
+    return Collections.emptyList();
+  }
+
+  protected WorkerCommBalancer getWorkerCommBalancer() {
+    if (workerCommMgr != null) { return workerCommMgr.getBalancer(); }
+    return null;
+  }
+
   protected CoreNIOServices getWorkerComm(int workerCommId) {
     if (workerCommMgr != null) { return workerCommMgr.getWorkerComm(workerCommId); }
     return null;
@@ -29,6 +29,7 @@ import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.core.security.TCSecurityManager;
 import com.tc.net.protocol.TCNetworkMessage;
 import com.tc.net.protocol.TCProtocolAdaptor;
+import com.tc.net.protocol.transport.WireProtocolGroupMessage;
 import com.tc.net.protocol.transport.WireProtocolGroupMessageImpl;
 import com.tc.net.protocol.transport.WireProtocolHeader;
 import com.tc.net.protocol.transport.WireProtocolMessage;
@@ -37,6 +38,7 @@ import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.TCTimeoutException;
+import com.tc.util.concurrent.MpscLinkedQueue;
 import com.tc.util.concurrent.SetOnceFlag;
 import com.tc.util.concurrent.SetOnceRef;
 import com.tc.util.concurrent.ThreadUtil;
@@ -52,9 +54,10 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
@@ -84,7 +87,13 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   private final BufferManagerFactory            bufferManagerFactory;
   private final AtomicBoolean                   transportEstablished        = new AtomicBoolean(false);
-  private final LinkedList<TCNetworkMessage>    writeMessages               = new LinkedList<TCNetworkMessage>();
+  private volatile MpscLinkedQueue<TCNetworkMessage> writeMessages          = new MpscLinkedQueue<TCNetworkMessage>();
+  // set by the first putMessage() after the writer last caught up, cleared by the writer once it has
+  private final AtomicBoolean                   writeRequested              = new AtomicBoolean(false);
+  // when writeRequested was last set
+  private volatile long                         writeRequestedNanos;
+  private final MessageCoalescer                coalescer                   = new MessageCoalescer(ADAPTIVE_GROUPING,
+                                                                                                   MAX_GROUPING_DELAY_NANOS);
   private final TCConnectionManagerImpl         parent;
   private final TCConnectionEventCaller         eventCaller                 = new TCConnectionEventCaller(logger);
   private final AtomicLong                      lastDataWriteTime           = new AtomicLong(System.currentTimeMillis());
@@ -100,7 +109,10 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   private final SocketParams                    socketParams;
   private final AtomicLong                      totalRead                   = new AtomicLong(0);
   private final AtomicLong                      totalWrite                  = new AtomicLong(0);
-  private final ArrayList<WriteContext>         writeContexts               = new ArrayList<WriteContext>();
+  // calls to doRead() and doWrite(), the comm threads sample this to measure the load of the connection
+  private final AtomicLong                      totalIoEvents               = new AtomicLong(0);
+  private final ArrayDeque<WriteContext>        writeContexts               = new ArrayDeque<WriteContext>();
+  private final ArrayDeque<WriteContext>        freeWriteContexts           = new ArrayDeque<WriteContext>();
   private final Object                          pipeSocketWriteInterestLock = new Object();
   private boolean                               hasPipeSocketWriteInterest  = false;
   private int                                   writeBufferSize             = 0;
@@ -112,19 +124,47 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
                                                                                 .getProperties()
                                                                                 .getInt(TCPropertiesConsts.TC_MESSAGE_GROUPING_MAXSIZE_KB,
                                                                                         128) * 1024;
+  private static final boolean                  ADAPTIVE_GROUPING           = MSG_GROUPING_ENABLED
+                                                                              && TCPropertiesImpl
+                                                                                  .getProperties()
+                                                                                  .getBoolean(TCPropertiesConsts.TC_MESSAGE_GROUPING_ADAPTIVE_ENABLED,
+                                                                                              false);
+  private static final long                     MAX_GROUPING_DELAY_NANOS    = TimeUnit.MICROSECONDS
+                                                                                .toNanos(TCPropertiesImpl
+                                                                                    .getProperties()
+                                                                                    .getLong(TCPropertiesConsts.TC_MESSAGE_GROUPING_ADAPTIVE_MAX_DELAY_MICROS,
+                                                                                             100));
   private static final boolean                  MESSSAGE_PACKUP             = TCPropertiesImpl
                                                                                 .getProperties()
                                                                                 .getBoolean(TCPropertiesConsts.TC_MESSAGE_PACKUP_ENABLED,
                                                                                             true);
+  private static final boolean                  GATHERING_WRITES            = TCPropertiesImpl
+                                                                                .getProperties()
+                                                                                .getBoolean(TCPropertiesConsts.TC_MESSAGE_GATHERING_ENABLED,
+                                                                                            true);
+  // the most buffers handed to a single gathering write
+  private static final int                      MAX_GATHERED_BUFFERS        = 128;
+  private static final boolean                  SCATTERING_READS            = TCPropertiesImpl
+                                                                                .getProperties()
+                                                                                .getBoolean(TCPropertiesConsts.TC_MESSAGE_SCATTERING_ENABLED,
+                                                                                            true);
+  // the most buffers filled by a single scattering read
+  private static final int                      MAX_SCATTERED_BUFFERS       = 128;
+  // the most finished write contexts kept for reuse
+  private static final int                      MAX_FREE_WRITE_CONTEXTS     = 64;
   private final Object                          readerLock                  = new Object();
   private final Object                          writerLock                  = new Object();
 
   static {
-    logger.info("Comms Message Batching " + (MSG_GROUPING_ENABLED ? "enabled" : "disabled"));
+    logger.info("Comms Message Batching " + (MSG_GROUPING_ENABLED ? "enabled" : "disabled")
+                + (ADAPTIVE_GROUPING ? ", delayed by up to " + TimeUnit.NANOSECONDS.toMicros(MAX_GROUPING_DELAY_NANOS)
+                                       + "us under load" : ""));
   }
 
   // having this variable at instance level helps reducing memory pressure at VM;
   private final ArrayList<TCNetworkMessage>     messagesToBatch             = new ArrayList<TCNetworkMessage>();
+  private final ByteBuffer[]                    gatheredBuffers             = new ByteBuffer[MAX_GATHERED_BUFFERS];
+  private final ByteBuffer[]                    scatteredBuffers            = new ByteBuffer[MAX_SCATTERED_BUFFERS];
 
   // for creating unconnected client connections
   TCConnectionImpl(TCConnectionEventListener listener, TCProtocolAdaptor adaptor,
@@ -168,6 +208,44 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     this.commWorker = worker;
   }
 
+  CoreNIOServices getCommWorker() {
+    return this.commWorker;
+  }
+
+  SocketChannel getChannel() {
+    return this.channel;
+  }
+
+  /**
+   * A piped (TLS) connection can half close its channel so only clear text connections are moved between comm workers.
+   */
+  boolean isMigratable() {
+    return this.channel != null && this.pipeSocket == null && !isClosed();
+  }
+
+  /**
+   * @return true if messages are waiting for the writer of this open connection
+   */
+  boolean hasQueuedWrites() {
+    if (isClosed()) { return false; }
+    // the queue may only be looked at by its consumer, the writer
+    synchronized (writerLock) {
+      return !this.writeMessages.isEmpty();
+    }
+  }
+
+  long getTotalBytesRead() {
+    return this.totalRead.get();
+  }
+
+  long getTotalBytesWritten() {
+    return this.totalWrite.get();
+  }
+
+  long getTotalIoEvents() {
+    return this.totalIoEvents.get();
+  }
+
   private void closeImpl(Runnable callback) {
     Assert.assertTrue(this.closed.isSet());
     this.transportEstablished.set(false);
@@ -178,9 +256,8 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         callback.run();
       }
     } finally {
-      synchronized (this.writeMessages) {
-        this.writeMessages.clear();
-      }
+      // only the writer may poll the queue, so drop the queued messages by dropping the queue
+      this.writeMessages = new MpscLinkedQueue<TCNetworkMessage>();
     }
     try {
       if (pipeSocket != null) {
@@ -281,12 +358,29 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   @Override
   public int doRead() throws IOException {
+    this.totalIoEvents.incrementAndGet();
     synchronized (readerLock) {
       return doReadInternal();
     }
   }
 
   private int doReadInternal() throws IOException {
+    BufferManager manager = bufferManager;
+    if (SCATTERING_READS && pipeSocket == null && manager instanceof ClearTextBufferManager) {
+      TCByteBuffer[] readBuffers = getReadBuffers();
+      if (remaining(readBuffers) >= TCByteBufferFactory.FIXED_BUFFER_SIZE) {
+        int read;
+        try {
+          read = doScatteringReadInternal((ClearTextBufferManager) manager, readBuffers);
+        } catch (IOException ioe) {
+          closeReadOnException(ioe);
+          return 0;
+        }
+        this.totalRead.addAndGet(read);
+        return read;
+      }
+    }
+
     try {
       bufferManager.recvToBuffer();
     } catch (SSLException ssle) {
@@ -324,12 +418,35 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   @Override
   public int doWrite() throws IOException {
+    this.totalIoEvents.incrementAndGet();
     synchronized (writerLock) {
       return doWriteInternal();
     }
   }
 
   private int doWriteInternal() throws IOException {
+    if (ADAPTIVE_GROUPING && this.writeContexts.isEmpty() && pipeSocket == null) {
+      long now = System.nanoTime();
+      if (this.coalescer.holdBack(this.writeRequestedNanos, now)) {
+        // give up the write interest until the delay is up, rather than have the selector come straight back here
+        this.commWorker.holdBackWrite(this, this.channel, this.coalescer.remainingDelay(this.writeRequestedNanos, now));
+        return 0;
+      }
+    }
+
+    BufferManager manager = bufferManager;
+    if (isGatheringWrites(manager)) {
+      int written;
+      try {
+        written = doGatheringWriteInternal((ClearTextBufferManager) manager);
+      } catch (IOException ioe) {
+        closeWriteOnException(ioe);
+        return 0;
+      }
+      this.totalWrite.addAndGet(written);
+      return written;
+    }
+
     int written;
     try {
       written = doWriteToBuffer();
@@ -380,36 +497,32 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   }
 
   private void buildWriteContextsFromMessages() {
-    TCNetworkMessage messagesToWrite[];
-    synchronized (this.writeMessages) {
-      if (this.closed.isSet()) { return; }
-      messagesToWrite = this.writeMessages.toArray(new TCNetworkMessage[this.writeMessages.size()]);
-      this.writeMessages.clear();
-    }
+    if (this.closed.isSet()) { return; }
+    final MpscLinkedQueue<TCNetworkMessage> queue = this.writeMessages;
 
     int batchSize = 0;
     int batchMsgCount = 0;
-    TCNetworkMessage msg = null;
-    for (final TCNetworkMessage element : messagesToWrite) {
-      msg = element;
-
+    int flushed = 0;
+    TCNetworkMessage msg;
+    while ((msg = queue.poll()) != null) {
+      flushed++;
       // we don't want to group already constructed Transport Handshake WireProtocolMessages
       if (msg instanceof WireProtocolMessage) {
         final TCNetworkMessage ms = finalizeWireProtocolMessage((WireProtocolMessage) msg, 1);
-        this.writeContexts.add(new WriteContext(ms));
+        this.writeContexts.add(newWriteContext(ms));
         continue;
       }
 
       // GenericNetwork messages are used for testing
       if (WireProtocolHeader.PROTOCOL_UNKNOWN == WireProtocolHeader.getProtocolForMessageClass(msg)) {
-        this.writeContexts.add(new WriteContext(msg));
+        this.writeContexts.add(newWriteContext(msg));
         continue;
       }
 
       if (MSG_GROUPING_ENABLED) {
         if (!canBatch(msg, batchSize, batchMsgCount)) {
           if (batchMsgCount > 0) {
-            this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(this.messagesToBatch)));
+            this.writeContexts.add(newWriteContext(buildWireProtocolMessageGroup(this.messagesToBatch)));
             batchSize = 0;
             batchMsgCount = 0;
             this.messagesToBatch.clear();
@@ -421,18 +534,55 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         batchMsgCount++;
         this.messagesToBatch.add(msg);
       } else {
-        this.writeContexts.add(new WriteContext(buildWireProtocolMessage(msg)));
+        this.writeContexts.add(newWriteContext(buildWireProtocolMessage(msg)));
       }
-      msg = null;
     }
 
     if (MSG_GROUPING_ENABLED && batchMsgCount > 0) {
       final TCNetworkMessage ms = buildWireProtocolMessageGroup(this.messagesToBatch);
-      this.writeContexts.add(new WriteContext(ms));
+      this.writeContexts.add(newWriteContext(ms));
     }
 
-    messagesToWrite = null;
     this.messagesToBatch.clear();
+    if (flushed > 0) {
+      this.coalescer.flushed(flushed, this.writeRequestedNanos, System.nanoTime());
+    }
+  }
+
+  private WriteContext newWriteContext(TCNetworkMessage message) {
+    WriteContext context = this.freeWriteContexts.pollFirst();
+    if (context == null) {
+      context = new WriteContext();
+    }
+    // A group only frames the messages it holds, which already sit in their own buffers, so there is nothing to gain
+    // from packing them up into yet another set of buffers.  Neither is there for a gathering write, which hands the
+    // socket the buffers of the message as they are.
+    context.init(message, MESSSAGE_PACKUP && !(message instanceof WireProtocolGroupMessage)
+                          && !isGatheringWrites(bufferManager));
+    return context;
+  }
+
+  private void writeComplete(WriteContext context) {
+    context.writeComplete();
+    context.clear();
+    if (this.freeWriteContexts.size() < MAX_FREE_WRITE_CONTEXTS) {
+      this.freeWriteContexts.addFirst(context);
+    }
+  }
+
+  /**
+   * Called by the writer once it has written everything it had. Write interest is only kept if more messages have
+   * arrived in the meantime, and the put of a message which arrives later requests it again.
+   */
+  private void writesCaughtUp() {
+    if (this.closed.isSet()) { return; }
+
+    this.writeRequested.set(false);
+    if (!this.writeMessages.isEmpty() && this.writeRequested.compareAndSet(false, true)) {
+      this.writeRequestedNanos = System.nanoTime();
+    } else {
+      this.commWorker.removeWriteInterest(this, this.channel);
+    }
   }
 
   private boolean canBatch(TCNetworkMessage newMessage, int currentBatchSize, int currentBatchMsgCount) {
@@ -445,6 +595,45 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     return TCByteBufferFactory.getTotalBufferSizeNeededForMessageSize(length);
   }
 
+  /**
+   * Reads the rest of a large message body straight from the socket into the buffers the protocol adaptor handed out,
+   * with a scattering read, rather than staging it in the receive buffer of the BufferManager and copying it over.
+   * Headers and small messages still go through the receive buffer, where a single read can pick up many of them.
+   */
+  private int doScatteringReadInternal(ClearTextBufferManager manager, TCByteBuffer[] readBuffers) throws IOException {
+    int count = 0;
+    for (int i = 0; i < readBuffers.length && count < scatteredBuffers.length; i++) {
+      ByteBuffer buf = extractNioBuffer(readBuffers[i]);
+      if (buf.hasRemaining()) {
+        scatteredBuffers[count++] = buf;
+      }
+    }
+
+    long read;
+    try {
+      read = manager.recvScattered(scatteredBuffers, 0, count);
+    } finally {
+      Arrays.fill(scatteredBuffers, 0, count, null);
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Read " + read + " bytes on connection " + this.channel.toString());
+    }
+
+    if (read > 0) {
+      addNetworkData(readBuffers, (int) read);
+    }
+    return (int) read;
+  }
+
+  private static long remaining(TCByteBuffer[] buffers) {
+    long remaining = 0;
+    for (TCByteBuffer buffer : buffers) {
+      remaining += buffer.remaining();
+    }
+    return remaining;
+  }
+
   private int doReadFromBufferInternal() {
     final boolean debug = logger.isDebugEnabled();
     final TCByteBuffer[] readBuffers = getReadBuffers();
@@ -493,7 +682,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
     WriteContext context;
     while (this.writeContexts.size() > 0) {
-      context = this.writeContexts.get(0);
+      context = this.writeContexts.peekFirst();
       final TCByteBuffer[] buffers = context.entireMessageData;
 
       long bytesWritten = 0;
@@ -523,8 +712,8 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         if (debug) {
           logger.debug("Complete message sent on connection " + this.channel.toString());
         }
-        context.writeComplete();
-        this.writeContexts.remove(context);
+        this.writeContexts.pollFirst();
+        writeComplete(context);
       } else {
         if (debug) {
           logger.debug("Message not yet completely sent on connection " + this.channel.toString());
@@ -533,14 +722,78 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       }
     }
 
-    synchronized (this.writeMessages) {
-      if (this.closed.isSet()) { return totalBytesWritten; }
+    if (this.writeContexts.isEmpty()) {
+      writesCaughtUp();
+    }
+    return totalBytesWritten;
+  }
+
+  /**
+   * Writes the messages straight from their buffers to the socket with gathering writes, rather than copying them into
+   * the send buffer of the BufferManager first. This is only possible for clear text connections, TLS has to encrypt
+   * through the buffer manager.
+   */
+  private boolean isGatheringWrites(BufferManager manager) {
+    return GATHERING_WRITES && pipeSocket == null && manager instanceof ClearTextBufferManager;
+  }
+
+  private int doGatheringWriteInternal(ClearTextBufferManager manager) throws IOException {
+    final boolean debug = logger.isDebugEnabled();
+    long totalBytesWritten = 0;
+
+    if (this.writeContexts.size() <= 0) {
+      buildWriteContextsFromMessages();
+    }
+    while (this.writeContexts.size() > 0) {
+      int count = 0;
+      for (WriteContext context : this.writeContexts) {
+        count = context.gather(gatheredBuffers, count);
+        if (count == gatheredBuffers.length) {
+          break;
+        }
+      }
+      long requested = 0;
+      for (int i = 0; i < count; i++) {
+        requested += gatheredBuffers[i].remaining();
+      }
 
-      if (this.writeMessages.isEmpty() && this.writeContexts.isEmpty()) {
-        this.commWorker.removeWriteInterest(this, this.channel);
+      long written;
+      try {
+        written = manager.sendGathered(gatheredBuffers, 0, count);
+      } finally {
+        Arrays.fill(gatheredBuffers, 0, count, null);
+      }
+      totalBytesWritten += written;
+      if (debug) {
+        logger.debug("Wrote " + written + " bytes on connection " + this.channel.toString());
+      }
+
+      while (this.writeContexts.size() > 0) {
+        WriteContext context = this.writeContexts.peekFirst();
+        context.skipWritten();
+        if (!context.done()) {
+          break;
+        }
+        if (debug) {
+          logger.debug("Complete message sent on connection " + this.channel.toString());
+        }
+        this.writeContexts.pollFirst();
+        writeComplete(context);
+      }
+
+      if (written < requested) {
+        // the socket didn't take everything, wait until it is writable again
+        if (debug) {
+          logger.debug("Message not yet completely sent on connection " + this.channel.toString());
+        }
+        break;
       }
     }
-    return totalBytesWritten;
+
+    if (this.writeContexts.isEmpty()) {
+      writesCaughtUp();
+    }
+    return (int) totalBytesWritten;
   }
 
   static private ByteBuffer extractNioBuffer(TCByteBuffer buffer) {
@@ -559,21 +812,15 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
 
     // TODO: outgoing queue should not be unbounded size!
-    final boolean newData;
-    final int msgCount;
-
-    synchronized (this.writeMessages) {
-      if (this.closed.isSet()) { return; }
-      this.writeMessages.addLast(message);
-      msgCount = this.writeMessages.size();
-      newData = (msgCount == 1);
-    }
+    if (this.closed.isSet()) { return; }
+    this.writeMessages.offer(message);
 
     if (debug) {
-      logger.debug("Connection (" + this.channel.toString() + ") has " + msgCount + " messages queued");
+      logger.debug("Message queued on connection (" + this.channel.toString() + ")");
     }
 
-    if (newData) {
+    if (this.writeRequested.compareAndSet(false, true)) {
+      this.writeRequestedNanos = System.nanoTime();
       if (debug) {
         logger.debug("New message on connection, registering for write interest");
       }
@@ -939,21 +1186,31 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
   }
 
+  /**
+   * The progress of the write of one message. The connection reuses these once their message is sent.
+   */
   protected static class WriteContext {
-    private final TCNetworkMessage message;
-    private int                    index = 0;
-    private final TCByteBuffer[]   entireMessageData;
+    private TCNetworkMessage message;
+    private int              index = 0;
+    private TCByteBuffer[]   entireMessageData;
+    private boolean          packedUp;
 
-    WriteContext(TCNetworkMessage message) {
+    void init(TCNetworkMessage msg, boolean packUp) {
       // either WireProtocolMessage or WireProtocolMessageGroup
-      this.message = message;
+      this.message = msg;
+      this.index = 0;
+      this.packedUp = packUp;
 
-      if (MESSSAGE_PACKUP) {
-        this.entireMessageData = getPackedUpMessage(message.getEntireMessageData());
+      if (packUp) {
+        this.entireMessageData = getPackedUpMessage(msg.getEntireMessageData());
       } else {
-        this.entireMessageData = getClonedMessage(message.getEntireMessageData());
+        this.entireMessageData = getClonedMessage(msg.getEntireMessageData());
       }
+    }
 
+    void clear() {
+      this.message = null;
+      this.entireMessageData = null;
     }
 
     boolean done() {
@@ -964,8 +1221,32 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       return true;
     }
 
+    /**
+     * Adds the buffers of this message which still have data to write to the given array.
+     *
+     * @return The index in the array after the last buffer added
+     */
+    int gather(ByteBuffer[] buffers, int from) {
+      int next = from;
+      for (int i = index, n = entireMessageData.length; i < n && next < buffers.length; i++) {
+        if (entireMessageData[i].hasRemaining()) {
+          buffers[next++] = entireMessageData[i].getNioBuffer();
+        }
+      }
+      return next;
+    }
+
+    /**
+     * Moves past, and cleans up, the buffers at the front of the message which have been fully written.
+     */
+    void skipWritten() {
+      while (index < entireMessageData.length && !entireMessageData[index].hasRemaining()) {
+        incrementIndexAndCleanOld();
+      }
+    }
+
     void incrementIndexAndCleanOld() {
-      if (MESSSAGE_PACKUP) {
+      if (packedUp) {
         // we created these new messages. lets recycle it.
         entireMessageData[index].recycle();
       }
@@ -1053,4 +1334,9 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     return this.transportEstablished.get();
   }
 
+  @Override
+  public MessageGroupingStats getMessageGroupingStats() {
+    return this.coalescer.getStats();
+  }
+
 }
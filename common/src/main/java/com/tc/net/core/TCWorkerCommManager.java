@@ -22,12 +22,16 @@ import com.tc.logging.LossyTCLogger;
 import com.tc.logging.LossyTCLogger.LossyTCLoggerType;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.SetOnceFlag;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Timer;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -42,6 +46,20 @@ public class TCWorkerCommManager {
 
   private static final String     WORKER_NAME_PREFIX = "TCWorkerComm # ";
 
+  private static final TCProperties PROPERTIES       = TCPropertiesImpl.getProperties();
+  private static final boolean    REBALANCE          = PROPERTIES
+                                                         .getBoolean(TCPropertiesConsts.NET_CORE_REBALANCE_ENABLED,
+                                                                     false);
+  private static final long       REBALANCE_INTERVAL = PROPERTIES
+                                                         .getLong(TCPropertiesConsts.NET_CORE_REBALANCE_INTERVAL_MILLIS,
+                                                                  5000);
+  private static final int        IMBALANCE_PERCENT  = PROPERTIES
+                                                         .getInt(TCPropertiesConsts.NET_CORE_REBALANCE_IMBALANCE_PERCENT,
+                                                                 50);
+  private static final int        MAX_MOVES          = PROPERTIES
+                                                         .getInt(TCPropertiesConsts.NET_CORE_REBALANCE_MAX_MOVES_PER_INTERVAL,
+                                                                 4);
+
   private final int               totalWorkerComm;
   private final CoreNIOServices[] workerCommThreads;
   private final SetOnceFlag       started            = new SetOnceFlag();
@@ -49,14 +67,20 @@ public class TCWorkerCommManager {
 
   private final AtomicInteger     nextWorkerCommId   = new AtomicInteger();
 
+  private final String            name;
+  private final WorkerCommBalancer balancer;
+  private Timer                   balancerTimer;
+
   TCWorkerCommManager(String name, int workerCommCount, SocketParams socketParams) {
     if (workerCommCount <= 0) { throw new IllegalArgumentException("invalid worker count: " + workerCommCount); }
     logger.info("Creating " + workerCommCount + " worker comm threads for " + name);
+    this.name = name;
     this.totalWorkerComm = workerCommCount;
     this.workerCommThreads = new CoreNIOServices[workerCommCount];
     for (int i = 0; i < this.workerCommThreads.length; i++) {
       this.workerCommThreads[i] = new CoreNIOServices(name + ":" + WORKER_NAME_PREFIX + i, this, socketParams);
     }
+    this.balancer = new WorkerCommBalancer(this.workerCommThreads, REBALANCE, IMBALANCE_PERCENT, MAX_MOVES);
   }
 
   public CoreNIOServices getNextWorkerComm() {
@@ -100,6 +124,12 @@ public class TCWorkerCommManager {
       for (CoreNIOServices workerCommThread : this.workerCommThreads) {
         workerCommThread.start();
       }
+      // without anything to balance the load is only sampled when it is read, see getWorkerCommLoads()
+      if (REBALANCE && REBALANCE_INTERVAL > 0 && this.totalWorkerComm > 1) {
+        this.balancerTimer = new Timer(name + " worker comm balancer", true);
+        this.balancerTimer.schedule(this.balancer, REBALANCE_INTERVAL, REBALANCE_INTERVAL);
+        logger.info("Rebalancing connections between worker comms every " + REBALANCE_INTERVAL + "ms");
+      }
     } else {
       throw new IllegalStateException("already started");
     }
@@ -109,6 +139,9 @@ public class TCWorkerCommManager {
     if (!this.started.isSet()) { return; }
 
     if (this.stopped.attemptSet()) {
+      if (this.balancerTimer != null) {
+        this.balancerTimer.cancel();
+      }
       for (int i = 0; i < this.totalWorkerComm; i++) {
         this.workerCommThreads[i].requestStop();
       }
@@ -131,4 +164,19 @@ public class TCWorkerCommManager {
     return this.workerCommThreads[workerCommId].getTotalBytesWritten();
   }
 
+  /**
+   * @return The load of each worker comm over the last rebalancing interval or, when the balancer isn't scheduled, since
+   *         the loads were last read
+   */
+  protected synchronized List<WorkerCommLoad> getWorkerCommLoads() {
+    if (this.balancerTimer == null && this.started.isSet() && !this.stopped.isSet()) {
+      this.balancer.sample(System.nanoTime());
+    }
+    return this.balancer.getLoads();
+  }
+
+  protected WorkerCommBalancer getBalancer() {
+    return this.balancer;
+  }
+
 }
@@ -0,0 +1,235 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the load of the worker comms and, when rebalancing is enabled, moves busy connections from the busiest worker
+ * comm to the idlest one. Connections are given to the worker comm with the least weight when they connect and stay
+ * there, so a few busy clients that happen to share a worker comm can saturate it while the others idle.
+ * <p>
+ * The load of a connection is the bytes it read and wrote per second plus {@link #IO_EVENT_COST_BYTES} for each of its
+ * reads and writes, which accounts for the selects and system calls of a connection sending many small messages.
+ */
+class WorkerCommBalancer extends TimerTask {
+  private static final TCLogger         logger              = TCLogging.getLogger(WorkerCommBalancer.class);
+
+  static final long                     IO_EVENT_COST_BYTES = 1024;
+  // a worker comm with less load than this (1MB/s) isn't busy enough to be worth moving connections off
+  static final long                     MIN_REBALANCE_LOAD  = 1024 * 1024;
+
+  private final CoreNIOServices[]       workerComms;
+  private final boolean                 rebalance;
+  private final int                     imbalancePercent;
+  private final int                     maxMovesPerInterval;
+
+  private final long[]                  lastBytesRead;
+  private final long[]                  lastBytesWritten;
+  private final long[]                  lastIoEvents;
+  private long                          lastSampleNanos     = 0;
+  private Map<TCConnectionImpl, Long>   lastConnectionLoads = new HashMap<TCConnectionImpl, Long>();
+  private volatile List<WorkerCommLoad> loads               = Collections.emptyList();
+
+  WorkerCommBalancer(CoreNIOServices[] workerComms, boolean rebalance, int imbalancePercent, int maxMovesPerInterval) {
+    if (imbalancePercent < 0) { throw new IllegalArgumentException("invalid imbalance percent: " + imbalancePercent); }
+    this.workerComms = workerComms;
+    this.rebalance = rebalance;
+    this.imbalancePercent = imbalancePercent;
+    this.maxMovesPerInterval = maxMovesPerInterval;
+    this.lastBytesRead = new long[workerComms.length];
+    this.lastBytesWritten = new long[workerComms.length];
+    this.lastIoEvents = new long[workerComms.length];
+  }
+
+  /**
+   * @return The load of each worker comm over the last sampling interval
+   */
+  List<WorkerCommLoad> getLoads() {
+    return loads;
+  }
+
+  @Override
+  public void run() {
+    try {
+      sample(System.nanoTime());
+    } catch (Throwable t) {
+      // an exception would cancel the timer
+      logger.error("Error sampling the load of the worker comms", t);
+    }
+  }
+
+  synchronized void sample(long now) {
+    final boolean first = (lastSampleNanos == 0);
+    final double seconds = first ? 0 : (double) (now - lastSampleNanos) / TimeUnit.SECONDS.toNanos(1);
+    lastSampleNanos = now;
+
+    List<WorkerCommLoad> workerLoads = new ArrayList<WorkerCommLoad>(workerComms.length);
+    List<Map<TCConnectionImpl, Long>> connectionLoads = new ArrayList<Map<TCConnectionImpl, Long>>(workerComms.length);
+    Map<TCConnectionImpl, Long> connectionTotals = new HashMap<TCConnectionImpl, Long>();
+    for (int i = 0; i < workerComms.length; i++) {
+      CoreNIOServices workerComm = workerComms[i];
+      long read = workerComm.getTotalBytesRead();
+      long written = workerComm.getTotalBytesWritten();
+      long events = workerComm.getTotalIoEvents();
+      workerLoads.add(new WorkerCommLoad(workerComm.getName(), workerComm.getConnectionCount(), workerComm.getWeight(),
+                                         perSecond(read - lastBytesRead[i], seconds),
+                                         perSecond(written - lastBytesWritten[i], seconds),
+                                         perSecond(events - lastIoEvents[i], seconds)));
+      lastBytesRead[i] = read;
+      lastBytesWritten[i] = written;
+      lastIoEvents[i] = events;
+
+      Map<TCConnectionImpl, Long> loadsOfWorker = new HashMap<TCConnectionImpl, Long>();
+      for (TCConnectionImpl connection : workerComm.getManagedConnections()) {
+        long total = connection.getTotalBytesRead() + connection.getTotalBytesWritten()
+                     + connection.getTotalIoEvents() * IO_EVENT_COST_BYTES;
+        connectionTotals.put(connection, total);
+        Long last = lastConnectionLoads.get(connection);
+        // a connection seen for the first time has no load yet, its totals are from before it was sampled
+        if (last != null && connection.isMigratable()) {
+          loadsOfWorker.put(connection, perSecond(total - last, seconds));
+        }
+      }
+      connectionLoads.add(loadsOfWorker);
+    }
+    // only the connections still open are kept
+    lastConnectionLoads = connectionTotals;
+    loads = Collections.unmodifiableList(workerLoads);
+
+    if (first) { return; }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Worker comm load " + workerLoads);
+    }
+    if (rebalance) {
+      rebalance(connectionLoads);
+    }
+  }
+
+  private void rebalance(List<Map<TCConnectionImpl, Long>> connectionLoads) {
+    List<Move<TCConnectionImpl>> moves = plan(connectionLoads, imbalancePercent, maxMovesPerInterval,
+                                              MIN_REBALANCE_LOAD);
+    if (moves.isEmpty()) { return; }
+
+    logger.info("Rebalancing worker comms " + loads);
+    for (Move<TCConnectionImpl> move : moves) {
+      CoreNIOServices from = workerComms[move.from];
+      CoreNIOServices to = workerComms[move.to];
+      if (from.migrate(move.key, to)) {
+        logger.info("Moved " + move.key + " (" + move.load + " B/s) from " + from.getName() + " to " + to.getName());
+      }
+    }
+  }
+
+  private static long perSecond(long delta, double seconds) {
+    return seconds <= 0 ? 0 : (long) (delta / seconds);
+  }
+
+  /**
+   * Plans the connections to move so that no worker comm is more than imbalancePercent above the average load. Each
+   * move takes the connection of the busiest worker comm whose load is closest to half the difference between it and
+   * the idlest worker comm, so that a move never leaves the idlest one busier than the busiest one was.
+   *
+   * @param connectionLoads the load of each connection, by worker comm
+   * @return the moves, in the order they should be made
+   */
+  static <K> List<Move<K>> plan(List<Map<K, Long>> connectionLoads, int imbalancePercent, int maxMoves, long minLoad) {
+    final int count = connectionLoads.size();
+    List<Move<K>> moves = new ArrayList<Move<K>>();
+    if (count < 2) { return moves; }
+
+    List<Map<K, Long>> remaining = new ArrayList<Map<K, Long>>(count);
+    long[] totals = new long[count];
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      remaining.add(new HashMap<K, Long>(connectionLoads.get(i)));
+      for (long load : connectionLoads.get(i).values()) {
+        totals[i] += load;
+      }
+      sum += totals[i];
+    }
+    final long average = sum / count;
+
+    while (moves.size() < maxMoves) {
+      int busiest = 0;
+      int idlest = 0;
+      for (int i = 1; i < count; i++) {
+        if (totals[i] > totals[busiest]) {
+          busiest = i;
+        }
+        if (totals[i] < totals[idlest]) {
+          idlest = i;
+        }
+      }
+      if (totals[busiest] < minLoad || totals[busiest] * 100 <= average * (100 + imbalancePercent)) {
+        break;
+      }
+
+      final long gap = totals[busiest] - totals[idlest];
+      K best = null;
+      long bestLoad = 0;
+      for (Map.Entry<K, Long> entry : remaining.get(busiest).entrySet()) {
+        long load = entry.getValue();
+        if (load > 0 && load < gap && (best == null || Math.abs(2 * load - gap) < Math.abs(2 * bestLoad - gap))) {
+          best = entry.getKey();
+          bestLoad = load;
+        }
+      }
+      if (best == null) {
+        // every connection of the busiest worker comm is as busy as the gap, moving one would only move the problem
+        break;
+      }
+
+      remaining.get(busiest).remove(best);
+      remaining.get(idlest).put(best, bestLoad);
+      totals[busiest] -= bestLoad;
+      totals[idlest] += bestLoad;
+      moves.add(new Move<K>(best, bestLoad, busiest, idlest));
+    }
+    return moves;
+  }
+
+  static final class Move<K> {
+    final K    key;
+    final long load;
+    final int  from;
+    final int  to;
+
+    Move(K key, long load, int from, int to) {
+      this.key = key;
+      this.load = load;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public String toString() {
+      return key + " (" + load + ") " + from + " -> " + to;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+/**
+ * The load of a worker comm over the last sampling interval of the {@link WorkerCommBalancer}.
+ */
+public final class WorkerCommLoad {
+  private final String name;
+  private final int    connections;
+  private final int    weight;
+  private final long   bytesReadPerSecond;
+  private final long   bytesWrittenPerSecond;
+  private final long   ioEventsPerSecond;
+
+  WorkerCommLoad(String name, int connections, int weight, long bytesReadPerSecond, long bytesWrittenPerSecond,
+                 long ioEventsPerSecond) {
+    this.name = name;
+    this.connections = connections;
+    this.weight = weight;
+    this.bytesReadPerSecond = bytesReadPerSecond;
+    this.bytesWrittenPerSecond = bytesWrittenPerSecond;
+    this.ioEventsPerSecond = ioEventsPerSecond;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getConnectionCount() {
+    return connections;
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+
+  public long getBytesReadPerSecond() {
+    return bytesReadPerSecond;
+  }
+
+  public long getBytesWrittenPerSecond() {
+    return bytesWrittenPerSecond;
+  }
+
+  /**
+   * @return The number of reads and writes done per second
+   */
+  public long getIoEventsPerSecond() {
+    return ioEventsPerSecond;
+  }
+
+  @Override
+  public String toString() {
+    return name + ": connections=" + connections + ", weight=" + weight + ", read=" + bytesReadPerSecond
+           + "B/s, written=" + bytesWrittenPerSecond + "B/s, events=" + ioEventsPerSecond + "/s";
+  }
+}
@@ -28,9 +28,7 @@ public interface TCPropertiesConsts {
    * </code>
    ********************************************************************************************************************/
 
-  static final String[]      OLD_PROPERTIES                                                 = {
-    "l2.lockmanager.greedy.locks.enabled",
-  };
+  static final String[]      OLD_PROPERTIES                                                 = {};
 
   /*********************************************************************************************************************
    * <code>
@@ -45,12 +43,19 @@ public interface TCPropertiesConsts {
    *                                      seda stage
    * stage.sink.capacity                : Capacity of seda stage queue, Integer.MAX_VALUE if not set
    *                                      (experimental, do not change)
+   * voltron.stage.threads              : Number of threads for the entity message stage (messages are
+   *                                      partitioned across them by entity)
    * </code>
    ********************************************************************************************************************/
   public static final String ENTITY_PROCESSOR_THREADS                                    = "server.entity.processor.threads";
   public static final String L2_SEDA_STAGE_SINK_CAPACITY                                    = "l2.seda.stage.sink.capacity";
   String L2_TCCOM_WORKERTHREADS                                                          = "l2.tccom.workerthreads";
   String L2_SEDA_STAGE_WORKERTHREADS                                                     = "l2.seda.stage.workerthreads";
+  public static final String L2_SEDA_VOLTRON_STAGE_THREADS                                  = "l2.seda.voltron.stage.threads";
+  public static final String L2_SEDA_LOCK_STAGE_THREADS                                     = "l2.seda.lock.stage.threads";
+  public static final String L2_SEDA_ACTIVE_TO_PASSIVE_DRIVER_BATCH_SIZE                    = "seda.active_to_passive_driver_stage.batchSize";
+  public static final String L2_SEDA_RESPOND_TO_LOCK_REQUEST_BATCH_SIZE                    = "seda.respond_to_lock_request_stage.batchSize";
+  public static final String L2_SEDA_PASSIVE_REPLICATION_BATCH_SIZE                         = "seda.passive_replication_stage.batchSize";
 
   /*********************************************************************************************************************
    * <code>
@@ -77,6 +82,10 @@ public interface TCPropertiesConsts {
    * tcgroupcomm.reconnect.enabled        - Enable L2-L2 reconnect
    * send.timeout.millis                  - Number of milliseconds to retry sending a message
    * dirtydb.backup.enabled               - Creates BackUp of DirtyDB only If it is set to true.
+   * passiveSync.entityParallelism        - Number of entities synced to a new passive at once
+   * passiveSync.window                   - Max passive sync messages sent to a passive before they are acked
+   * replication.ack.delay                - Max milliseconds a passive holds replication acks to coalesce them
+   * replication.ack.maxPending           - Number of replication acks a passive holds before sending them anyway
    * </code>
    ********************************************************************************************************************/
   public static final String L2_NHA_TCGROUPCOMM_HANDSHAKE_TIMEOUT                           = "l2.nha.tcgroupcomm.handshake.timeout";
@@ -91,6 +100,10 @@ public interface TCPropertiesConsts {
   public static final String L2_NHA_DIRTYDB_AUTODELETE                                      = "l2.nha.dirtydb.autoDelete";
   public static final String L2_NHA_DIRTYDB_ROLLING                                         = "l2.nha.dirtydb.rolling";
   public static final String L2_NHA_AUTORESTART                                             = "l2.nha.autoRestart";
+  public static final String L2_NHA_PASSIVE_SYNC_ENTITY_PARALLELISM                         = "l2.nha.passiveSync.entityParallelism";
+  public static final String L2_NHA_PASSIVE_SYNC_WINDOW                                     = "l2.nha.passiveSync.window";
+  public static final String L2_NHA_REPLICATION_ACK_DELAY                                   = "l2.nha.replication.ack.delay";
+  public static final String L2_NHA_REPLICATION_ACK_MAX_PENDING                             = "l2.nha.replication.ack.maxPending";
 
   /*********************************************************************************************************************
    * <code>
@@ -104,6 +117,22 @@ public interface TCPropertiesConsts {
    ********************************************************************************************************************/
   public static final String L2_STARTUPLOCK_RETRIES_ENABLED                                 = "l2.startuplock.retries.enabled";
   public static final String ENTITY_DEFERMENT_QUEUE_SIZE                                    = "server.entity.deferment.queue.size";
+
+  /*********************************************************************************************************************
+   * <code>
+   * Section : L2 Persistence Properties
+   * Description : Controls how the platform persists its state when restartable
+   * flatfile.log.enabled                    : If true, mutations are appended to a write-ahead log instead of
+   *                                           re-writing the whole flat file on every change
+   * flatfile.log.compaction.thresholdBytes  : Size of a log segment after which it is compacted into a snapshot
+   * groupcommit.maxLatencyMicros            : Max time a durable write is delayed so concurrent writers can share it
+   * groupcommit.maxBatchSize                : Number of pending mutations which triggers a durable write immediately
+   * </code>
+   ********************************************************************************************************************/
+  public static final String L2_PERSISTENCE_FLATFILE_LOG_ENABLED                            = "l2.persistence.flatfile.log.enabled";
+  public static final String L2_PERSISTENCE_FLATFILE_LOG_COMPACTION_THRESHOLD               = "l2.persistence.flatfile.log.compaction.thresholdBytes";
+  public static final String L2_PERSISTENCE_GROUPCOMMIT_MAX_LATENCY_MICROS                  = "l2.persistence.groupcommit.maxLatencyMicros";
+  public static final String L2_PERSISTENCE_GROUPCOMMIT_MAX_BATCH_SIZE                      = "l2.persistence.groupcommit.maxBatchSize";
   
   /*********************************************************************************************************************
    * <code>
@@ -126,6 +155,7 @@ public interface TCPropertiesConsts {
   
   public static final String CLIENT_MAX_PENDING_REQUESTS                                    = "client.requests.pending.max";
   public static final String CLIENT_MAX_SENT_REQUESTS                                       = "client.requests.sent.max";
+  public static final String CLIENT_MAX_BATCHED_REQUESTS                                    = "client.requests.batch.max";
 
   public static final String TC_TRANSPORT_HANDSHAKE_TIMEOUT                                 = "tc.transport.handshake.timeout";
   public static final String TC_CONFIG_SOURCEGET_TIMEOUT                                    = "tc.config.getFromSource.timeout";
@@ -194,7 +224,11 @@ public interface TCPropertiesConsts {
   public static final String TC_BYTEBUFFER_THREADLOCAL_POOL_MAXCOUNT                        = "tc.bytebuffer.threadlocal.pool.maxcount";
   public static final String TC_MESSAGE_GROUPING_ENABLED                                    = "tc.messages.grouping.enabled";
   public static final String TC_MESSAGE_GROUPING_MAXSIZE_KB                                 = "tc.messages.grouping.maxSizeKiloBytes";
+  public static final String TC_MESSAGE_GROUPING_ADAPTIVE_ENABLED                           = "tc.messages.grouping.adaptive.enabled";
+  public static final String TC_MESSAGE_GROUPING_ADAPTIVE_MAX_DELAY_MICROS                  = "tc.messages.grouping.adaptive.maxDelayMicros";
   public static final String TC_MESSAGE_PACKUP_ENABLED                                      = "tc.messages.packup.enabled";
+  public static final String TC_MESSAGE_GATHERING_ENABLED                                   = "tc.messages.gathering.enabled";
+  public static final String TC_MESSAGE_SCATTERING_ENABLED                                  = "tc.messages.scattering.enabled";
 
   /*********************************************************************************************************************
    * <code>
@@ -221,11 +255,13 @@ public interface TCPropertiesConsts {
    * Description       : This section contains the defaults for the client lock manager for the L1
    * striped.count     : striping count for l1 lock manager
    * timeout.interval  : time after which an unused lock will be a candidate for lock GC
+   * maxBatchedRequests: most lock requests sent to the server in one message
    * </code>
    ********************************************************************************************************************/
   public static final String L1_LOCKMANAGER_STRIPED_COUNT                                   = "l1.lockmanager.striped.count";
   public static final String L1_LOCKMANAGER_TIMEOUT_INTERVAL                                = "l1.lockmanager.timeout.interval";
   public static final String L1_LOCKMANAGER_PINNING_ENABLED                                 = "l1.lockmanager.pinning.enabled";
+  public static final String L1_LOCKMANAGER_MAX_BATCHED_REQUESTS                            = "l1.lockmanager.maxBatchedRequests";
 
   /*********************************************************************************************************************
    * <code>
@@ -249,6 +285,11 @@ public interface TCPropertiesConsts {
    ********************************************************************************************************************/
   public static final String L2_LOCKMANAGER_GREEDY_LEASE_ENABLED                            = "l2.lockmanager.greedy.lease.enabled";
   public static final String L2_LOCKMANAGER_GREEDY_LEASE_LEASETIME_INMILLS                  = "l2.lockmanager.greedy.lease.leaseTimeInMillis";
+  public static final String L2_LOCKMANAGER_GREEDY_LOCKS_ENABLED                            = "l2.lockmanager.greedy.locks.enabled";
+  public static final String L2_LOCKMANAGER_GREEDY_ADAPTIVE_RECALL_THRESHOLD                 = "l2.lockmanager.greedy.adaptive.recallThreshold";
+  public static final String L2_LOCKMANAGER_GREEDY_ADAPTIVE_WINDOW_INMILLS                   = "l2.lockmanager.greedy.adaptive.windowInMillis";
+  public static final String L2_LOCKMANAGER_GREEDY_ADAPTIVE_COOLDOWN_INMILLS                 = "l2.lockmanager.greedy.adaptive.coolDownInMillis";
+  public static final String L2_LOCKMANAGER_GREEDY_ADAPTIVE_MAX_TRACKED_LOCKS               = "l2.lockmanager.greedy.adaptive.maxTrackedLocks";
 
   /*********************************************************************************************************************
    * <code>
@@ -260,6 +301,25 @@ public interface TCPropertiesConsts {
   public static final String NET_CORE_KEEPALIVE                                             = "net.core.keepalive";
   public static final String NET_CORE_TCP_NO_DELAY                                          = "net.core.tcpnodelay";
 
+  /*********************************************************************************************************************
+   * <code>
+   * Section : Comm Worker Threads
+   * commthread.split.enabled        : Enable/disable separate reader and writer selector threads for each comm
+   *                                   worker (when disabled one selector thread both reads and writes)
+   * rebalance.enabled               : Enable/disable moving busy connections from the busiest comm worker to the
+   *                                   idlest one while they are open
+   * rebalance.intervalMillis        : Interval at which the load of the comm workers is sampled
+   * rebalance.imbalancePercent      : How far, in percent, the busiest comm worker must be above the average load
+   *                                   before connections are moved off it
+   * rebalance.maxMovesPerInterval   : Maximum number of connections moved each interval
+   * </code>
+   ********************************************************************************************************************/
+  public static final String NET_CORE_COMMTHREAD_SPLIT_ENABLED                              = "net.core.commthread.split.enabled";
+  public static final String NET_CORE_REBALANCE_ENABLED                                     = "net.core.rebalance.enabled";
+  public static final String NET_CORE_REBALANCE_INTERVAL_MILLIS                             = "net.core.rebalance.intervalMillis";
+  public static final String NET_CORE_REBALANCE_IMBALANCE_PERCENT                           = "net.core.rebalance.imbalancePercent";
+  public static final String NET_CORE_REBALANCE_MAX_MOVES_PER_INTERVAL                      = "net.core.rebalance.maxMovesPerInterval";
+
   /*********************************************************************************************************************
    * <code>
    *  Section : HealthChecker { server->client, server->server (HA), client->server }
@@ -0,0 +1,382 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link Timer} backed by a hashed timing wheel, for timers with very many pending timeouts which are mostly cancelled
+ * before they expire (lock waits and leases for instance).
+ * <p>
+ * The wheel is an array of buckets, each a doubly linked list of timeouts, which a single thread advances one bucket
+ * every tick. A timeout further away than a turn of the wheel waits in its bucket for the remaining number of turns.
+ * Scheduling and cancelling are O(1) and never take a lock: a new timeout is pushed on a stack which the wheel thread
+ * drains into the buckets every tick, and a cancelled timeout is only marked, the wheel thread unlinks it the next time
+ * it passes its bucket. The price is precision, a timeout expires up to a tick after its delay.
+ * <p>
+ * NOTE: the tasks run on the wheel thread, so they should be short (handing work off to a stage for instance) or they
+ * will delay the timeouts which follow them.
+ */
+public class HashedWheelTimer implements Timer {
+  private static final TCLogger         logger              = TCLogging.getLogger(HashedWheelTimer.class);
+
+  public static final long              DEFAULT_TICK_MILLIS = 10;
+  public static final int               DEFAULT_WHEEL_SIZE  = 512;
+
+  private final long                    tickNanos;
+  private final Bucket[]                wheel;
+  private final int                     mask;
+  private final long                    startTime;
+  private final AtomicReference<Timeout> added              = new AtomicReference<Timeout>();
+  private final AtomicInteger           pending             = new AtomicInteger();
+  private final Thread                  worker;
+  private volatile boolean              shutdown            = false;
+  // only used by the wheel thread
+  private long                          tick                = 0;
+
+  public HashedWheelTimer(String name) {
+    this(name, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+  }
+
+  public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+    if (tickDuration <= 0 || wheelSize <= 0) { throw new IllegalArgumentException(); }
+    int size = 1;
+    while (size < wheelSize) {
+      size <<= 1;
+    }
+    this.tickNanos = unit.toNanos(tickDuration);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      this.wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.startTime = System.nanoTime();
+    this.worker = new Thread(new Worker(), name == null ? "HashedWheelTimer" : name);
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return add(new Timeout(command, System.nanoTime() + unit.toNanos(Math.max(delay, 0)), 0));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+    if (period <= 0) { throw new IllegalArgumentException(); }
+    return add(new Timeout(command, System.nanoTime() + unit.toNanos(Math.max(initialDelay, 0)), unit.toNanos(period)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    if (delay <= 0) { throw new IllegalArgumentException(); }
+    return add(new Timeout(command, System.nanoTime() + unit.toNanos(Math.max(initialDelay, 0)), -unit.toNanos(delay)));
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    schedule(command, 0, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void cancel() {
+    if (shutdown) { return; }
+    shutdown = true;
+    LockSupport.unpark(worker);
+  }
+
+  /**
+   * @return The number of timeouts which have neither expired nor been cancelled
+   */
+  public int getPendingCount() {
+    return pending.get();
+  }
+
+  private Timeout add(Timeout timeout) {
+    if (timeout.task == null) { throw new NullPointerException(); }
+    if (shutdown) { throw new RejectedExecutionException("Timer already cancelled"); }
+    pending.incrementAndGet();
+    while (true) {
+      Timeout head = added.get();
+      timeout.nextAdded = head;
+      if (added.compareAndSet(head, timeout)) { return timeout; }
+    }
+  }
+
+  private class Worker implements Runnable {
+    @Override
+    public void run() {
+      while (!shutdown) {
+        long deadline = startTime + (tick + 1) * tickNanos;
+        long sleep = deadline - System.nanoTime();
+        if (sleep > 0) {
+          LockSupport.parkNanos(HashedWheelTimer.this, sleep);
+          continue;
+        }
+        transferAdded();
+        Timeout repeated = wheel[(int) (tick & mask)].expire();
+        tick++;
+        relink(repeated);
+      }
+      added.set(null);
+    }
+  }
+
+  private void transferAdded() {
+    // the stack is newest first, reverse it so that timeouts due in the same tick run in the order they were scheduled
+    Timeout reversed = null;
+    Timeout timeout = added.getAndSet(null);
+    while (timeout != null) {
+      Timeout next = timeout.nextAdded;
+      timeout.nextAdded = reversed;
+      reversed = timeout;
+      timeout = next;
+    }
+    while (reversed != null) {
+      Timeout next = reversed.nextAdded;
+      reversed.nextAdded = null;
+      if (reversed.state == Timeout.WAITING) {
+        link(reversed, tick);
+      }
+      reversed = next;
+    }
+  }
+
+  /**
+   * Links the periodic timeouts which ran in the last tick back into the wheel. This is only done once the walk of the
+   * bucket is over, a timeout linked into the bucket being walked would have its rounds counted down a turn early.
+   */
+  private void relink(Timeout timeout) {
+    while (timeout != null) {
+      Timeout next = timeout.nextAdded;
+      timeout.nextAdded = null;
+      if (timeout.state == Timeout.WAITING) {
+        link(timeout, tick);
+      }
+      timeout = next;
+    }
+  }
+
+  /**
+   * Links the timeout into the bucket of its deadline, or of the given tick if the deadline is already due.
+   */
+  private void link(Timeout timeout, long earliestTick) {
+    long ticks = Math.max((timeout.deadline - startTime) / tickNanos, earliestTick);
+    timeout.remainingRounds = (ticks - tick) / wheel.length;
+    wheel[(int) (ticks & mask)].add(timeout);
+  }
+
+  private final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    private void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    private void remove(Timeout timeout) {
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      } else {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+
+    /**
+     * @return The periodic timeouts which ran and are due again, chained through nextAdded
+     */
+    private Timeout expire() {
+      Timeout repeated = null;
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.state == Timeout.CANCELLED) {
+          remove(timeout);
+        } else if (timeout.remainingRounds <= 0) {
+          remove(timeout);
+          if (timeout.expire()) {
+            timeout.nextAdded = repeated;
+            repeated = timeout;
+          }
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+      return repeated;
+    }
+  }
+
+  private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class,
+                                                                                                      "state");
+
+  private final class Timeout implements ScheduledFuture<Object> {
+    private static final int    WAITING   = 0;
+    private static final int    RUNNING   = 1;
+    private static final int    DONE      = 2;
+    private static final int    CANCELLED = 3;
+
+    private final Runnable      task;
+    // positive for a fixed rate, negative for a fixed delay
+    private final long          period;
+    private volatile int        state     = WAITING;
+    private volatile long       deadline;
+    private volatile boolean    awaited   = false;
+    private Throwable           failure;
+    private Timeout             nextAdded;
+
+    // only used by the wheel thread
+    private long                remainingRounds;
+    private Bucket              bucket;
+    private Timeout             prev;
+    private Timeout             next;
+
+    private Timeout(Runnable task, long deadline, long period) {
+      this.task = task;
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    /**
+     * @return true if this is a periodic timeout which has to be linked back into the wheel
+     */
+    private boolean expire() {
+      if (!STATE.compareAndSet(this, WAITING, RUNNING)) { return false; }
+      try {
+        task.run();
+      } catch (Throwable t) {
+        logger.error("Error running timer task " + task, t);
+        finish(DONE, t);
+        return false;
+      }
+      if (period == 0) {
+        finish(DONE, null);
+        return false;
+      } else if (STATE.compareAndSet(this, RUNNING, WAITING)) {
+        deadline = period > 0 ? deadline + period : System.nanoTime() - period;
+        return true;
+      }
+      return false;
+    }
+
+    private synchronized void finish(int finalState, Throwable t) {
+      if (STATE.getAndSet(this, finalState) != CANCELLED) {
+        pending.decrementAndGet();
+      }
+      failure = t;
+      notifyAll();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      while (true) {
+        int current = state;
+        if (current == DONE || current == CANCELLED) { return false; }
+        // a single shot task which is running can't be cancelled any more
+        if (current == RUNNING && period == 0) { return false; }
+        if (STATE.compareAndSet(this, current, CANCELLED)) {
+          pending.decrementAndGet();
+          if (awaited) {
+            synchronized (this) {
+              notifyAll();
+            }
+          }
+          return true;
+        }
+      }
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return state == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+      int current = state;
+      return current == DONE || current == CANCELLED;
+    }
+
+    @Override
+    public synchronized Object get() throws InterruptedException, ExecutionException {
+      awaited = true;
+      while (!isDone()) {
+        wait();
+      }
+      return result();
+    }
+
+    @Override
+    public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+        TimeoutException {
+      awaited = true;
+      long end = System.nanoTime() + unit.toNanos(timeout);
+      while (!isDone()) {
+        long remaining = end - System.nanoTime();
+        if (remaining <= 0) { throw new TimeoutException(); }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+      return result();
+    }
+
+    private Object result() throws ExecutionException {
+      if (isCancelled()) { throw new CancellationException(); }
+      if (failure != null) { throw new ExecutionException(failure); }
+      return null;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+}
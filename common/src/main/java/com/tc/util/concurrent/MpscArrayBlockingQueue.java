@@ -0,0 +1,45 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer queue.  Producers claim a slot with a compare-and-set on the
+ * producer index and then publish their element into it, so a put costs one CAS and no allocation (unlike the node
+ * and two locks of a LinkedBlockingQueue).
+ */
+public class MpscArrayBlockingQueue<E> extends RingBufferBlockingQueue<E> {
+
+  public MpscArrayBlockingQueue(int capacity) {
+    super(capacity);
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (null == e) { throw new NullPointerException(); }
+    while (true) {
+      long sequence = this.producerIndex.get();
+      if (sequence - this.consumerIndex.get() >= this.capacity) { return false; }
+      if (this.producerIndex.compareAndSet(sequence, sequence + 1)) {
+        this.buffer.lazySet(indexOf(sequence), e);
+        signalConsumer();
+        return true;
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * An unbounded, lock-free, multi-producer single-consumer queue.  A producer links its element in with a single atomic
+ * swap of the tail, so an offer never retries or blocks however many threads add at once, and costs one node.
+ * <p>
+ * Only one thread at a time may call {@link #poll()} and {@link #isEmpty()}.  A producer which has swapped the tail but
+ * not yet linked its node leaves a short gap in the queue:  while it lasts poll() returns null even though isEmpty() is
+ * false, so a consumer should treat isEmpty(), not a null poll, as the signal that it has caught up.
+ */
+public class MpscLinkedQueue<E> {
+  private final AtomicReference<Node<E>> tail;
+  // only touched by the consumer
+  private Node<E>                        head;
+
+  public MpscLinkedQueue() {
+    Node<E> stub = new Node<E>(null);
+    this.head = stub;
+    this.tail = new AtomicReference<Node<E>>(stub);
+  }
+
+  public void offer(E e) {
+    if (null == e) { throw new NullPointerException(); }
+    Node<E> node = new Node<E>(e);
+    Node<E> previous = this.tail.getAndSet(node);
+    Node.NEXT.lazySet(previous, node);
+  }
+
+  public E poll() {
+    Node<E> next = this.head.next;
+    if (null == next) { return null; }
+    E value = next.value;
+    next.value = null;
+    this.head = next;
+    return value;
+  }
+
+  public boolean isEmpty() {
+    return this.head == this.tail.get();
+  }
+
+  private static final class Node<E> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, Node> NEXT = AtomicReferenceFieldUpdater
+                                                                          .newUpdater(Node.class, Node.class, "next");
+    private E                                                    value;
+    private volatile Node<E>                                     next;
+
+    Node(E value) {
+      this.value = value;
+    }
+  }
+}
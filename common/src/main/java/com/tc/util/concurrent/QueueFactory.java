@@ -22,6 +22,14 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 public class QueueFactory<E> {
+  /**
+   * The queue types which can be requested by name.  The ring buffers are always bounded so they use
+   * DEFAULT_RING_CAPACITY when asked for an unbounded queue.
+   */
+  public static final String LINKED_QUEUE          = "linked";
+  public static final String MPSC_QUEUE            = "mpsc";
+  public static final String SPSC_QUEUE            = "spsc";
+  public static final int    DEFAULT_RING_CAPACITY = 64 * 1024;
 
   public BlockingQueue<E> createInstance() {
     return new LinkedBlockingQueue<E>();
@@ -31,4 +39,20 @@ public class QueueFactory<E> {
     return new LinkedBlockingQueue<E>(capacity);
   }
 
+  public BlockingQueue<E> createInstance(String type, int capacity) {
+    if (LINKED_QUEUE.equals(type)) {
+      return createInstance(capacity);
+    } else if (MPSC_QUEUE.equals(type)) {
+      return new MpscArrayBlockingQueue<E>(ringCapacity(capacity));
+    } else if (SPSC_QUEUE.equals(type)) {
+      return new SpscArrayBlockingQueue<E>(ringCapacity(capacity));
+    } else {
+      throw new IllegalArgumentException("Unknown queue type: " + type);
+    }
+  }
+
+  private static int ringCapacity(int capacity) {
+    return (capacity == Integer.MAX_VALUE) ? DEFAULT_RING_CAPACITY : capacity;
+  }
+
 }
@@ -0,0 +1,269 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The common consumer side of the bounded, array-backed, ring buffer queues.  Subclasses only decide how producers
+ * claim a slot.
+ * <p>
+ * Neither side takes a lock:  a waiting producer backs off by spinning, then yielding, then parking for progressively
+ * longer, while a waiting consumer spins and yields before parking until a producer unparks it.  Only one consumer is
+ * expected (the stage worker which owns the queue) but consumers are serialized with a single compare-and-set so that
+ * an occasional second one, such as a clear of the stage, is safe.  Only one blocked consumer is unparked by producers,
+ * though, so any other one only notices new elements once its timeout expires.
+ * <p>
+ * The iterator is a weakly consistent snapshot and doesn't support removal.
+ */
+abstract class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+  private static final int  SPIN_TRIES     = 100;
+  private static final int  YIELD_TRIES    = 10;
+  private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  protected final AtomicReferenceArray<E> buffer;
+  protected final int                     capacity;
+  protected final AtomicLong              producerIndex = new AtomicLong();
+  protected final AtomicLong              consumerIndex = new AtomicLong();
+  private final int                       mask;
+  private final AtomicBoolean             consuming     = new AtomicBoolean();
+  private volatile Thread                 waitingConsumer;
+
+  RingBufferBlockingQueue(int capacity) {
+    if (capacity <= 0 || capacity > (1 << 30)) { throw new IllegalArgumentException("Invalid capacity: " + capacity); }
+    int length = 1;
+    while (length < capacity) {
+      length <<= 1;
+    }
+    this.buffer = new AtomicReferenceArray<E>(length);
+    this.mask = length - 1;
+    this.capacity = capacity;
+  }
+
+  protected final int indexOf(long sequence) {
+    return (int) sequence & this.mask;
+  }
+
+  /**
+   * Called by a producer once its element is visible to the consumer.
+   */
+  protected final void signalConsumer() {
+    Thread waiter = this.waitingConsumer;
+    if (null != waiter) {
+      LockSupport.unpark(waiter);
+    }
+  }
+
+  @Override
+  public E poll() {
+    while (!this.consuming.compareAndSet(false, true)) {
+      Thread.yield();
+    }
+    try {
+      long sequence = this.consumerIndex.get();
+      int index = indexOf(sequence);
+      E element = this.buffer.get(index);
+      if (null == element) {
+        if (sequence == this.producerIndex.get()) { return null; }
+        // A producer has claimed this slot but not yet published its element into it.
+        while (null == (element = this.buffer.get(index))) {
+          Thread.yield();
+        }
+      }
+      this.buffer.lazySet(index, null);
+      this.consumerIndex.lazySet(sequence + 1);
+      return element;
+    } finally {
+      this.consuming.lazySet(false);
+    }
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    int attempt = 0;
+    while (true) {
+      E element = poll();
+      if (null != element) { return element; }
+      if (Thread.interrupted()) { throw new InterruptedException(); }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) { return null; }
+      if (attempt < SPIN_TRIES + YIELD_TRIES) {
+        attempt = backOff(attempt);
+      } else {
+        this.waitingConsumer = Thread.currentThread();
+        try {
+          // Re-check after publishing ourselves as the waiter so that we can't miss the signal of a racing producer.
+          if (isEmpty()) {
+            LockSupport.parkNanos(this, remaining);
+          }
+        } finally {
+          this.waitingConsumer = null;
+        }
+      }
+    }
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    while (true) {
+      E element = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      if (null != element) { return element; }
+    }
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    int attempt = 0;
+    while (!offer(e)) {
+      if (Thread.interrupted()) { throw new InterruptedException(); }
+      attempt = backOff(attempt);
+    }
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    int attempt = 0;
+    while (!offer(e)) {
+      if (Thread.interrupted()) { throw new InterruptedException(); }
+      if (deadline - System.nanoTime() <= 0) { return false; }
+      attempt = backOff(attempt);
+    }
+    return true;
+  }
+
+  @Override
+  public E peek() {
+    while (!this.consuming.compareAndSet(false, true)) {
+      Thread.yield();
+    }
+    try {
+      long sequence = this.consumerIndex.get();
+      if (sequence == this.producerIndex.get()) { return null; }
+      E element;
+      while (null == (element = this.buffer.get(indexOf(sequence)))) {
+        Thread.yield();
+      }
+      return element;
+    } finally {
+      this.consuming.lazySet(false);
+    }
+  }
+
+  @Override
+  public int size() {
+    // Read the consumer index first so that the difference can never be negative.
+    long consumed = this.consumerIndex.get();
+    long produced = this.producerIndex.get();
+    return (int) Math.min(produced - consumed, this.capacity);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.consumerIndex.get() == this.producerIndex.get();
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return this.capacity - size();
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    if (c == this) { throw new IllegalArgumentException(); }
+    int drained = 0;
+    E element;
+    while (drained < maxElements && null != (element = poll())) {
+      c.add(element);
+      drained += 1;
+    }
+    return drained;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<E>();
+    while (!this.consuming.compareAndSet(false, true)) {
+      Thread.yield();
+    }
+    try {
+      long end = this.producerIndex.get();
+      for (long sequence = this.consumerIndex.get(); sequence < end; ++sequence) {
+        E element = this.buffer.get(indexOf(sequence));
+        // Elements still in flight from a producer are skipped.
+        if (null != element) {
+          snapshot.add(element);
+        }
+      }
+    } finally {
+      this.consuming.lazySet(false);
+    }
+    final Iterator<E> delegate = snapshot.iterator();
+    return new Iterator<E>() {
+      @Override
+      public boolean hasNext() {
+        return delegate.hasNext();
+      }
+
+      @Override
+      public E next() {
+        return delegate.next();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Spins, then yields, then parks for exponentially longer (up to a millisecond) as the attempts increase.
+   *
+   * @return The next attempt number
+   */
+  private static int backOff(int attempt) {
+    if (attempt < SPIN_TRIES) {
+      // Busy-spin.
+    } else if (attempt < SPIN_TRIES + YIELD_TRIES) {
+      Thread.yield();
+    } else {
+      int shift = Math.min(attempt - SPIN_TRIES - YIELD_TRIES, 10);
+      LockSupport.parkNanos(Math.min(MIN_PARK_NANOS << shift, MAX_PARK_NANOS));
+    }
+    return attempt + 1;
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+/**
+ * A bounded, lock-free, single-producer single-consumer queue.  The producer doesn't need to claim its slot so a put is
+ * only a pair of ordered writes.
+ * <p>
+ * NOTE:  this is only safe when a single thread at a time adds to the queue.  Concurrent producers will overwrite each
+ * other's elements.
+ */
+public class SpscArrayBlockingQueue<E> extends RingBufferBlockingQueue<E> {
+
+  public SpscArrayBlockingQueue(int capacity) {
+    super(capacity);
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (null == e) { throw new NullPointerException(); }
+    long sequence = this.producerIndex.get();
+    if (sequence - this.consumerIndex.get() >= this.capacity) { return false; }
+    this.buffer.lazySet(indexOf(sequence), e);
+    // This must be a volatile write (not lazySet) so that it can't be reordered with the read of the waiting consumer.
+    this.producerIndex.set(sequence + 1);
+    signalConsumer();
+    return true;
+  }
+}
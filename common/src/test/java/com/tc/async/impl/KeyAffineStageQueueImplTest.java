@@ -0,0 +1,254 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.ConfigurationContext;
+import com.tc.async.api.EventHandler;
+import com.tc.async.api.EventHandlerException;
+import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.logging.DefaultLoggerProvider;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.util.concurrent.QueueFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeyAffineStageQueueImplTest {
+  private final List<String> workStealingStages = new ArrayList<String>();
+
+  @After
+  public void tearDown() {
+    for (String name : this.workStealingStages) {
+      TCPropertiesImpl.getProperties().setProperty("seda." + name + ".workStealing", "false");
+    }
+  }
+
+  @Test
+  public void testOrderPerKey() throws Exception {
+    final int keys = 8;
+    final int perKey = 1000;
+    final Map<Integer, AtomicInteger> next = new ConcurrentHashMap<Integer, AtomicInteger>();
+    final AtomicBoolean failed = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch(keys * perKey);
+    StageImpl<KeyedContext> stage = createStage("ordered", 4);
+    for (int k = 0; k < keys; ++k) {
+      next.put(k, new AtomicInteger());
+    }
+    for (int i = 0; i < perKey; ++i) {
+      for (int k = 0; k < keys; ++k) {
+        final int key = k;
+        final int sequence = i;
+        stage.getSink().addMultiThreaded(new KeyedContext(key, new Runnable() {
+          @Override
+          public void run() {
+            // Each key must see its contexts one at a time and in the order they were added.
+            if (!next.get(key).compareAndSet(sequence, sequence + 1)) {
+              failed.set(true);
+            }
+            done.countDown();
+          }
+        }));
+      }
+    }
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    assertFalse(failed.get());
+    stage.destroy();
+  }
+
+  @Test
+  public void testBusyKeyDoesNotBlockOthers() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch others = new CountDownLatch(10);
+    final CountDownLatch finished = new CountDownLatch(1);
+    StageImpl<KeyedContext> stage = createStage("busy", 2);
+    stage.getSink().addMultiThreaded(new KeyedContext(0, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        finished.countDown();
+      }
+    }));
+    // Every other key, including those which would have hashed to the busy thread, still runs on the idle one.
+    for (int k = 1; k <= 10; ++k) {
+      stage.getSink().addMultiThreaded(new KeyedContext(k * 2, new Runnable() {
+        @Override
+        public void run() {
+          others.countDown();
+        }
+      }));
+    }
+    assertTrue(others.await(30, TimeUnit.SECONDS));
+    release.countDown();
+    assertTrue(finished.await(30, TimeUnit.SECONDS));
+    stage.destroy();
+  }
+
+  @Test
+  public void testFlushWaitsForEarlierContexts() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch flushed = new CountDownLatch(1);
+    final AtomicBoolean released = new AtomicBoolean();
+    StageImpl<KeyedContext> stage = createStage("flush", 4);
+    stage.getSink().addMultiThreaded(new KeyedContext(1, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        released.set(true);
+      }
+    }));
+    KeyedContext flush = new KeyedContext(2, new Runnable() {
+      @Override
+      public void run() {
+        assertTrue(released.get());
+        flushed.countDown();
+      }
+    });
+    flush.flush = true;
+    stage.getSink().addMultiThreaded(flush);
+    assertFalse(flushed.await(200, TimeUnit.MILLISECONDS));
+    release.countDown();
+    assertTrue(flushed.await(30, TimeUnit.SECONDS));
+    stage.destroy();
+  }
+
+  @Test
+  public void testBacklog() {
+    KeyAffineStageQueueImpl<KeyedContext> queue = new KeyAffineStageQueueImpl<KeyedContext>(2, new DefaultLoggerProvider(), "backlog", Integer.MAX_VALUE);
+    for (int i = 0; i < 3; ++i) {
+      queue.addMultiThreaded(new KeyedContext(7, null));
+    }
+    queue.addMultiThreaded(new KeyedContext(8, null));
+    Map<Object, Integer> backlog = queue.getBacklog();
+    assertEquals(Integer.valueOf(3), backlog.get(7));
+    assertEquals(Integer.valueOf(1), backlog.get(8));
+    assertEquals(4, queue.size());
+    queue.clear();
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testFlushMarkersAreNotCounted() {
+    KeyAffineStageQueueImpl<KeyedContext> queue = new KeyAffineStageQueueImpl<KeyedContext>(2, new DefaultLoggerProvider(), "markers", Integer.MAX_VALUE);
+    queue.addMultiThreaded(new KeyedContext(7, null));
+    queue.addMultiThreaded(new KeyedContext(8, null));
+    KeyedContext flush = new KeyedContext(9, null);
+    flush.flush = true;
+    queue.addMultiThreaded(flush);
+    // The flushing context is waiting behind a marker on each of the two keys but only it counts.
+    assertEquals(3, queue.size());
+    assertEquals(Integer.valueOf(2), queue.getBacklog().get(7));
+    queue.clear();
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testCapacityBlocksAdds() throws Exception {
+    final KeyAffineStageQueueImpl<KeyedContext> queue = new KeyAffineStageQueueImpl<KeyedContext>(1, new DefaultLoggerProvider(), "bounded", 2);
+    queue.addMultiThreaded(new KeyedContext(1, null));
+    queue.addMultiThreaded(new KeyedContext(2, null));
+    final CountDownLatch added = new CountDownLatch(1);
+    Thread adder = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        queue.addMultiThreaded(new KeyedContext(3, null));
+        added.countDown();
+      }
+    });
+    adder.start();
+    assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+    // Taking a context makes room for the blocked one.
+    queue.getSource(0).poll(0);
+    assertTrue(added.await(30, TimeUnit.SECONDS));
+    assertEquals(2, queue.size());
+    adder.join();
+  }
+
+  private StageImpl<KeyedContext> createStage(String name, int threads) {
+    this.workStealingStages.add(name);
+    TCPropertiesImpl.getProperties().setProperty("seda." + name + ".workStealing", "true");
+    StageImpl<KeyedContext> stage = new StageImpl<KeyedContext>(new DefaultLoggerProvider(), name, new RunningHandler(),
+        threads, null, new QueueFactory<ContextWrapper<KeyedContext>>(), Integer.MAX_VALUE);
+    stage.start(null);
+    return stage;
+  }
+
+  private static class KeyedContext implements MultiThreadedEventContext {
+    private final Integer key;
+    private final Runnable action;
+    private boolean flush;
+
+    KeyedContext(int key, Runnable action) {
+      this.key = key;
+      this.action = action;
+    }
+
+    @Override
+    public Object getSchedulingKey() {
+      return this.key;
+    }
+
+    @Override
+    public boolean flush() {
+      return this.flush;
+    }
+  }
+
+  private static class RunningHandler implements EventHandler<KeyedContext> {
+    @Override
+    public void handleEvent(KeyedContext context) throws EventHandlerException {
+      context.action.run();
+    }
+
+    @Override
+    public void handleEvents(Collection<KeyedContext> contexts) throws EventHandlerException {
+      for (KeyedContext context : contexts) {
+        handleEvent(context);
+      }
+    }
+
+    @Override
+    public void destroy() {
+      //
+    }
+
+    @Override
+    public void initializeContext(ConfigurationContext context) {
+      //
+    }
+  }
+}
@@ -22,15 +22,19 @@ import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventHandler;
 import com.tc.async.api.EventHandlerException;
 import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.SpecializedEventContext;
 import com.tc.logging.DefaultLoggerProvider;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.concurrent.QueueFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -52,6 +56,9 @@ import org.mockito.stubbing.Answer;
  */
 public class StageImplTest {
   
+  private static final String BATCH_SIZE = "seda.batched.batchSize";
+  private String priorBatchSize;
+  
   public StageImplTest() {
   }
   
@@ -65,10 +72,13 @@ public class StageImplTest {
   
   @Before
   public void setUp() {
+    priorBatchSize = TCPropertiesImpl.getProperties().getProperty(BATCH_SIZE, true);
   }
   
   @After
   public void tearDown() {
+    // a missing batchSize means batches of 1
+    TCPropertiesImpl.getProperties().setProperty(BATCH_SIZE, priorBatchSize == null ? "1" : priorBatchSize);
   }
   
   @Test
@@ -130,4 +140,58 @@ public class StageImplTest {
     }
     
   }
+
+  @Test
+  public void testBatchedHandling() throws Exception {
+    TCPropertiesImpl.getProperties().setProperty(BATCH_SIZE, "8");
+    final CountDownLatch done = new CountDownLatch(1);
+    final List<List<Object>> handled = new ArrayList<List<Object>>();
+    EventHandler<Object> handler = new EventHandler<Object>() {
+      @Override
+      public void handleEvent(Object context) throws EventHandlerException {
+        handled.add(Arrays.asList(context));
+        if (Integer.valueOf(7).equals(context)) {
+          done.countDown();
+        }
+      }
+      @Override
+      public void handleEvents(Collection<Object> contexts) throws EventHandlerException {
+        handled.add(new ArrayList<Object>(contexts));
+        if (contexts.contains(7)) {
+          done.countDown();
+        }
+      }
+      @Override
+      public void destroy() { }
+      @Override
+      public void initializeContext(ConfigurationContext context) { }
+    };
+    StageImpl<Object> instance = new StageImpl<Object>(new DefaultLoggerProvider(), "batched", handler, 1, null, new QueueFactory<ContextWrapper<Object>>(), 16);
+    // Queue everything before starting so that it is all drained together.
+    for (int i = 1; i <= 5; ++i) {
+      instance.getSink().addSingleThreaded(i);
+    }
+    instance.getSink().addSpecialized(new SpecializedEventContext() {
+      @Override
+      public void execute() throws EventHandlerException {
+        handled.add(Arrays.<Object>asList("special"));
+      }
+      @Override
+      public Object getSchedulingKey() {
+        return null;
+      }
+      @Override
+      public boolean flush() {
+        return false;
+      }
+    });
+    instance.getSink().addSingleThreaded(6);
+    instance.getSink().addSingleThreaded(7);
+    instance.start(null);
+    done.await();
+    // The specialized context splits the batch so that everything still runs in queue order.
+    assertEquals(Arrays.asList(Arrays.<Object>asList(1, 2, 3, 4, 5), Arrays.<Object>asList("special"),
+        Arrays.<Object>asList(6, 7)), handled);
+    instance.destroy();
+  }
 }
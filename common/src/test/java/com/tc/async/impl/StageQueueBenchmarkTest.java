@@ -0,0 +1,156 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.Source;
+import com.tc.logging.DefaultLoggerProvider;
+import com.tc.util.concurrent.QueueFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.PerfTests;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the throughput of the stage queue types on the two shapes of stage which dominate the server:  a single
+ * queue fed by many threads (like the hydrate stage) and several queues partitioned by key (like the request processor
+ * stage).  The numbers are only printed since they depend entirely on the machine.
+ */
+@Category(PerfTests.class)
+public class StageQueueBenchmarkTest {
+  private static final int EVENTS_PER_PRODUCER = 200000;
+  private static final int KEYED_QUEUES = 4;
+
+  @Test
+  public void testHydrateShape() throws Exception {
+    for (int producers : new int[] { 1, 4 }) {
+      for (String type : queueTypes(producers)) {
+        report("hydrate", type, producers, run(type, 1, producers));
+      }
+    }
+  }
+
+  @Test
+  public void testRequestProcessorShape() throws Exception {
+    for (int producers : new int[] { 1, 4 }) {
+      for (String type : queueTypes(producers)) {
+        report("request processor", type, producers, run(type, KEYED_QUEUES, producers));
+      }
+    }
+  }
+
+  private static List<String> queueTypes(int producers) {
+    List<String> types = new ArrayList<String>();
+    types.add(QueueFactory.LINKED_QUEUE);
+    types.add(QueueFactory.MPSC_QUEUE);
+    // The SPSC queue is only valid with a single producer.
+    if (1 == producers) {
+      types.add(QueueFactory.SPSC_QUEUE);
+    }
+    return types;
+  }
+
+  private static void report(String shape, String type, int producers, long nanos) {
+    long perSecond = (long) EVENTS_PER_PRODUCER * producers * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+    System.out.println(shape + " stage, " + type + " queue, " + producers + " producer(s): " + perSecond + " events/s");
+  }
+
+  /**
+   * @return The time, in nanoseconds, taken for every event to be consumed
+   */
+  private static long run(String type, int queueCount, final int producers) throws Exception {
+    final StageQueueImpl<Object> stageQueue = new StageQueueImpl<Object>(queueCount, new QueueFactory<ContextWrapper<Object>>(),
+        new DefaultLoggerProvider(), "benchmark", 1024, type);
+    final boolean keyed = queueCount > 1;
+    final int total = EVENTS_PER_PRODUCER * producers;
+    final AtomicInteger consumed = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < queueCount; ++i) {
+      final Source<ContextWrapper<Object>> source = stageQueue.getSource(i);
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (consumed.get() < total) {
+              if (null != source.poll(10)) {
+                consumed.incrementAndGet();
+              }
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+      });
+    }
+    for (int i = 0; i < producers; ++i) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+          for (int j = 0; j < EVENTS_PER_PRODUCER; ++j) {
+            if (keyed) {
+              stageQueue.addMultiThreaded(new KeyedContext(j));
+            } else {
+              stageQueue.addSingleThreaded(Integer.valueOf(j));
+            }
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    assertEquals(total, consumed.get());
+    return elapsed;
+  }
+
+  private static class KeyedContext implements MultiThreadedEventContext {
+    private final Integer key;
+
+    KeyedContext(int key) {
+      this.key = key;
+    }
+
+    @Override
+    public Object getSchedulingKey() {
+      return this.key;
+    }
+
+    @Override
+    public boolean flush() {
+      return false;
+    }
+  }
+}
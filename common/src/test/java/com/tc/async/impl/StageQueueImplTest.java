@@ -18,11 +18,14 @@
  */
 package com.tc.async.impl;
 
+import com.tc.async.api.EventHandler;
 import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.SpecializedEventContext;
 import com.tc.logging.DefaultLoggerProvider;
 import com.tc.logging.TCLoggerProvider;
 import com.tc.util.concurrent.QueueFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -36,6 +39,7 @@ import static org.junit.Assert.*;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.invocation.InvocationOnMock;
@@ -133,4 +137,76 @@ public class StageQueueImplTest {
 //  tests specific implementation.  test expectation
     assertEquals(cxts.get(rand % cxts.size()).poll(), context1);
   }
+
+  /**
+   * Test that a flushing specialized context only executes once it has passed through every queue.
+   */
+  @Test
+  public void testFlushingSpecializedContext() throws Exception {
+    final List<BlockingQueue<ContextWrapper<Object>>> cxts = new ArrayList<BlockingQueue<ContextWrapper<Object>>>();
+    QueueFactory<ContextWrapper<Object>> context = mock(QueueFactory.class);
+    when(context.createInstance(Matchers.anyInt())).thenAnswer(new Answer<BlockingQueue<ContextWrapper<Object>>>() {
+      @Override
+      public BlockingQueue<ContextWrapper<Object>> answer(InvocationOnMock invocation) throws Throwable {
+        BlockingQueue<ContextWrapper<Object>> queue = new ArrayBlockingQueue<ContextWrapper<Object>>((Integer)invocation.getArguments()[0]);
+        cxts.add(queue);
+        return queue;
+      }
+    });
+    StageQueueImpl<Object> instance = new StageQueueImpl<Object>(2, context, new DefaultLoggerProvider(), "mock", 16);
+    EventHandler<Object> handler = mock(EventHandler.class);
+    SpecializedEventContext specialized = mock(SpecializedEventContext.class);
+    when(specialized.getSchedulingKey()).thenReturn(0);
+    when(specialized.flush()).thenReturn(true);
+    instance.addSpecialized(specialized);
+
+    cxts.get(0).poll().runWithHandler(handler);
+    verify(specialized, never()).execute();
+    cxts.get(1).poll().runWithHandler(handler);
+    verify(specialized).execute();
+    assertTrue(cxts.get(0).isEmpty());
+    assertTrue(cxts.get(1).isEmpty());
+  }
+
+  /**
+   * Test that the deepest queue is never more than one ahead of the next deepest while unkeyed contexts pile up.
+   */
+  @Test
+  public void testUnkeyedDeepestQueueStaysWithinOneOfNext() {
+    int size = 8;
+    final List<BlockingQueue<Object>> cxts = new ArrayList<BlockingQueue<Object>>();
+    QueueFactory<ContextWrapper<Object>> context = mock(QueueFactory.class);
+    when(context.createInstance(Matchers.anyInt())).thenAnswer(new Answer<BlockingQueue<Object>>() {
+
+      @Override
+      public BlockingQueue<Object> answer(InvocationOnMock invocation) throws Throwable {
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>((Integer)invocation.getArguments()[0]);
+        cxts.add(queue);
+        return queue;
+      }
+
+    });
+    StageQueueImpl<Object> instance = new StageQueueImpl<Object>(size, context, new DefaultLoggerProvider(), "mock", 1024);
+    MultiThreadedEventContext context1 = mock(MultiThreadedEventContext.class);
+    when(context1.getSchedulingKey()).thenReturn(null);
+    int[] depths = new int[size];
+    for (int x=0;x<size*64;x++) {
+      instance.addMultiThreaded(context1);
+      for (int q=0;q<size;q++) {
+        depths[q] = cxts.get(q).size();
+      }
+      Arrays.sort(depths);
+      assertThat(depths[size - 1], org.hamcrest.Matchers.lessThanOrEqualTo(depths[size - 2] + 1));
+    }
+  }
+
+  @Test
+  public void testImbalanceDetails() {
+    StageQueueImpl<Object> instance = new StageQueueImpl<Object>(4, new QueueFactory<ContextWrapper<Object>>(), new DefaultLoggerProvider(), "mock", 16);
+    MultiThreadedEventContext context = mock(MultiThreadedEventContext.class);
+    when(context.getSchedulingKey()).thenReturn(1);
+    instance.addMultiThreaded(context);
+    instance.addMultiThreaded(context);
+    assertEquals("mock queue imbalance : min 0 max 2 spread 2 mean 0", instance.getImbalanceDetails());
+  }
 }
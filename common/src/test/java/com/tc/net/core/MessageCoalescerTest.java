@@ -0,0 +1,106 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class MessageCoalescerTest extends TestCase {
+  private static final long MAX_DELAY = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final long START     = TimeUnit.SECONDS.toNanos(1);
+
+  public void testDisabled() {
+    MessageCoalescer coalescer = new MessageCoalescer(false, MAX_DELAY);
+    long now = busy(coalescer);
+    assertFalse(coalescer.holdBack(now, now + 1000));
+    coalescer.flushed(10, now, now + 1000);
+    assertEquals(0, coalescer.getStats().getDelayedFlushCount());
+  }
+
+  public void testFirstFlushIsImmediate() {
+    MessageCoalescer coalescer = new MessageCoalescer(true, MAX_DELAY);
+    assertFalse(coalescer.holdBack(START, START));
+  }
+
+  public void testHoldsBackWhenBusy() {
+    MessageCoalescer coalescer = new MessageCoalescer(true, MAX_DELAY);
+    long last = busy(coalescer);
+    long requested = last + TimeUnit.MICROSECONDS.toNanos(5);
+    assertTrue(coalescer.holdBack(requested, requested));
+    assertTrue(coalescer.holdBack(requested, requested + TimeUnit.MICROSECONDS.toNanos(60)));
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(40),
+                 coalescer.remainingDelay(requested, requested + TimeUnit.MICROSECONDS.toNanos(60)));
+    assertEquals(0, coalescer.remainingDelay(requested, requested + MAX_DELAY + 1));
+    // never longer than the maximum delay
+    long flushedAt = requested + MAX_DELAY;
+    assertFalse(coalescer.holdBack(requested, flushedAt));
+    coalescer.flushed(20, requested, flushedAt);
+
+    MessageGroupingStats stats = coalescer.getStats();
+    assertEquals(1, stats.getDelayedFlushCount());
+    assertEquals(100, stats.getAverageDelayMicros());
+    assertEquals(100, stats.getMaxDelayMicros());
+  }
+
+  public void testImmediateAfterIdle() {
+    MessageCoalescer coalescer = new MessageCoalescer(true, MAX_DELAY);
+    long last = busy(coalescer);
+    long requested = last + TimeUnit.MILLISECONDS.toNanos(10);
+    assertFalse(coalescer.holdBack(requested, requested));
+  }
+
+  public void testImmediateWhenTrafficIsLight() {
+    MessageCoalescer coalescer = new MessageCoalescer(true, MAX_DELAY);
+    // one message every 90us, so barely another one would turn up while waiting
+    long now = START;
+    for (int i = 0; i < 20; i++) {
+      coalescer.flushed(1, now, now);
+      now += TimeUnit.MICROSECONDS.toNanos(90);
+    }
+    long requested = now - TimeUnit.MICROSECONDS.toNanos(85);
+    assertFalse(coalescer.holdBack(requested, requested));
+  }
+
+  public void testStats() {
+    MessageCoalescer coalescer = new MessageCoalescer(true, MAX_DELAY);
+    coalescer.flushed(1, START, START);
+    coalescer.flushed(3, START, START + 1000);
+    MessageGroupingStats stats = coalescer.getStats();
+    assertEquals(2, stats.getFlushCount());
+    assertEquals(4, stats.getMessageCount());
+    assertEquals(2.0, stats.getAverageGroupSize(), 0.0);
+    assertEquals(0, stats.getDelayedFlushCount());
+    assertEquals(0, stats.getAverageDelayMicros());
+  }
+
+  /**
+   * Flushes 10 messages every 50us, for a send rate of 200,000 messages a second.
+   *
+   * @return the time of the last flush
+   */
+  private static long busy(MessageCoalescer coalescer) {
+    long now = START;
+    for (int i = 0; i < 20; i++) {
+      coalescer.flushed(10, now, now);
+      now += TimeUnit.MICROSECONDS.toNanos(50);
+    }
+    return now - TimeUnit.MICROSECONDS.toNanos(50);
+  }
+}
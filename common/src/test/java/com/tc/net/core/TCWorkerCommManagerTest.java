@@ -67,6 +67,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 
 public class TCWorkerCommManagerTest extends TCTestCase {
   private static final int L1_RECONNECT_TIMEOUT = 15000;
@@ -280,6 +281,109 @@ public class TCWorkerCommManagerTest extends TCTestCase {
 
   }
 
+  public void testMigrateConnection() throws Exception {
+    // comms manager with 2 worker comms
+    CommunicationsManager commsMgr = new CommunicationsManagerImpl("Server-TestCommsMgr", new NullMessageMonitor(),
+                                                                   getNetworkStackHarnessFactory(false),
+                                                                   new NullConnectionPolicy(), 2);
+    NetworkListener listener = commsMgr.createListener(new NullSessionManager(), new TCSocketAddress(0), true,
+                                                       new DefaultConnectionIdFactory());
+    listener.start(Collections.<ConnectionID>emptySet());
+    int port = listener.getBindPort();
+
+    ClientMessageChannel client1 = createClientMsgCh(port, false);
+    ClientMessageChannel client2 = createClientMsgCh(port, false);
+
+    client1.open();
+    client2.open();
+    waitForConnected(client1, client2);
+    waitForWeight(commsMgr, 0, 1);
+    waitForWeight(commsMgr, 1, 1);
+
+    TCCommImpl comm = (TCCommImpl) commsMgr.getConnectionManager().getTcComm();
+    CoreNIOServices worker0 = comm.getWorkerComm(0);
+    CoreNIOServices worker1 = comm.getWorkerComm(1);
+    TCConnectionImpl conn = worker0.getManagedConnections().get(0);
+
+    Assert.assertTrue(worker0.migrate(conn, worker1));
+    Assert.assertTrue(conn.getCommWorker() == worker1);
+    Assert.assertEquals(0, comm.getWeightForWorkerComm(0));
+    Assert.assertEquals(2, comm.getWeightForWorkerComm(1));
+    Assert.assertEquals(2, worker1.getConnectionCount());
+    // it isn't managed by worker 0 any more
+    Assert.assertFalse(worker0.migrate(conn, worker1));
+
+    // the sampled load reports the connections where they are now
+    comm.getWorkerCommBalancer().sample(System.nanoTime());
+    Assert.assertEquals(0, comm.getWorkerCommLoads().get(0).getConnectionCount());
+    Assert.assertEquals(2, comm.getWorkerCommLoads().get(1).getConnectionCount());
+
+    // the close of the moved connection is seen by worker 1, whichever client it belongs to
+    client1.close();
+    client2.close();
+    waitForWeight(commsMgr, 1, 0);
+    Assert.assertEquals(0, comm.getWeightForWorkerComm(0));
+
+    listener.stop(5000);
+  }
+
+  public void testMigrationGivesUpOnStuckCommThread() throws Exception {
+    CommunicationsManager commsMgr = new CommunicationsManagerImpl("Server-TestCommsMgr", new NullMessageMonitor(),
+                                                                   getNetworkStackHarnessFactory(false),
+                                                                   new NullConnectionPolicy(), 2);
+    NetworkListener listener = commsMgr.createListener(new NullSessionManager(), new TCSocketAddress(0), true,
+                                                       new DefaultConnectionIdFactory());
+    listener.start(Collections.<ConnectionID>emptySet());
+    int port = listener.getBindPort();
+
+    ClientMessageChannel client1 = createClientMsgCh(port, false);
+    ClientMessageChannel client2 = createClientMsgCh(port, false);
+
+    client1.open();
+    client2.open();
+    waitForConnected(client1, client2);
+    waitForWeight(commsMgr, 0, 1);
+    waitForWeight(commsMgr, 1, 1);
+
+    TCCommImpl comm = (TCCommImpl) commsMgr.getConnectionManager().getTcComm();
+    CoreNIOServices worker0 = comm.getWorkerComm(0);
+    CoreNIOServices worker1 = comm.getWorkerComm(1);
+    TCConnectionImpl conn = worker0.getManagedConnections().get(0);
+
+    final CountDownLatch stuck = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    worker0.getReaderComm().addSelectorTask(new Runnable() {
+      @Override
+      public void run() {
+        stuck.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    stuck.await();
+    try {
+      Assert.assertFalse(worker0.migrate(conn, worker1));
+    } finally {
+      release.countDown();
+    }
+    // left where it was
+    Assert.assertTrue(conn.getCommWorker() == worker0);
+    Assert.assertEquals(1, comm.getWeightForWorkerComm(0));
+    Assert.assertEquals(1, comm.getWeightForWorkerComm(1));
+    Assert.assertEquals(1, worker1.getConnectionCount());
+
+    // worker 0 still reads from it, so it sees the close
+    client1.close();
+    client2.close();
+    waitForWeight(commsMgr, 0, 0);
+    waitForWeight(commsMgr, 1, 0);
+
+    listener.stop(5000);
+  }
+
   private ClientMessageChannel createClientMsgCh(int port) {
     return createClientMsgCh(port, true);
   }
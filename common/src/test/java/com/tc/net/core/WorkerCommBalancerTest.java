@@ -0,0 +1,91 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import com.tc.net.core.WorkerCommBalancer.Move;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class WorkerCommBalancerTest extends TestCase {
+  private static final long MB = 1024 * 1024;
+
+  public void testBalancedLoadIsLeftAlone() {
+    List<Map<String, Long>> loads = loads(new long[] { 10 * MB, 2 * MB }, new long[] { 9 * MB, 3 * MB });
+    assertTrue(WorkerCommBalancer.plan(loads, 50, 4, MB).isEmpty());
+  }
+
+  public void testIdleWorkerCommsAreLeftAlone() {
+    // very uneven, but none of it is worth moving
+    List<Map<String, Long>> loads = loads(new long[] { 1000, 1000, 1000 }, new long[0]);
+    assertTrue(WorkerCommBalancer.plan(loads, 50, 4, MB).isEmpty());
+  }
+
+  public void testHotConnectionsAreSpread() {
+    // three busy connections landed on the first worker comm
+    List<Map<String, Long>> loads = loads(new long[] { 10 * MB, 10 * MB, 10 * MB, MB }, new long[] { MB },
+                                          new long[] { MB });
+    List<Move<String>> moves = WorkerCommBalancer.plan(loads, 50, 4, MB);
+    assertEquals(2, moves.size());
+    assertEquals(0, moves.get(0).from);
+    assertEquals(0, moves.get(1).from);
+    assertEquals(10 * MB, moves.get(0).load);
+    assertEquals(10 * MB, moves.get(1).load);
+    assertTrue(moves.get(0).to != moves.get(1).to);
+  }
+
+  public void testMovesAreLimited() {
+    List<Map<String, Long>> loads = loads(new long[] { 10 * MB, 10 * MB, 10 * MB }, new long[0], new long[0]);
+    assertEquals(1, WorkerCommBalancer.plan(loads, 50, 1, MB).size());
+  }
+
+  public void testSingleHotConnectionIsNotMoved() {
+    // moving the only busy connection would just make the other worker comm the busy one
+    List<Map<String, Long>> loads = loads(new long[] { 40 * MB }, new long[] { MB });
+    assertTrue(WorkerCommBalancer.plan(loads, 50, 4, MB).isEmpty());
+  }
+
+  public void testClosestToHalfTheGapIsMoved() {
+    List<Map<String, Long>> loads = loads(new long[] { 1 * MB, 7 * MB, 12 * MB }, new long[] { 2 * MB });
+    List<Move<String>> moves = WorkerCommBalancer.plan(loads, 10, 1, MB);
+    assertEquals(1, moves.size());
+    // the gap is 18MB/s so the 7MB/s connection comes closest to evening it out
+    assertEquals("0-1", moves.get(0).key);
+    assertEquals(1, moves.get(0).to);
+  }
+
+  /**
+   * @return the connection loads of each worker comm, the connections are named worker-index
+   */
+  private static List<Map<String, Long>> loads(long[]... workerComms) {
+    List<Map<String, Long>> loads = new ArrayList<Map<String, Long>>();
+    for (int i = 0; i < workerComms.length; i++) {
+      Map<String, Long> connections = new HashMap<String, Long>();
+      for (int j = 0; j < workerComms[i].length; j++) {
+        connections.put(i + "-" + j, workerComms[i][j]);
+      }
+      loads.add(connections);
+    }
+    return loads;
+  }
+}
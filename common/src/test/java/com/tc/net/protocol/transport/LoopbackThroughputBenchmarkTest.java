@@ -0,0 +1,171 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.net.TCSocketAddress;
+import com.tc.net.core.MessageGroupingStats;
+import com.tc.net.core.TCConnection;
+import com.tc.net.core.TCConnectionManager;
+import com.tc.net.core.TCConnectionManagerImpl;
+import com.tc.net.core.TCListener;
+import com.tc.net.protocol.ProtocolAdaptorFactory;
+import com.tc.net.protocol.TCProtocolAdaptor;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.PerfTests;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how fast wire protocol messages of a given size go from one connection to another over loopback, to compare
+ * the receive paths of the connection (run it once more with -Dcom.tc.tc.messages.scattering.enabled=false for the
+ * staged path) and how the sending connection groups its writes (see tc.messages.grouping.adaptive.enabled).  The
+ * numbers are only printed since they depend entirely on the machine.
+ */
+@Category(PerfTests.class)
+public class LoopbackThroughputBenchmarkTest {
+  // messages in flight between the two ends
+  private static final int WINDOW = 512;
+
+  @Test
+  public void testSmallMessages() throws Exception {
+    for (int round = 0; round < 2; round++) {
+      report(round, 256, 200000);
+    }
+  }
+
+  @Test
+  public void testLargeMessages() throws Exception {
+    for (int round = 0; round < 2; round++) {
+      report(round, 256 * 1024, 4000);
+    }
+  }
+
+  /**
+   * Many threads sending small messages on the one connection at once, which contend on its write queue.
+   */
+  @Test
+  public void testManySenders() throws Exception {
+    for (int round = 0; round < 2; round++) {
+      report(round, 256, 400000, 8);
+    }
+  }
+
+  private static void report(int round, int size, int count) throws Exception {
+    report(round, size, count, 1);
+  }
+
+  private static void report(int round, int size, int count, int senders) throws Exception {
+    MessageGroupingStats[] stats = new MessageGroupingStats[1];
+    long nanos = run(size, count, senders, stats);
+    long bytes = (long) size * count;
+    boolean scattering = TCPropertiesImpl.getProperties()
+        .getBoolean(TCPropertiesConsts.TC_MESSAGE_SCATTERING_ENABLED, true);
+    // the first round only warms up
+    if (round > 0) {
+      System.out.println((scattering ? "scattering" : "staged") + " reads, " + senders + " sender(s), " + size
+                         + " byte messages: "
+                         + (count * TimeUnit.SECONDS.toNanos(1) / nanos) + " msgs/s, "
+                         + (bytes * TimeUnit.SECONDS.toNanos(1) / nanos / (1024 * 1024)) + " MB/s (" + stats[0] + ")");
+    }
+  }
+
+  /**
+   * @param stats receives the grouping statistics of the sending connection
+   * @return The time, in nanoseconds, taken for every message to be received
+   */
+  private static long run(final int size, int count, int senders, MessageGroupingStats[] stats) throws Exception {
+    final Semaphore window = new Semaphore(WINDOW * senders);
+    final AtomicLong received = new AtomicLong();
+    TCConnectionManager connMgr = new TCConnectionManagerImpl();
+    try {
+      TCListener server = connMgr.createListener(new TCSocketAddress(0), new ProtocolAdaptorFactory() {
+        @Override
+        public TCProtocolAdaptor getInstance() {
+          return new WireProtocolAdaptorImpl(new WireProtocolMessageSink() {
+            @Override
+            public void putMessage(WireProtocolMessage message) {
+              received.addAndGet(message.getDataLength());
+              message.recycle();
+              window.release();
+            }
+          });
+        }
+      });
+      final TCConnection client = connMgr.createConnection(new WireProtocolAdaptorImpl(new WireProtocolMessageSink() {
+        @Override
+        public void putMessage(WireProtocolMessage message) {
+          message.recycle();
+        }
+      }));
+      client.connect(new TCSocketAddress(server.getBindPort()), 3000);
+
+      final int perSender = count / senders;
+      final CountDownLatch start = new CountDownLatch(1);
+      List<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < senders; i++) {
+        Thread thread = new Thread() {
+          @Override
+          public void run() {
+            byte[] payload = new byte[size];
+            try {
+              start.await();
+              for (int j = 0; j < perSender; j++) {
+                assertTrue(window.tryAcquire(30, TimeUnit.SECONDS));
+                client.putMessage(createMessage(client, payload));
+              }
+            } catch (InterruptedException e) {
+              throw new AssertionError(e);
+            }
+          }
+        };
+        thread.start();
+        threads.add(thread);
+      }
+      long begin = System.nanoTime();
+      start.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      assertTrue(window.tryAcquire(WINDOW * senders, 30, TimeUnit.SECONDS));
+      long elapsed = System.nanoTime() - begin;
+      assertEquals((long) size * count, received.get());
+      stats[0] = client.getMessageGroupingStats();
+      return elapsed;
+    } finally {
+      connMgr.shutdown();
+    }
+  }
+
+  private static WireProtocolMessage createMessage(TCConnection source, byte[] payload) {
+    WireProtocolHeader header = new WireProtocolHeader();
+    header.setProtocol(WireProtocolHeader.PROTOCOL_TCM);
+    return new WireProtocolMessageImpl(source, header, new TCByteBuffer[] { TCByteBufferFactory.wrap(payload) });
+  }
+}
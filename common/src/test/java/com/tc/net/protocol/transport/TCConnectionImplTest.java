@@ -162,6 +162,42 @@ public class TCConnectionImplTest extends TestCase {
     System.out.println("XXX SuccesS. Took " + (endTime - startTime) / 1000 + " seconds");
   }
 
+  /**
+   * Many threads sending at once on one connection, so that the writer groups the queued messages.
+   */
+  public void testConcurrentSenders() throws Exception {
+    final TCConnection clientConn = connMgr.createConnection(new WireProtocolAdaptorImpl(new ClientWPMGSink()));
+    clientConn.connect(new TCSocketAddress(server.getBindPort()), 3000);
+
+    final int messagesPerSender = 500;
+    ArrayList<Thread> senders = new ArrayList<Thread>();
+    for (int i = 0; i < 4; i++) {
+      Thread sender = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < messagesPerSender; j++) {
+            TCNetworkMessage message = getMessages(1 + r.nextInt(4));
+            sentMessagesTotalLength.addAndGet(message.getTotalLength());
+            clientConn.putMessage(message);
+          }
+        }
+      };
+      sender.start();
+      senders.add(sender);
+    }
+    for (Thread sender : senders) {
+      sender.join();
+    }
+
+    long deadline = System.currentTimeMillis() + 30000;
+    synchronized (rcvdMessages2TotalLength) {
+      while (rcvdMessages2TotalLength.get() != sentMessagesTotalLength.get() && System.currentTimeMillis() < deadline) {
+        rcvdMessages2TotalLength.wait(1000);
+      }
+    }
+    assertEquals(sentMessagesTotalLength.get(), rcvdMessages2TotalLength.get());
+  }
+
   SequenceGenerator seq = new SequenceGenerator(1);
 
   private TCNetworkMessage getMessages(int bufCunt) {
@@ -57,6 +57,8 @@ public class TCPropertiesConstsTest extends TCTestCase {
     exemptedProperties.add(TCPropertiesConsts.ENTITY_PROCESSOR_THREADS);
     exemptedProperties.add(TCPropertiesConsts.L2_SEDA_STAGE_WORKERTHREADS);
     exemptedProperties.add(TCPropertiesConsts.L2_TCCOM_WORKERTHREADS);
+    exemptedProperties.add(TCPropertiesConsts.L2_SEDA_VOLTRON_STAGE_THREADS);
+    exemptedProperties.add(TCPropertiesConsts.L2_SEDA_LOCK_STAGE_THREADS);
   
     exemptedProperties.add(TCPropertiesConsts.CLIENT_MAX_PENDING_REQUESTS);
     exemptedProperties.add(TCPropertiesConsts.CLIENT_MAX_SENT_REQUESTS);
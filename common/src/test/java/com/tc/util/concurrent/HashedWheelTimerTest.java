@@ -0,0 +1,191 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class HashedWheelTimerTest extends TestCase {
+  private HashedWheelTimer timer;
+
+  @Override
+  protected void setUp() {
+    // a small wheel so that the tests wrap around it
+    timer = new HashedWheelTimer("test timer", 5, TimeUnit.MILLISECONDS, 8);
+  }
+
+  @Override
+  protected void tearDown() {
+    timer.cancel();
+  }
+
+  public void testSchedule() throws Exception {
+    final List<Integer> order = new ArrayList<Integer>();
+    final CountDownLatch latch = new CountDownLatch(3);
+    long start = System.nanoTime();
+    // 200ms is several turns of the wheel
+    for (final int delay : new int[] { 200, 20, 0 }) {
+      timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          order.add(delay);
+          latch.countDown();
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    assertEquals(3, order.size());
+    assertEquals(Integer.valueOf(0), order.get(0));
+    assertEquals(Integer.valueOf(20), order.get(1));
+    assertEquals(Integer.valueOf(200), order.get(2));
+    assertEquals(0, timer.getPendingCount());
+  }
+
+  public void testCancel() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        runs.incrementAndGet();
+      }
+    };
+    // hold the wheel thread so that nothing can expire while the timeouts are cancelled
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    ScheduledFuture<?> gate = timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        blocked.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, 0, TimeUnit.MILLISECONDS);
+    assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+    List<ScheduledFuture<?>> futures = new ArrayList<ScheduledFuture<?>>();
+    for (int i = 0; i < 1000; i++) {
+      futures.add(timer.schedule(task, i % 100, TimeUnit.MILLISECONDS));
+    }
+    // due after all the cancelled ones, so they would have run by the time it has
+    ScheduledFuture<?> survivor = timer.schedule(task, 200, TimeUnit.MILLISECONDS);
+    assertEquals(1002, timer.getPendingCount());
+    for (ScheduledFuture<?> future : futures) {
+      assertTrue(future.cancel(false));
+      assertFalse(future.cancel(false));
+      assertTrue(future.isCancelled());
+      assertTrue(future.isDone());
+    }
+    assertEquals(2, timer.getPendingCount());
+    release.countDown();
+    gate.get(10, TimeUnit.SECONDS);
+    survivor.get(10, TimeUnit.SECONDS);
+    assertEquals(1, runs.get());
+    assertEquals(0, timer.getPendingCount());
+    assertFalse(survivor.cancel(false));
+    try {
+      futures.get(0).get();
+      fail();
+    } catch (CancellationException expected) {
+      // expected
+    }
+  }
+
+  public void testFixedRateAndDelay() throws Exception {
+    final CountDownLatch rate = new CountDownLatch(5);
+    final CountDownLatch delay = new CountDownLatch(5);
+    ScheduledFuture<?> rateFuture = timer.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        rate.countDown();
+      }
+    }, 0, 10, TimeUnit.MILLISECONDS);
+    ScheduledFuture<?> delayFuture = timer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        delay.countDown();
+      }
+    }, 0, 10, TimeUnit.MILLISECONDS);
+    assertTrue(rate.await(10, TimeUnit.SECONDS));
+    assertTrue(delay.await(10, TimeUnit.SECONDS));
+    assertTrue(rateFuture.cancel(false));
+    assertTrue(delayFuture.cancel(false));
+    assertEquals(0, timer.getPendingCount());
+  }
+
+  public void testPeriodOfAWholeTurn() throws Exception {
+    // the period brings the task back to the bucket it ran from
+    final long period = 8 * 5;
+    final CountDownLatch runs = new CountDownLatch(5);
+    long start = System.nanoTime();
+    ScheduledFuture<?> future = timer.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        runs.countDown();
+      }
+    }, 0, period, TimeUnit.MILLISECONDS);
+    assertTrue(runs.await(10, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(4 * period));
+    assertTrue(future.cancel(false));
+  }
+
+  public void testFailingTaskIsNotRepeated() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    ScheduledFuture<?> future = timer.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        runs.incrementAndGet();
+        throw new RuntimeException("expected");
+      }
+    }, 0, 5, TimeUnit.MILLISECONDS);
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (java.util.concurrent.ExecutionException expected) {
+      // expected
+    }
+    ThreadUtil.reallySleep(50);
+    assertEquals(1, runs.get());
+  }
+
+  public void testCancelTimer() {
+    timer.cancel();
+    try {
+      timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          //
+        }
+      }, 0, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (java.util.concurrent.RejectedExecutionException expected) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class MpscLinkedQueueTest extends TestCase {
+
+  public void testOrder() {
+    MpscLinkedQueue<Integer> queue = new MpscLinkedQueue<Integer>();
+    assertTrue(queue.isEmpty());
+    assertNull(queue.poll());
+    for (int i = 0; i < 10; ++i) {
+      queue.offer(i);
+      assertFalse(queue.isEmpty());
+    }
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(Integer.valueOf(i), queue.poll());
+    }
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+    queue.offer(42);
+    assertEquals(Integer.valueOf(42), queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  public void testNullRejected() {
+    try {
+      new MpscLinkedQueue<Object>().offer(null);
+      fail();
+    } catch (NullPointerException expected) {
+      // expected
+    }
+  }
+
+  public void testManyProducers() throws Exception {
+    final int producers = 4;
+    final int count = 100000;
+    final MpscLinkedQueue<Integer> queue = new MpscLinkedQueue<Integer>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < producers; ++i) {
+      final int producer = i;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < count; ++j) {
+            queue.offer(producer * count + j);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    // Each producer's elements must come out in the order it added them.
+    int[] next = new int[producers];
+    int received = 0;
+    while (received < producers * count) {
+      Integer value = queue.poll();
+      if (value == null) {
+        Thread.yield();
+        continue;
+      }
+      int producer = value / count;
+      assertEquals(next[producer], value % count);
+      next[producer] += 1;
+      received += 1;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+}
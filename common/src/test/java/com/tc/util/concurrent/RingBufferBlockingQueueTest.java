@@ -0,0 +1,188 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+
+public class RingBufferBlockingQueueTest extends TestCase {
+
+  public void testBoundedOffer() {
+    for (BlockingQueue<Integer> queue : createQueues(3)) {
+      assertTrue(queue.offer(1));
+      assertTrue(queue.offer(2));
+      assertTrue(queue.offer(3));
+      // The capacity is exact even though the ring is rounded up to a power of two.
+      assertFalse(queue.offer(4));
+      assertEquals(3, queue.size());
+      assertEquals(0, queue.remainingCapacity());
+      assertEquals(Integer.valueOf(1), queue.peek());
+      assertEquals(Integer.valueOf(1), queue.poll());
+      assertTrue(queue.offer(4));
+      assertEquals(Integer.valueOf(2), queue.poll());
+      assertEquals(Integer.valueOf(3), queue.poll());
+      assertEquals(Integer.valueOf(4), queue.poll());
+      assertNull(queue.poll());
+      assertTrue(queue.isEmpty());
+    }
+  }
+
+  public void testWrapAround() {
+    for (BlockingQueue<Integer> queue : createQueues(4)) {
+      for (int i = 0; i < 100; ++i) {
+        queue.add(i);
+        queue.add(i + 1000);
+        assertEquals(Integer.valueOf(i), queue.poll());
+        assertEquals(Integer.valueOf(i + 1000), queue.poll());
+      }
+      assertTrue(queue.isEmpty());
+    }
+  }
+
+  public void testTimedPollAndOffer() throws Exception {
+    for (BlockingQueue<Integer> queue : createQueues(1)) {
+      assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+      assertTrue(queue.offer(1, 10, TimeUnit.MILLISECONDS));
+      assertFalse(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+      assertEquals(Integer.valueOf(1), queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  public void testDrainAndIterate() {
+    for (BlockingQueue<Integer> queue : createQueues(8)) {
+      for (int i = 0; i < 5; ++i) {
+        queue.add(i);
+      }
+      List<Integer> seen = new ArrayList<Integer>();
+      for (Integer i : queue) {
+        seen.add(i);
+      }
+      assertEquals(5, seen.size());
+      List<Integer> drained = new ArrayList<Integer>();
+      assertEquals(2, queue.drainTo(drained, 2));
+      assertEquals(3, queue.drainTo(drained));
+      assertEquals(seen, drained);
+      assertTrue(queue.isEmpty());
+    }
+  }
+
+  /**
+   * Tests that a consumer blocked in take() is woken by a producer.
+   */
+  public void testBlockedConsumerIsSignalled() throws Exception {
+    for (final BlockingQueue<Integer> queue : createQueues(1)) {
+      Thread producer = new Thread() {
+        @Override
+        public void run() {
+          ThreadUtil.reallySleep(100);
+          queue.add(1);
+        }
+      };
+      producer.start();
+      long start = System.nanoTime();
+      assertEquals(Integer.valueOf(1), queue.poll(10, TimeUnit.SECONDS));
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+      producer.join();
+    }
+  }
+
+  public void testManyProducers() throws Exception {
+    final int producers = 4;
+    final int count = 10000;
+    final BlockingQueue<Integer> queue = new MpscArrayBlockingQueue<Integer>(16);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < producers; ++i) {
+      final int producer = i;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < count; ++j) {
+              queue.put(producer * count + j);
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    // Each producer's elements must come out in the order it put them.
+    int[] next = new int[producers];
+    for (int i = 0; i < producers * count; ++i) {
+      int value = queue.take();
+      int producer = value / count;
+      assertEquals(next[producer], value % count);
+      next[producer] += 1;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(queue.isEmpty());
+  }
+
+  public void testSingleProducer() throws Exception {
+    final int count = 100000;
+    final BlockingQueue<Integer> queue = new SpscArrayBlockingQueue<Integer>(16);
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < count; ++i) {
+            queue.put(i);
+          }
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    producer.start();
+    for (int i = 0; i < count; ++i) {
+      assertEquals(i, queue.take().intValue());
+    }
+    producer.join();
+  }
+
+  public void testFactory() {
+    QueueFactory<Integer> factory = new QueueFactory<Integer>();
+    assertTrue(factory.createInstance(QueueFactory.MPSC_QUEUE, 10) instanceof MpscArrayBlockingQueue);
+    assertTrue(factory.createInstance(QueueFactory.SPSC_QUEUE, 10) instanceof SpscArrayBlockingQueue);
+    assertEquals(10, factory.createInstance(QueueFactory.LINKED_QUEUE, 10).remainingCapacity());
+    assertEquals(QueueFactory.DEFAULT_RING_CAPACITY, factory.createInstance(QueueFactory.MPSC_QUEUE, Integer.MAX_VALUE).remainingCapacity());
+    try {
+      factory.createInstance("unknown", 10);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  private static List<BlockingQueue<Integer>> createQueues(int capacity) {
+    List<BlockingQueue<Integer>> queues = new ArrayList<BlockingQueue<Integer>>();
+    queues.add(new MpscArrayBlockingQueue<Integer>(capacity));
+    queues.add(new SpscArrayBlockingQueue<Integer>(capacity));
+    return queues;
+  }
+}
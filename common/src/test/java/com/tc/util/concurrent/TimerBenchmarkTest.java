@@ -0,0 +1,161 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.PerfTests;
+
+/**
+ * Compares the cost of scheduling and then cancelling many timeouts, which is what lock waits and leases mostly do, on
+ * the HashedWheelTimer, a java.util.Timer (used by the server LockTimer) and a TaskRunner timer (used by the client
+ * lock manager). The numbers are only printed since they depend entirely on the machine.
+ */
+@Category(PerfTests.class)
+public class TimerBenchmarkTest {
+  private static final int   TIMEOUTS = 1000000;
+  private static final int[] THREADS  = { 1, 4 };
+
+  @Test
+  public void testScheduleAndCancel() throws Exception {
+    long[] delays = delays(TIMEOUTS);
+    // the first round only warms up
+    for (int round = 0; round < 2; round++) {
+      for (int threads : THREADS) {
+        HashedWheelTimer wheel = new HashedWheelTimer("benchmark");
+        try {
+          report(round, "hashed wheel timer", threads, run(wheel, null, delays, threads));
+        } finally {
+          wheel.cancel();
+        }
+
+        TaskRunner runner = Runners.newSingleThreadScheduledTaskRunner();
+        try {
+          report(round, "task runner timer", threads, run(runner.newTimer(), null, delays, threads));
+        } finally {
+          runner.shutdown();
+        }
+
+        java.util.Timer utilTimer = new java.util.Timer(true);
+        try {
+          report(round, "java.util.Timer", threads, run(null, utilTimer, delays, threads));
+        } finally {
+          utilTimer.cancel();
+        }
+      }
+    }
+  }
+
+  private static long[] delays(int count) {
+    // the delays of lock waits and leases, between 10ms and a minute
+    Random random = new Random(42);
+    long[] delays = new long[count];
+    for (int i = 0; i < count; i++) {
+      delays[i] = 10 + random.nextInt(60000);
+    }
+    return delays;
+  }
+
+  private static void report(int round, String timer, int threads, long nanos) {
+    if (round > 0) {
+      System.out.println(timer + ", " + TIMEOUTS + " timeouts from " + threads + " thread(s): "
+                         + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms, " + (nanos / TIMEOUTS)
+                         + "ns per schedule and cancel");
+    }
+  }
+
+  /**
+   * @return The time, in nanoseconds, taken for the threads to schedule and then cancel a timeout for each delay
+   */
+  private static long run(final Timer timer, final java.util.Timer utilTimer, final long[] delays, int threads)
+      throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final int perThread = delays.length / threads;
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int i = 0; i < threads; i++) {
+      final int offset = i * perThread;
+      Thread worker = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+          if (timer != null) {
+            scheduleAndCancel(timer, delays, offset, perThread);
+          } else {
+            scheduleAndCancel(utilTimer, delays, offset, perThread);
+          }
+        }
+      };
+      worker.start();
+      workers.add(worker);
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    if (utilTimer != null) {
+      utilTimer.purge();
+    }
+    return System.nanoTime() - begin;
+  }
+
+  private static void scheduleAndCancel(Timer timer, long[] delays, int offset, int count) {
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        //
+      }
+    };
+    List<ScheduledFuture<?>> futures = new ArrayList<ScheduledFuture<?>>(count);
+    for (int i = offset; i < offset + count; i++) {
+      futures.add(timer.schedule(task, delays[i], TimeUnit.MILLISECONDS));
+    }
+    for (ScheduledFuture<?> future : futures) {
+      future.cancel(false);
+    }
+  }
+
+  private static void scheduleAndCancel(java.util.Timer timer, long[] delays, int offset, int count) {
+    List<TimerTask> tasks = new ArrayList<TimerTask>(count);
+    for (int i = offset; i < offset + count; i++) {
+      TimerTask task = new TimerTask() {
+        @Override
+        public void run() {
+          //
+        }
+      };
+      timer.schedule(task, delays[i]);
+      tasks.add(task);
+    }
+    for (TimerTask task : tasks) {
+      task.cancel();
+    }
+  }
+}
@@ -41,6 +41,7 @@ public class ClientConfigurationContext extends ConfigurationContextImpl {
 
   public static final int                MAX_PENDING_REQUESTS                        = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_MAX_PENDING_REQUESTS, 5000);
   public static final int                MAX_SENT_REQUESTS                        = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_MAX_SENT_REQUESTS, 200);
+  public static final int                MAX_BATCHED_REQUESTS                        = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_MAX_BATCHED_REQUESTS, 64);
   
   private final ClientLockManager         lockManager;
   private final ClientEntityManager       entityManager;
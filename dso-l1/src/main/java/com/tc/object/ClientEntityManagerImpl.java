@@ -35,6 +35,7 @@ import org.terracotta.entity.MessageCodecException;
 import org.terracotta.exception.EntityException;
 
 import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.NetworkVoltronEntityMultiMessage;
 import com.tc.entity.ResendVoltronEntityMessage;
 import com.tc.entity.VoltronEntityMessage;
 import com.tc.entity.VoltronEntityMultiResponse;
@@ -58,15 +59,20 @@ import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
 import com.tc.util.Util;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import org.terracotta.connection.ConnectionException;
 import org.terracotta.exception.EntityNotFoundException;
 
@@ -77,6 +83,9 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   private final ClientMessageChannel channel;
   private final ConcurrentMap<TransactionID, InFlightMessage> inFlightMessages;
   private final Sink<InFlightMessage> outbound;
+//  messages which are in flight but still waiting for the send lock, see sendPipeline()
+  private final Queue<InFlightMessage> pipeline = new ConcurrentLinkedQueue<InFlightMessage>();
+  private final ReentrantLock sendLock = new ReentrantLock();
   private final Semaphore requestTickets;
   private final AtomicLong currentTransactionID;
 
@@ -113,20 +122,19 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
             if (!isShutdown) {
               inFlightMessages.put(first.getTransactionID(), first);
               first.sent();
+              pipeline.add(first);
               doSend = true;
             }
           }
           if (doSend) {
-              if (first.send()) {
-//  when encountering a send for anything other than an invoke, wait here before sending anything else
+            sendPipeline();
+//  when sending anything other than an invoke, wait here before this caller sends anything else
 //  this is a bit paranoid but it is to prevent too many resends of lifecycle operations.  Just
-//  make sure those complete before sending any new invokes or lifecycle messages
-                if (first.getMessage().getVoltronType() != VoltronEntityMessage.Type.INVOKE_ACTION) {
-                  first.waitForAcks();
-                }
-              } else {
-                logger.warn("message not sent.  Make sure resend happens " + first);
-              }
+//  make sure those complete before this caller sends any new invokes or lifecycle messages.  Whoever
+//  held the send lock only sent the message so no other caller waits on it
+            if (first.getMessage().getVoltronType() != VoltronEntityMessage.Type.INVOKE_ACTION) {
+              first.waitForAcks();
+            }
           } else {
             requestTickets.release();
             throwClosedExceptionOnMessage(first);
@@ -138,6 +146,60 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     };
     return makeDirectSink(handler);
   }
+
+  /**
+   * The caller holding the send lock sends everything queued:  its own message and those of the callers which queued
+   * theirs while it was sending, with consecutive invokes coalesced into multi-messages.  A caller which doesn't get
+   * the lock leaves its message to the one which has it.  The queue is checked again once the lock is released so a
+   * message can't be stranded by a caller which gave up just as the sender finished.  Lifecycle messages are sent in
+   * their place in the queue but their acks are left to the caller which queued them.
+   */
+  private void sendPipeline() {
+    while (!pipeline.isEmpty() && sendLock.tryLock()) {
+      try {
+        List<InFlightMessage> invokes = new ArrayList<InFlightMessage>();
+        InFlightMessage next = pipeline.poll();
+        while (next != null) {
+          if (next.getMessage().getVoltronType() == VoltronEntityMessage.Type.INVOKE_ACTION) {
+            invokes.add(next);
+            if (invokes.size() >= ClientConfigurationContext.MAX_BATCHED_REQUESTS) {
+              sendInvokes(invokes);
+            }
+          } else {
+            sendInvokes(invokes);
+            send(next);
+          }
+          next = pipeline.poll();
+        }
+        sendInvokes(invokes);
+      } finally {
+        sendLock.unlock();
+      }
+    }
+  }
+
+  private void sendInvokes(List<InFlightMessage> invokes) {
+    if (invokes.size() == 1) {
+      send(invokes.get(0));
+    } else if (invokes.size() > 1) {
+      NetworkVoltronEntityMultiMessage batch = (NetworkVoltronEntityMultiMessage) channel.createMessage(TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE);
+      for (InFlightMessage inFlight : invokes) {
+        Assert.assertTrue(inFlight.sendIn(batch));
+      }
+      if (!batch.send()) {
+        logger.warn("batch of " + invokes.size() + " messages not sent.  Make sure resend happens");
+      }
+    }
+    invokes.clear();
+  }
+
+  private boolean send(InFlightMessage inFlight) {
+    boolean sent = inFlight.send();
+    if (!sent) {
+      logger.warn("message not sent.  Make sure resend happens " + inFlight);
+    }
+    return sent;
+  }
   
   private <T> Sink<T> makeDirectSink(final EventHandler<T> handler) {
     return new Sink<T>() {
@@ -273,6 +335,7 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     out.duplicateAndIndent().indent().print(this.stateManager.getCurrentState()).flush();
     out.duplicateAndIndent().indent().print("inFlightMessages size: ").print(Integer.valueOf(this.inFlightMessages.size())).flush();
     out.duplicateAndIndent().indent().print("outbound size: ").print(Integer.valueOf(outbound.size())).flush();
+    out.duplicateAndIndent().indent().print("pipeline size: ").print(Integer.valueOf(pipeline.size())).flush();
     out.duplicateAndIndent().indent().print("objectStoreMap size: ").print(Integer.valueOf(this.objectStoreMap.size())).flush();
     return out;
   }
@@ -369,12 +432,15 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
           message.getOldestTransactionOnClient());
       handshakeMessage.addResendMessage(packaged);
     }
+//  anything still waiting to be sent is in the handshake so it mustn't be sent again as a new message
+    pipeline.clear();
   }
 
   @Override
   public synchronized void shutdown(boolean fromShutdownHook) {
     isShutdown = true;
     stateManager.stop();
+    pipeline.clear();
     for (InFlightMessage msg : inFlightMessages.values()) {
       throwClosedExceptionOnMessage(msg);
     }
@@ -22,15 +22,20 @@ import org.terracotta.entity.InvokeFuture;
 import org.terracotta.exception.EntityException;
 
 import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.NetworkVoltronEntityMultiMessage;
 import com.tc.entity.VoltronEntityMessage;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
 import com.tc.object.tx.TransactionID;
 import com.tc.util.Assert;
 
-import java.util.EnumSet;
-import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 
 
 /**
@@ -38,36 +43,49 @@ import java.util.concurrent.TimeoutException;
  * The message is stored here, since it is sent asynchronously, along with storage for the return value.
  * Note that this is only used from within ClietEntityManagerImpl, and was originally embedded there, but was extracted to
  * make unit testing more direct.
+ * <p>
+ * None of the methods take a lock:  the pending ACKs and the completion are bits of a single atomic state word and the
+ * threads waiting on them are kept in lock-free stacks which are released (unparked) by whichever thread makes the
+ * transition.  This keeps the response thread from contending with the threads waiting on the message.
  */
 public class InFlightMessage implements InvokeFuture<byte[]> {
+  private static final TCLogger LOGGER = TCLogging.getLogger(InFlightMessage.class);
+
+  // The low bits of the state are the pending ACKs, indexed by ordinal.
+  private static final int ACK_BITS = (1 << VoltronEntityMessage.Acks.values().length) - 1;
+  // Set once the message has been handed to the channel.
+  private static final int IS_SENT = 1 << 16;
+  // Set once get() can return.
+  private static final int DONE = 1 << 17;
+
+  // Marks a waiter stack which has been released so nothing more can be pushed on to it.
+  private static final Waiter RELEASED = new Waiter(null, null);
+
   private final NetworkVoltronEntityMessage message;
   /**
    * The set of pending ACKs determines when the caller returns from the send, in order to preserve ordering in the
    * client code.  This is different from being "done" which specifically means that the APPLIED has happened,
    * potentially returning a value or exception.
-   * ACKs are removed from this pending set, as they arrive.
+   * ACKs are cleared from the state, as they arrive.
    */
-  private final Set<VoltronEntityMessage.Acks> pendingAcks;
-  // Note that the point where we wait for acks isn't exposed outside the InvokeFuture interface so this set of waiting
-  // threads only applies to those threads waiting to get a response.
-  private final Set<Thread> waitingThreads;
-
-  private boolean isSent;
-  private EntityException exception;
-  private byte[] value;
-  private boolean canSetResult;
-  private boolean getCanComplete;
+  private final AtomicInteger state;
+  // Threads waiting for the pending ACKs.
+  private final AtomicReference<Waiter> ackWaiters = new AtomicReference<Waiter>();
+  // Threads waiting in get() and callbacks waiting for the message to be done.  Note that the point where we wait for
+  // acks isn't exposed outside the InvokeFuture interface so interrupt() only applies to these threads.
+  private final AtomicReference<Waiter> doneWaiters = new AtomicReference<Waiter>();
+  // Once set, without blockGetOnRetired, the result can't be over-written.
+  private final AtomicReference<Result> result = new AtomicReference<Result>();
   private final boolean blockGetOnRetired;
 
   public InFlightMessage(NetworkVoltronEntityMessage message, Set<VoltronEntityMessage.Acks> acks, boolean shouldBlockGetOnRetire) {
     this.message = message;
-    this.pendingAcks = EnumSet.noneOf(VoltronEntityMessage.Acks.class);
-    this.pendingAcks.addAll(acks);
-    this.waitingThreads = new HashSet<Thread>();
+    int pending = 0;
+    for (VoltronEntityMessage.Acks ack : acks) {
+      pending |= bit(ack);
+    }
+    this.state = new AtomicInteger(pending);
     this.blockGetOnRetired = shouldBlockGetOnRetire;
-    
-    // We always assume that we can set the result, the first time.
-    this.canSetResult = true;
   }
 
   /**
@@ -82,123 +100,252 @@ public class InFlightMessage implements InvokeFuture<byte[]> {
   }
 
   public boolean send() {
-    Assert.assertFalse(this.isSent);
-    this.isSent = true;
+    markSent();
     return this.message.send();
   }
+
+  /**
+   * Sends the message as part of a multi-message, instead of on its own.
+   */
+  public boolean sendIn(NetworkVoltronEntityMultiMessage batch) {
+    markSent();
+    return batch.addMessage(this.message);
+  }
+
+  private void markSent() {
+    int previous = update(0, IS_SENT);
+    Assert.assertFalse((previous & IS_SENT) != 0);
+  }
   
-  public synchronized void waitForAcks() {
+  public void waitForAcks() {
+    Waiter waiter = new Waiter(Thread.currentThread(), null);
+    if (!push(this.ackWaiters, waiter)) {
+      return;
+    }
     boolean interrupted = false;
-    while (!this.pendingAcks.isEmpty()) {
-      try {
-        wait();
-      } catch (InterruptedException e) {
-        interrupted = true;
+    try {
+      while ((this.state.get() & ACK_BITS) != 0) {
+        LockSupport.park(this);
+        // Like the ACK wait always has, ignore interrupts here but restore the status for the caller.
+        interrupted |= Thread.interrupted();
       }
+    } finally {
+      waiter.thread = null;
     }
     if (interrupted) {
       Thread.currentThread().interrupt();
     }
   }
 
-  public synchronized void sent() {
-    if (this.pendingAcks.remove(VoltronEntityMessage.Acks.SENT)) {
-      if (this.pendingAcks.isEmpty()) {
-        notifyAll();
+  public void sent() {
+    update(bit(VoltronEntityMessage.Acks.SENT), 0);
+  }
+
+  public void received() {
+    update(bit(VoltronEntityMessage.Acks.RECEIVED), 0);
+  }
+
+  @Override
+  public void interrupt() {
+    for (Waiter waiter = this.doneWaiters.get(); waiter != null && waiter != RELEASED; waiter = waiter.next) {
+      Thread thread = waiter.thread;
+      if (thread != null) {
+        waiter.interrupted = true;
+        LockSupport.unpark(thread);
       }
     }
   }
 
-  public synchronized void received() {
-    if (this.pendingAcks.remove(VoltronEntityMessage.Acks.RECEIVED)) {
-      if (this.pendingAcks.isEmpty()) {
-        notifyAll();
+  @Override
+  public boolean isDone() {
+    return (this.state.get() & DONE) != 0;
+  }
+
+  @Override
+  public byte[] get() throws InterruptedException, EntityException {
+    if (!isDone()) {
+      Waiter waiter = new Waiter(Thread.currentThread(), null);
+      if (push(this.doneWaiters, waiter)) {
+        try {
+          while (!isDone()) {
+            checkInterrupted(waiter);
+            LockSupport.park(this);
+          }
+        } finally {
+          // We will hit this path on interrupt, for example.
+          waiter.thread = null;
+        }
       }
     }
+    return getResult();
   }
 
   @Override
-  public synchronized void interrupt() {
-    for (Thread waitingThread : this.waitingThreads) {
-      waitingThread.interrupt();
+  public byte[] getWithTimeout(long timeout, TimeUnit unit) throws InterruptedException, EntityException, TimeoutException {
+    if (!isDone()) {
+      Waiter waiter = new Waiter(Thread.currentThread(), null);
+      if (push(this.doneWaiters, waiter)) {
+        long end = System.nanoTime() + unit.toNanos(timeout);
+        try {
+          while (!isDone()) {
+            checkInterrupted(waiter);
+            long timing = end - System.nanoTime();
+            if (timing <= 0) {
+              throw new TimeoutException();
+            } else {
+              LockSupport.parkNanos(this, timing);
+            }
+          }
+        } finally {
+          waiter.thread = null;
+        }
+      }
     }
+    return getResult();
   }
 
-  @Override
-  public synchronized boolean isDone() {
-    return this.getCanComplete;
+  /**
+   * Registers a callback to be run once the message is done, with the value or the exception which get() would
+   * return or throw.  If the message is already done, the callback is run immediately, on the calling thread.
+   * Otherwise, it is run on the thread which completes the message, which is the thread handling responses from the
+   * server, so it must be short and must not block.  This allows many invokes to be outstanding without a thread
+   * blocked in get() for each of them.
+   */
+  public void whenDone(BiConsumer<byte[], EntityException> callback) {
+    Waiter waiter = new Waiter(null, callback);
+    if (!push(this.doneWaiters, waiter)) {
+      runCallback(waiter);
+    }
   }
 
-  @Override
-  public synchronized byte[] get() throws InterruptedException, EntityException {
-    Thread callingThread = Thread.currentThread();
-    boolean didAdd = this.waitingThreads.add(callingThread);
-    // We can't have already been waiting.
-    Assert.assertTrue(didAdd);
-    
-    try {
-      while (!this.getCanComplete) {
-        wait();
+  void setResult(byte[] value, EntityException error) {
+    Result update = new Result(value, error);
+    int set = 0;
+    if (this.blockGetOnRetired) {
+      // We are waiting for the retired so this result can be over-written by another, until then.
+      if (!isDone()) {
+        this.result.set(update);
       }
-    } finally {
-      // We will hit this path on interrupt, for example.
-      this.waitingThreads.remove(callingThread);
+    } else if (this.result.compareAndSet(null, update)) {
+      set = DONE;
     }
-    
-    // If we didn't throw due to interruption, we fall through here.
-    if (exception != null) {
-      throw ExceptionUtils.addLocalStackTraceToEntityException(exception);
+    update(bit(VoltronEntityMessage.Acks.APPLIED), set);
+  }
+
+  public void retired() {
+    update(bit(VoltronEntityMessage.Acks.RETIRED), this.blockGetOnRetired ? DONE : 0);
+  }
+
+  private void checkInterrupted(Waiter waiter) throws InterruptedException {
+    if (waiter.interrupted || Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  private byte[] getResult() throws EntityException {
+    Result done = this.result.get();
+    if (null == done) {
+      // Retired without a result.
+      return null;
+    } else if (done.exception != null) {
+      throw ExceptionUtils.addLocalStackTraceToEntityException(done.exception);
     } else {
-      return value;
+      return done.value;
     }
   }
 
-  @Override
-  public synchronized byte[] getWithTimeout(long timeout, TimeUnit unit) throws InterruptedException, EntityException, TimeoutException {
-    Thread callingThread = Thread.currentThread();
-    boolean didAdd = this.waitingThreads.add(callingThread);
-    // We can't have already been waiting.
-    Assert.assertTrue(didAdd);
-    
-    long end = System.nanoTime() + unit.toNanos(timeout);
-    try {
-      while (!this.getCanComplete) {
-        long timing = end - System.nanoTime();
-        if (timing <= 0) {
-          throw new TimeoutException();
-        } else {
-          wait(timing / TimeUnit.MILLISECONDS.toNanos(1), (int)(timing % TimeUnit.MILLISECONDS.toNanos(1))); 
+  /**
+   * Atomically clears and sets the given bits of the state, then releases anyone waiting on the transitions this made.
+   * 
+   * @return The previous state
+   */
+  private int update(int clear, int set) {
+    int previous;
+    int next;
+    do {
+      previous = this.state.get();
+      next = (previous & ~clear) | set;
+    } while (previous != next && !this.state.compareAndSet(previous, next));
+    if ((previous & ACK_BITS) != 0 && (next & ACK_BITS) == 0) {
+      release(this.ackWaiters);
+    }
+    if ((previous & DONE) == 0 && (next & DONE) != 0) {
+      release(this.doneWaiters);
+    }
+    return previous;
+  }
+
+  /**
+   * @return False if the stack has already been released, in which case the waiter has nothing to wait for
+   */
+  private static boolean push(AtomicReference<Waiter> stack, Waiter waiter) {
+    while (true) {
+      Waiter head = stack.get();
+      if (head == RELEASED) {
+        return false;
+      }
+      waiter.next = head;
+      if (stack.compareAndSet(head, waiter)) {
+        return true;
+      }
+    }
+  }
+
+  private void release(AtomicReference<Waiter> stack) {
+    // Reverse the stack so the callbacks are run in the order they were registered.
+    Waiter reversed = null;
+    Waiter waiter = stack.getAndSet(RELEASED);
+    while (waiter != null && waiter != RELEASED) {
+      Waiter next = waiter.next;
+      waiter.next = reversed;
+      reversed = waiter;
+      waiter = next;
+    }
+    for (waiter = reversed; waiter != null; waiter = waiter.next) {
+      if (waiter.callback != null) {
+        runCallback(waiter);
+      } else {
+        Thread thread = waiter.thread;
+        if (thread != null) {
+          LockSupport.unpark(thread);
         }
       }
-    } finally {
-      this.waitingThreads.remove(callingThread);
     }
-    if (exception != null) {
-      throw ExceptionUtils.addLocalStackTraceToEntityException(exception);
-    } else {
-      return value;
+  }
+
+  private void runCallback(Waiter waiter) {
+    Result done = this.result.get();
+    try {
+      waiter.callback.accept(done != null ? done.value : null, done != null ? done.exception : null);
+    } catch (RuntimeException e) {
+      // Don't let a broken callback stop the others (or the response thread).
+      LOGGER.warn("callback failed for " + getTransactionID(), e);
     }
   }
 
-  synchronized void setResult(byte[] value, EntityException error) {
-    this.pendingAcks.remove(VoltronEntityMessage.Acks.APPLIED);
-    if (this.canSetResult) {
-      this.exception = error;
-      this.value = value;
-      if (!this.blockGetOnRetired) {
-        this.getCanComplete = true;
-        notifyAll();
-      }
-      // Determine if this can be over-written - only if we are waiting for the retired.
-      this.canSetResult = this.blockGetOnRetired;
+  private static int bit(VoltronEntityMessage.Acks ack) {
+    return 1 << ack.ordinal();
+  }
+
+  private static class Waiter {
+    private volatile Thread thread;
+    private volatile boolean interrupted;
+    private final BiConsumer<byte[], EntityException> callback;
+    private Waiter next;
+
+    Waiter(Thread thread, BiConsumer<byte[], EntityException> callback) {
+      this.thread = thread;
+      this.callback = callback;
     }
   }
 
-  public synchronized void retired() {
-    this.pendingAcks.remove(VoltronEntityMessage.Acks.RETIRED);
-    if (this.blockGetOnRetired) {
-      this.getCanComplete = true;
+  private static class Result {
+    private final byte[] value;
+    private final EntityException exception;
+
+    Result(byte[] value, EntityException exception) {
+      this.value = value;
+      this.exception = exception;
     }
-    notifyAll();
   }
 }
@@ -24,10 +24,18 @@ import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.object.ClientConfigurationContext;
 import com.tc.object.locks.ClientLockManager;
+import com.tc.object.locks.ClientServerExchangeLockContext;
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.LockResponseBatchContext;
+import com.tc.object.locks.ServerLockLevel;
+import com.tc.object.locks.ThreadID;
 import com.tc.object.msg.LockResponseMessage;
+import com.tc.object.msg.LockResponseMessage.ResponseType;
 import com.tc.object.session.SessionID;
 import com.tc.object.session.SessionManager;
 
+import java.util.Collection;
+
 /**
  * @author steve
  */
@@ -49,28 +57,40 @@ public class LockResponseHandler<EC> extends AbstractEventHandler<EC> {
       return;
     }
 
-    switch (msg.getResponseType()) {
+    if (msg.getResponseType() == ResponseType.BATCHED_RESPONSES) {
+      for (LockResponseBatchContext response : msg.getBatchedResponses()) {
+        respond(sessionID, response.getResponseType(), response.getLockID(), response.getThreadID(),
+                response.getLockLevel(), response.getAwardLeaseTime(), response.getContexts());
+      }
+    } else {
+      respond(sessionID, msg.getResponseType(), msg.getLockID(), msg.getThreadID(), msg.getLockLevel(),
+              msg.getAwardLeaseTime(), msg.getContexts());
+    }
+  }
+
+  private void respond(SessionID sessionID, ResponseType type, LockID lock, ThreadID thread, ServerLockLevel level,
+                       int leaseTime, Collection<ClientServerExchangeLockContext> contexts) {
+    switch (type) {
       case AWARD:
-        this.lockManager.award(msg.getLocalSessionID(), msg.getLockID(), msg.getThreadID(), msg.getLockLevel());
+        this.lockManager.award(sessionID, lock, thread, level);
         return;
       case RECALL:
-        this.lockManager.recall(msg.getLocalSessionID(), msg.getLockID(), msg.getLockLevel(), -1);
+        this.lockManager.recall(sessionID, lock, level, -1);
         return;
       case RECALL_WITH_TIMEOUT:
-        this.lockManager.recall(msg.getLocalSessionID(), msg.getLockID(), msg.getLockLevel(),
-                                msg.getAwardLeaseTime());
+        this.lockManager.recall(sessionID, lock, level, leaseTime);
         return;
       case REFUSE:
-        this.lockManager.refuse(msg.getLocalSessionID(), msg.getLockID(), msg.getThreadID(), msg.getLockLevel());
+        this.lockManager.refuse(sessionID, lock, thread, level);
         return;
       case WAIT_TIMEOUT:
-        this.lockManager.notified(msg.getLockID(), msg.getThreadID());
+        this.lockManager.notified(lock, thread);
         return;
       case INFO:
-        this.lockManager.info(msg.getLockID(), msg.getThreadID(), msg.getContexts());
+        this.lockManager.info(lock, thread, contexts);
         return;
       default:
-        logger.error("Unknown lock response message: " + msg.getResponseType());
+        logger.error("Unknown lock response message: " + type);
         return;
     }
 
@@ -28,6 +28,7 @@ import com.tc.operatorevent.LockEventListener;
 import com.tc.text.PrettyPrinter;
 import com.tc.util.FindbugsSuppressWarnings;
 import com.tc.util.Util;
+import com.tc.util.concurrent.HashedWheelTimer;
 import com.tc.util.concurrent.TaskRunner;
 import com.tc.util.concurrent.Timer;
 import com.tc.util.runtime.ThreadIDManager;
@@ -84,7 +85,8 @@ public class ClientLockManagerImpl implements ClientLockManager, ClientLockManag
     this.locks = new ConcurrentHashMap<LockID, ClientLock>(config.getStripedCount());
     final long gcPeriod = Math.max(config.getTimeoutInterval(), 100);
     this.gcTimer = taskRunner.newTimer("ClientLockManager LockGC");
-    this.lockLeaseTimer = taskRunner.newTimer("ClientLockManager Lock Lease Timer");
+    // one lease is scheduled per recall, so these go on a timer wheel rather than the shared task runner
+    this.lockLeaseTimer = new HashedWheelTimer("ClientLockManager Lock Lease Timer");
     this.gcTimer.scheduleWithFixedDelay(new LockGcTimerTask(), gcPeriod, gcPeriod, TimeUnit.MILLISECONDS);
   }
 
@@ -23,15 +23,22 @@ import com.tc.logging.TCLogging;
 import com.tc.net.ClientID;
 import com.tc.object.ClientIDProvider;
 import com.tc.object.msg.LockRequestMessage;
+import com.tc.object.msg.LockRequestMessage.RequestType;
 import com.tc.object.msg.LockRequestMessageFactory;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.concurrent.TaskRunner;
 import com.tc.util.concurrent.Timer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class RemoteLockManagerImpl implements RemoteLockManager {
   private static final TCLogger                logger                      = TCLogging
@@ -42,8 +49,12 @@ public class RemoteLockManagerImpl implements RemoteLockManager {
 
   private final LockRequestMessageFactory      messageFactory;
   private final ClientIDProvider               clientIdProvider;
+  private final int                            maxBatchedRequests;
 
   private final Queue<RecallBatchContext>      queue                       = new LinkedList<RecallBatchContext>();
+  // Requests queued by the calling threads, which are sent by whichever of them holds the sendLock
+  private final Queue<LockRequestBatchContext> requests                    = new ConcurrentLinkedQueue<LockRequestBatchContext>();
+  private final ReentrantLock                  sendLock                    = new ReentrantLock();
   private boolean                              shutdown;
 
   private final Timer                          batchRecallTimer;
@@ -55,6 +66,8 @@ public class RemoteLockManagerImpl implements RemoteLockManager {
                                TaskRunner taskRunner) {
     this.messageFactory = messageFactory;
     this.clientIdProvider = clientIdProvider;
+    this.maxBatchedRequests = TCPropertiesImpl.getProperties()
+        .getInt(TCPropertiesConsts.L1_LOCKMANAGER_MAX_BATCHED_REQUESTS, 1000);
     this.batchRecallTimer = taskRunner.newTimer("Batch Recall Timer");
   }
 
@@ -63,6 +76,7 @@ public class RemoteLockManagerImpl implements RemoteLockManager {
     synchronized (queue) {
       queue.clear();
     }
+    requests.clear();
   }
 
   @Override
@@ -82,58 +96,101 @@ public class RemoteLockManagerImpl implements RemoteLockManager {
 
   @Override
   public void interrupt(LockID lock, ThreadID thread) {
-    sendPendingRecallCommits();
-
-    final LockRequestMessage msg = createMessage();
-    msg.initializeInterruptWait(lock, thread);
-    sendMessage(msg);
+    request(new LockRequestBatchContext(RequestType.INTERRUPT_WAIT, lock, thread, null, -1));
   }
 
   @Override
   public void lock(LockID lock, ThreadID thread, ServerLockLevel level) {
-    sendPendingRecallCommits();
-
-    final LockRequestMessage msg = createMessage();
-    msg.initializeLock(lock, thread, level);
-    sendMessage(msg);
+    request(new LockRequestBatchContext(RequestType.LOCK, lock, thread, level, -1));
   }
 
   @Override
   public void query(LockID lock, ThreadID thread) {
-    sendPendingRecallCommits();
-
-    final LockRequestMessage msg = createMessage();
-    msg.initializeQuery(lock, thread);
-    sendMessage(msg);
+    request(new LockRequestBatchContext(RequestType.QUERY, lock, thread, null, -1));
   }
 
   @Override
   public void tryLock(LockID lock, ThreadID thread, ServerLockLevel level, long timeout) {
-    sendPendingRecallCommits();
-
-    final LockRequestMessage msg = createMessage();
-    msg.initializeTryLock(lock, thread, timeout, level);
-    sendMessage(msg);
+    request(new LockRequestBatchContext(RequestType.TRY_LOCK, lock, thread, level, timeout));
   }
 
   @Override
   public void unlock(LockID lock, ThreadID thread, ServerLockLevel level) {
-    sendPendingRecallCommits();
-
-    final LockRequestMessage msg = createMessage();
-    msg.initializeUnlock(lock, thread, level);
-    sendMessage(msg);
+    request(new LockRequestBatchContext(RequestType.UNLOCK, lock, thread, level, -1));
   }
 
   @Override
   public void wait(LockID lock, ThreadID thread, long waitTime) {
+    request(new LockRequestBatchContext(RequestType.WAIT, lock, thread, null, waitTime));
+  }
+
+  /**
+   * Queues the request and then sends it, along with any other requests queued by concurrent callers, as a single
+   * message.  If another thread is already sending, that thread sends this request once it is done.
+   */
+  private void request(LockRequestBatchContext request) {
     sendPendingRecallCommits();
 
+    requests.add(request);
+    sendPendingRequests();
+  }
+
+  private void sendPendingRequests() {
+    while (!requests.isEmpty() && sendLock.tryLock()) {
+      try {
+        drainRequests();
+      } finally {
+        sendLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Sends all the queued requests.  The caller must hold the sendLock.
+   */
+  private void drainRequests() {
+    List<LockRequestBatchContext> batch = new ArrayList<LockRequestBatchContext>();
+    LockRequestBatchContext request = requests.poll();
+    while (request != null) {
+      batch.add(request);
+      if (batch.size() >= maxBatchedRequests) {
+        sendRequests(batch);
+      }
+      request = requests.poll();
+    }
+    sendRequests(batch);
+  }
+
+  private void sendRequests(List<LockRequestBatchContext> batch) {
+    if (batch.isEmpty()) { return; }
     final LockRequestMessage msg = createMessage();
-    msg.initializeWait(lock, thread, waitTime);
+    if (batch.size() == 1) {
+      msg.initializeRequest(batch.get(0));
+    } else {
+      msg.initializeBatchedRequests();
+      for (LockRequestBatchContext request : batch) {
+        msg.addRequestBatchContext(request);
+      }
+    }
+    batch.clear();
     sendMessage(msg);
   }
 
+  /**
+   * Sends a message after any requests which were queued before it, so the server sees everything in calling order.
+   */
+  private void sendInOrder(LockRequestMessage msg) {
+    sendLock.lock();
+    try {
+      drainRequests();
+      sendMessage(msg);
+    } finally {
+      sendLock.unlock();
+    }
+    // Anything queued while we held the lock may have been left for us.
+    sendPendingRequests();
+  }
+
   private void recallCommit(LockID lock, Collection<ClientServerExchangeLockContext> lockState) {
     sendPendingRecallCommits();
 
@@ -142,7 +199,7 @@ public class RemoteLockManagerImpl implements RemoteLockManager {
     for (final ClientServerExchangeLockContext context : lockState) {
       msg.addContext(context);
     }
-    sendMessage(msg);
+    sendInOrder(msg);
   }
 
   @Override
@@ -208,7 +265,7 @@ public class RemoteLockManagerImpl implements RemoteLockManager {
     }
 
     queue.clear();
-    sendMessage(lrm);
+    sendInOrder(lrm);
   }
 
   private LockRequestMessage createMessage() {
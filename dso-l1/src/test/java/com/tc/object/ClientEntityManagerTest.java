@@ -36,6 +36,7 @@ import org.terracotta.exception.EntityException;
 import org.terracotta.exception.EntityNotFoundException;
 
 import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.NetworkVoltronEntityMultiMessage;
 import com.tc.entity.VoltronEntityMessage;
 import com.tc.entity.VoltronEntityMessage.Acks;
 import com.tc.exception.TCNotRunningException;
@@ -54,6 +55,9 @@ import com.tc.util.concurrent.ThreadUtil;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -65,6 +69,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import org.mockito.Mockito;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -389,6 +394,60 @@ public class ClientEntityManagerTest extends TestCase {
     assertThat(t.isAlive(), is(false));
   }
 
+  @Test
+  public void testInvokesQueuedBehindASendAreBatched() throws Exception {
+    final CountDownLatch sending = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+//  the first message holds the send lock until released so the invokes after it have to queue up
+    TestRequestBatchMessage first = new TestRequestBatchMessage(this.manager, new byte[0], null, true) {
+      @Override
+      public boolean send() {
+        sending.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        return super.send();
+      }
+    };
+    final List<VoltronEntityMessage> batched = new CopyOnWriteArrayList<VoltronEntityMessage>();
+    NetworkVoltronEntityMultiMessage multi = mock(NetworkVoltronEntityMultiMessage.class);
+    when(multi.addMessage(any(VoltronEntityMessage.class))).then(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws Throwable {
+        return batched.add((VoltronEntityMessage)invocation.getArguments()[0]);
+      }
+    });
+    when(multi.send()).thenReturn(true);
+    TestRequestBatchMessage second = new TestRequestBatchMessage(this.manager, null, null, false);
+    TestRequestBatchMessage third = new TestRequestBatchMessage(this.manager, null, null, false);
+    when(channel.createMessage(TCMessageType.VOLTRON_ENTITY_MESSAGE)).thenReturn(first, second, third);
+    when(channel.createMessage(TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE)).thenReturn(multi);
+    
+    final ClientEntityManager mgr = manager;
+    Thread sender = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        mgr.invokeAction(entityDescriptor, Collections.<Acks>emptySet(), false, true, new byte[0]);
+      }
+    });
+    sender.start();
+    sending.await();
+    this.manager.invokeAction(entityDescriptor, Collections.<Acks>emptySet(), false, true, new byte[0]);
+    this.manager.invokeAction(entityDescriptor, Collections.<Acks>emptySet(), false, true, new byte[0]);
+    assertTrue(batched.isEmpty());
+    release.countDown();
+    sender.join();
+    
+    assertEquals(2, batched.size());
+    assertTrue(batched.get(0) == second);
+    assertTrue(batched.get(1) == third);
+    verify(multi).send();
+    assertFalse(second.sent);
+    assertFalse(third.sent);
+  }
+
   private boolean didFindEndpoint(TestFetcher fetcher) {
     boolean didFind = false;
     try {
@@ -557,6 +616,14 @@ public class ClientEntityManagerTest extends TestCase {
     public EntityMessage getEntityMessage() {
       throw new UnsupportedOperationException();
     }
+    @Override
+    public Object getSchedulingKey() {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public boolean flush() {
+      throw new UnsupportedOperationException();
+    }
   }
   
   private static class FakeSink implements Sink<Object> {
@@ -19,12 +19,20 @@
 package com.tc.object;
 
 import org.terracotta.exception.EntityException;
+import org.terracotta.exception.EntityNotFoundException;
 
 import com.tc.entity.NetworkVoltronEntityMessage;
 import com.tc.entity.VoltronEntityMessage.Acks;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 import junit.framework.TestCase;
 import static org.mockito.Mockito.mock;
@@ -46,12 +54,14 @@ public class InFlightMessageTest extends TestCase {
     
     // Start the thread: it will begin progressing to the get().
     thread.start();
-    // Wait for the other thread to enter the monitor.
+    // Wait for the other thread to reach the get().
     message.waitOnEnter();
-    // We can now interrupt the message and know that the other thread will receive the interrupt.
-    message.interrupt();
+    // The other thread may not have registered itself as a waiter, yet, so keep interrupting until it notices.
     try {
-      thread.join();
+      while (thread.isAlive()) {
+        message.interrupt();
+        thread.join(10);
+      }
     } catch (InterruptedException e) {
       // NOT expected on our side.
       fail();
@@ -59,6 +69,87 @@ public class InFlightMessageTest extends TestCase {
     assertTrue(thread.didInterrupt);
   }
 
+  public void testWaitForAcks() throws Exception {
+    NetworkVoltronEntityMessage mockedEntityMessage = mock(NetworkVoltronEntityMessage.class);
+    final InFlightMessage message = new InFlightMessage(mockedEntityMessage, EnumSet.of(Acks.SENT, Acks.RECEIVED), false);
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        message.waitForAcks();
+      }
+    };
+    waiter.start();
+    message.sent();
+    waiter.join(100);
+    assertTrue(waiter.isAlive());
+    message.received();
+    waiter.join();
+    // Once the acks are in, waiting returns immediately.
+    message.waitForAcks();
+    assertFalse(message.isDone());
+  }
+
+  public void testResultWithoutRetire() throws Exception {
+    NetworkVoltronEntityMessage mockedEntityMessage = mock(NetworkVoltronEntityMessage.class);
+    InFlightMessage message = new InFlightMessage(mockedEntityMessage, Collections.<Acks>emptySet(), false);
+    byte[] value = new byte[1];
+    message.setResult(value, null);
+    assertTrue(message.isDone());
+    // The first result can't be over-written.
+    message.setResult(new byte[2], null);
+    assertTrue(value == message.get());
+    message.retired();
+    assertTrue(value == message.getWithTimeout(1, TimeUnit.MILLISECONDS));
+  }
+
+  public void testResultBlockedOnRetire() throws Exception {
+    NetworkVoltronEntityMessage mockedEntityMessage = mock(NetworkVoltronEntityMessage.class);
+    InFlightMessage message = new InFlightMessage(mockedEntityMessage, Collections.<Acks>emptySet(), true);
+    message.setResult(new byte[1], null);
+    assertFalse(message.isDone());
+    try {
+      message.getWithTimeout(10, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (TimeoutException expected) {
+      // expected
+    }
+    // Until the retire, a later result replaces the earlier one.
+    byte[] value = new byte[2];
+    message.setResult(value, null);
+    message.retired();
+    assertTrue(message.isDone());
+    assertTrue(value == message.get());
+  }
+
+  public void testCallbacks() throws Exception {
+    NetworkVoltronEntityMessage mockedEntityMessage = mock(NetworkVoltronEntityMessage.class);
+    InFlightMessage message = new InFlightMessage(mockedEntityMessage, Collections.<Acks>emptySet(), false);
+    final List<Object> results = new ArrayList<Object>();
+    BiConsumer<byte[], EntityException> callback = new BiConsumer<byte[], EntityException>() {
+      @Override
+      public void accept(byte[] value, EntityException error) {
+        results.add(null != error ? error : value);
+      }
+    };
+    message.whenDone(callback);
+    message.whenDone(callback);
+    assertTrue(results.isEmpty());
+    EntityException error = new EntityNotFoundException("class", "name");
+    message.setResult(null, error);
+    assertEquals(2, results.size());
+    assertTrue(error == results.get(0));
+    assertTrue(error == results.get(1));
+    // Registered after the message is done, the callback runs immediately.
+    message.whenDone(callback);
+    assertEquals(3, results.size());
+    try {
+      message.get();
+      fail();
+    } catch (EntityNotFoundException expected) {
+      // expected
+    }
+  }
+
   /**
    * This thread just calls get() on the given message and records whether or not it was interrupted.
    */
@@ -85,22 +176,21 @@ public class InFlightMessageTest extends TestCase {
   }
 
   /**
-   * Even though we are trying to test InFlightMessage we need this subclass to expose details of the monitor state in order
-   * to test the thread interaction in a deterministic way.
+   * Even though we are trying to test InFlightMessage we need this subclass to know when the other thread has reached
+   * get() in order to test the thread interaction in a deterministic way.
    */
   private static class InterlockMessage extends InFlightMessage {
-    private boolean didEnter;
+    private final CountDownLatch didEnter;
     
     public InterlockMessage(NetworkVoltronEntityMessage message, Set<Acks> acks, boolean shouldBlockGetOnRetire) {
       super(message, acks, shouldBlockGetOnRetire);
-      this.didEnter = false;
+      this.didEnter = new CountDownLatch(1);
     }
 
     @Override
-    public synchronized byte[] get() throws InterruptedException, EntityException {
-      // Notify anyone waiting so that they know we now have the monitor and are going to block in get().
-      this.didEnter = true;
-      notifyAll();
+    public byte[] get() throws InterruptedException, EntityException {
+      // Notify anyone waiting so that they know we are going to block in get().
+      this.didEnter.countDown();
       // Call the super to actually block.
       return super.get();
     }
@@ -108,14 +198,12 @@ public class InFlightMessageTest extends TestCase {
     /**
      * Blocks the caller until someone has called get() on the same instance.
      */
-    public synchronized void waitOnEnter() {
-      while (!this.didEnter) {
-        try {
-          wait();
-        } catch (InterruptedException e) {
-          // NOT expected.
-          fail();
-        }
+    public void waitOnEnter() {
+      try {
+        this.didEnter.await();
+      } catch (InterruptedException e) {
+        // NOT expected.
+        fail();
       }
     }
   }
@@ -30,6 +30,8 @@ public class L2Utils {
   private static final int MAX_DEFAULT_COMM_THREADS = 16;
   private static final int MAX_DEFAULT_STAGE_THREADS = 16;
   private static final int MAX_ENTITY_PROCESSOR_THREADS = 128;
+  private static final int MAX_DEFAULT_VOLTRON_STAGE_THREADS = 8;
+  private static final int MAX_DEFAULT_LOCK_STAGE_THREADS = 4;
   public static final long MIN_COMMS_DIRECT_MEMORY_REQUIREMENT = 4 * 1024 * 1024;  // 4MiB
   public static final long MAX_COMMS_DIRECT_MEMORY_REQUIREMENT = 256 * 1024 * 1024; // 256MiB
 
@@ -53,6 +55,30 @@ public class L2Utils {
     return TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_SEDA_STAGE_WORKERTHREADS, def);
   }
 
+  /**
+   * The number of threads handling incoming entity messages.  Each entity is always handled by the same thread so more
+   * threads only help when there are many independently busy entities.
+   * <p/>{@code l2.seda.voltron.stage.threads} configuration property overrides this value.
+   *
+   * @return the number of threads for the voltron message stage
+   */
+  public static int getOptimalVoltronStageWorkerThreads() {
+    int def = Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_VOLTRON_STAGE_THREADS);
+    return TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_SEDA_VOLTRON_STAGE_THREADS, def);
+  }
+
+  /**
+   * The number of threads handling lock requests.  Requests are partitioned across them by the lock store segment of
+   * their lock so more threads only help when many different locks are busy.
+   * <p/>{@code l2.seda.lock.stage.threads} configuration property overrides this value.
+   *
+   * @return the number of threads for the lock request stage
+   */
+  public static int getOptimalLockStageWorkerThreads() {
+    int def = Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_LOCK_STAGE_THREADS);
+    return TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_SEDA_LOCK_STAGE_THREADS, def);
+  }
+
   /**
    * Calculates the optimal number of worker threads for the apply stage.
    * <p/>{@code l2.seda.apply.stage.threads} configuration property overrides this value.
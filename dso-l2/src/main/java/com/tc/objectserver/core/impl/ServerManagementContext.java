@@ -19,6 +19,7 @@
 package com.tc.objectserver.core.impl;
 
 import com.tc.management.RemoteManagement;
+import com.tc.net.core.TCConnectionManager;
 import com.tc.net.protocol.transport.ConnectionPolicy;
 import com.tc.object.net.ChannelStats;
 import com.tc.object.net.DSOChannelManagerMBean;
@@ -35,12 +36,14 @@ public class ServerManagementContext {
   private final ObjectInstanceMonitorMBean    instanceMonitor;
   private final ConnectionPolicy              connectionPolicy;
   private final RemoteManagement              remoteManagement;
+  private final TCConnectionManager           connectionManager;
 
   public ServerManagementContext(LockManagerMBean lockMgr, DSOChannelManagerMBean channelMgr,
                                  GlobalServerStats serverStats, ChannelStats channelStats,
                                  ObjectInstanceMonitorMBean instanceMonitor,
                                  ConnectionPolicy connectionPolicy,
-                                 RemoteManagement remoteManagement) {
+                                 RemoteManagement remoteManagement,
+                                 TCConnectionManager connectionManager) {
     this.lockMgr = lockMgr;
     this.channelMgr = channelMgr;
     this.serverStats = serverStats;
@@ -48,6 +51,7 @@ public class ServerManagementContext {
     this.instanceMonitor = instanceMonitor;
     this.connectionPolicy = connectionPolicy;
     this.remoteManagement = remoteManagement;
+    this.connectionManager = connectionManager;
   }
 
   public DSOChannelManagerMBean getChannelManager() {
@@ -78,4 +82,8 @@ public class ServerManagementContext {
     return remoteManagement;
   }
 
+  public TCConnectionManager getConnectionManager() {
+    return connectionManager;
+  }
+
 }
@@ -18,20 +18,30 @@
  */
 package com.tc.objectserver.entity;
 
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
 import com.tc.net.NodeID;
 import com.tc.util.Assert;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 
 /**
  * This type is used by ActiveToPassiveReplication in order to wait on all the passives either sending a RECEIVED or
  * COMPLETED acknowledgement for a specific message.
+ * <p>
+ * Instead of blocking for the COMPLETED acknowledgements, a caller can register an action to run once they have all
+ * arrived.
  */
 public class ActivePassiveAckWaiter {
+  private static final TCLogger logger = TCLogging.getLogger(ActivePassiveAckWaiter.class);
   private final Set<NodeID> receivedPending;
   private final Set<NodeID> completedPending;
+  private List<Runnable> onCompleted;
 
   public ActivePassiveAckWaiter(Set<NodeID> allPassiveNodes) {
     this.receivedPending =  new HashSet<NodeID>(allPassiveNodes);
@@ -54,6 +64,32 @@ public class ActivePassiveAckWaiter {
     return this.completedPending.isEmpty();
   }
 
+  /**
+   * Runs the given action once every passive has completed the message:  immediately, on the calling thread, if they
+   * already have or, otherwise, on the thread which delivers the last completion.  Only use this for actions which are
+   * short and never block since that thread delivers the acknowledgements of every other message, too.
+   */
+  public void runWhenCompleted(Runnable action) {
+    runWhenCompleted(action, Runnable::run);
+  }
+
+  /**
+   * Runs the given action once every passive has completed the message:  immediately, on the calling thread, if they
+   * already have or, otherwise, by handing it to the given executor from the thread which delivers the last completion.
+   */
+  public void runWhenCompleted(Runnable action, Executor handOff) {
+    synchronized (this) {
+      if (!this.completedPending.isEmpty()) {
+        if (null == this.onCompleted) {
+          this.onCompleted = new ArrayList<Runnable>();
+        }
+        this.onCompleted.add(() -> handOff.execute(action));
+        return;
+      }
+    }
+    runSafely(action);
+  }
+
   public synchronized void didReceiveOnPassive(NodeID onePassive) {
     boolean didContain = this.receivedPending.remove(onePassive);
     // We must have contained this passive in order to receive.
@@ -71,22 +107,45 @@ public class ActivePassiveAckWaiter {
    * @param isNormalComplete True if this was a normal complete ack, false if we are completing because the node disappeared
    * @return True if this was the last outstanding completion required and the waiter is now done.
    */
-  public synchronized boolean didCompleteOnPassive(NodeID onePassive, boolean isNormalComplete) {
-    // Note that we will try to remove from the received set, but usually it will already have been removed.
-    boolean didContainInReceived = this.receivedPending.remove(onePassive);
-    // We know that it must still be in the completed set, though.
-    boolean didContainInCompleted = this.completedPending.remove(onePassive);
-    // We must have contained this passive in order to complete.
-    if (isNormalComplete) {
-      // In the unexpected case, we are just making sure this node is removed from all waiters, even though it might have
-      // already completed on some of them.
-      Assert.assertTrue(didContainInCompleted);
+  public boolean didCompleteOnPassive(NodeID onePassive, boolean isNormalComplete) {
+    boolean isDoneWaiting;
+    List<Runnable> actions = null;
+    synchronized (this) {
+      // Note that we will try to remove from the received set, but usually it will already have been removed.
+      boolean didContainInReceived = this.receivedPending.remove(onePassive);
+      // We know that it must still be in the completed set, though.
+      boolean didContainInCompleted = this.completedPending.remove(onePassive);
+      // We must have contained this passive in order to complete.
+      if (isNormalComplete) {
+        // In the unexpected case, we are just making sure this node is removed from all waiters, even though it might have
+        // already completed on some of them.
+        Assert.assertTrue(didContainInCompleted);
+      }
+      isDoneWaiting = this.completedPending.isEmpty();
+      // Wake everyone up if this changed something.
+      if ((didContainInReceived && this.receivedPending.isEmpty()) || isDoneWaiting) {
+        notifyAll();
+      }
+      if (isDoneWaiting) {
+        actions = this.onCompleted;
+        this.onCompleted = null;
+      }
     }
-    boolean isDoneWaiting = this.completedPending.isEmpty();
-    // Wake everyone up if this changed something.
-    if ((didContainInReceived && this.receivedPending.isEmpty()) || isDoneWaiting) {
-      notifyAll();
+    // The actions are run outside of the lock since they typically send responses to clients.
+    if (null != actions) {
+      for (Runnable action : actions) {
+        // Don't let one failure prevent the other actions from running.
+        runSafely(action);
+      }
     }
     return isDoneWaiting;
   }
+
+  private static void runSafely(Runnable action) {
+    try {
+      action.run();
+    } catch (RuntimeException e) {
+      logger.error("Failure running replication completion action", e);
+    }
+  }
 }
@@ -22,29 +22,38 @@ import com.tc.async.api.Sink;
 import com.tc.l2.msg.PassiveSyncMessage;
 import com.tc.l2.msg.ReplicationEnvelope;
 import com.tc.l2.msg.ReplicationMessage;
+import com.tc.l2.msg.ReplicationMessageAck;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.net.NodeID;
 import com.tc.net.groups.GroupEventsListener;
-import com.tc.net.groups.GroupMessage;
 import com.tc.net.groups.MessageID;
 import com.tc.objectserver.api.ManagedEntity;
 import com.tc.objectserver.handler.ProcessTransactionHandler;
 import com.tc.objectserver.handler.ReplicationSender;
 import com.tc.objectserver.persistence.EntityPersistor;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.text.PrettyPrintable;
+import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
@@ -53,7 +62,7 @@ import java.util.concurrent.Semaphore;
  *  This class lies idle until activated by setting the current passive nodes.  This should 
  *  occur only when the server is transitioning from passive-standby to active
  */
-public class ActiveToPassiveReplication implements PassiveReplicationBroker, GroupEventsListener {
+public class ActiveToPassiveReplication implements PassiveReplicationBroker, GroupEventsListener, PrettyPrintable {
   
   private static final TCLogger logger           = TCLogging.getLogger(PassiveReplicationBroker.class);
   private final Iterable<ManagedEntity> entities;
@@ -65,12 +74,20 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
   private final Sink<ReplicationEnvelope> replicate;
   private final Executor passiveSyncPool = Executors.newCachedThreadPool();
   private final EntityPersistor persistor;
+  private final Map<NodeID, PassiveSyncProgress> syncs = new ConcurrentHashMap<>();
+//  the messages sent to each passive, by the replication ID they were sent with, which are waiting for a cumulative ack
+  private final Map<NodeID, ConcurrentSkipListMap<Long, MessageID>> receivedPending = new ConcurrentHashMap<>();
+  private final Map<NodeID, ConcurrentSkipListMap<Long, MessageID>> completedPending = new ConcurrentHashMap<>();
+  private final int syncParallelism;
+  private final int syncWindow;
 
   public ActiveToPassiveReplication(Iterable<NodeID> passives, Iterable<ManagedEntity> entities, EntityPersistor persistor, Sink<ReplicationEnvelope> replicate) {
     this.entities = entities;
     this.replicate = replicate;
     this.passives = passives;
     this.persistor = persistor;
+    this.syncParallelism = Math.max(1, TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_NHA_PASSIVE_SYNC_ENTITY_PARALLELISM, 8));
+    this.syncWindow = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_NHA_PASSIVE_SYNC_WINDOW, 64);
   }
   
   @Override
@@ -128,16 +145,18 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
       public void run() {    
         // start passive sync message
         logger.debug("starting sync for " + newNode);
+        List<ManagedEntity> toSync = new ArrayList<>();
+        entities.forEach(toSync::add);
+        PassiveSyncProgress progress = new PassiveSyncProgress(newNode, toSync.size(), syncWindow);
+        syncs.put(newNode, progress);
         try {
           replicateMessage(PassiveSyncMessage.createStartSyncMessage(), Collections.singleton(newNode)).waitForCompleted();
-          for (ManagedEntity entity : entities) {
-            logger.debug("starting sync for entity " + newNode + "/" + entity.getID());
-            entity.sync(newNode);
-            logger.debug("ending sync for entity " + newNode + "/" + entity.getID());
-          }
+          syncEntities(newNode, toSync, progress);
       //  passive sync done message.  causes passive to go into passive standby mode
           logger.debug("ending sync " + newNode);
           replicateMessage(PassiveSyncMessage.createEndSyncMessage(replicateEntityPersistor()), Collections.singleton(newNode)).waitForCompleted();
+          progress.finished();
+          logger.info("Finished sync to " + newNode + " " + progress);
         } catch (InterruptedException e) {
           throw new AssertionError("error during passive sync", e);
         }
@@ -145,6 +164,44 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
     });
   }
   
+  /**
+   * Syncs several entities at once, each one on its own thread of the sync pool.  The entities are independent on the
+   * passive so the number in flight is only limited to keep the number of threads (and of request processor threads 
+   * blocked in the sync of a concurrency key) reasonable.  The number of sync messages in flight is limited 
+   * separately by the window of the progress.
+   */
+  private void syncEntities(NodeID newNode, List<ManagedEntity> toSync, PassiveSyncProgress progress) throws InterruptedException {
+    Semaphore slots = new Semaphore(syncParallelism);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    int logInterval = Math.max(1, toSync.size() / 10);
+    for (ManagedEntity entity : toSync) {
+      slots.acquire();
+      if (failure.get() != null) {
+        slots.release();
+        break;
+      }
+      passiveSyncPool.execute(()->{
+        try {
+          logger.debug("starting sync for entity " + newNode + "/" + entity.getID());
+          entity.sync(newNode);
+          logger.debug("ending sync for entity " + newNode + "/" + entity.getID());
+          if (progress.entitySynced() % logInterval == 0) {
+            logger.info("Syncing " + newNode + " " + progress);
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        } finally {
+          slots.release();
+        }
+      });
+    }
+  //  wait for the entities still in flight
+    slots.acquire(syncParallelism);
+    if (failure.get() != null) {
+      throw new AssertionError("error during passive sync", failure.get());
+    }
+  }
+  
   private byte[] replicateEntityPersistor() {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
     try {
@@ -158,17 +215,49 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
     return null;
   }
 
-  public void ackReceived(GroupMessage msg) {
-    ActivePassiveAckWaiter waiter = waiters.get(msg.inResponseTo());
-    if (null != waiter) {
-      waiter.didReceiveOnPassive(msg.messageFrom());
+  /**
+   * Resolves, in one pass over the messages sent to the passive, every waiter covered by its coalesced ack.
+   */
+  public void acknowledge(ReplicationMessageAck msg) {
+    NodeID passive = msg.messageFrom();
+    ConcurrentSkipListMap<Long, MessageID> received = receivedPending.get(passive);
+    ConcurrentSkipListMap<Long, MessageID> completed = completedPending.get(passive);
+    if (received == null || completed == null) {
+      return;
     }
-  }
-
-  public void ackCompleted(GroupMessage msg) {
     // This is a normal completion.
     boolean isNormalComplete = true;
-    internalAckCompleted(msg.inResponseTo(), msg.messageFrom(), isNormalComplete);
+    Map<Long, MessageID> done = completed.headMap(msg.getCompletedID(), true);
+    for (MessageID mid : done.values()) {
+      internalAckCompleted(mid, passive, isNormalComplete);
+    }
+    done.clear();
+    for (long rid : msg.getCompletedOutOfOrder()) {
+      MessageID mid = completed.remove(rid);
+      if (mid != null) {
+        internalAckCompleted(mid, passive, isNormalComplete);
+      }
+    }
+    // A completion covers the receipt as well so only those which are still waiting to complete are left.
+    Map<Long, MessageID> got = received.headMap(msg.getReceivedID(), true);
+    for (Map.Entry<Long, MessageID> next : got.entrySet()) {
+      if (completed.containsKey(next.getKey())) {
+        ActivePassiveAckWaiter waiter = waiters.get(next.getValue());
+        if (null != waiter) {
+          waiter.didReceiveOnPassive(passive);
+        }
+      }
+    }
+    got.clear();
+  }
+  
+  /**
+   * Called by the replication sender, before the message is sent to the passive, with the replication ID it is sent
+   * with.
+   */
+  private void sent(MessageID mid, NodeID passive, long rid) {
+    receivedPending.computeIfAbsent(passive, p->new ConcurrentSkipListMap<>()).put(rid, mid);
+    completedPending.computeIfAbsent(passive, p->new ConcurrentSkipListMap<>()).put(rid, mid);
   }
 
   /**
@@ -193,6 +282,15 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
   @Override
   public ActivePassiveAckWaiter replicateMessage(ReplicationMessage msg, Set<NodeID> all) {
     Set<NodeID> copy = new HashSet<>(all); 
+//  sync messages are sent to a single passive and have to fit in the window of its sync
+    PassiveSyncProgress sync = (msg instanceof PassiveSyncMessage && copy.size() == 1) ? syncs.get(copy.iterator().next()) : null;
+    if (sync != null) {
+      try {
+        sync.acquire(msg);
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    }
 // don't replicate to a passive that is no longer there
     copy.retainAll(passives());
     ActivePassiveAckWaiter waiter = new ActivePassiveAckWaiter(copy);
@@ -201,9 +299,13 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
       for (NodeID node : copy) {
         // This is a normal completion.
         boolean isNormalComplete = true;
-        replicate.addSingleThreaded(msg.target(node, ()->internalAckCompleted(msg.getMessageID(), node, isNormalComplete)));
+        replicate.addSingleThreaded(msg.target(node, ()->internalAckCompleted(msg.getMessageID(), node, isNormalComplete), 
+            rid->sent(msg.getMessageID(), node, rid)));
       }
     }
+    if (sync != null) {
+      sync.release(waiter);
+    }
     return waiter;
   }
 
@@ -211,6 +313,7 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
 // first remove it from the list of passive nodes so that anything sending new messages 
 // will have to remove it from the list of nodes to send to
     passiveNodes.remove(nodeID);
+    syncs.remove(nodeID);
 //  acknowledge all the messages for this node because it is gone, this may result in 
 //  a double ack locally but that is ok.  acknowledge is loose and can tolerate it. 
     if (activated) {
@@ -223,6 +326,10 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
       replicate.addSingleThreaded(new ReplicationEnvelope(nodeID, null, ()->block.release()));
       waitOnSemaphore(block);
     }
+//  nothing more is sent to the node once the flush is through so what it has yet to ack can be forgotten.  
+//  the replication IDs start over if it comes back
+    receivedPending.remove(nodeID);
+    completedPending.remove(nodeID);
   }
   
   private void waitOnSemaphore(Semaphore block) {
@@ -249,4 +356,14 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
       standByNodes.remove(nodeID);
     }
   }
+
+  @Override
+  public PrettyPrinter prettyPrint(PrettyPrinter out) {
+    out.print(getClass().getName()).flush();
+    out.indent().print("passives: " + passiveNodes).flush();
+    for (PassiveSyncProgress progress : syncs.values()) {
+      out.indent().print(progress).flush();
+    }
+    return out;
+  }
 }
@@ -87,7 +87,7 @@ public class ClientEntityStateManagerImpl implements ClientEntityStateManager {
     Sink<VoltronEntityMessage> remover = stageManager.getStage(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE, VoltronEntityMessage.class).getSink();
     // Note that we will clean these up when the removal request comes through so leave the clientStates unchanged, for now.
     for (EntityDescriptor oneInstance : list) {
-      remover.addSingleThreaded(new RemovalMessage(client, oneInstance));
+      remover.addMultiThreaded(new RemovalMessage(client, oneInstance));
     }
     clientChain.channelRemoved(channel);
   }
@@ -146,5 +146,16 @@ public class ClientEntityStateManagerImpl implements ClientEntityStateManager {
       // There is no message instance for this type.
       return null;
     }
+
+    @Override
+    public Object getSchedulingKey() {
+      return this.entityDescriptor.getEntityID();
+    }
+
+    @Override
+    public boolean flush() {
+      // Only this entity's references need to be released in order, which the scheduling key already ensures.
+      return false;
+    }
   }
 }
@@ -80,4 +80,14 @@ public class CreateSystemEntityMessage implements VoltronEntityMessage {
   public EntityMessage getEntityMessage() {
     return null;
   }
+
+  @Override
+  public Object getSchedulingKey() {
+    return eid;
+  }
+
+  @Override
+  public boolean flush() {
+    return false;
+  }
 }
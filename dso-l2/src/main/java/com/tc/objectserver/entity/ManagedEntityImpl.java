@@ -52,9 +52,11 @@ import com.tc.properties.TCPropertiesImpl;
 import com.tc.services.InternalServiceRegistry;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.FlightControl;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -205,7 +207,7 @@ public class ManagedEntityImpl implements ManagedEntity {
   }
   
   private SchedulingRunnable scheduleInOrder(EntityDescriptor desc, ServerEntityRequest request, ResultCapture results, MessagePayload payload, Runnable r, int ckey) {
-// this all makes sense because this is only called by the PTH single thread
+// this all makes sense because this is only called by the one PTH thread which this entity is scheduled on
 // deferCleared is cleared by one of the request queues
     if (isInActiveState) {
       Assert.assertTrue(Thread.currentThread().getName().contains(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE));
@@ -567,6 +569,9 @@ public class ManagedEntityImpl implements ManagedEntity {
   }
 
   private void performSync(ResultCapture response, Set<NodeID> passives, int concurrencyKey) {
+  //  payloads are not waited on one by one.  they are pipelined to the passive, bounded by the window of the passive sync, 
+  //  and all waited on once the key is ended
+    List<ActivePassiveAckWaiter> inflight = new ArrayList<>();
     if (!this.isDestroyed) {
       if (this.isInActiveState) {
         if (null == this.activeServerEntity) {
@@ -580,8 +585,8 @@ public class ManagedEntityImpl implements ManagedEntity {
               for (NodeID passive : passives) {
                 try {
                   byte[] message = runWithHelper(()->syncCodec.encode(concurrencyKey, payload));
-                  executor.scheduleSync(PassiveSyncMessage.createPayloadMessage(id, version, concurrencyKey, message), passive).waitForCompleted();
-                } catch (EntityUserException | InterruptedException eu) {
+                  inflight.add(executor.scheduleSync(PassiveSyncMessage.createPayloadMessage(id, version, concurrencyKey, message), passive));
+                } catch (EntityUserException eu) {
                 // TODO: do something reasoned here
                   throw new RuntimeException(eu);
                 }
@@ -597,8 +602,11 @@ public class ManagedEntityImpl implements ManagedEntity {
     }
 //  whether the entity is destroyed or not, if arrived here. end sync needs to be called
     for (NodeID passive : passives) {
+      inflight.add(executor.scheduleSync(PassiveSyncMessage.createEndEntityKeyMessage(id, version, concurrencyKey), passive));
+    }
+    for (ActivePassiveAckWaiter waiter : inflight) {
       try {
-        executor.scheduleSync(PassiveSyncMessage.createEndEntityKeyMessage(id, version, concurrencyKey), passive).waitForCompleted();
+        waiter.waitForCompleted();
       } catch (InterruptedException ie) {
       // TODO: do something reasoned here
         throw new RuntimeException(ie);
@@ -875,6 +883,8 @@ public class ManagedEntityImpl implements ManagedEntity {
     private final Runnable original;
     private final int concurrency;
     private ActivePassiveAckWaiter  waitFor;
+    // Completion actions registered before this was scheduled (and so, before there was anything to wait for).
+    private List<Runnable> whenCompleted = new ArrayList<>();
 
     public SchedulingRunnable(EntityDescriptor desc, ServerEntityRequest request, MessagePayload payload, Runnable r, int concurrency) {
       this.desc = desc;
@@ -889,6 +899,10 @@ public class ManagedEntityImpl implements ManagedEntity {
         runnables.activate();
       }
       waitFor = executor.scheduleRequest(desc, request, payload, this, concurrency);
+      for (Runnable action : whenCompleted) {
+        waitFor.runWhenCompleted(action, executor.requestThreadFor(desc, concurrency));
+      }
+      whenCompleted = null;
       this.notifyAll();
     }
     
@@ -919,6 +933,23 @@ public class ManagedEntityImpl implements ManagedEntity {
         throw new RuntimeException(e);
       }
     }
+
+    /**
+     * Runs the given action once the passives have completed this request, without blocking the calling thread.  If
+     * they haven't yet, the action is handed back to this request's processor thread rather than run on the thread
+     * delivering the passive acknowledgements.
+     */
+    public void whenPassivesComplete(Runnable action) {
+      ActivePassiveAckWaiter scheduled;
+      synchronized (this) {
+        scheduled = waitFor;
+        if (null == scheduled) {
+          whenCompleted.add(action);
+          return;
+        }
+      }
+      scheduled.runWhenCompleted(action, executor.requestThreadFor(desc, concurrency));
+    }
   };
   
   private static class DefermentQueue<T> implements Iterable<T> {
@@ -1047,32 +1078,47 @@ public class ManagedEntityImpl implements ManagedEntity {
     
     public void complete() {
       if (result != null) {
-        if (setOnce != null) {
-          setOnce.waitForPassives();
-        }
-        result.accept(null);
+        afterPassives(() -> {
+          result.accept(null);
+          finish();
+        });
+      } else {
+        finish();
       }
-      finish();
     }  
     
     public void complete(byte[] value) {
       if (result != null) {
-        if (setOnce != null) {
-          setOnce.waitForPassives();
-        }
-        result.accept(value);
+        afterPassives(() -> {
+          result.accept(value);
+          finish();
+        });
+      } else {
+        finish();
       }
-      finish();
     }
     
     public void failure(EntityException ee) {
       if (error != null) {
-        if (setOnce != null) {
-          setOnce.waitForPassives();
-        }
-        error.accept(ee);
+        afterPassives(() -> {
+          error.accept(ee);
+          finish();
+        });
+      } else {
+        finish();
+      }
+    }
+
+    /**
+     * The response can't be sent until the passives have completed the request but, rather than holding the request
+     * processor thread until then, it is queued back to that thread once the last passive completion arrives.
+     */
+    private void afterPassives(Runnable response) {
+      if (setOnce != null) {
+        setOnce.whenPassivesComplete(response);
+      } else {
+        response.run();
       }
-      finish();
     }
   }
 }
@@ -25,7 +25,10 @@ import org.terracotta.entity.MessageCodec;
 import org.terracotta.entity.MessageCodecException;
 
 /**
- *
+ * The raw payload of an entity message and, once decoded, the message itself.
+ * <p>
+ * The raw array is the one read from the network when the message was hydrated.  It is shared, not copied, with the
+ * replicated message sent to the passives and with the codec, so it must never be modified.
  */
 public class MessagePayload {
   
@@ -80,4 +80,14 @@ public class NoopEntityMessage implements VoltronEntityMessage {
     // No instance for this type.
     return null;
   }
+
+  @Override
+  public Object getSchedulingKey() {
+    return descriptor.getEntityID();
+  }
+
+  @Override
+  public boolean flush() {
+    return false;
+  }
 }
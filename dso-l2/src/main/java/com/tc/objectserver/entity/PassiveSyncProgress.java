@@ -0,0 +1,141 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.l2.msg.ReplicationMessage;
+import com.tc.net.NodeID;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Tracks a passive sync to one passive.
+ * <p>
+ * Every sync message sent to the passive holds a slot of a bounded window until the passive acknowledges it as
+ * completed.  Once the window is full, the threads driving the sync block until the passive catches up so the backlog
+ * in the replication stage of the passive stays bounded no matter how many entities are synced at once.
+ */
+public class PassiveSyncProgress {
+  private final NodeID passive;
+  private final int totalEntities;
+  private final int windowSize;
+  private final Semaphore window;
+  private final AtomicInteger entitiesDone = new AtomicInteger();
+  private final AtomicLong messagesSent = new AtomicLong();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final long startTime = System.nanoTime();
+  private volatile long endTime = 0;
+
+  public PassiveSyncProgress(NodeID passive, int totalEntities, int window) {
+    this.passive = passive;
+    this.totalEntities = totalEntities;
+    this.windowSize = Math.max(1, window);
+    this.window = new Semaphore(this.windowSize);
+  }
+
+  public NodeID getPassive() {
+    return passive;
+  }
+
+  /**
+   * Waits for a slot in the window for the given message and counts it as sent.  The caller must hand the waiter of
+   * the message to {@link #release(ActivePassiveAckWaiter)} once it is replicated.
+   */
+  void acquire(ReplicationMessage msg) throws InterruptedException {
+    window.acquire();
+    messagesSent.incrementAndGet();
+    byte[] data = msg.getExtendedData();
+    if (data != null) {
+      bytesSent.addAndGet(data.length);
+    }
+  }
+
+  /**
+   * Gives the slot of a message back to the window once the passive has completed it.
+   */
+  void release(ActivePassiveAckWaiter waiter) {
+    waiter.runWhenCompleted(window::release);
+  }
+
+  /**
+   * @return the number of entities synced so far
+   */
+  int entitySynced() {
+    return entitiesDone.incrementAndGet();
+  }
+
+  void finished() {
+    endTime = System.nanoTime();
+  }
+
+  public boolean isFinished() {
+    return endTime != 0;
+  }
+
+  public int getTotalEntities() {
+    return totalEntities;
+  }
+
+  public int getEntitiesDone() {
+    return entitiesDone.get();
+  }
+
+  public long getMessagesSent() {
+    return messagesSent.get();
+  }
+
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  public long getElapsedMillis() {
+    long end = isFinished() ? endTime : System.nanoTime();
+    return TimeUnit.NANOSECONDS.toMillis(end - startTime);
+  }
+
+  /**
+   * @return the estimated time, in milliseconds, left to sync the remaining entities at the rate seen so far or -1 if
+   * no entity has been synced yet
+   */
+  public long getEstimatedMillisRemaining() {
+    int done = entitiesDone.get();
+    if (isFinished() || done >= totalEntities) {
+      return 0;
+    } else if (done == 0) {
+      return -1;
+    } else {
+      return getElapsedMillis() * (totalEntities - done) / done;
+    }
+  }
+
+  @Override
+  public String toString() {
+    long eta = getEstimatedMillisRemaining();
+    return "PassiveSyncProgress{" + "passive=" + passive + ", entities=" + getEntitiesDone() + "/" + totalEntities
+        + ", messages=" + getMessagesSent() + ", bytes=" + getBytesSent() + ", elapsed=" + getElapsedMillis() + "ms"
+        + ", eta=" + (eta < 0 ? "unknown" : eta + "ms") + ", inflight=" + inFlight() + (isFinished() ? ", finished" : "") + '}';
+  }
+
+  private int inFlight() {
+    return windowSize - window.availablePermits();
+  }
+}
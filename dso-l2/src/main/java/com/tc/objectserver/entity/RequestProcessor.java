@@ -31,6 +31,7 @@ import com.tc.objectserver.api.ServerEntityRequest;
 import com.tc.util.Assert;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import org.terracotta.entity.ConcurrencyStrategy;
 
 
@@ -76,6 +77,22 @@ public class RequestProcessor {
     return token;
   }
   
+  /**
+   * @return An executor which runs each action on the request processor thread of the given entity and concurrency key,
+   * after whatever is already queued there
+   */
+  public Executor requestThreadFor(EntityDescriptor entity, int concurrencyKey) {
+    return (action) -> requestExecution.addMultiThreaded(new Completion(entity, action, concurrencyKey));
+  }
+  
+  private static Object schedulingKeyFor(EntityDescriptor entity, int key) {
+    if (key == ConcurrencyStrategy.UNIVERSAL_KEY) {
+      return null;
+    }
+//  create some additional entropy so all entities are not ordered the same
+    return key ^ entity.getEntityID().hashCode();
+  }
+  
   private static ReplicationMessage createReplicationMessage(EntityDescriptor id, ClientID src,
       ServerEntityAction type, TransactionID tid, TransactionID oldest, byte[] payload, int concurrency) {
     ReplicationMessage.ReplicationType actionCode = ReplicationMessage.ReplicationType.NOOP;
@@ -132,11 +149,7 @@ public class RequestProcessor {
 
     @Override
     public Object getSchedulingKey() {
-      if (key == ConcurrencyStrategy.UNIVERSAL_KEY) {
-        return null;
-      }
-//  create some additional entropy so all entities are not ordered the same
-      return key ^ entity.getEntityID().hashCode();
+      return schedulingKeyFor(entity, key);
     }
 //  Runnable so handler can cast and execute
     @Override
@@ -146,14 +159,13 @@ public class RequestProcessor {
     
     void invoke()  {
       try {
-        // NOTE:  We want to wait to hear that the passive has received the replicated invoke.
+        // NOTE:  We want to wait to hear that the passive has received the replicated invoke.  This still blocks since the
+        //  invokes of a concurrency key must run in order but it only waits for receipt, not for the passive to run it.
         this.replicationWaiter.waitForReceived();
         // We can now run the invoke.
         invoke.run();
-        // Now that we are done, wait for the passive to finish.
-        this.replicationWaiter.waitForCompleted();
-        // We are now completely finished.
-        finish();
+        // Rather than holding this thread until the passive finishes, we are completely finished once it does.
+        this.replicationWaiter.runWhenCompleted(this::finish);
       } catch (InterruptedException interrupted) {
 //  shutdown logic?  uniterruptable?
         throw new RuntimeException(interrupted);
@@ -184,4 +196,35 @@ public class RequestProcessor {
       }
     }
   }
+  
+  /**
+   * Work handed back to the request processor thread of an entity and concurrency key once its request has completed
+   * on the passives.  Unlike the request itself, it never flushes the other queues.
+   */
+  private static class Completion implements MultiThreadedEventContext, Runnable {
+    private final EntityDescriptor entity;
+    private final Runnable action;
+    private final int key;
+
+    Completion(EntityDescriptor entity, Runnable action, int key) {
+      this.entity = entity;
+      this.action = action;
+      this.key = key;
+    }
+
+    @Override
+    public Object getSchedulingKey() {
+      return schedulingKeyFor(entity, key);
+    }
+
+    @Override
+    public void run() {
+      action.run();
+    }
+
+    @Override
+    public boolean flush() {
+      return false;
+    }
+  }
 }
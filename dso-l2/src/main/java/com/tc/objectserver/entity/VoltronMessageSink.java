@@ -20,33 +20,110 @@ package com.tc.objectserver.entity;
 
 import com.tc.entity.MessageCodecSupplier;
 import com.tc.async.api.Sink;
+import com.tc.async.api.SpecializedEventContext;
 import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.NetworkVoltronEntityMultiMessage;
 import com.tc.entity.VoltronEntityMessage;
 import com.tc.net.protocol.tcm.HydrateContext;
 import com.tc.net.protocol.tcm.TCMessage;
 import com.tc.net.protocol.tcm.TCMessageSink;
+import com.tc.stats.Stats;
 
 public class VoltronMessageSink implements TCMessageSink {
   private final Sink<VoltronEntityMessage> destSink;
   private final Sink<HydrateContext> hydrateSink;
   private final MessageCodecSupplier codecSupplier;
+  private final Sink<NetworkVoltronEntityMultiMessage> multiSink;
   
 
   public VoltronMessageSink(Sink<VoltronEntityMessage> destSink, Sink<HydrateContext> hydrateSink, MessageCodecSupplier codecSupplier) {
     this.destSink = destSink;
     this.hydrateSink = hydrateSink;
     this.codecSupplier = codecSupplier;
+    this.multiSink = new MultiMessageSink(destSink);
   }
 
   @Override
   public void putMessage(TCMessage message) { 
-    if (message instanceof NetworkVoltronEntityMessage) {
-      ((NetworkVoltronEntityMessage)message).setMessageCodecSupplier(codecSupplier);
+    if (message instanceof NetworkVoltronEntityMultiMessage) {
+      ((NetworkVoltronEntityMultiMessage)message).setMessageCodecSupplier(codecSupplier);
+      HydrateContext<NetworkVoltronEntityMultiMessage> context = new HydrateContext<>(message, multiSink);
+      hydrateSink.addMultiThreaded(context);
+    } else {
+      if (message instanceof NetworkVoltronEntityMessage) {
+        ((NetworkVoltronEntityMessage)message).setMessageCodecSupplier(codecSupplier);
+      }
+      HydrateContext<VoltronEntityMessage> context = new HydrateContext<>(message, destSink);
+      hydrateSink.addMultiThreaded(context);
+    }
+  }
+
+  /**
+   * Hands the messages carried by a multi-message on to the destination, in order, as if they had arrived one by one.
+   * The hydrate stage is keyed by client so this keeps the order of each client's transactions.
+   */
+  private static class MultiMessageSink implements Sink<NetworkVoltronEntityMultiMessage> {
+    private final Sink<VoltronEntityMessage> sink;
+
+    private MultiMessageSink(Sink<VoltronEntityMessage> sink) {
+      this.sink = sink;
+    }
+
+    @Override
+    public void addSingleThreaded(NetworkVoltronEntityMultiMessage context) {
+      for (VoltronEntityMessage message : context.getMessages()) {
+        sink.addMultiThreaded(message);
+      }
+    }
+
+    @Override
+    public void addMultiThreaded(NetworkVoltronEntityMultiMessage context) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addSpecialized(SpecializedEventContext specialized) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int size() {
+      return sink.size();
+    }
+
+    @Override
+    public void clear() {
+      sink.clear();
+    }
+
+    @Override
+    public void setClosed(boolean closed) {
+      sink.setClosed(closed);
+    }
+
+    @Override
+    public void enableStatsCollection(boolean enable) {
+      sink.enableStatsCollection(enable);
+    }
+
+    @Override
+    public boolean isStatsCollectionEnabled() {
+      return sink.isStatsCollectionEnabled();
+    }
+
+    @Override
+    public Stats getStats(long frequency) {
+      return sink.getStats(frequency);
+    }
+
+    @Override
+    public Stats getStatsAndReset(long frequency) {
+      return sink.getStatsAndReset(frequency);
+    }
+
+    @Override
+    public void resetStats() {
+      sink.resetStats();
     }
-    HydrateContext<VoltronEntityMessage> context = new HydrateContext<>(message, destSink);
-    hydrateSink.addMultiThreaded(context);
   }
-  
-    
-  
 }
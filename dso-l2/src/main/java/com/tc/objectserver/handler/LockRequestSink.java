@@ -0,0 +1,124 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import com.tc.async.api.Sink;
+import com.tc.async.api.SpecializedEventContext;
+import com.tc.net.ClientID;
+import com.tc.object.locks.LockRequestBatchContext;
+import com.tc.object.locks.RecallBatchContext;
+import com.tc.object.locks.ThreadID;
+import com.tc.object.msg.LockRequestMessage;
+import com.tc.object.msg.LockRequestMessage.RequestType;
+import com.tc.objectserver.locks.LockManager;
+import com.tc.objectserver.locks.LockRequestContext;
+import com.tc.stats.Stats;
+
+/**
+ * Splits each hydrated LockRequestMessage into the requests it carries, one per lock, and hands them on to the lock
+ * request stage scheduled by their lock store segment.  The requests for any one lock keep the order they were sent
+ * in while those for locks in different segments are handled in parallel.
+ */
+public class LockRequestSink implements Sink<LockRequestMessage> {
+  private final Sink<LockRequestContext> sink;
+  private final LockManager              lockManager;
+
+  public LockRequestSink(Sink<LockRequestContext> sink, LockManager lockManager) {
+    this.sink = sink;
+    this.lockManager = lockManager;
+  }
+
+  @Override
+  public void addMultiThreaded(LockRequestMessage lrm) {
+    ClientID cid = (ClientID) lrm.getSourceNodeID();
+
+    switch (lrm.getRequestType()) {
+      case BATCHED_RECALL_COMMIT:
+        for (RecallBatchContext recallContext : lrm.getRecallBatchedContexts()) {
+          sink.addMultiThreaded(new LockRequestContext(cid, RequestType.RECALL_COMMIT, recallContext.getLockID(),
+                                                       ThreadID.VM_ID, null, -1, recallContext.getContexts(),
+                                                       lockManager.segmentFor(recallContext.getLockID())));
+        }
+        return;
+      case BATCHED_REQUESTS:
+        for (LockRequestBatchContext request : lrm.getBatchedRequests()) {
+          sink.addMultiThreaded(new LockRequestContext(cid, request.getRequestType(), request.getLockID(),
+                                                       request.getThreadID(), request.getLockLevel(),
+                                                       request.getTimeout(),
+                                                       lockManager.segmentFor(request.getLockID())));
+        }
+        return;
+      default:
+        sink.addMultiThreaded(new LockRequestContext(cid, lrm.getRequestType(), lrm.getLockID(), lrm.getThreadID(),
+                                                     lrm.getLockLevel(), lrm.getTimeout(), lrm.getContexts(),
+                                                     lockManager.segmentFor(lrm.getLockID())));
+        return;
+    }
+  }
+
+  @Override
+  public void addSingleThreaded(LockRequestMessage context) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addSpecialized(SpecializedEventContext specialized) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int size() {
+    return sink.size();
+  }
+
+  @Override
+  public void clear() {
+    sink.clear();
+  }
+
+  @Override
+  public void setClosed(boolean closed) {
+    sink.setClosed(closed);
+  }
+
+  @Override
+  public void enableStatsCollection(boolean enable) {
+    sink.enableStatsCollection(enable);
+  }
+
+  @Override
+  public boolean isStatsCollectionEnabled() {
+    return sink.isStatsCollectionEnabled();
+  }
+
+  @Override
+  public Stats getStats(long frequency) {
+    return sink.getStats(frequency);
+  }
+
+  @Override
+  public Stats getStatsAndReset(long frequency) {
+    return sink.getStatsAndReset(frequency);
+  }
+
+  @Override
+  public void resetStats() {
+    sink.resetStats();
+  }
+}
@@ -45,6 +45,7 @@ import com.tc.objectserver.api.ManagedEntity;
 import com.tc.objectserver.api.ServerEntityAction;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
 import com.tc.objectserver.entity.MessagePayload;
+import com.tc.objectserver.entity.NoopEntityMessage;
 import com.tc.objectserver.api.Retiree;
 import com.tc.objectserver.entity.ServerEntityRequestResponse;
 import com.tc.objectserver.persistence.EntityData;
@@ -60,6 +61,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import org.terracotta.entity.EntityMessage;
 import org.terracotta.entity.MessageCodecException;
@@ -80,6 +82,13 @@ public class ProcessTransactionHandler {
   // Data required for handling transaction resends.
   private SparseList<ResendVoltronEntityMessage> resendReplayList;
   private List<ResendVoltronEntityMessage> resendNewList;
+  // Checked by every stage thread before each message so an entity's resends are replayed before any new message for it.
+  private volatile boolean resendsPending = true;
+  private boolean resendsPartitioned = false;
+  // Resends, grouped by the entity they target, which that entity's stage thread has not yet replayed.
+  private final ConcurrentHashMap<EntityID, List<ResendVoltronEntityMessage>> resendsByEntity = new ConcurrentHashMap<>();
+  private final AtomicInteger unreplayedEntities = new AtomicInteger();
+  private Sink<VoltronEntityMessage> voltronSink;
   
   private Sink<TCMessage> multiSend;
   private ConcurrentHashMap<ClientID, TCMessage> invokeReturn = new ConcurrentHashMap<>();
@@ -106,11 +115,14 @@ public class ProcessTransactionHandler {
   private final AbstractEventHandler<VoltronEntityMessage> voltronHandler = new AbstractEventHandler<VoltronEntityMessage>() {
     @Override
     public void handleEvent(VoltronEntityMessage message) throws EventHandlerException {
-//  resends are only processed the first time an event is handled.  
+//  an entity's resends are replayed the first time an event for that entity is handled.  
 //  resends are processed in this manner so invokes are scheduled by the expected stage thread
 //  see ManagedEntityImpl.scheduleInOrder()
 //  the call always happens and immediately returns if the resends have already been processed
-      processAllResends();
+      processAllResends(message);
+      if (message instanceof ReplayResendsMessage) {
+        return;
+      }
       ClientID sourceNodeID = message.getSource();
       EntityDescriptor descriptor = message.getEntityDescriptor();
       ServerEntityAction action = decodeMessageType(message.getVoltronType());
@@ -134,6 +146,7 @@ public class ProcessTransactionHandler {
       
       Stage<TCMessage> mss = server.getStage(ServerConfigurationContext.RESPOND_TO_REQUEST_STAGE, TCMessage.class);
       multiSend = mss.getSink();
+      voltronSink = server.getStage(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE, VoltronEntityMessage.class).getSink();
       
 //  go right to active state.  this only gets initialized once ACTIVE-COORDINATOR is entered
       entityManager.enterActiveState();
@@ -157,9 +170,7 @@ public class ProcessTransactionHandler {
     return new Iterable<ManagedEntity>() {
       @Override
       public Iterator<ManagedEntity> iterator() {
-        synchronized (ProcessTransactionHandler.this) {
-          return new ArrayList<ManagedEntity>(entityManager.getAll()).iterator();
-        }
+        return new ArrayList<ManagedEntity>(entityManager.getAll()).iterator();
       }
     };
   }
@@ -187,7 +198,10 @@ public class ProcessTransactionHandler {
   }
 // TODO:  Make sure that the ReplicatedTransactionHandler is flushed before 
 //   adding any new messages to the PTH
-  private synchronized void addMessage(ClientID sourceNodeID, EntityDescriptor descriptor, ServerEntityAction action, MessagePayload entityMessage, TransactionID transactionID, boolean doesRequireReplication, TransactionID oldestTransactionOnClient) {
+// NOTE:  this is called concurrently by the stage threads but messages are scheduled by EntityID so each entity is only
+//   ever handled by one of them.  Everything shared between entities (the persistors, the entity manager, and the
+//   multi-response map) must be thread-safe.
+  private void addMessage(ClientID sourceNodeID, EntityDescriptor descriptor, ServerEntityAction action, MessagePayload entityMessage, TransactionID transactionID, boolean doesRequireReplication, TransactionID oldestTransactionOnClient) {
     // Version error or duplicate creation requests will manifest as exceptions here so catch them so we can send them back
     //  over the wire as an error in the request.
     EntityID entityID = descriptor.getEntityID();
@@ -360,7 +374,7 @@ public class ProcessTransactionHandler {
     }
   }
 
-  public void handleResentMessage(ResendVoltronEntityMessage resentMessage) {
+  public synchronized void handleResentMessage(ResendVoltronEntityMessage resentMessage) {
     boolean cached = false;
     byte[] result = null;
     int index = -1;
@@ -408,28 +422,71 @@ public class ProcessTransactionHandler {
     }
   }
   
-  private void processAllResends() {
+  private void processAllResends(VoltronEntityMessage message) {
+    if (this.resendsPending) {
+      partitionResends();
+      replayResendsFor(message.getEntityDescriptor().getEntityID());
+    }
+  }
+
+  // The first stage thread to see a message groups the resends by entity while any others wait for it, here.
+  // Each group is then replayed by the stage thread which owns that entity so the resends are sharded like any
+  // other message:  an entity's resends still run in their original order, and before any new message for it.
+  private synchronized void partitionResends() {
  //   TODO:  investigate the need to fold FETCH and RELEASE resends on top of each other
-    if (this.resendReplayList == null && this.resendNewList == null) {
+    if (this.resendsPartitioned) {
       return;
     }
     // Clear the transaction order persistor since we are starting fresh.
     this.transactionOrderPersistor.clearAllRecords();
     
-    // Replay all the already-ordered messages.
+    // The already-ordered messages go first, followed by all the new messages found during resends.
     for (ResendVoltronEntityMessage message : this.resendReplayList) {
-      executeResend(message);
+      groupResend(message);
     }
     this.resendReplayList = null;
-    
-    // Replay all the new messages found during resends.
     for (ResendVoltronEntityMessage message : this.resendNewList) {
-      executeResend(message);
+      groupResend(message);
+    }
+    this.resendNewList = null;
+    this.resendsPartitioned = true;
+    
+    this.unreplayedEntities.set(this.resendsByEntity.size());
+    if (this.resendsByEntity.isEmpty()) {
+      finishResends();
+    } else if (this.voltronSink == null) {
+//  no stage to hand the groups to so replay them all here
+      for (EntityID entity : this.resendsByEntity.keySet()) {
+        replayResendsFor(entity);
+      }
+    } else {
+//  wake the owning thread of every entity with resends, in case no new message for it ever arrives
+      for (List<ResendVoltronEntityMessage> resends : this.resendsByEntity.values()) {
+        this.voltronSink.addMultiThreaded(new ReplayResendsMessage(resends.get(0).getEntityDescriptor()));
+      }
+    }
+  }
+  
+  private void groupResend(ResendVoltronEntityMessage message) {
+    this.resendsByEntity.computeIfAbsent(message.getEntityDescriptor().getEntityID(), k -> new ArrayList<>()).add(message);
+  }
+  
+  private void replayResendsFor(EntityID entity) {
+    List<ResendVoltronEntityMessage> resends = this.resendsByEntity.remove(entity);
+    if (resends != null) {
+      for (ResendVoltronEntityMessage message : resends) {
+        executeResend(message);
+      }
+      if (this.unreplayedEntities.decrementAndGet() == 0) {
+        finishResends();
+      }
     }
+  }
+  
+  private void finishResends() {
 //  remove tracking for any resent create journal entries
     entityPersistor.removeTrackingForClient(ClientID.NULL_ID);
-    
-    this.resendNewList = null;
+    this.resendsPending = false;
   }
 
   private Optional<MessageChannel> safeGetChannel(NodeID id) {
@@ -489,6 +546,15 @@ public class ProcessTransactionHandler {
     return action;
   }
   
+  /**
+   * Routes the replay of an entity's resends to the stage thread that owns the entity.  It carries no work of its own.
+   */
+  private static class ReplayResendsMessage extends NoopEntityMessage {
+    public ReplayResendsMessage(EntityDescriptor descriptor) {
+      super(descriptor);
+    }
+  }
+  
   private static class Result {
     ClientID client;
     TransactionID tid;
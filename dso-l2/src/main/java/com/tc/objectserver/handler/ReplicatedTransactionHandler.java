@@ -31,7 +31,6 @@ import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.net.ClientID;
 import com.tc.net.NodeID;
-import com.tc.net.ServerID;
 import com.tc.net.groups.AbstractGroupMessage;
 import com.tc.net.groups.GroupException;
 import com.tc.net.groups.GroupManager;
@@ -49,14 +48,20 @@ import com.tc.objectserver.entity.PlatformEntity;
 import com.tc.objectserver.entity.ServerEntityRequestResponse;
 import com.tc.objectserver.persistence.EntityPersistor;
 import com.tc.objectserver.persistence.TransactionOrderPersistor;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
+import com.tc.util.concurrent.TaskRunner;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -79,14 +84,18 @@ public class ReplicatedTransactionHandler {
   private Sink<ReplicationMessage> loopback;
   
   private final SyncState state = new SyncState();
+  private final ReplicationAckCoalescer acks;
   
   public ReplicatedTransactionHandler(StateManager state, TransactionOrderPersistor transactionOrderPersistor, 
-      EntityManager manager, EntityPersistor entityPersistor, GroupManager<AbstractGroupMessage> groupManager) {
+      EntityManager manager, EntityPersistor entityPersistor, GroupManager<AbstractGroupMessage> groupManager, TaskRunner taskRunner) {
     this.stateManager = state;
     this.entityManager = manager;
     this.entityPersistor = entityPersistor;
     this.groupManager = groupManager;
     this.orderedTransactions = transactionOrderPersistor;
+    this.acks = new ReplicationAckCoalescer(groupManager, taskRunner.newTimer("Replication ack coalescer"),
+        TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.L2_NHA_REPLICATION_ACK_DELAY, 0), 
+        TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_NHA_REPLICATION_ACK_MAX_PENDING, 64));
     try {
       platform = entityManager.getEntity(PlatformEntity.PLATFORM_ID, PlatformEntity.VERSION).get();
     } catch (EntityException ee) {
@@ -97,12 +106,25 @@ public class ReplicatedTransactionHandler {
   private final EventHandler<ReplicationMessage> eventHorizon = new AbstractEventHandler<ReplicationMessage>() {
     @Override
     public void handleEvent(ReplicationMessage message) throws EventHandlerException {
+      handleEvents(Collections.singletonList(message));
+    }
+
+    @Override
+    public void handleEvents(Collection<ReplicationMessage> messages) throws EventHandlerException {
+  //  the acks for the whole batch go to the active together once it is handled
+      acks.batchStarted();
       try {
-        processMessage(message);
-      } catch (Throwable t) {
-        // We don't expect to see an exception executing a replicated message.
-        // TODO:  Find a better way to handle this error.
-        throw Assert.failure("Unexpected exception executing replicated message", t);
+        for (ReplicationMessage message : messages) {
+          try {
+            processMessage(message);
+          } catch (Throwable t) {
+            // We don't expect to see an exception executing a replicated message.
+            // TODO:  Find a better way to handle this error.
+            throw Assert.failure("Unexpected exception executing replicated message", t);
+          }
+        }
+      } finally {
+        acks.batchEnded();
       }
     }
 
@@ -158,6 +180,8 @@ public class ReplicatedTransactionHandler {
       } catch (InterruptedException ie) {
         throw new RuntimeException(ie);
       }
+  //  everything has completed, send the last of the acks
+      acks.close();
     }    
   };
   
@@ -172,6 +196,7 @@ public class ReplicatedTransactionHandler {
   private void processMessage(ReplicationMessage rep) throws EntityException {
     switch (rep.getType()) {
       case ReplicationMessage.REPLICATE:
+        acks.received(rep);
         if (state.ignore(rep)) {
           LOGGER.debug("Ignoring:" + rep);
           acknowledge(rep);
@@ -183,6 +208,7 @@ public class ReplicatedTransactionHandler {
         }
         break;
       case ReplicationMessage.SYNC:
+        acks.received(rep);
         if (!state.destroyed(rep.getEntityID())) {
           LOGGER.debug("Sync:" + rep);
           syncMessageReceived(rep);
@@ -204,9 +230,6 @@ public class ReplicatedTransactionHandler {
     TransactionID oldestTransactionOnClient = rep.getOldestTransactionOnClient();
     EntityDescriptor descriptor = rep.getEntityDescriptor();
 
-    // Send the RECEIVED ack before we run this.
-    ackReceived(rep);
-    
     // Note that we only want to persist the messages with a true sourceNodeID.  Synthetic invocations and sync messages
     // don't have one (although sync messages shouldn't come down this path).
     if (!ClientInstanceID.NULL_ID.equals(sourceNodeID)) {
@@ -321,7 +344,6 @@ public class ReplicatedTransactionHandler {
     EntityID eid = sync.getEntityDescriptor().getEntityID();
     long version = sync.getVersion();
     
-    ackReceived(sync);
     beforeSyncAction(sync);
     
     if (sync.getReplicationType() == ReplicationMessage.ReplicationType.SYNC_ENTITY_BEGIN && !eid.equals(EntityID.NULL_ID)) {
@@ -473,33 +495,11 @@ public class ReplicatedTransactionHandler {
     }
   }
 
-  private void ackReceived(ReplicationMessage rep) {
-    try {
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug("acking(received) " + rep);
-      }
-      if (!rep.messageFrom().equals(ServerID.NULL_ID)) {
-        groupManager.sendTo(rep.messageFrom(), ReplicationMessageAck.createReceivedAck(rep.getMessageID()));
-      }
-    } catch (GroupException ge) {
-      // Active must have died.  Swallow the exception after logging.
-      LOGGER.warn("active died on received ack", ge);
-    }
-  }
-
   private void acknowledge(ReplicationMessage rep) {
-//  when is the right time to send the ack?
-    try {
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug("acking(completed) " + rep);
-      }
-      if (!rep.messageFrom().equals(ServerID.NULL_ID)) {
-        groupManager.sendTo(rep.messageFrom(), ReplicationMessageAck.createCompletedAck(rep.getMessageID()));
-      }
-    } catch (GroupException ge) {
-      // Active must have died.  Swallow the exception after logging.
-      LOGGER.warn("active died on ack", ge);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("acking(completed) " + rep);
     }
+    acks.completed(rep);
   }
 
   private static ServerEntityAction decodeReplicationType(ReplicationMessage.ReplicationType networkType) {
@@ -531,73 +531,69 @@ public class ReplicatedTransactionHandler {
     }
   }  
   
- private class SyncState {
-    private LinkedList<ReplicationMessage> defer = new LinkedList<>();
-    
+  /**
+   * The active syncs several entities at once so the sync messages of different entities are interleaved.  The keys
+   * of any one entity are still synced one after another, so each entity in progress has a single current key.
+   */
+  private class SyncState {
     private final Set<EntityID> syncdEntities = new HashSet<>();
-    private final Set<Integer> syncdKeys = new HashSet<>();
-    private EntityID syncing;
-    private int currentKey = -1;
-    private boolean destroyed = false;
+    private final Map<EntityID, EntitySyncState> syncing = new HashMap<>();
     private boolean finished = false;
     private boolean started = false;
-    
+
     private void start() {
       started = true;
     }
-    
+
     private void startEntity(EntityID eid) {
-      Assert.assertNull(syncing);
-      syncing = eid;
+      Assert.assertFalse(syncing.containsKey(eid));
+      syncing.put(eid, new EntitySyncState());
       LOGGER.debug("Starting " + eid);
     }
-    
+
     private boolean destroyed(EntityID eid) {
-      return (eid.equals(syncing) && destroyed) || syncdEntities.contains(eid);
+      EntitySyncState entity = syncing.get(eid);
+      return (entity != null && entity.destroyed) || syncdEntities.contains(eid);
     }
-    
+
     private void endEntity(EntityID eid) {
-      Assert.assertEquals(syncing, eid);
+      Assert.assertNotNull(syncing.remove(eid));
       syncdEntities.add(eid);
-      syncdKeys.clear();
-      syncing = null;
       LOGGER.debug("Ending " + eid);
     }
-    
+
     private void startConcurrency(EntityID eid, int concurrency) {
-      if (destroyed && !syncing.equals(eid)) {
-        destroyed = false;
-      }
-      Assert.assertEquals(syncing, eid);
-      currentKey = concurrency;
+      EntitySyncState entity = syncing.get(eid);
+      Assert.assertNotNull(entity);
+      entity.currentKey = concurrency;
       if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug("Starting " + eid + "/" + currentKey);
+        LOGGER.debug("Starting " + eid + "/" + concurrency);
       }
     }
-    
+
     private Deque<ReplicationMessage> endConcurrency(EntityID eid, int concurrency) {
+      EntitySyncState entity = syncing.get(eid);
+      if (entity == null || concurrency != entity.currentKey) {
+        throw new AssertionError();
+      }
       try {
-        if (!eid.equals(syncing) || concurrency != currentKey) {
-          throw new AssertionError();
-        }
-        Assert.assertEquals(syncing, eid);
-        Assert.assertEquals(currentKey, concurrency);
-        syncdKeys.add(concurrency);
-        currentKey = -1;
+        entity.syncdKeys.add(concurrency);
+        entity.currentKey = -1;
         if (LOGGER.isDebugEnabled()) {
-          LOGGER.debug("Ending " + eid + "/" + currentKey);
+          LOGGER.debug("Ending " + eid + "/" + concurrency);
         }
-        return defer;
+        return entity.defer;
       } finally {
-        defer = new LinkedList<>();
+        entity.defer = new LinkedList<>();
       }
     }
-    
+
     private void finish() {
+      Assert.assertTrue(syncing.isEmpty());
       syncdEntities.clear();
       finished = true;
     }
-    
+
     private boolean ignore(ReplicationMessage rep) {
       if (finished) {
 //  done with sync, need to apply everything now
@@ -607,17 +603,18 @@ public class ReplicatedTransactionHandler {
         return false;
       }
       EntityID eid = rep.getEntityDescriptor().getEntityID();
+      EntitySyncState entity = syncing.get(eid);
 //  everything else, check
-      if (eid.equals(syncing)) {
-        if (destroyed) {
-//  blackhole this request.  The entity has been destroyed. 
+      if (entity != null) {
+        if (entity.destroyed) {
+//  blackhole this request.  The entity has been destroyed.
           if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Dropping " + rep + " due to destroy");
           }
           return true;
-        } else if (rep.getConcurrency() == currentKey) {
+        } else if (rep.getConcurrency() == entity.currentKey) {
           return false;
-        } else if (!syncdKeys.contains(rep.getConcurrency())) {
+        } else if (!entity.syncdKeys.contains(rep.getConcurrency())) {
 //  ignore, haven't gotten to this key yet
           if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Ignoring " + rep);
@@ -637,40 +634,52 @@ public class ReplicatedTransactionHandler {
       EntityID eid = rep.getEntityDescriptor().getEntityID();
       if (syncdEntities.contains(eid)) {
         return false;
-      } 
-      
+      }
+
+      EntitySyncState entity = syncing.get(eid);
       if (rep.getReplicationType() == ReplicationMessage.ReplicationType.CREATE_ENTITY) {
         syncdEntities.add(eid);
-        destroyed = false;
+        if (entity != null) {
+          entity.destroyed = false;
+        }
         return false;
       }
-      
-      if (eid.equals(syncing)) {
-        if (syncdKeys.contains(rep.getConcurrency())) {
+
+      if (entity != null) {
+        if (entity.syncdKeys.contains(rep.getConcurrency())) {
           return false;
         } else if (rep.getReplicationType() == ReplicationMessage.ReplicationType.NOOP) {
 //  NOOP requests cannot be deferred
           return false;
         } else if (rep.getReplicationType() == ReplicationMessage.ReplicationType.DESTROY_ENTITY) {
-          defer.clear();
-          defer.add(rep);
+//  the deferred messages will never be applied but the active is still waiting for them to complete
+          entity.defer.forEach(ReplicatedTransactionHandler.this::acknowledge);
+          entity.defer.clear();
+          entity.defer.add(rep);
           if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Destroying " + rep);
           }
-          destroyed = true;
+          entity.destroyed = true;
           return false;
-        } else if (currentKey == rep.getConcurrency()) {
+        } else if (entity.currentKey == rep.getConcurrency()) {
           if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Deferring " + rep);
           }
-          defer.add(rep);
+          entity.defer.add(rep);
           return true;
         }
       }
       return false;
     }
-  }  
- 
+  }
+
+  private static class EntitySyncState {
+    private LinkedList<ReplicationMessage> defer = new LinkedList<>();
+    private final Set<Integer> syncdKeys = new HashSet<>();
+    private int currentKey = -1;
+    private boolean destroyed = false;
+  }
+
   public static class BasicServerEntityRequest implements ServerEntityRequest {
     private final ServerEntityAction action;
     private final ClientID source;
@@ -0,0 +1,190 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import com.tc.l2.msg.ReplicationMessage;
+import com.tc.l2.msg.ReplicationMessageAck;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.net.NodeID;
+import com.tc.net.ServerID;
+import com.tc.net.groups.AbstractGroupMessage;
+import com.tc.net.groups.GroupException;
+import com.tc.net.groups.GroupManager;
+import com.tc.util.Assert;
+import com.tc.util.concurrent.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the acks of the replicated messages a passive receives from the active.  Rather than two acks per message,
+ * it sends one ack with the highest replication ID up to which messages have been received, the highest up to which
+ * they have completed and the IDs of messages above that which completed out of order.  The acks held while the
+ * replication stage handles a batch are sent when the batch ends.  Completions that come in between batches are sent
+ * once every message received has completed.  Either way, acks are sent early once the number held reaches the max
+ * pending, or once they have been held for the delay if one is set.  The delay is timed on a timer of the server's
+ * shared task runner.
+ * <p>
+ * Messages received from the server itself (with no originator) aren't part of the stream and aren't acked.
+ */
+public class ReplicationAckCoalescer {
+  private static final TCLogger LOGGER = TCLogging.getLogger(ReplicationAckCoalescer.class);
+  private final GroupManager<AbstractGroupMessage> groupManager;
+  private final long delay;
+  private final int maxPending;
+  private final Timer timer;
+
+  private NodeID active = ServerID.NULL_ID;
+  private long lastReceived = -1;
+  private long ackedReceived = -1;
+  private long ackedCompleted = -1;
+//  the messages are kept so that a completion left over from before the stream started over isn't taken for a new one
+  private final SortedMap<Long, ReplicationMessage> running = new TreeMap<>();
+  private final List<Long> outOfOrder = new ArrayList<>();
+  private int pending = 0;
+  private boolean scheduled = false;
+  private boolean inBatch = false;
+  private boolean closed = false;
+
+  public ReplicationAckCoalescer(GroupManager<AbstractGroupMessage> groupManager, Timer timer, long delay, int maxPending) {
+    this.groupManager = groupManager;
+    this.timer = timer;
+    this.delay = delay;
+    this.maxPending = maxPending;
+  }
+
+  public synchronized void received(ReplicationMessage rep) {
+    if (isLocal(rep)) {
+      return;
+    }
+    long rid = rep.getSequenceID();
+    if (rid == 0) {
+//  the active has started a new stream.  whatever is held for the old one is of no use to it
+      active = rep.messageFrom();
+      lastReceived = -1;
+      ackedReceived = -1;
+      ackedCompleted = -1;
+      running.clear();
+      outOfOrder.clear();
+      pending = 0;
+    }
+    Assert.assertTrue(rid > lastReceived);
+    lastReceived = rid;
+    running.put(rid, rep);
+    held();
+  }
+
+  public synchronized void completed(ReplicationMessage rep) {
+    if (isLocal(rep)) {
+      return;
+    }
+    long rid = rep.getSequenceID();
+    if (running.remove(rid, rep)) {
+      if (rid > completedThrough()) {
+        outOfOrder.add(rid);
+      }
+      held();
+    }
+  }
+
+  /**
+   * Holds the acks of the messages handled from here on until {@link #batchEnded()}.
+   */
+  public synchronized void batchStarted() {
+    inBatch = true;
+  }
+
+  /**
+   * Sends the acks held for the batch, along with any completions held since.
+   */
+  public synchronized void batchEnded() {
+    inBatch = false;
+    flush();
+  }
+
+  /**
+   * Sends whatever acks are held.
+   */
+  public synchronized void flush() {
+    long completed = completedThrough();
+    if (lastReceived == ackedReceived && completed == ackedCompleted && outOfOrder.isEmpty()) {
+      return;
+    }
+    List<Long> exceptions = new ArrayList<>(outOfOrder.size());
+    for (Long rid : outOfOrder) {
+//  those the completed ID has caught up with are covered by it
+      if (rid > completed) {
+        exceptions.add(rid);
+      }
+    }
+    send(ReplicationMessageAck.createAck(lastReceived, completed, exceptions));
+    ackedReceived = lastReceived;
+    ackedCompleted = completed;
+    outOfOrder.clear();
+    pending = 0;
+  }
+
+  /**
+   * Stops the timer.  Acks are sent right away from then on.
+   */
+  public synchronized void close() {
+    closed = true;
+    timer.cancel();
+    flush();
+  }
+
+  private long completedThrough() {
+    return running.isEmpty() ? lastReceived : running.firstKey() - 1;
+  }
+
+  private void held() {
+    pending += 1;
+//  between batches there is nothing more to wait for once every message received has completed
+    if (closed || pending >= maxPending || (!inBatch && running.isEmpty())) {
+      flush();
+    } else if (delay > 0 && !scheduled) {
+      scheduled = true;
+      timer.schedule(() -> {
+        synchronized (ReplicationAckCoalescer.this) {
+          scheduled = false;
+          flush();
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private boolean isLocal(ReplicationMessage rep) {
+    return rep.messageFrom().equals(ServerID.NULL_ID);
+  }
+
+  private void send(ReplicationMessageAck ack) {
+    try {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("acking " + ack);
+      }
+      groupManager.sendTo(active, ack);
+    } catch (GroupException ge) {
+      // Active must have died.  Swallow the exception after logging.
+      LOGGER.warn("active died on ack", ge);
+    }
+  }
+}
@@ -22,6 +22,7 @@ import com.tc.async.api.AbstractEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventHandlerException;
 import com.tc.l2.msg.PassiveSyncMessage;
+import com.tc.l2.msg.ReplicationBatchMessage;
 import com.tc.l2.msg.ReplicationEnvelope;
 import com.tc.l2.msg.ReplicationMessage;
 import static com.tc.l2.msg.ReplicationMessage.ReplicationType.SYNC_BEGIN;
@@ -37,12 +38,16 @@ import com.tc.net.ClientID;
 import com.tc.net.NodeID;
 import com.tc.net.groups.GroupException;
 import com.tc.net.groups.GroupManager;
+import com.tc.net.groups.GroupMessage;
 import com.tc.object.EntityID;
 import com.tc.object.tx.TransactionID;
 import com.tc.util.Assert;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -64,6 +69,42 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
 
   @Override
   public void handleEvent(ReplicationEnvelope context) throws EventHandlerException {
+    handleEvents(Collections.singletonList(context));
+  }
+
+  /**
+   * Consecutive messages for the same passive are sent as one batch.  The order of the messages for each passive is 
+   * kept, both within a batch and between batches, and a passive's pending batch is sent before any change to its 
+   * channel.
+   */
+  @Override
+  public void handleEvents(Collection<ReplicationEnvelope> contexts) throws EventHandlerException {
+    Map<NodeID, ReplicationBatchMessage> batches = new LinkedHashMap<>();
+    for (ReplicationEnvelope context : contexts) {
+      ReplicationMessage msg = context.getMessage();
+      if (msg == null || msg.getType() == ReplicationMessage.START) {
+        send(context.getDestination(), batches.remove(context.getDestination()));
+      }
+      handleEnvelope(context, batches);
+    }
+    for (Map.Entry<NodeID, ReplicationBatchMessage> batch : batches.entrySet()) {
+      send(batch.getKey(), batch.getValue());
+    }
+  }
+  
+  private void send(NodeID nodeid, ReplicationBatchMessage batch) {
+    if (batch == null) {
+      return;
+    }
+    GroupMessage msg = (batch.size() == 1) ? batch.getSingleMessage() : batch;
+    try {
+      group.sendTo(nodeid, msg);
+    }  catch (GroupException ge) {
+      logger.info(msg, ge);
+    }
+  }
+  
+  private void handleEnvelope(ReplicationEnvelope context, Map<NodeID, ReplicationBatchMessage> batches) {
     NodeID nodeid = context.getDestination();
     ReplicationMessage msg = context.getMessage();
     if (msg == null) {
@@ -86,19 +127,17 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
         return;
       }   
 // filter out messages based on sync state.
+      ReplicationMessage.ReplicationType type = msg.getReplicationType();
       if (filterMessage(syncing, nodeid, msg)) {
 //  if a message is filtered, it is turned to a NOOP so ordering can be preserved 
-//  on the passive for possible resends
-        msg.setNoop();
+//  on the passive for possible resends.  the message itself is left alone since other passives may need it
+        type = ReplicationMessage.ReplicationType.NOOP;
       }
 //  sending message on to passive, additional filtering may happen on the other side.
 //  the only messages that are relevant before passive sync starts are create messages
-      try {
-        msg.setReplicationID(rOrder.getAndIncrement());
-        group.sendTo(nodeid, msg);
-      }  catch (GroupException ge) {
-        logger.info(msg, ge);
-      }
+      long rid = rOrder.getAndIncrement();
+      context.sent(rid);
+      batches.computeIfAbsent(nodeid, n->new ReplicationBatchMessage()).add(msg, rid, type);
     }
   }
   
@@ -181,43 +220,45 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
     super.initialize(context);
   }
   
+  /**
+   * Filter state for a passive sync.  The entities of a sync are interleaved on the wire (several are synced at once)
+   * so the progress of each one is tracked separately.
+   */
   private static class SyncState {
     private final Set<EntityID> syncd = new HashSet<>();
-    private EntityID syncingID = EntityID.NULL_ID;
-    private final Set<Integer> syncdID = new HashSet<>();
+    private final Map<EntityID, EntitySync> syncing = new HashMap<>();
+//  entities which were created or destroyed by replication before their sync started.  their sync messages are all dropped
+    private final Set<EntityID> dropped = new HashSet<>();
     private final Set<EntityID> created = new HashSet<>();
     private final Set<EntityID> destroyed = new HashSet<>();
-    private int syncingConcurrency = -1;
-    private ReplicationMessage.ReplicationType lastSeen;
-    private ReplicationMessage.ReplicationType lastSent;
+    private final SequenceValidator seen = new SequenceValidator();
+    private final SequenceValidator sent = new SequenceValidator();
     
     public boolean filter(ReplicationMessage msg) {
       final EntityID eid = msg.getEntityDescriptor().getEntityID();
+      final EntitySync entity = syncing.get(eid);
         switch (validateInput(msg)) {
           case SYNC_BEGIN:
             return true;
           case SYNC_ENTITY_BEGIN:
-            syncingID = eid;
-            syncdID.clear();
-            syncingConcurrency = 0;
 //  if the entity is created through the create message replication, the entity should not be sync'd
-//  set syncid to null so all messages until end get filtered out.  this should not be alot, it just got created
-            if (created.contains(syncingID) || destroyed.contains(eid)) {
-              syncingID = EntityID.NULL_ID;
-              logger.debug("Drop: entity " + syncingID + " was created no sync required");
+//  drop all messages until end.  this should not be alot, it just got created
+            if (created.contains(eid) || destroyed.contains(eid)) {
+              dropped.add(eid);
+              logger.debug("Drop: entity " + eid + " was created no sync required");
               return false;
             }
+            syncing.put(eid, new EntitySync());
             return true;
           case SYNC_ENTITY_CONCURRENCY_BEGIN:
-            if (syncingID == EntityID.NULL_ID) {
+            if (entity == null) {
               return false;
             }
-            Assert.assertEquals(syncingID, eid);
-            Assert.assertEquals(syncingConcurrency, 0);
-            syncingConcurrency = msg.getConcurrency();
+            Assert.assertEquals(entity.concurrency, 0);
+            entity.concurrency = msg.getConcurrency();
             return true;
           case SYNC_ENTITY_CONCURRENCY_PAYLOAD:
-            if (syncingID == EntityID.NULL_ID) {
+            if (entity == null) {
               return false;
             }
             if (destroyed.contains(eid)) {
@@ -225,22 +266,23 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
             }
             return true;
           case SYNC_ENTITY_CONCURRENCY_END:
-            if (syncingID == EntityID.NULL_ID) {
+            if (entity == null) {
               return false;
             }
-            Assert.assertEquals(syncingConcurrency, msg.getConcurrency());
-            syncdID.add(syncingConcurrency);
-            syncingConcurrency = 0;
+            Assert.assertEquals(entity.concurrency, msg.getConcurrency());
+            entity.syncdKeys.add(entity.concurrency);
+            entity.concurrency = 0;
             return true;
           case SYNC_ENTITY_END:
-            if (syncingID == EntityID.NULL_ID) {
+            if (entity == null) {
+              Assert.assertTrue(dropped.remove(eid));
               return false;
             }
-            Assert.assertEquals(syncingID, eid);
-            syncd.add(syncingID);
-            syncingID = EntityID.NULL_ID;
+            syncing.remove(eid);
+            syncd.add(eid);
             return true;
           case SYNC_END:
+            Assert.assertTrue(syncing.isEmpty() && dropped.isEmpty());
             return true;
           case CREATE_ENTITY:
             if (syncd.contains(eid)) {
@@ -252,8 +294,8 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
               created.add(eid);
               destroyed.remove(eid);
               return true;
-            } else if (eid.equals(syncingID)) {
-              logger.debug("skipping create due to syncing id " + syncingID);
+            } else if (entity != null) {
+              logger.debug("skipping create due to syncing id " + eid);
 //  this entity is being or has been replicated, don't create it on the passive
               return false;
             } else {
@@ -263,7 +305,7 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
               return true;
             }
           case RECONFIGURE_ENTITY:
-            if (syncd.contains(eid) || eid.equals(syncingID)) {
+            if (syncd.contains(eid) || entity != null) {
 //  this entity is being or has been replicated, send the reconfigure through
               return true;
             } else {
@@ -276,7 +318,7 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
               destroyed.add(eid);
               Assert.assertFalse(created.contains(eid));
               return true;
-            } else if (syncingID.equals(eid)) {
+            } else if (entity != null) {
  //  tricky.  this one needs to pass but only be applied after sync of this entity is complete
               destroyed.add(eid);
               Assert.assertFalse(created.contains(eid));
@@ -293,12 +335,12 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
           case INVOKE_ACTION:
             if (syncd.contains(eid) || created.contains(eid)) {
               return true;
-            } else if (syncingID.equals(eid)) {
-              if (syncingConcurrency == msg.getConcurrency()) {
+            } else if (entity != null) {
+              if (entity.concurrency == msg.getConcurrency()) {
 //  special case.  passive will apply this after sync of the key is complete
                 return true;
               }
-              return syncdID.contains(msg.getConcurrency());
+              return entity.syncdKeys.contains(msg.getConcurrency());
             } else {
 // hasn't been sync'd yet.  state will be captured in sync
               return false;
@@ -313,28 +355,65 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
     public ReplicationMessage.ReplicationType validateInput(ReplicationMessage msg) {
       ReplicationMessage.ReplicationType type = msg.getReplicationType();
       if (msg.getType() == ReplicationMessage.SYNC) {
-        lastSeen = validate(msg.getReplicationType(), lastSeen);
+        seen.validate(msg.getEntityDescriptor().getEntityID(), type);
       }
       return type;
     }
     
     public void validateSending(ReplicationMessage msg) {
       if (msg.getType() == ReplicationMessage.SYNC) {
-        lastSent = validate(msg.getReplicationType(), lastSent);
+        sent.validate(msg.getEntityDescriptor().getEntityID(), msg.getReplicationType());
       }
     }
     
     public boolean isComplete() {
-      return lastSent == ReplicationMessage.ReplicationType.SYNC_END;
+      return sent.isComplete();
     }
+  }
+  
+  private static class EntitySync {
+    private final Set<Integer> syncdKeys = new HashSet<>();
+    private int concurrency = 0;
+  }
+  
+  /**
+   * Checks that the sync messages of the whole stream, and of each entity within it, arrive in a legal order.
+   */
+  private static class SequenceValidator {
+    private final Map<EntityID, ReplicationMessage.ReplicationType> entities = new HashMap<>();
+    private ReplicationMessage.ReplicationType stream;
     
-    private ReplicationMessage.ReplicationType validate(ReplicationMessage.ReplicationType type,ReplicationMessage.ReplicationType compare) {
+    private void validate(EntityID eid, ReplicationMessage.ReplicationType type) {
       switch (type) {
         case SYNC_BEGIN:
-          Assert.assertNull(compare);
+          Assert.assertNull(stream);
+          stream = type;
+          break;
+        case SYNC_END:
+          Assert.assertEquals(type + " " + stream, SYNC_BEGIN, stream);
+          Assert.assertTrue(type + " " + entities, entities.isEmpty());
+          stream = type;
+          break;
+        default:
+          Assert.assertEquals(type + " " + stream, SYNC_BEGIN, stream);
+          ReplicationMessage.ReplicationType next = validate(type, entities.get(eid));
+          if (next == SYNC_ENTITY_END) {
+            entities.remove(eid);
+          } else {
+            entities.put(eid, next);
+          }
           break;
+      }
+    }
+    
+    private boolean isComplete() {
+      return stream == SYNC_END;
+    }
+    
+    private static ReplicationMessage.ReplicationType validate(ReplicationMessage.ReplicationType type,ReplicationMessage.ReplicationType compare) {
+      switch (type) {
         case SYNC_ENTITY_BEGIN:
-          Assert.assertTrue(type + " " + compare, EnumSet.of(SYNC_BEGIN, SYNC_ENTITY_END).contains(compare));
+          Assert.assertNull(type + " " + compare, compare);
           break;
         case SYNC_ENTITY_CONCURRENCY_BEGIN:
           Assert.assertTrue(type + " " + compare, EnumSet.of(SYNC_ENTITY_BEGIN, SYNC_ENTITY_CONCURRENCY_END).contains(compare));
@@ -348,9 +427,6 @@ public class ReplicationSender extends AbstractEventHandler<ReplicationEnvelope>
         case SYNC_ENTITY_END:
           Assert.assertTrue(type + " " + compare, EnumSet.of(SYNC_ENTITY_BEGIN, SYNC_ENTITY_CONCURRENCY_END).contains(compare));
           break;
-        case SYNC_END:
-          Assert.assertTrue(type + " " + compare, EnumSet.of(SYNC_ENTITY_END, SYNC_BEGIN).contains(compare));
-          break;
         default:
           throw new AssertionError("unexpected message type");
       }
@@ -23,66 +23,56 @@ import com.tc.async.api.ConfigurationContext;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.net.ClientID;
-import com.tc.net.NodeID;
 import com.tc.object.locks.ClientServerExchangeLockContext;
 import com.tc.object.locks.LockID;
-import com.tc.object.locks.RecallBatchContext;
 import com.tc.object.locks.ThreadID;
-import com.tc.object.msg.LockRequestMessage;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
 import com.tc.objectserver.locks.LockManager;
+import com.tc.objectserver.locks.LockRequestContext;
 
 import java.util.Collection;
-import java.util.LinkedList;
 
 /**
  * Makes the request for a lock on behalf of a client
  * 
  * @author steve
  */
-public class RequestLockUnLockHandler extends AbstractEventHandler<LockRequestMessage> {
+public class RequestLockUnLockHandler extends AbstractEventHandler<LockRequestContext> {
   private static final TCLogger logger = TCLogging.getLogger(RequestLockUnLockHandler.class);
   
   private LockManager lockManager;
 
   @Override
-  public void handleEvent(LockRequestMessage lrm) {
-    LockID lid = lrm.getLockID();
-    NodeID cid = lrm.getSourceNodeID();
-    ThreadID tid = lrm.getThreadID();
+  public void handleEvent(LockRequestContext request) {
+    LockID lid = request.getLockID();
+    ClientID cid = request.getClientID();
+    ThreadID tid = request.getThreadID();
 
-    switch (lrm.getRequestType()) {
+    switch (request.getRequestType()) {
       case LOCK:
-        lockManager.lock(lid, (ClientID) cid, tid, lrm.getLockLevel());
+        lockManager.lock(lid, cid, tid, request.getLockLevel());
         return;
       case TRY_LOCK:
-        lockManager.tryLock(lid, (ClientID) cid, tid, lrm.getLockLevel(), lrm.getTimeout());
+        lockManager.tryLock(lid, cid, tid, request.getLockLevel(), request.getTimeout());
         return;
       case UNLOCK:
-        lockManager.unlock(lid, (ClientID) cid, tid);
+        lockManager.unlock(lid, cid, tid);
         return;
       case WAIT:
-        lockManager.wait(lid, (ClientID) cid, tid, lrm.getTimeout());
+        lockManager.wait(lid, cid, tid, request.getTimeout());
         return;
       case RECALL_COMMIT:
-        Collection<ClientServerExchangeLockContext> contexts = lrm.getContexts();
-        lockManager.recallCommit(lid, (ClientID) cid, contexts);
+        Collection<ClientServerExchangeLockContext> contexts = request.getContexts();
+        lockManager.recallCommit(lid, cid, contexts);
         return;
       case QUERY:
-        lockManager.queryLock(lid, (ClientID) cid, tid);
+        lockManager.queryLock(lid, cid, tid);
         return;
       case INTERRUPT_WAIT:
-        lockManager.interrupt(lid, (ClientID) cid, tid);
-        return;
-      case BATCHED_RECALL_COMMIT:
-        LinkedList<RecallBatchContext> recallContexts = lrm.getRecallBatchedContexts();
-        for (RecallBatchContext recallContext : recallContexts) {
-          Collection<ClientServerExchangeLockContext> lockState = recallContext.getContexts();
-          lockManager.recallCommit(recallContext.getLockID(), (ClientID) cid, lockState);
-        }
+        lockManager.interrupt(lid, cid, tid);
         return;
       default:
-        logger.error("Unexpected lock request type: " + lrm.getRequestType());
+        logger.error("Unexpected lock request type: " + request.getRequestType());
         return;
     }
   }
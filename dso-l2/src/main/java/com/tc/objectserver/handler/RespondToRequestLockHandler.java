@@ -26,15 +26,22 @@ import com.tc.net.NodeID;
 import com.tc.net.protocol.tcm.MessageChannel;
 import com.tc.net.protocol.tcm.TCMessageType;
 import com.tc.object.locks.ClientServerExchangeLockContext;
+import com.tc.object.locks.LockResponseBatchContext;
 import com.tc.object.locks.ThreadID;
 import com.tc.object.locks.ServerLockContext.State;
 import com.tc.object.msg.LockResponseMessage;
+import com.tc.object.msg.LockResponseMessage.ResponseType;
 import com.tc.object.net.DSOChannelManager;
 import com.tc.object.net.NoSuchChannelException;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
 import com.tc.objectserver.locks.LockResponseContext;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author steve
@@ -45,50 +52,80 @@ public class RespondToRequestLockHandler extends AbstractEventHandler<LockRespon
 
   @Override
   public void handleEvent(LockResponseContext lrc) {
-    NodeID cid = lrc.getNodeID();
-
-    try {
-      LockResponseMessage responseMessage = null;
+    handleEvents(Collections.singletonList(lrc));
+  }
 
-      if (lrc.isLockAward()) {
-        responseMessage = createMessage(lrc, TCMessageType.NOOP_MESSAGE);
-        responseMessage.initializeAward(lrc.getLockID(), lrc.getThreadID(), lrc.getLockLevel());
-      } else if (lrc.isLockNotAwarded()) {
-        responseMessage = createMessage(lrc, TCMessageType.NOOP_MESSAGE);
-        responseMessage.initializeRefuse(lrc.getLockID(), lrc.getThreadID(), lrc.getLockLevel());
-      } else if (lrc.isLockRecall()) {
-        responseMessage = createMessage(lrc, TCMessageType.NOOP_MESSAGE);
-        responseMessage.initializeRecallWithTimeout(lrc.getLockID(), lrc.getThreadID(), lrc.getLockLevel(), lrc
-            .getAwardLeaseTime());
-      } else if (lrc.isLockWaitTimeout()) {
-        responseMessage = createMessage(lrc, TCMessageType.NOOP_MESSAGE);
-        responseMessage.initializeWaitTimeout(lrc.getLockID(), lrc.getThreadID(), lrc.getLockLevel());
-      } else if (lrc.isLockInfo()) {
-        responseMessage = createMessage(lrc, TCMessageType.NOOP_MESSAGE);
-        responseMessage.initializeLockInfo(lrc.getLockID(), lrc.getThreadID(), lrc.getLockLevel());
+  /**
+   * The responses for each client are sent together, as one batched message, in the order they were queued.
+   */
+  @Override
+  public void handleEvents(Collection<LockResponseContext> contexts) {
+    Map<NodeID, List<LockResponseContext>> byClient = new LinkedHashMap<NodeID, List<LockResponseContext>>();
+    for (LockResponseContext lrc : contexts) {
+      List<LockResponseContext> responses = byClient.get(lrc.getNodeID());
+      if (responses == null) {
+        responses = new ArrayList<LockResponseContext>();
+        byClient.put(lrc.getNodeID(), responses);
+      }
+      responses.add(lrc);
+    }
+    for (List<LockResponseContext> responses : byClient.values()) {
+      respond(responses);
+    }
+  }
 
-        Collection<ClientServerExchangeLockContext> list = lrc.getGlobalLockInfo();
-        for (ClientServerExchangeLockContext clientServerExchangeLockContext : list) {
-          responseMessage.addContext(clientServerExchangeLockContext);
-        }
-
-        for (int i = 0; i < lrc.getNumberOfPendingRequests(); i++) {
-          responseMessage.addContext(new ClientServerExchangeLockContext(lrc.getLockID(), ClientID.NULL_ID,
-                                                                         ThreadID.NULL_ID, State.PENDING_READ));
-        }
+  private void respond(List<LockResponseContext> responses) {
+    LockResponseContext first = responses.get(0);
+    NodeID cid = first.getNodeID();
 
+    try {
+      LockResponseMessage responseMessage = createMessage(first, TCMessageType.NOOP_MESSAGE);
+      if (responses.size() == 1) {
+        responseMessage.initializeResponse(toBatchContext(first));
       } else {
-        throw new AssertionError("Unknown lock response context : " + lrc);
+        responseMessage.initializeBatchedResponses();
+        for (LockResponseContext lrc : responses) {
+          responseMessage.addBatchedResponse(toBatchContext(lrc));
+        }
       }
 
       send(responseMessage);
 
     } catch (NoSuchChannelException e) {
-      logger.info("Failed to send lock message:" + lrc + " to:" + cid + " because the session is dead.");
+      logger.info("Failed to send lock messages:" + responses + " to:" + cid + " because the session is dead.");
       return;
     }
   }
 
+  private static LockResponseBatchContext toBatchContext(LockResponseContext lrc) {
+    if (lrc.isLockAward()) {
+      return new LockResponseBatchContext(ResponseType.AWARD, lrc.getLockID(), lrc.getThreadID(), lrc.getLockLevel(), -1);
+    } else if (lrc.isLockNotAwarded()) {
+      return new LockResponseBatchContext(ResponseType.REFUSE, lrc.getLockID(), lrc.getThreadID(), lrc.getLockLevel(), -1);
+    } else if (lrc.isLockRecall()) {
+      return new LockResponseBatchContext(ResponseType.RECALL_WITH_TIMEOUT, lrc.getLockID(), lrc.getThreadID(),
+                                          lrc.getLockLevel(), lrc.getAwardLeaseTime());
+    } else if (lrc.isLockWaitTimeout()) {
+      return new LockResponseBatchContext(ResponseType.WAIT_TIMEOUT, lrc.getLockID(), lrc.getThreadID(), lrc.getLockLevel(), -1);
+    } else if (lrc.isLockInfo()) {
+      LockResponseBatchContext response = new LockResponseBatchContext(ResponseType.INFO, lrc.getLockID(),
+                                                                       lrc.getThreadID(), lrc.getLockLevel(), -1);
+
+      Collection<ClientServerExchangeLockContext> list = lrc.getGlobalLockInfo();
+      for (ClientServerExchangeLockContext clientServerExchangeLockContext : list) {
+        response.addContext(clientServerExchangeLockContext);
+      }
+
+      for (int i = 0; i < lrc.getNumberOfPendingRequests(); i++) {
+        response.addContext(new ClientServerExchangeLockContext(lrc.getLockID(), ClientID.NULL_ID,
+                                                                ThreadID.NULL_ID, State.PENDING_READ));
+      }
+      return response;
+    } else {
+      throw new AssertionError("Unknown lock response context : " + lrc);
+    }
+  }
+
   protected LockResponseMessage createMessage(LockResponseContext lrc, TCMessageType messageType)
       throws NoSuchChannelException {
     NodeID cid = lrc.getNodeID();
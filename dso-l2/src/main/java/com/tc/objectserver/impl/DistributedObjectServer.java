@@ -41,6 +41,7 @@ import com.tc.config.NodesStore;
 import com.tc.config.schema.setup.ConfigurationSetupException;
 import com.tc.config.schema.setup.L2ConfigurationSetupManager;
 import com.tc.entity.NetworkVoltronEntityMessageImpl;
+import com.tc.entity.NetworkVoltronEntityMultiMessageImpl;
 import com.tc.entity.ServerEntityMessageImpl;
 import com.tc.entity.ServerEntityResponseMessage;
 import com.tc.entity.ServerEntityResponseMessageImpl;
@@ -81,6 +82,7 @@ import com.tc.l2.handler.PlatformInfoRequestHandler;
 import com.tc.l2.msg.L2StateMessage;
 import com.tc.l2.msg.PassiveSyncMessage;
 import com.tc.l2.msg.PlatformInfoRequest;
+import com.tc.l2.msg.ReplicationBatchMessage;
 import com.tc.l2.msg.ReplicationEnvelope;
 import com.tc.l2.msg.ReplicationMessage;
 import com.tc.l2.msg.ReplicationMessageAck;
@@ -156,7 +158,6 @@ import com.tc.object.msg.InvokeRegisteredServiceMessage;
 import com.tc.object.msg.InvokeRegisteredServiceResponseMessage;
 import com.tc.object.msg.ListRegisteredServicesMessage;
 import com.tc.object.msg.ListRegisteredServicesResponseMessage;
-import com.tc.object.msg.LockRequestMessage;
 import com.tc.object.net.DSOChannelManager;
 import com.tc.object.net.DSOChannelManagerEventListener;
 import com.tc.object.net.DSOChannelManagerImpl;
@@ -174,9 +175,11 @@ import com.tc.objectserver.handler.ChannelLifeCycleHandler;
 import com.tc.objectserver.handler.ClientHandshakeHandler;
 import com.tc.objectserver.handler.ProcessTransactionHandler;
 import com.tc.objectserver.handler.RequestLockUnLockHandler;
+import com.tc.objectserver.handler.LockRequestSink;
 import com.tc.objectserver.handler.RespondToRequestLockHandler;
 import com.tc.objectserver.handshakemanager.ServerClientHandshakeManager;
 import com.tc.objectserver.locks.LockManagerImpl;
+import com.tc.objectserver.locks.LockRequestContext;
 import com.tc.objectserver.locks.LockResponseContext;
 import com.tc.objectserver.persistence.ClientStatePersistor;
 import com.tc.objectserver.persistence.FlatFileStorageProviderConfiguration;
@@ -458,7 +461,15 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
       //  treating it as a core component of the platform but, in the future, it may move out and be loaded like user
       //  services or be discarded, entirely.
       FlatFileStorageServiceProvider flatFileService = new FlatFileStorageServiceProvider();
-      if (!flatFileService.initialize(new FlatFileStorageProviderConfiguration(null, restartable))) {
+      boolean useWriteAheadLog = tcProperties.getBoolean(TCPropertiesConsts.L2_PERSISTENCE_FLATFILE_LOG_ENABLED, false);
+      long compactionThreshold = tcProperties.getLong(TCPropertiesConsts.L2_PERSISTENCE_FLATFILE_LOG_COMPACTION_THRESHOLD,
+          FlatFileStorageProviderConfiguration.DEFAULT_LOG_COMPACTION_THRESHOLD);
+      long groupCommitLatency = tcProperties.getLong(TCPropertiesConsts.L2_PERSISTENCE_GROUPCOMMIT_MAX_LATENCY_MICROS,
+          FlatFileStorageProviderConfiguration.DEFAULT_GROUP_COMMIT_MAX_LATENCY_MICROS);
+      int groupCommitBatch = tcProperties.getInt(TCPropertiesConsts.L2_PERSISTENCE_GROUPCOMMIT_MAX_BATCH_SIZE,
+          FlatFileStorageProviderConfiguration.DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE);
+      if (!flatFileService.initialize(new FlatFileStorageProviderConfiguration(null, restartable, useWriteAheadLog, compactionThreshold,
+          groupCommitLatency, groupCommitBatch))) {
         throw new AssertionError("bad flat file initialization");
       }
       serviceRegistry.registerExternal(flatFileService);
@@ -687,7 +698,8 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     channelManager.addEventListener(clientEntityStateManager);
     // We need to set up a stage to point at the ProcessTransactionHandler and we also need to register it for events, below.
     final ProcessTransactionHandler processTransactionHandler = new ProcessTransactionHandler(this.persistor.getEntityPersistor(), this.persistor.getTransactionOrderPersistor(), channelManager, entityManager);
-    final Stage<VoltronEntityMessage> processTransactionStage_voltron = stageManager.createStage(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE, VoltronEntityMessage.class, processTransactionHandler.getVoltronMessageHandler(), 1, maxStageSize);
+    // Messages are scheduled by the entity they target so each entity is always handled by the same stage thread.
+    final Stage<VoltronEntityMessage> processTransactionStage_voltron = stageManager.createStage(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE, VoltronEntityMessage.class, processTransactionHandler.getVoltronMessageHandler(), L2Utils.getOptimalVoltronStageWorkerThreads(), maxStageSize);
     final Stage<TCMessage> multiRespond = stageManager.createStage(ServerConfigurationContext.RESPOND_TO_REQUEST_STAGE, TCMessage.class, processTransactionHandler.getMultiResponseSender(), 1, maxStageSize);
     final Sink<VoltronEntityMessage> voltronMessageSink = processTransactionStage_voltron.getSink();
     
@@ -699,7 +711,8 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
       processTransactionHandler.loadExistingEntities();
     }
 
-    final Stage<LockRequestMessage> requestLock = stageManager.createStage(ServerConfigurationContext.REQUEST_LOCK_STAGE, LockRequestMessage.class, new RequestLockUnLockHandler(), 1, maxStageSize);
+    // Lock requests are scheduled by the lock store segment of their lock so each segment is always handled by the same stage thread.
+    final Stage<LockRequestContext> requestLock = stageManager.createStage(ServerConfigurationContext.REQUEST_LOCK_STAGE, LockRequestContext.class, new RequestLockUnLockHandler(), L2Utils.getOptimalLockStageWorkerThreads(), maxStageSize);
     final ChannelLifeCycleHandler channelLifeCycleHandler = new ChannelLifeCycleHandler(this.communicationsManager, channelManager, this.haConfig);
     stageManager.createStage(ServerConfigurationContext.CHANNEL_LIFE_CYCLE_STAGE, NodeStateEventContext.class, channelLifeCycleHandler, 1, maxStageSize);
     channelManager.addEventListener(channelLifeCycleHandler);
@@ -708,9 +721,10 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     this.hydrateStage = stageManager.createStage(ServerConfigurationContext.HYDRATE_MESSAGE_SINK, HydrateContext.class, new HydrateHandler(), stageWorkerThreadCount, maxStageSize);
     
     final Sink<HydrateContext> hydrateSink = this.hydrateStage.getSink();
-    messageRouter.routeMessageType(TCMessageType.NOOP_MESSAGE, requestLock.getSink(), hydrateSink);
+    messageRouter.routeMessageType(TCMessageType.NOOP_MESSAGE, new LockRequestSink(requestLock.getSink(), this.lockManager), hydrateSink);
     messageRouter.routeMessageType(TCMessageType.CLIENT_HANDSHAKE_MESSAGE, clientHandshake.getSink(), hydrateSink);
     messageRouter.routeMessageType(TCMessageType.VOLTRON_ENTITY_MESSAGE, new VoltronMessageSink(voltronMessageSink, hydrateSink, entityManager));
+    messageRouter.routeMessageType(TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE, new VoltronMessageSink(voltronMessageSink, hydrateSink, entityManager));
     messageRouter.routeMessageType(TCMessageType.SERVER_ENTITY_RESPONSE_MESSAGE, communicatorResponseStage.getSink(), hydrateSink);
 
     HASettingsChecker haChecker = new HASettingsChecker(configSetupManager, TCPropertiesImpl.getProperties());
@@ -745,20 +759,18 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     
     final ActiveToPassiveReplication passives = new ActiveToPassiveReplication(l2Coordinator.getReplicatedClusterStateManager().getPassives(), processTransactionHandler.getEntityList(), this.persistor.getEntityPersistor(), replicationDriver.getSink());
     processor.setReplication(passives); 
+    this.dumpHandler.registerForDump(new CallbackDumpAdapter(passives));
 //  routing for passive to receive replication    
     Stage<ReplicationMessage> replicationStage = stageManager.createStage(ServerConfigurationContext.PASSIVE_REPLICATION_STAGE, ReplicationMessage.class, 
         new ReplicatedTransactionHandler(this.l2Coordinator.getStateManager(), this.persistor.getTransactionOrderPersistor(), entityManager, 
-            this.persistor.getEntityPersistor(), groupCommManager).getEventHandler(), 1, maxStageSize);
+            this.persistor.getEntityPersistor(), groupCommManager, this.taskRunner).getEventHandler(), 1, maxStageSize);
     Stage<ReplicationMessageAck> replicationStageAck = stageManager.createStage(ServerConfigurationContext.PASSIVE_REPLICATION_ACK_STAGE, ReplicationMessageAck.class, 
         new AbstractEventHandler<ReplicationMessageAck>() {
           @Override
           public void handleEvent(ReplicationMessageAck context) throws EventHandlerException {
             switch (context.getType()) {
-              case ReplicationMessageAck.RECEIVED:
-                passives.ackReceived(context);
-                break;
-              case ReplicationMessageAck.COMPLETED:
-                passives.ackCompleted(context);
+              case ReplicationMessageAck.ACKNOWLEDGE:
+                passives.acknowledge(context);
                 break;
               case ReplicationMessageAck.START_SYNC:
                 passives.startPassiveSync(context.messageFrom());
@@ -784,6 +796,8 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     Sink<ReplicationMessage> replication = new OrderedSink<ReplicationMessage>(logger, replicationStage.getSink());
     this.groupCommManager.routeMessages(ReplicationMessage.class, replication);
     this.groupCommManager.routeMessages(PassiveSyncMessage.class, replication);
+//  batches are unpacked into the same ordering as single messages
+    this.groupCommManager.registerForMessages(ReplicationBatchMessage.class, (from, batch)->batch.getMessages().forEach(replication::addSingleThreaded));
 
     this.groupCommManager.routeMessages(ReplicationMessageAck.class, replicationStageAck.getSink());
     createPlatformInformationStages(stageManager, maxStageSize, eventCollector);
@@ -840,7 +854,8 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
         this.lockManager, (DSOChannelManagerMBean) channelManager,
                                                          serverStats, channelStats, instanceMonitor,
                                                          connectionPolicy,
-                                                         remoteManagement);
+                                                         remoteManagement,
+                                                         this.communicationsManager.getConnectionManager());
 
     final CallbackOnExitHandler handler = new CallbackGroupExceptionHandler(logger, consoleLogger);
     this.threadGroup.addCallbackOnExitExceptionHandler(GroupException.class, handler);
@@ -900,7 +915,7 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
 //  must be active, noop the ProcessTransactionHandler
     this.seda.getStageManager()
         .getStage(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE, VoltronEntityMessage.class)
-        .getSink().addSingleThreaded(new NoopEntityMessage(new EntityDescriptor(eid, ClientInstanceID.NULL_ID, version)));
+        .getSink().addMultiThreaded(new NoopEntityMessage(new EntityDescriptor(eid, ClientInstanceID.NULL_ID, version)));
   }
 
   private StageController createStageController() {
@@ -998,6 +1013,7 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     messageTypeClassMapping.put(TCMessageType.INVOKE_REGISTERED_SERVICE_MESSAGE, InvokeRegisteredServiceMessage.class);
     messageTypeClassMapping.put(TCMessageType.INVOKE_REGISTERED_SERVICE_RESPONSE_MESSAGE, InvokeRegisteredServiceResponseMessage.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_MESSAGE, NetworkVoltronEntityMessageImpl.class);
+    messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE, NetworkVoltronEntityMultiMessageImpl.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_RECEIVED_RESPONSE, VoltronEntityReceivedResponseImpl.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_APPLIED_RESPONSE, VoltronEntityAppliedResponseImpl.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_RETIRED_RESPONSE, VoltronEntityRetiredResponseImpl.class);
@@ -1061,7 +1077,7 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
         checkdups.put(vem.getEntityDescriptor().getEntityID(), vem);
       }
       for (VoltronEntityMessage vem : checkdups.values()) {
-        msgSink.addSingleThreaded(vem);
+        msgSink.addMultiThreaded(vem);
       }
     }
   }
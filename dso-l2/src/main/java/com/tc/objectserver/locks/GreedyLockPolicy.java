@@ -0,0 +1,154 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.object.locks.LockID;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides, from the recent recall history of each lock, whether a greedy lock should still be awarded greedily and for
+ * how long a client may keep it once it is recalled.
+ * <p>
+ * A lock which is recalled only now and then is awarded greedily, so its uncontended acquisitions stay on the client,
+ * and the full lease is given with each recall. Every further recall within the same window halves the lease, since
+ * the other clients are waiting on the holder. Once a lock is recalled recallThreshold times within a window it is
+ * ping-ponging between clients and is awarded non-greedily for the cool down period, as a greedy award would then only
+ * add a recall and a recall commit to each transfer.
+ * <p>
+ * Only locks which have been recalled are tracked, and at most maxTrackedLocks of them. The statistics of a lock are
+ * only updated by the thread holding the lock's segment of the LockStore.
+ */
+public class GreedyLockPolicy {
+  private static final int                     NO_LEASE = 0;
+
+  private final int                            leaseTime;
+  private final int                            recallThreshold;
+  private final long                           window;
+  private final long                           coolDown;
+  private final int                            maxTrackedLocks;
+  private final ConcurrentMap<LockID, Recalls> recalls = new ConcurrentHashMap<>();
+
+  public GreedyLockPolicy() {
+    this(TCPropertiesImpl.getProperties());
+  }
+
+  private GreedyLockPolicy(TCProperties props) {
+    this(props.getBoolean(TCPropertiesConsts.L2_LOCKMANAGER_GREEDY_LEASE_ENABLED)
+        ? props.getInt(TCPropertiesConsts.L2_LOCKMANAGER_GREEDY_LEASE_LEASETIME_INMILLS) : NO_LEASE,
+         props.getInt(TCPropertiesConsts.L2_LOCKMANAGER_GREEDY_ADAPTIVE_RECALL_THRESHOLD),
+         props.getLong(TCPropertiesConsts.L2_LOCKMANAGER_GREEDY_ADAPTIVE_WINDOW_INMILLS),
+         props.getLong(TCPropertiesConsts.L2_LOCKMANAGER_GREEDY_ADAPTIVE_COOLDOWN_INMILLS),
+         props.getInt(TCPropertiesConsts.L2_LOCKMANAGER_GREEDY_ADAPTIVE_MAX_TRACKED_LOCKS));
+  }
+
+  GreedyLockPolicy(int leaseTime, int recallThreshold, long windowInMillis, long coolDownInMillis,
+                   int maxTrackedLocks) {
+    this.leaseTime = leaseTime;
+    this.recallThreshold = recallThreshold;
+    this.window = TimeUnit.MILLISECONDS.toNanos(windowInMillis);
+    this.coolDown = TimeUnit.MILLISECONDS.toNanos(coolDownInMillis);
+    this.maxTrackedLocks = maxTrackedLocks;
+  }
+
+  /**
+   * @return false if the lock is contended enough that it should be awarded non-greedily
+   */
+  public boolean awardGreedily(LockID lockID) {
+    Recalls lock = recalls.get(lockID);
+    return lock == null || lock.nonGreedyUntil - now() <= 0;
+  }
+
+  /**
+   * Records a recall of the greedy holders of the lock.
+   *
+   * @return The lease to give the holders with the recall
+   */
+  public int recalled(LockID lockID) {
+    long now = now();
+    Recalls lock = recalls.get(lockID);
+    if (lock == null) {
+      if (recalls.size() >= maxTrackedLocks && !evictIdle(now)) { return leaseTime; }
+      lock = new Recalls(now);
+      Recalls racer = recalls.putIfAbsent(lockID, lock);
+      if (racer != null) {
+        lock = racer;
+      }
+    }
+    if (now - lock.windowStart >= window) {
+      lock.windowStart = now;
+      lock.count = 0;
+    }
+    lock.count += 1;
+    if (lock.count >= recallThreshold) {
+      lock.nonGreedyUntil = now + coolDown;
+    }
+    // the lease halves with each recall after the first in the window
+    return leaseTime >> Math.min(lock.count - 1, 31);
+  }
+
+  public int getNonGreedyLockCount() {
+    long now = now();
+    int count = 0;
+    for (Recalls lock : recalls.values()) {
+      if (lock.nonGreedyUntil - now > 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  protected long now() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Forgets the locks which are neither cooling down nor have been recalled within the current window.
+   *
+   * @return true if at least one lock was forgotten
+   */
+  private boolean evictIdle(long now) {
+    boolean evicted = false;
+    for (Iterator<Recalls> i = recalls.values().iterator(); i.hasNext();) {
+      Recalls lock = i.next();
+      if (now - lock.windowStart >= window && lock.nonGreedyUntil - now <= 0) {
+        i.remove();
+        evicted = true;
+      }
+    }
+    return evicted;
+  }
+
+  private static class Recalls {
+    private volatile long windowStart;
+    private volatile int  count;
+    private volatile long nonGreedyUntil;
+
+    Recalls(long now) {
+      this.windowStart = now;
+      this.nonGreedyUntil = now;
+    }
+  }
+}
@@ -29,8 +29,15 @@ public class LockHelper {
   private final LockStore                     lockStore;
   private final ServerLockContextStateMachine contextStateMachine;
   private final TimerCallback                 timerCallback;
+  private final GreedyLockPolicy              greedyLockPolicy;
 
   public LockHelper(Sink<LockResponseContext> lockSink, LockStore lockStore, TimerCallback timerCallback) {
+    this(lockSink, lockStore, timerCallback, new GreedyLockPolicy());
+  }
+
+  public LockHelper(Sink<LockResponseContext> lockSink, LockStore lockStore, TimerCallback timerCallback,
+                    GreedyLockPolicy greedyLockPolicy) {
+    this.greedyLockPolicy = greedyLockPolicy;
     this.lockTimer = new LockTimer();
     this.lockSink = lockSink;
     this.lockStore = lockStore;
@@ -57,4 +64,8 @@ public class LockHelper {
   public TimerCallback getTimerCallback() {
     return timerCallback;
   }
+
+  public GreedyLockPolicy getGreedyLockPolicy() {
+    return greedyLockPolicy;
+  }
 }
@@ -134,4 +134,13 @@ public interface LockManager {
    * timers and start processing of the pending requests.
    */
   void start();
+
+  /**
+   * Requests for locks in the same segment are handled by the same stage thread so that the threads don't contend for
+   * the segments of the lock store.
+   * 
+   * @param lid - Id of the lock.
+   * @return the segment of the lock store which holds the lock
+   */
+  int segmentFor(LockID lid);
 }
@@ -40,6 +40,7 @@ import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -303,6 +304,16 @@ public class LockManagerImpl implements LockManager, PrettyPrintable, LockManage
     }
   }
 
+  @Override
+  public long[] getSegmentContention() {
+    return lockStore.getContention();
+  }
+
+  @Override
+  public int segmentFor(LockID lid) {
+    return lockStore.segmentFor(lid);
+  }
+
   @Override
   public void timerTimeout(LockTimerContext lockTimerContext) {
     LockID lid = lockTimerContext.getLockID();
@@ -384,6 +395,8 @@ public class LockManagerImpl implements LockManager, PrettyPrintable, LockManage
       lock = iter.getNextLock(lock);
     }
     out.indent().print("locks: " + size).println().flush();
+    out.indent().print("segment contention: " + Arrays.toString(getSegmentContention())).println().flush();
+    out.indent().print("non greedy locks: " + lockHelper.getGreedyLockPolicy().getNonGreedyLockCount()).println().flush();
     return out;
   }
 
@@ -25,4 +25,9 @@ public interface LockManagerMBean {
 
   public LockMBean[] getAllLocks();
 
+  /**
+   * @return For each segment of the lock store, the number of times a thread had to wait for another to access it
+   */
+  public long[] getSegmentContention();
+
 }
@@ -0,0 +1,110 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.net.ClientID;
+import com.tc.object.locks.ClientServerExchangeLockContext;
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.ServerLockLevel;
+import com.tc.object.locks.ThreadID;
+import com.tc.object.msg.LockRequestMessage.RequestType;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A single request, for a single lock, taken from a LockRequestMessage.  Requests are scheduled by the lock store
+ * segment of their lock so each segment is always handled by the same stage thread and the requests for any one lock
+ * stay in order.
+ */
+public class LockRequestContext implements MultiThreadedEventContext {
+  private final ClientID                                    clientID;
+  private final RequestType                                 requestType;
+  private final LockID                                      lockID;
+  private final ThreadID                                    threadID;
+  private final ServerLockLevel                             lockLevel;
+  private final long                                        timeout;
+  private final Collection<ClientServerExchangeLockContext> contexts;
+  private final Integer                                     segment;
+
+  public LockRequestContext(ClientID clientID, RequestType requestType, LockID lockID, ThreadID threadID,
+                            ServerLockLevel lockLevel, long timeout, int segment) {
+    this(clientID, requestType, lockID, threadID, lockLevel, timeout,
+         Collections.<ClientServerExchangeLockContext>emptyList(), segment);
+  }
+
+  public LockRequestContext(ClientID clientID, RequestType requestType, LockID lockID, ThreadID threadID,
+                            ServerLockLevel lockLevel, long timeout,
+                            Collection<ClientServerExchangeLockContext> contexts, int segment) {
+    this.clientID = clientID;
+    this.requestType = requestType;
+    this.lockID = lockID;
+    this.threadID = threadID;
+    this.lockLevel = lockLevel;
+    this.timeout = timeout;
+    this.contexts = contexts;
+    this.segment = segment;
+  }
+
+  public ClientID getClientID() {
+    return clientID;
+  }
+
+  public RequestType getRequestType() {
+    return requestType;
+  }
+
+  public LockID getLockID() {
+    return lockID;
+  }
+
+  public ThreadID getThreadID() {
+    return threadID;
+  }
+
+  public ServerLockLevel getLockLevel() {
+    return lockLevel;
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  public Collection<ClientServerExchangeLockContext> getContexts() {
+    return contexts;
+  }
+
+  @Override
+  public Object getSchedulingKey() {
+    return segment;
+  }
+
+  @Override
+  public boolean flush() {
+//  lock operations are independent, no flush needed
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "LockRequestContext(" + requestType + ", " + lockID + ", " + clientID + ", " + threadID + ", " + lockLevel
+           + ")";
+  }
+}
@@ -159,7 +159,8 @@ public class LockResponseContext implements MultiThreadedEventContext {
 
   @Override
   public boolean flush() {
-//  lock operations are independent, no flush needed
-    return true;
+//  lock operations are independent, no flush needed.  Responses for a client are keyed to one queue so they stay in
+//  order, and a flushing context visits every queue before it runs so it could never be part of a batch.
+    return false;
   }
 }
@@ -23,20 +23,10 @@ import com.tc.object.locks.ClientServerExchangeLockContext;
 import com.tc.object.locks.LockID;
 import com.tc.object.locks.ServerLockLevel;
 import com.tc.object.locks.ThreadID;
-import com.tc.properties.TCPropertiesConsts;
-import com.tc.properties.TCPropertiesImpl;
 
 import java.util.Collection;
 
 public class LockResponseContextFactory {
-  private final static int     LOCK_LEASE_TIME   = TCPropertiesImpl
-                                                     .getProperties()
-                                                     .getInt(
-                                                             TCPropertiesConsts.L2_LOCKMANAGER_GREEDY_LEASE_LEASETIME_INMILLS);
-  private final static boolean LOCK_LEASE_ENABLE = TCPropertiesImpl
-                                                     .getProperties()
-                                                     .getBoolean(TCPropertiesConsts.L2_LOCKMANAGER_GREEDY_LEASE_ENABLED);
-
   public static LockResponseContext createLockRejectedResponseContext(LockID lockID, NodeID nodeID,
                                                                       ThreadID threadID,
                                                                       ServerLockLevel level) {
@@ -50,12 +40,9 @@ public class LockResponseContextFactory {
   }
 
   public static LockResponseContext createLockRecallResponseContext(LockID lockID, NodeID nodeID,
-                                                                    ThreadID threadID, ServerLockLevel level) {
-    if (LOCK_LEASE_ENABLE) {
-      return new LockResponseContext(lockID, nodeID, threadID, level, LockResponseContext.LOCK_RECALL, LOCK_LEASE_TIME);
-    } else {
-      return new LockResponseContext(lockID, nodeID, threadID, level, LockResponseContext.LOCK_RECALL);
-    }
+                                                                    ThreadID threadID, ServerLockLevel level,
+                                                                    int leaseTimeInMs) {
+    return new LockResponseContext(lockID, nodeID, threadID, level, LockResponseContext.LOCK_RECALL, leaseTimeInMs);
   }
 
   public static LockResponseContext createLockWaitTimeoutResponseContext(LockID lockID, NodeID nodeID,
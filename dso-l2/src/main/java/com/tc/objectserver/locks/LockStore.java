@@ -21,10 +21,7 @@ package com.tc.objectserver.locks;
 import com.tc.object.locks.LockID;
 import com.tc.util.Assert;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -34,11 +31,18 @@ import java.util.concurrent.locks.ReentrantLock;
  * <p>
  * Apart from this getNextLock (for scanning all the locks) has been provided which takes care of the checking out/in of
  * lock.
+ * <p>
+ * Each segment keeps its locks in a ServerLockTable rather than a HashMap, since there can be millions of locks and
+ * the map would allocate an entry for each of them.
+ * <p>
+ * The number of times a check out had to wait for its segment is counted, per segment, so that contention between the
+ * threads using the store can be seen.
  */
 public class LockStore {
   private static final int                  DEFAULT_SEGMENTS = 32;
-  private final Map<LockID, ServerLock>     segments[];
+  private final ServerLockTable[]           segments;
   private final ReentrantLock[]             guards;
+  private final AtomicLongArray             contention;
   private final int                         segmentShift;
   private final int                         segmentMask;
   private final LockFactory                 lockFactory;
@@ -62,27 +66,26 @@ public class LockStore {
     segmentMask = ssize - 1;
     numberOfSegments = ssize;
 
-    segments = initSegments(numberOfSegments);
+    segments = new ServerLockTable[numberOfSegments];
     guards = new ReentrantLock[numberOfSegments];
+    contention = new AtomicLongArray(numberOfSegments);
 
     for (int i = 0; i < segments.length; i++) {
-      segments[i] = new HashMap<>();
+      segments[i] = new ServerLockTable();
       guards[i] = new ReentrantLock();
     }
   }
 
-  @SuppressWarnings("unchecked")
-  private static Map<LockID, ServerLock>[] initSegments(int numberOfSegments) {
-    return new Map[numberOfSegments];
-  }
-
   public ServerLock checkOut(LockID lockID) {
     int index = indexFor(lockID);
-    guards[index].lock();
+    if (!guards[index].tryLock()) {
+      contention.incrementAndGet(index);
+      guards[index].lock();
+    }
     ServerLock lock = segments[index].get(lockID);
     if (lock == null) {
       lock = lockFactory.createLock(lockID);
-      segments[index].put(lockID, lock);
+      segments[index].add(lock);
     }
     return lock;
   }
@@ -103,6 +106,28 @@ public class LockStore {
     guards[index].unlock();
   }
 
+  /**
+   * @return The segment which holds the given lock, between 0 and getSegmentCount() - 1
+   */
+  public int segmentFor(LockID lockID) {
+    return indexFor(lockID);
+  }
+
+  public int getSegmentCount() {
+    return segments.length;
+  }
+
+  /**
+   * @return For each segment, the number of check outs which had to wait for another thread to check in
+   */
+  public long[] getContention() {
+    long[] counts = new long[contention.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = contention.get(i);
+    }
+    return counts;
+  }
+
   private final int indexFor(Object o) {
     int hash = hash(o);
     return ((hash >>> segmentShift) & segmentMask);
@@ -136,9 +161,10 @@ public class LockStore {
   }
 
   public class LockIterator {
-    private Iterator<Entry<LockID, ServerLock>> currentIter;
-    private int                                 currentIndex = -1;
-    private ServerLock                          oldLock;
+    private ServerLockTable currentSegment;
+    private int             currentSlot  = -1;
+    private int             currentIndex = -1;
+    private ServerLock      oldLock;
 
     /**
      * This method basically fetches the next lock by checking it out and checks back in the oldLock (that was given
@@ -148,19 +174,26 @@ public class LockStore {
      */
     public ServerLock getNextLock(ServerLock lock) {
       validateOldLock(lock);
-      while (currentIter == null || !currentIter.hasNext()) {
-        Map<LockID, ServerLock> nextSegment = fetchNextSegment();
-        if (nextSegment == null) { return null; }
-        currentIter = nextSegment.entrySet().iterator();
+      while (true) {
+        if (currentSegment != null) {
+          while (++currentSlot < currentSegment.capacity()) {
+            ServerLock next = currentSegment.lockAt(currentSlot);
+            if (next != null) {
+              oldLock = next;
+              return oldLock;
+            }
+          }
+        }
+        currentSegment = fetchNextSegment();
+        currentSlot = -1;
+        if (currentSegment == null) { return null; }
       }
-      Assert.assertNotNull(currentIter);
-      oldLock = currentIter.next().getValue();
-      return oldLock;
     }
 
     public void remove() {
-      Assert.assertNotNull(currentIter);
-      currentIter.remove();
+      Assert.assertNotNull(currentSegment);
+      Assert.assertNotNull(currentSegment.lockAt(currentSlot));
+      currentSegment.removeAt(currentSlot);
     }
 
     public void checkIn(ServerLock lock) {
@@ -177,14 +210,16 @@ public class LockStore {
 
     }
 
-    private Map<LockID, ServerLock> fetchNextSegment() {
+    private ServerLockTable fetchNextSegment() {
       if (currentIndex >= 0 && currentIndex < segments.length) {
+        segments[currentIndex].endIteration();
         guards[currentIndex].unlock();
       }
       currentIndex++;
       if (currentIndex >= segments.length) { return null; }
 
       guards[currentIndex].lock();
+      segments[currentIndex].startIteration();
       return segments[currentIndex];
     }
   }
@@ -93,6 +93,9 @@ public final class ServerLockImpl extends AbstractServerLock {
    * This method is responsible for processing pending requests. Awarding Write logic: If there are waiters present then
    * we do not grant a greedy lock to avoid starving waiters on other clients. This is because if a notify is called on
    * the client having greedy lock, then the local waiter will get notified and remote waiters will get starved.
+   * <p>
+   * Locks which the GreedyLockPolicy finds are being recalled too often are awarded non-greedily, as a
+   * NonGreedyServerLock would, until the policy lets them be greedy again.
    * 
    * @param helper
    */
@@ -104,13 +107,18 @@ public final class ServerLockImpl extends AbstractServerLock {
     if (request == null) { return; }
 
     ServerLockLevel lockLevel = request.getState().getLockLevel();
+    boolean greedy = helper.getGreedyLockPolicy().awardGreedily(lockID);
     switch (lockLevel) {
       case READ:
         add(request, helper);
-        awardAllReadsGreedily(helper, request);
+        if (greedy) {
+          awardAllReadsGreedily(helper, request);
+        } else {
+          awardAllReads(helper);
+        }
         break;
       case WRITE:
-        if (hasWaiters()) {
+        if (hasWaiters() || !greedy) {
           awardLock(helper, request);
         } else {
           awardLockGreedily(helper, request);
@@ -195,6 +203,12 @@ public final class ServerLockImpl extends AbstractServerLock {
     }
   }
 
+  private void awardAllReads(LockHelper helper) {
+    for (ServerLockContext context : removeAllPendingReadRequests(helper)) {
+      awardLock(helper, context);
+    }
+  }
+
   private static boolean canAwardGreedilyOnTheClient(ServerLockLevel level, ServerLockContext holder) {
     return holder != null
            && (holder.getState().getLockLevel() == ServerLockLevel.WRITE || level == ServerLockLevel.READ);
@@ -285,11 +299,14 @@ public final class ServerLockImpl extends AbstractServerLock {
     if (isRecalled) { return; }
 
     List<ServerLockContext> greedyHolders = getGreedyHolders();
+    if (greedyHolders.isEmpty()) { return; }
+
+    int lease = helper.getGreedyLockPolicy().recalled(lockID);
     for (ServerLockContext greedyHolder : greedyHolders) {
       LockResponseContext lrc = LockResponseContextFactory.createLockRecallResponseContext(lockID,
                                                                                            greedyHolder.getClientID(),
                                                                                            greedyHolder.getThreadID(),
-                                                                                           level);
+                                                                                           level, lease);
       helper.getLockSink().addMultiThreaded(lrc);
       isRecalled = true;
     }
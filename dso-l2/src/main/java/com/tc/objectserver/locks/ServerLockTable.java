@@ -0,0 +1,168 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.object.locks.LockID;
+
+/**
+ * An open addressed hash table of the locks in one segment of the LockStore. A lock already knows its LockID so the
+ * table holds only the locks themselves, which saves the entry object (and the key reference) a HashMap would allocate
+ * for every lock. Slots are probed linearly and removed locks leave a tombstone behind. Once the live locks fill less
+ * than an eighth of the table it is rehashed down, except while a LockIterator walks it: then the shrink waits until
+ * the iterator moves on, so nothing moves under it.
+ * <p>
+ * NOTE: this is not thread safe, the LockStore guards each table with the lock of its segment.
+ */
+class ServerLockTable {
+  private static final int    INITIAL_CAPACITY = 16;
+  private static final Object TOMBSTONE        = new Object();
+
+  private Object[]            table            = new Object[INITIAL_CAPACITY];
+  private int                 size;
+  private int                 used;
+  private boolean             iterating;
+
+  ServerLock get(LockID lockID) {
+    Object[] tab = this.table;
+    int mask = tab.length - 1;
+    for (int i = indexFor(lockID, mask);; i = (i + 1) & mask) {
+      Object o = tab[i];
+      if (o == null) { return null; }
+      if (o != TOMBSTONE && ((ServerLock) o).getLockID().equals(lockID)) { return (ServerLock) o; }
+    }
+  }
+
+  /**
+   * Adds a lock which must not already be present in the table.
+   */
+  void add(ServerLock lock) {
+    if ((used + 1) * 4 > table.length * 3) {
+      resize();
+    }
+    Object[] tab = this.table;
+    int mask = tab.length - 1;
+    int i = indexFor(lock.getLockID(), mask);
+    while (tab[i] != null && tab[i] != TOMBSTONE) {
+      i = (i + 1) & mask;
+    }
+    if (tab[i] == null) {
+      used++;
+    }
+    tab[i] = lock;
+    size++;
+  }
+
+  ServerLock remove(LockID lockID) {
+    Object[] tab = this.table;
+    int mask = tab.length - 1;
+    for (int i = indexFor(lockID, mask);; i = (i + 1) & mask) {
+      Object o = tab[i];
+      if (o == null) { return null; }
+      if (o != TOMBSTONE && ((ServerLock) o).getLockID().equals(lockID)) {
+        removeAt(i);
+        return (ServerLock) o;
+      }
+    }
+  }
+
+  void removeAt(int index) {
+    table[index] = TOMBSTONE;
+    size--;
+    shrinkIfSparse();
+  }
+
+  /**
+   * Marks the start of a walk over the slots, the table keeps its layout until {@link #endIteration()}.
+   */
+  void startIteration() {
+    iterating = true;
+  }
+
+  void endIteration() {
+    iterating = false;
+    shrinkIfSparse();
+  }
+
+  /**
+   * @return The lock in the given slot, or null if the slot is empty
+   */
+  ServerLock lockAt(int index) {
+    Object o = table[index];
+    return o == TOMBSTONE ? null : (ServerLock) o;
+  }
+
+  int capacity() {
+    return table.length;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    table = new Object[INITIAL_CAPACITY];
+    size = 0;
+    used = 0;
+  }
+
+  private void shrinkIfSparse() {
+    if (!iterating && table.length > INITIAL_CAPACITY && size * 8 < table.length) {
+      resize();
+    }
+  }
+
+  /**
+   * Rehashes the live locks, dropping the tombstones. The table grows only if the locks alone fill more than half of
+   * it and shrinks when they fill less than an eighth, so a segment which has had its locks removed gives the space
+   * back.
+   */
+  private void resize() {
+    int capacity = table.length;
+    if (size * 2 >= capacity) {
+      capacity <<= 1;
+    } else {
+      while (capacity > INITIAL_CAPACITY && size * 8 < capacity) {
+        capacity >>>= 1;
+      }
+    }
+    Object[] old = table;
+    Object[] tab = new Object[capacity];
+    int mask = capacity - 1;
+    for (Object o : old) {
+      if (o != null && o != TOMBSTONE) {
+        int i = indexFor(((ServerLock) o).getLockID(), mask);
+        while (tab[i] != null) {
+          i = (i + 1) & mask;
+        }
+        tab[i] = o;
+      }
+    }
+    table = tab;
+    used = size;
+  }
+
+  private static int indexFor(LockID lockID, int mask) {
+    int h = lockID.hashCode();
+    // spread the high bits down, the LockStore has already used them to pick the segment
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h & mask;
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks.factory;
+
+import com.tc.object.locks.LockID;
+import com.tc.objectserver.locks.LockFactory;
+import com.tc.objectserver.locks.ServerLock;
+import com.tc.objectserver.locks.ServerLockImpl;
+
+/**
+ * Creates {@link ServerLockImpl}s, which award greedily unless the lock manager's GreedyLockPolicy finds the lock is
+ * being recalled too often.
+ */
+public class AdaptiveGreedyLockFactory implements LockFactory {
+  @Override
+  public ServerLock createLock(LockID lid) {
+    return new ServerLockImpl(lid);
+  }
+}
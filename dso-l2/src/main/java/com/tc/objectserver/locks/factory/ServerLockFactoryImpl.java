@@ -21,13 +21,19 @@ package com.tc.objectserver.locks.factory;
 import com.tc.object.locks.LockID;
 import com.tc.objectserver.locks.ServerLock;
 import com.tc.objectserver.locks.LockFactory;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 
 
 public class ServerLockFactoryImpl implements LockFactory {
   private final LockFactory    factory;
 
   public ServerLockFactoryImpl() {
-    this.factory = new NonGreedyLockPolicyFactory();
+    if (TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L2_LOCKMANAGER_GREEDY_LOCKS_ENABLED)) {
+      this.factory = new AdaptiveGreedyLockFactory();
+    } else {
+      this.factory = new NonGreedyLockPolicyFactory();
+    }
   }
 
   @Override
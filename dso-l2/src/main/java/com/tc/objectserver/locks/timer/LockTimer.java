@@ -24,15 +24,22 @@ import com.tc.net.ClientID;
 import com.tc.object.locks.LockID;
 import com.tc.object.locks.ThreadID;
 import com.tc.objectserver.locks.LockHelper;
+import com.tc.util.concurrent.HashedWheelTimer;
+import com.tc.util.concurrent.Timer;
 
 import java.util.LinkedList;
-import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Schedules the timeouts of try locks and waits. There can be very many of these pending and most are cancelled before
+ * they expire, so they are kept on a HashedWheelTimer where scheduling and cancelling are O(1).
+ */
 public class LockTimer {
   private static final TCLogger logger    = TCLogging.getLogger(LockTimer.class);
 
-  private final Timer           timer     = new Timer("DSO Lock Object.wait() timer", true);
+  private final Timer           timer     = new HashedWheelTimer("DSO Lock Object.wait() timer");
   private boolean               started   = false;
   private boolean               shutdown  = false;
   private LinkedList<TaskImpl>  taskQueue = new LinkedList<>();
@@ -55,7 +62,7 @@ public class LockTimer {
     for (TaskImpl task : taskQueue) {
       long timeDelay = task.getScheduleDelay() - (System.currentTimeMillis() - task.scheduledAt());
       timeDelay = timeDelay < 0 ? 0 : timeDelay;
-      timer.schedule(task, timeDelay);
+      task.schedule(timer, timeDelay);
     }
   }
 
@@ -69,7 +76,7 @@ public class LockTimer {
       }
     }
 
-    timer.schedule(rv, timeInMillis);
+    rv.schedule(timer, timeInMillis);
     return rv;
   }
 
@@ -81,10 +88,12 @@ public class LockTimer {
 
   private static class TaskImpl extends TimerTask {
 
-    private final TimerCallback    callback;
-    private final LockTimerContext callbackObject;
-    private final long             scheduleDelayInMillis;
-    private final long             scheduledAt;
+    private final TimerCallback         callback;
+    private final LockTimerContext      callbackObject;
+    private final long                  scheduleDelayInMillis;
+    private final long                  scheduledAt;
+    private volatile boolean            cancelled;
+    private volatile ScheduledFuture<?> future;
 
     TaskImpl(TimerCallback callback, long timeInMillis, LockTimerContext callbackObject) {
       this.callback = callback;
@@ -101,8 +110,17 @@ public class LockTimer {
       return scheduledAt;
     }
 
+    void schedule(Timer timer, long delayInMillis) {
+      future = timer.schedule(this, delayInMillis, TimeUnit.MILLISECONDS);
+      // a cancel which raced with the scheduling may have missed the future
+      if (cancelled) {
+        future.cancel(false);
+      }
+    }
+
     @Override
     public void run() {
+      if (cancelled) { return; }
       try {
         callback.timerTimeout(callbackObject);
       } catch (Exception e) {
@@ -112,6 +130,11 @@ public class LockTimer {
 
     @Override
     public boolean cancel() {
+      cancelled = true;
+      ScheduledFuture<?> scheduled = future;
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
       return super.cancel();
     }
   }
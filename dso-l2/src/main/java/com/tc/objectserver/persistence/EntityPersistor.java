@@ -222,7 +222,7 @@ public class EntityPersistor {
     return previousConfiguration;
   }
 
-  public long getNextConsumerID() {
+  public synchronized long getNextConsumerID() {
     long consumerID = this.counters.get(COUNTERS_CONSUMER_ID);
     this.counters.put(COUNTERS_CONSUMER_ID, new Long(consumerID + 1));
     return consumerID;
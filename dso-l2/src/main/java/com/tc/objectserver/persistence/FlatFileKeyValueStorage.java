@@ -21,6 +21,7 @@ package com.tc.objectserver.persistence;
 import com.tc.util.Assert;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Set;
@@ -66,7 +67,7 @@ public class FlatFileKeyValueStorage<K, V> implements KeyValueStorage<K, V>, Sta
   
   @Override
   public void clear() {
-    doFlush.run(makeCallable(()->storage.clear()));
+    doFlush.run(makeCallable(()->storage.clear()), ()->undoOf(new ArrayList<>(storage.keySet())));
   }
 
   @Override
@@ -86,7 +87,7 @@ public class FlatFileKeyValueStorage<K, V> implements KeyValueStorage<K, V>, Sta
 
   @Override
   public void put(K key, V value) {
-    doFlush.run(()->storage.put(key, value));
+    doFlush.run(()->storage.put(key, value), ()->undoOf(key));
   }
 
   @Override
@@ -96,12 +97,12 @@ public class FlatFileKeyValueStorage<K, V> implements KeyValueStorage<K, V>, Sta
 
   @Override
   public boolean remove(K key) {
-    return doFlush.run(()->(null != storage.remove(key)));
+    return doFlush.run(()->(null != storage.remove(key)), ()->undoOf(key));
   }
 
   @Override
   public void removeAll(Collection<K> keys) {
-    doFlush.run(makeCallable(()->keys.stream().forEach(key -> storage.remove(key))));
+    doFlush.run(makeCallable(()->keys.stream().forEach(key -> storage.remove(key))), ()->undoOf(keys));
   }
 
   @Override
@@ -114,6 +115,24 @@ public class FlatFileKeyValueStorage<K, V> implements KeyValueStorage<K, V>, Sta
     return storage.values();
   }
 
+  private Runnable undoOf(K key) {
+    if (storage.containsKey(key)) {
+      V previous = storage.get(key);
+      return ()->put(key, previous);
+    }
+    return ()->remove(key);
+  }
+
+  private Runnable undoOf(Collection<K> keys) {
+    HashMap<K, V> previous = new HashMap<>();
+    for (K key : keys) {
+      if (storage.containsKey(key)) {
+        previous.put(key, storage.get(key));
+      }
+    }
+    return ()->previous.forEach(this::put);
+  }
+
   private static Callable<Void> makeCallable(Runnable r) {
     return ()-> { r.run(); return null; };
   }
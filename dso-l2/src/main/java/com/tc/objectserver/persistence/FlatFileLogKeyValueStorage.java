@@ -0,0 +1,166 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import com.tc.objectserver.persistence.FlatFileWriteAheadLog.Operation;
+import com.tc.objectserver.persistence.FlatFileWriteAheadLog.Record;
+import com.tc.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.terracotta.entity.StateDumpable;
+import org.terracotta.entity.StateDumper;
+import org.terracotta.persistence.KeyValueStorage;
+
+/**
+ * The key-value storage backed by a {@link FlatFileLogPersistentStorage}.  Each write is appended to the owning
+ * storage's write-ahead log, so its cost depends only on the size of the key and value being written, not on the total
+ * amount of persisted data.
+ */
+public class FlatFileLogKeyValueStorage<K, V> implements KeyValueStorage<K, V>, StateDumpable {
+  private final FlatFileLogPersistentStorage owner;
+  private final String name;
+  private final HashMap<K, V> storage;
+
+  FlatFileLogKeyValueStorage(FlatFileLogPersistentStorage owner, String name, HashMap<K, V> storage) {
+    this.owner = owner;
+    this.name = name;
+    this.storage = storage;
+  }
+
+  @Override
+  public void clear() {
+    owner.mutate(new Record(Operation.CLEAR, name, null, null));
+  }
+
+  @Override
+  public boolean containsKey(K key) {
+    return storage.containsKey(key);
+  }
+
+  @Override
+  public V get(K key) {
+    return storage.get(key);
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return Collections.unmodifiableSet(storage.keySet());
+  }
+
+  @Override
+  public void put(K key, V value) {
+    owner.mutate(new Record(Operation.PUT, name, key, value));
+  }
+
+  @Override
+  public void put(K arg0, V arg1, byte arg2) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean remove(K key) {
+    return (Boolean) owner.mutate(new Record(Operation.REMOVE, name, key, null));
+  }
+
+  @Override
+  public void removeAll(Collection<K> keys) {
+    owner.mutate(new Record(Operation.REMOVE_ALL, name, new ArrayList<>(keys), null));
+  }
+
+  @Override
+  public long size() {
+    return storage.size();
+  }
+
+  @Override
+  public Collection<V> values() {
+    return Collections.unmodifiableCollection(storage.values());
+  }
+
+  /**
+   * Adds, to undo, the mutations which put back what the given one would replace.  Only called by the owning storage,
+   * while it holds its lock.
+   */
+  @SuppressWarnings("unchecked")
+  void undoOf(Operation operation, Object key, List<Record> undo) {
+    Collection<K> keys;
+    switch (operation) {
+      case PUT:
+      case REMOVE:
+        keys = Collections.singleton((K) key);
+        break;
+      case REMOVE_ALL:
+        keys = (Collection<K>) key;
+        break;
+      case CLEAR:
+        keys = storage.keySet();
+        break;
+      default:
+        throw Assert.failure("Unexpected operation " + operation);
+    }
+    for (K k : keys) {
+      if (storage.containsKey(k)) {
+        undo.add(new Record(Operation.PUT, name, k, storage.get(k)));
+      } else if (operation == Operation.PUT) {
+        undo.add(new Record(Operation.REMOVE, name, k, null));
+      }
+    }
+  }
+
+  /**
+   * Applies a mutation which has already been logged (or is being replayed from the log).  Only called by the owning
+   * storage, while it holds its lock.
+   */
+  @SuppressWarnings("unchecked")
+  Object apply(Operation operation, Object key, Object value) {
+    switch (operation) {
+      case PUT:
+        return storage.put((K) key, (V) value);
+      case REMOVE:
+        return null != storage.remove(key);
+      case REMOVE_ALL:
+        ((Collection<K>) key).forEach(storage::remove);
+        return null;
+      case CLEAR:
+        storage.clear();
+        return null;
+      default:
+        throw Assert.failure("Unexpected operation " + operation);
+    }
+  }
+
+  /**
+   * Called by the owning storage, while it holds its lock, to capture the contents for a snapshot.
+   */
+  @SuppressWarnings("unchecked")
+  HashMap<Object, Object> copyContents() {
+    return new HashMap<>((HashMap<Object, Object>) storage);
+  }
+
+  @Override
+  public void dumpStateTo(StateDumper stateDumper) {
+    stateDumper.dumpState("size", String.valueOf(storage.size()));
+  }
+}
@@ -0,0 +1,338 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import org.terracotta.entity.StateDumpable;
+import org.terracotta.entity.StateDumper;
+import org.terracotta.persistence.IPersistentStorage;
+import org.terracotta.persistence.KeyValueStorage;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.objectserver.persistence.FlatFileWriteAheadLog.Operation;
+import com.tc.objectserver.persistence.FlatFileWriteAheadLog.Record;
+import com.tc.util.Assert;
+import com.tc.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * A variant of {@link FlatFilePersistentStorage} which records each mutation as a checksummed record in an append-only
+ * write-ahead log, instead of re-writing the entire file on every modification.  The log is replayed, on top of the
+ * last snapshot, when the storage is opened.  Once the active log segment grows beyond the compaction threshold, a
+ * background thread writes a new snapshot and discards the segments it covers.
+ * <p>
+ * The snapshot file holds the generation of the first log segment which is NOT included in it, followed by the
+ * properties and the contents of each key-value storage.
+ * <p>
+ * NOTE:  like {@link FlatFilePersistentStorage}, mutations are serialized but reads are not, so consumers must ensure
+ * that they don't read a key-value storage while it is being modified.
+ */
+public class FlatFileLogPersistentStorage implements IPersistentStorage, StateDumpable {
+  private static final TCLogger logger = TCLogging.getLogger(FlatFileLogPersistentStorage.class);
+  private static final long INITIAL_GENERATION = 1;
+
+  private final File store;
+  private final long compactionThreshold;
+  private final FlatFileWriteAheadLog log;
+  private final GroupCommitter committer;
+  private final ExecutorService compactor;
+  private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+  // Held while a snapshot is being written so that background compaction can't race with create() or close().
+  private final Object compactionLock = new Object();
+  private FlatFileLogProperties properties;
+  private Map<String, FlatFileLogKeyValueStorage<?, ?>> maps;
+
+  public FlatFileLogPersistentStorage(File file, long compactionThreshold) {
+    this(file, compactionThreshold, 0, 1);
+  }
+
+  /**
+   * @param maxLatencyMicros The longest time a log sync will be delayed to allow concurrent writers to join it
+   * @param maxBatchSize The number of pending mutations which triggers a sync without waiting for maxLatencyMicros
+   */
+  public FlatFileLogPersistentStorage(File file, long compactionThreshold, long maxLatencyMicros, int maxBatchSize) {
+    this.store = file;
+    this.compactionThreshold = compactionThreshold;
+    this.log = new FlatFileWriteAheadLog(file);
+    this.committer = new GroupCommitter(this.log::sync, maxLatencyMicros, maxBatchSize);
+    // The compaction thread is only alive while there is work for it, so this executor never needs to be shut down.
+    this.compactor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        new ThreadFactoryBuilder().setNameFormat("FlatFileLog compactor " + file.getName() + "-%d").setDaemon(true).build());
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void open() throws IOException {
+    // Note that we will fail out for FileNotFound and other IOExceptions since those are the checked kinds of failure to open.
+    if (!store.exists()) {
+      throw new IOException("not found");
+    }
+    synchronized (compactionLock) {
+      synchronized (store) {
+        long generation;
+        HashMap<String, String> savedProperties;
+        HashMap<String, HashMap<Object, Object>> savedMaps;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(store))) {
+          generation = in.readLong();
+          savedProperties = (HashMap<String, String>) in.readObject();
+          savedMaps = (HashMap<String, HashMap<Object, Object>>) in.readObject();
+        } catch (ClassNotFoundException e) {
+          // ClassNotFoundException is NOT expected so re-throw it as a runtime exception.
+          throw new RuntimeException(e);
+        }
+        this.properties = new FlatFileLogProperties(this);
+        this.properties.restore(savedProperties);
+        this.maps = new ConcurrentHashMap<>();
+        for (Map.Entry<String, HashMap<Object, Object>> entry : savedMaps.entrySet()) {
+          this.maps.put(entry.getKey(), new FlatFileLogKeyValueStorage<>(this, entry.getKey(), entry.getValue()));
+        }
+        this.log.replay(generation, this::apply);
+      }
+    }
+  }
+
+  @Override
+  public void create() throws IOException {
+    synchronized (compactionLock) {
+      byte[] image;
+      synchronized (store) {
+        this.properties = new FlatFileLogProperties(this);
+        this.maps = new ConcurrentHashMap<>();
+        this.log.reset(INITIAL_GENERATION);
+        image = serializeSnapshot(INITIAL_GENERATION);
+      }
+      // Write the file, for the first time, so that we can attempt to open it later, even if we don't write anything.
+      writeSnapshot(image);
+    }
+  }
+
+  @Override
+  public void close() {
+    // Leave only a snapshot behind so that the next open() doesn't need to replay anything.
+    compact();
+    synchronized (store) {
+      try {
+        this.log.close();
+      } catch (IOException e) {
+        throw Assert.failure("Failure closing FlatFileLogPersistentStorage", e);
+      }
+    }
+  }
+
+  @Override
+  public Map<String, String> getProperties() {
+    return this.properties;
+  }
+
+  @Override
+  public <K, V> KeyValueStorage<K, V> getKeyValueStorage(String name, Class<K> keyClass, Class<V> valueClass) {
+    return createKeyValueStorage(name, keyClass, valueClass);
+  }
+
+  // Creating and destroying a storage are idempotent when replayed so a racing duplicate record is harmless.  This
+  //  means we don't need to hold the storage lock while waiting for the mutation to be durable.
+  @Override
+  @SuppressWarnings("unchecked")
+  public <K, V> KeyValueStorage<K, V> createKeyValueStorage(String name, Class<K> keyClass, Class<V> valueClass) {
+    if (!maps.containsKey(name)) {
+      mutate(new Record(Operation.CREATE_MAP, name, null, null));
+    }
+    return (KeyValueStorage<K, V>) maps.get(name);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <K, V> KeyValueStorage<K, V> destroyKeyValueStorage(String name) {
+    KeyValueStorage<K, V> storage = (KeyValueStorage<K, V>) maps.get(name);
+    if (null != storage) {
+      mutate(new Record(Operation.DESTROY_MAP, name, null, null));
+    }
+    return storage;
+  }
+
+  @Override
+  public Transaction begin() {
+    // Mutations made by this thread, until the commit, are only synced once (possibly along with those of other threads).
+    return committer.begin();
+  }
+
+  /**
+   * Logs the given mutation and then applies it to the in-memory state.  Unless the calling thread is within a
+   * transaction, this returns only once the mutation is durable.  Within one, the mutations which undo it are kept in
+   * case the transaction is aborted.
+   *
+   * @return The result of applying the mutation
+   */
+  Object mutate(Record record) {
+    Object result;
+    long sequence;
+    boolean shouldCompact;
+    synchronized (store) {
+      List<Record> undo = this.committer.inTransaction() ? undoOf(record) : null;
+      try {
+        this.log.append(record);
+      } catch (IOException e) {
+        // If something happened here, that is a serious bug so we need to assert.
+        throw Assert.failure("Failure appending to FlatFileWriteAheadLog", e);
+      }
+      result = apply(record);
+      sequence = this.committer.written((null != undo) ? () -> undo.forEach(this::mutate) : null);
+      shouldCompact = this.log.getSegmentSize() >= this.compactionThreshold;
+    }
+    if (shouldCompact && compactionScheduled.compareAndSet(false, true)) {
+      compactor.execute(() -> {
+        compactionScheduled.set(false);
+        compact();
+      });
+    }
+    this.committer.commit(sequence);
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object apply(Record record) {
+    switch (record.operation) {
+      case CREATE_MAP:
+        return maps.computeIfAbsent(record.name, (name) -> new FlatFileLogKeyValueStorage<>(this, name, new HashMap<>()));
+      case DESTROY_MAP:
+        return maps.remove(record.name);
+      case PUT_PROPERTY:
+        return properties.restore((String) record.key, (String) record.value);
+      case REMOVE_PROPERTY:
+        return properties.forget((String) record.key);
+      default:
+        FlatFileLogKeyValueStorage<Object, Object> target = (FlatFileLogKeyValueStorage<Object, Object>) maps.get(record.name);
+        Assert.assertNotNull(target);
+        return target.apply(record.operation, record.key, record.value);
+    }
+  }
+
+  /**
+   * @return The mutations which put back what the given one replaces.  Called while holding the storage lock, before
+   *  it is applied.
+   */
+  private List<Record> undoOf(Record record) {
+    List<Record> undo = new ArrayList<>();
+    switch (record.operation) {
+      case CREATE_MAP:
+        if (!maps.containsKey(record.name)) {
+          undo.add(new Record(Operation.DESTROY_MAP, record.name, null, null));
+        }
+        break;
+      case DESTROY_MAP:
+        if (maps.containsKey(record.name)) {
+          undo.add(new Record(Operation.CREATE_MAP, record.name, null, null));
+          maps.get(record.name).undoOf(Operation.CLEAR, null, undo);
+        }
+        break;
+      case PUT_PROPERTY:
+      case REMOVE_PROPERTY:
+        String previous = properties.get((String) record.key);
+        undo.add((null != previous) 
+            ? new Record(Operation.PUT_PROPERTY, null, record.key, previous) 
+            : new Record(Operation.REMOVE_PROPERTY, null, record.key, null));
+        break;
+      default:
+        FlatFileLogKeyValueStorage<?, ?> target = maps.get(record.name);
+        Assert.assertNotNull(target);
+        target.undoOf(record.operation, record.key, undo);
+        break;
+    }
+    return undo;
+  }
+
+  /**
+   * Writes a new snapshot of the current state and removes the log segments which it makes redundant.  The log is
+   * rolled while holding the storage lock but the snapshot is written to disk outside of it so that writers are only
+   * blocked for the time it takes to serialize the state into memory.
+   */
+  private void compact() {
+    synchronized (compactionLock) {
+      try {
+        long generation;
+        byte[] image;
+        synchronized (store) {
+          if (0 == this.log.getSegmentSize()) {
+            // Nothing was logged since the last snapshot.
+            return;
+          }
+          generation = this.log.roll();
+          image = serializeSnapshot(generation);
+        }
+        writeSnapshot(image);
+        this.log.deleteSegmentsBefore(generation);
+      } catch (IOException e) {
+        throw Assert.failure("Failure compacting FlatFileWriteAheadLog", e);
+      }
+    }
+  }
+
+  private byte[] serializeSnapshot(long generation) throws IOException {
+    HashMap<String, HashMap<Object, Object>> savedMaps = new HashMap<>();
+    for (Map.Entry<String, FlatFileLogKeyValueStorage<?, ?>> entry : maps.entrySet()) {
+      savedMaps.put(entry.getKey(), entry.getValue().copyContents());
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeLong(generation);
+      out.writeObject(new HashMap<>(properties));
+      out.writeObject(savedMaps);
+    }
+    return bytes.toByteArray();
+  }
+
+  private void writeSnapshot(byte[] image) throws IOException {
+    File temp = new File(store.getAbsoluteFile().getParentFile(), "temp_" + store.getName());
+    try (FileOutputStream file = new FileOutputStream(temp)) {
+      file.write(image);
+      file.getFD().sync();
+    }
+    Files.move(temp.toPath(), store.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    logger.debug("Wrote snapshot of " + image.length + " bytes to " + store);
+  }
+
+  @Override
+  public void dumpStateTo(StateDumper stateDumper) {
+    stateDumper.subStateDumper("location").dumpState("StorageDir", store.getAbsolutePath());
+    stateDumper.subStateDumper("log").dumpState("generation", String.valueOf(log.getGeneration()));
+    for (Map.Entry<String, FlatFileLogKeyValueStorage<?, ?>> entry : maps.entrySet()) {
+      entry.getValue().dumpStateTo(stateDumper.subStateDumper(entry.getKey()));
+    }
+  }
+}
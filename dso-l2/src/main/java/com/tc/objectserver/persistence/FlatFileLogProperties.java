@@ -0,0 +1,60 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import com.tc.objectserver.persistence.FlatFileWriteAheadLog.Operation;
+import com.tc.objectserver.persistence.FlatFileWriteAheadLog.Record;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The properties of a {@link FlatFileLogPersistentStorage}.  Like {@link FlatFileProperties}, only put() is persisted.
+ */
+public class FlatFileLogProperties extends ConcurrentHashMap<String, String> {
+  private static final long serialVersionUID = 1L;
+
+  private final transient FlatFileLogPersistentStorage owner;
+
+  FlatFileLogProperties(FlatFileLogPersistentStorage owner) {
+    this.owner = owner;
+  }
+
+  @Override
+  public String put(String key, String value) {
+    return (String) owner.mutate(new Record(Operation.PUT_PROPERTY, null, key, value));
+  }
+
+  /**
+   * Updates the in-memory value without logging it.  Used when applying or replaying a logged mutation.
+   */
+  String restore(String key, String value) {
+    return super.put(key, value);
+  }
+
+  String forget(String key) {
+    return super.remove(key);
+  }
+
+  void restore(Map<String, String> saved) {
+    for (Map.Entry<String, String> entry : saved.entrySet()) {
+      restore(entry.getKey(), entry.getValue());
+    }
+  }
+}
@@ -36,6 +36,7 @@ import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 
 /**
@@ -49,35 +50,57 @@ public class FlatFilePersistentStorage implements IPersistentStorage, StateDumpa
   private FlatFileProperties properties;
   private Map<String, FlatFileKeyValueStorage<?, ?>> maps;
   
+  private final GroupCommitter committer;
+
   private final FlatFileWrite doFlush = new FlatFileWrite() {
     @Override
-    public <T> T run(Callable<T> r) {
+    public <T> T run(Callable<T> r, Supplier<Runnable> undo) {
       T result = null;
+      long sequence;
       try {
         synchronized (store) {
-            result = r.call();
-            File temp = new File(store.getParentFile(), "temp_" + store.getName());
-            FileOutputStream file = new FileOutputStream(temp);
-            ObjectOutputStream out = new ObjectOutputStream(file);
-            out.writeObject(properties);
-            out.writeObject(maps);
-            out.flush();
-            out.close();
-            file.flush();
-            file.close();
-            Files.move(temp.toPath(), store.toPath(), 
-                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+          // What the mutation replaces is only kept while a transaction which may abort it is open.
+          Runnable restore = (null != undo && committer.inTransaction()) ? undo.get() : null;
+          result = r.call();
+          sequence = committer.written(restore);
         }
       } catch (Exception e) {
         // If something happened here, that is a serious bug so we need to assert.
         throw Assert.failure("Failure flushing FlatFileKeyValueStorage", e);
       }
+      // Concurrent writers (and everything written within the caller's transaction) share a single re-write of the file.
+      committer.commit(sequence);
       return result;
     }
   };
   
   public FlatFilePersistentStorage(File file) {
+    this(file, 0, 1);
+  }
+  
+  /**
+   * @param maxLatencyMicros The longest time a flush will be delayed to allow concurrent writers to join it
+   * @param maxBatchSize The number of pending mutations which triggers a flush without waiting for maxLatencyMicros
+   */
+  public FlatFilePersistentStorage(File file, long maxLatencyMicros, int maxBatchSize) {
     this.store = file;
+    this.committer = new GroupCommitter(this::writeFile, maxLatencyMicros, maxBatchSize);
+  }
+
+  private void writeFile() throws IOException {
+    synchronized (store) {
+      File temp = new File(store.getParentFile(), "temp_" + store.getName());
+      FileOutputStream file = new FileOutputStream(temp);
+      ObjectOutputStream out = new ObjectOutputStream(file);
+      out.writeObject(properties);
+      out.writeObject(maps);
+      out.flush();
+      out.close();
+      file.flush();
+      file.close();
+      Files.move(temp.toPath(), store.toPath(), 
+          StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
   }
   
   @Override
@@ -109,12 +132,12 @@ public class FlatFilePersistentStorage implements IPersistentStorage, StateDumpa
     this.properties = new FlatFileProperties(doFlush);
     this.maps = new ConcurrentHashMap<>();
     // Write the file, for the first time, so that we can attempt to open it later, even if we don't write anything.
-    this.doFlush.run(()->null);
+    this.doFlush.run(()->null, null);
   }
 
   @Override
   public void close() {
-    doFlush.run(()->null);
+    doFlush.run(()->null, null);
   }
 
   @Override
@@ -160,18 +183,8 @@ public class FlatFilePersistentStorage implements IPersistentStorage, StateDumpa
 
   @Override
   public Transaction begin() {
-    return new Transaction() {
-
-      @Override
-      public void commit() {
-        doFlush.run(()->null);
-      }
-
-      @Override
-      public void abort() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
-      }
-    };
+    // Mutations made by this thread, until the commit, are only flushed once (possibly along with those of other threads).
+    return committer.begin();
   }
 
 
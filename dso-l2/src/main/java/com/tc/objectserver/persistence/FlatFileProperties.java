@@ -38,7 +38,16 @@ public class FlatFileProperties extends ConcurrentHashMap<String, String> implem
 
   @Override
   public synchronized String put(String key, String value) {
-    return write.run(()->FlatFileProperties.super.put(key, value));
+    return write.run(()->FlatFileProperties.super.put(key, value), ()->undoOf(key));
+  }
+
+  private synchronized String forget(String key) {
+    return write.run(()->FlatFileProperties.super.remove(key), ()->undoOf(key));
+  }
+
+  private Runnable undoOf(String key) {
+    String previous = get(key);
+    return (null != previous) ? ()->put(key, previous) : ()->forget(key);
   }
   
 }
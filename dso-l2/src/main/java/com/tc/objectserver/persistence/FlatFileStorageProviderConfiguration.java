@@ -24,12 +24,45 @@ import org.terracotta.entity.ServiceProviderConfiguration;
 
 
 public class FlatFileStorageProviderConfiguration implements ServiceProviderConfiguration {
+  public static final long DEFAULT_LOG_COMPACTION_THRESHOLD = 64 * 1024 * 1024;
+  public static final long DEFAULT_GROUP_COMMIT_MAX_LATENCY_MICROS = 0;
+  public static final int DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE = 256;
+
   private final File basedir;
   private final boolean shouldPersistAcrossRestarts;
+  private final boolean useWriteAheadLog;
+  private final long logCompactionThreshold;
+  private final long groupCommitMaxLatencyMicros;
+  private final int groupCommitMaxBatchSize;
 
   public FlatFileStorageProviderConfiguration(File basedir, boolean shouldPersistAcrossRestarts) {
+    this(basedir, shouldPersistAcrossRestarts, false, DEFAULT_LOG_COMPACTION_THRESHOLD);
+  }
+
+  /**
+   * @param useWriteAheadLog If true, the provider hands out {@link FlatFileLogPersistentStorage} instead of
+   * {@link FlatFilePersistentStorage}
+   * @param logCompactionThreshold The size, in bytes, a log segment may reach before it is compacted into a snapshot
+   */
+  public FlatFileStorageProviderConfiguration(File basedir, boolean shouldPersistAcrossRestarts, boolean useWriteAheadLog, long logCompactionThreshold) {
+    this(basedir, shouldPersistAcrossRestarts, useWriteAheadLog, logCompactionThreshold,
+        DEFAULT_GROUP_COMMIT_MAX_LATENCY_MICROS, DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE);
+  }
+
+  /**
+   * @param groupCommitMaxLatencyMicros The longest time a durable write will be delayed so that concurrent writers can
+   * share it.  0 means writers only share a write if they arrive while another one is in progress.
+   * @param groupCommitMaxBatchSize The number of pending mutations which triggers a durable write without waiting for
+   * groupCommitMaxLatencyMicros to elapse
+   */
+  public FlatFileStorageProviderConfiguration(File basedir, boolean shouldPersistAcrossRestarts, boolean useWriteAheadLog, long logCompactionThreshold,
+      long groupCommitMaxLatencyMicros, int groupCommitMaxBatchSize) {
     this.basedir = basedir;
     this.shouldPersistAcrossRestarts = shouldPersistAcrossRestarts;
+    this.useWriteAheadLog = useWriteAheadLog;
+    this.logCompactionThreshold = logCompactionThreshold;
+    this.groupCommitMaxLatencyMicros = groupCommitMaxLatencyMicros;
+    this.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
   }
 
   public File getBasedir() {
@@ -40,6 +73,22 @@ public class FlatFileStorageProviderConfiguration implements ServiceProviderConf
     return this.shouldPersistAcrossRestarts;
   }
 
+  public boolean useWriteAheadLog() {
+    return this.useWriteAheadLog;
+  }
+
+  public long getLogCompactionThreshold() {
+    return this.logCompactionThreshold;
+  }
+
+  public long getGroupCommitMaxLatencyMicros() {
+    return this.groupCommitMaxLatencyMicros;
+  }
+
+  public int getGroupCommitMaxBatchSize() {
+    return this.groupCommitMaxBatchSize;
+  }
+
   @Override
   public Class<? extends ServiceProvider> getServiceProviderType() {
     return FlatFileStorageServiceProvider.class;
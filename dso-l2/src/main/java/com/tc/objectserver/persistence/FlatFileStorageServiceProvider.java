@@ -48,6 +48,10 @@ import org.terracotta.entity.ServiceProviderConfiguration;
 public class FlatFileStorageServiceProvider implements ServiceProvider {
   private static final TCLogger logger = TCLogging.getLogger(FlatFileStorageServiceProvider.class);
   private boolean shouldPersistAcrossRestarts;
+  private boolean useWriteAheadLog;
+  private long logCompactionThreshold;
+  private long groupCommitMaxLatencyMicros;
+  private int groupCommitMaxBatchSize;
   private Path directory;
   private final Set<Long> consumers = new HashSet<>();
 
@@ -58,13 +62,17 @@ public class FlatFileStorageServiceProvider implements ServiceProvider {
     Assert.assertTrue(configuration instanceof FlatFileStorageProviderConfiguration);
     FlatFileStorageProviderConfiguration flatFileConfiguration = (FlatFileStorageProviderConfiguration)configuration;
     this.shouldPersistAcrossRestarts = flatFileConfiguration.shouldPersistAcrossRestarts();
+    this.useWriteAheadLog = flatFileConfiguration.useWriteAheadLog();
+    this.logCompactionThreshold = flatFileConfiguration.getLogCompactionThreshold();
+    this.groupCommitMaxLatencyMicros = flatFileConfiguration.getGroupCommitMaxLatencyMicros();
+    this.groupCommitMaxBatchSize = flatFileConfiguration.getGroupCommitMaxBatchSize();
     File targetDirectory = flatFileConfiguration.getBasedir();
     if (null != targetDirectory) {
       this.directory = targetDirectory.toPath();
     } else {
       this.directory = Paths.get(".").toAbsolutePath().normalize();
     }
-    logger.info("Initialized flat file storage to: " + this.directory);
+    logger.info("Initialized flat file storage to: " + this.directory + (this.useWriteAheadLog ? " (write-ahead log)" : ""));
     return true;
   }
 
@@ -79,7 +87,9 @@ public class FlatFileStorageServiceProvider implements ServiceProvider {
     if (!this.shouldPersistAcrossRestarts) {
       file.delete();
     }
-    FlatFilePersistentStorage storage = new FlatFilePersistentStorage(file);
+    IPersistentStorage storage = this.useWriteAheadLog
+        ? new FlatFileLogPersistentStorage(file, this.logCompactionThreshold, this.groupCommitMaxLatencyMicros, this.groupCommitMaxBatchSize)
+        : new FlatFilePersistentStorage(file, this.groupCommitMaxLatencyMicros, this.groupCommitMaxBatchSize);
     return configuration.getServiceType().cast(storage);
   }
 
@@ -93,7 +103,8 @@ public class FlatFileStorageServiceProvider implements ServiceProvider {
     // check that either there are no consumers or platform is the only consumer
     Assert.assertTrue((consumers.size() == 0) || (consumers.size() == 1 && consumers.iterator().next() == 0));
 
-    final String CONSUMER_FILE_PAT = "consumer_[0-9]+.dat";
+    // Also matches the log segments written next to the data file when using the write-ahead log.
+    final String CONSUMER_FILE_PAT = "consumer_[0-9]+.dat(\\.[0-9]+\\.log)?";
 
     // remove data files
     for(File file : directory.toFile().listFiles()) {
@@ -19,10 +19,15 @@
 package com.tc.objectserver.persistence;
 
 import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 
 /**
  *
  */
 public interface FlatFileWrite {
-  <T> T run(Callable<T> r);
+  /**
+   * @param undo Asked, before r is run and only within a transaction, for what puts back what r replaces (null if there
+   *  is nothing to undo)
+   */
+  <T> T run(Callable<T> r, Supplier<Runnable> undo);
 }
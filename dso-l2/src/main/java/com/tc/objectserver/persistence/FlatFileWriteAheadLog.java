@@ -0,0 +1,285 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of mutations made to a {@link FlatFileLogPersistentStorage}.
+ * <p>
+ * The log is split into numbered segments, named <code>&lt;store&gt;.&lt;generation&gt;.log</code>, which live next to
+ * the snapshot file.  Each record is framed as a length, a CRC32 of the payload, and the payload itself so that a torn
+ * write at the tail of the last segment can be detected (and discarded) when the log is replayed.
+ * <p>
+ * Records are not forced to disk as they are appended:  the owner calls {@link #sync()} to make them durable.
+ * <p>
+ * NOTE:  this class is not thread-safe.  The owning storage serializes all access to it, except for sync().
+ */
+class FlatFileWriteAheadLog {
+  private static final TCLogger logger = TCLogging.getLogger(FlatFileWriteAheadLog.class);
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+  enum Operation {
+    PUT,
+    REMOVE,
+    REMOVE_ALL,
+    CLEAR,
+    CREATE_MAP,
+    DESTROY_MAP,
+    PUT_PROPERTY,
+    // Only logged to undo the put of a new property, in an aborted transaction.
+    REMOVE_PROPERTY
+  }
+
+  /**
+   * A single logged mutation.  The name is the key-value storage the mutation applies to (unused for properties).
+   */
+  static class Record {
+    final Operation operation;
+    final String name;
+    final Object key;
+    final Object value;
+
+    Record(Operation operation, String name, Object key, Object value) {
+      this.operation = operation;
+      this.name = name;
+      this.key = key;
+      this.value = value;
+    }
+
+    byte[] encode() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeByte(operation.ordinal());
+        out.writeObject(name);
+        out.writeObject(key);
+        out.writeObject(value);
+      }
+      return bytes.toByteArray();
+    }
+
+    static Record decode(byte[] payload) throws IOException {
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+        Operation operation = Operation.values()[in.readByte()];
+        return new Record(operation, (String) in.readObject(), in.readObject(), in.readObject());
+      } catch (ClassNotFoundException e) {
+        // ClassNotFoundException is NOT expected so re-throw it as a runtime exception.
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private final File directory;
+  private final String baseName;
+  private final Pattern segmentPattern;
+  private volatile FileChannel channel;
+  private long generation;
+  private long segmentSize;
+
+  FlatFileWriteAheadLog(File store) {
+    this.directory = store.getAbsoluteFile().getParentFile();
+    this.baseName = store.getName();
+    this.segmentPattern = Pattern.compile(Pattern.quote(this.baseName) + "\\.([0-9]+)\\.log");
+  }
+
+  /**
+   * Replays every segment at or after the given generation, in order, and leaves the newest one open for appending.
+   * Segments older than the given generation are already covered by the snapshot so they are deleted.
+   */
+  void replay(long fromGeneration, Consumer<Record> consumer) throws IOException {
+    close();
+    deleteSegmentsBefore(fromGeneration);
+    long last = fromGeneration;
+    for (long segment : listGenerations()) {
+      long validLength = replaySegment(segmentFile(segment), consumer);
+      if (validLength < segmentFile(segment).length()) {
+        logger.warn("Discarding torn tail of " + segmentFile(segment) + " after " + validLength + " bytes");
+        try (FileChannel truncate = FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.WRITE)) {
+          truncate.truncate(validLength);
+        }
+      }
+      last = segment;
+    }
+    openSegment(last);
+  }
+
+  /**
+   * Deletes all existing segments and starts a new, empty, log at the given generation.
+   */
+  void reset(long newGeneration) throws IOException {
+    close();
+    for (long segment : listGenerations()) {
+      deleteSegment(segment);
+    }
+    openSegment(newGeneration);
+  }
+
+  void append(Record record) throws IOException {
+    byte[] payload = record.encode();
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+    buffer.putInt(payload.length);
+    buffer.putLong(crc.getValue());
+    buffer.put(payload);
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      this.channel.write(buffer);
+    }
+    this.segmentSize += HEADER_SIZE + payload.length;
+  }
+
+  /**
+   * Forces every record appended so far to disk.  This may be called concurrently with appends.
+   */
+  void sync() throws IOException {
+    FileChannel current = this.channel;
+    if (null != current) {
+      try {
+        current.force(false);
+      } catch (ClosedChannelException e) {
+        // The segment was rolled or closed, both of which force it first, so the records we wanted are on disk.
+      }
+    }
+  }
+
+  /**
+   * Closes the current segment and starts the next one.
+   *
+   * @return The generation of the new segment
+   */
+  long roll() throws IOException {
+    close();
+    openSegment(this.generation + 1);
+    return this.generation;
+  }
+
+  void deleteSegmentsBefore(long keepGeneration) {
+    for (long segment : listGenerations()) {
+      if (segment < keepGeneration) {
+        deleteSegment(segment);
+      }
+    }
+  }
+
+  long getGeneration() {
+    return this.generation;
+  }
+
+  long getSegmentSize() {
+    return this.segmentSize;
+  }
+
+  void close() throws IOException {
+    FileChannel current = this.channel;
+    if (null != current) {
+      current.force(false);
+      this.channel = null;
+      current.close();
+    }
+  }
+
+  private void openSegment(long newGeneration) throws IOException {
+    this.generation = newGeneration;
+    this.channel = FileChannel.open(segmentFile(newGeneration).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    this.segmentSize = this.channel.size();
+  }
+
+  private List<Long> listGenerations() {
+    List<Long> generations = new ArrayList<>();
+    String[] names = this.directory.list();
+    if (null != names) {
+      for (String name : names) {
+        Matcher matcher = this.segmentPattern.matcher(name);
+        if (matcher.matches()) {
+          generations.add(Long.parseLong(matcher.group(1)));
+        }
+      }
+    }
+    Collections.sort(generations);
+    return generations;
+  }
+
+  private void deleteSegment(long segment) {
+    File file = segmentFile(segment);
+    if (!file.delete() && file.exists()) {
+      logger.warn("Failed to delete log segment " + file);
+    }
+  }
+
+  private File segmentFile(long segment) {
+    return new File(this.directory, this.baseName + "." + segment + ".log");
+  }
+
+  /**
+   * @return The number of bytes, from the start of the segment, which contained complete and valid records
+   */
+  private static long replaySegment(File file, Consumer<Record> consumer) throws IOException {
+    long validLength = 0;
+    long fileLength = file.length();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      while (true) {
+        byte[] payload;
+        long expectedCrc;
+        try {
+          int length = in.readInt();
+          expectedCrc = in.readLong();
+          if (length < 0 || validLength + HEADER_SIZE + length > fileLength) {
+            break;
+          }
+          payload = new byte[length];
+          in.readFully(payload);
+        } catch (EOFException eof) {
+          break;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if (crc.getValue() != expectedCrc) {
+          break;
+        }
+        consumer.accept(Record.decode(payload));
+        validLength += HEADER_SIZE + payload.length;
+      }
+    }
+    return validLength;
+  }
+}
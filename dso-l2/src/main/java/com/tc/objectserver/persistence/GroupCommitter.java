@@ -0,0 +1,260 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import org.terracotta.persistence.IPersistentStorage;
+
+import com.tc.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces the durable writes of concurrent callers into a single flush.
+ * <p>
+ * Each mutation is given a sequence number, in the order it was applied, once it has been written (but not necessarily
+ * made durable).  A caller which needs its mutation to be durable waits for that sequence.  The first waiter becomes
+ * the leader:  it gives other writers up to the maximum latency to join the batch (or until the batch is full) and then
+ * runs a single flush which covers every mutation written before it started.  Since flushes only ever cover a prefix
+ * of the sequence, the durable state never contains a mutation without all of the mutations which preceded it.
+ * <p>
+ * Mutations made by a thread between {@link #begin()} and the commit of the returned transaction don't wait, at all:
+ * only the commit waits for the newest of them.  The transaction keeps the sequence of its newest mutation, and how to
+ * undo each of them, so it can be committed or aborted from any thread.  Aborting it undoes its mutations, newest
+ * first, and waits only for those undos, not for the mutations themselves.  A transaction begun within another is
+ * folded into it on commit.
+ * <p>
+ * The storage interfaces don't pass a transaction to their mutations so the thread which began a transaction is how
+ * its mutations find it, until it is committed or aborted.
+ */
+class GroupCommitter {
+  interface Flush {
+    void flush() throws Exception;
+  }
+
+  private final Flush flush;
+  private final long maxLatencyNanos;
+  private final int maxBatchSize;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition arrived = lock.newCondition();
+  private final Condition flushed = lock.newCondition();
+  private final ThreadLocal<OpenTransaction> openTransaction = new ThreadLocal<>();
+  private long written;
+  private long durable;
+  private boolean flushing;
+  private boolean gathering;
+
+  GroupCommitter(Flush flush, long maxLatencyMicros, int maxBatchSize) {
+    Assert.assertTrue(maxBatchSize > 0);
+    this.flush = flush;
+    this.maxLatencyNanos = TimeUnit.MICROSECONDS.toNanos(maxLatencyMicros);
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * @return True if the calling thread is within a transaction, so its mutations should be given an undo
+   */
+  boolean inTransaction() {
+    return null != current();
+  }
+
+  /**
+   * As {@link #written()}, for a mutation which the given action undoes if the transaction it is part of is aborted.
+   */
+  long written(Runnable undo) {
+    OpenTransaction transaction = current();
+    if (null != transaction && null != undo) {
+      transaction.undoWith(undo);
+    }
+    return written();
+  }
+
+  /**
+   * Called, after a mutation has been written, while the storage still holds the lock which orders its mutations.
+   *
+   * @return The sequence number of the mutation
+   */
+  long written() {
+    lock.lock();
+    try {
+      written += 1;
+      if (gathering && (written - durable >= maxBatchSize)) {
+        arrived.signal();
+      }
+      return written;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Called, outside of the storage lock, once the mutation with the given sequence is visible.  Blocks until the
+   * mutation is durable unless the calling thread is within a transaction.
+   */
+  void commit(long sequence) {
+    OpenTransaction transaction = current();
+    if (null != transaction) {
+      transaction.include(sequence);
+    } else {
+      awaitDurable(sequence);
+    }
+  }
+
+  IPersistentStorage.Transaction begin() {
+    OpenTransaction transaction = new OpenTransaction(current());
+    openTransaction.set(transaction);
+    return transaction;
+  }
+
+  private OpenTransaction current() {
+    OpenTransaction transaction = openTransaction.get();
+    if (null != transaction && transaction.closed) {
+      // Closed from another thread:  mutations from here on belong to the closest enclosing transaction still open.
+      while (null != transaction && transaction.closed) {
+        transaction = transaction.parent;
+      }
+      bind(transaction);
+    }
+    return transaction;
+  }
+
+  private void bind(OpenTransaction transaction) {
+    if (null != transaction) {
+      openTransaction.set(transaction);
+    } else {
+      openTransaction.remove();
+    }
+  }
+
+  private void awaitDurable(long sequence) {
+    lock.lock();
+    try {
+      while (durable < sequence) {
+        if (flushing) {
+          flushed.awaitUninterruptibly();
+        } else {
+          flushing = true;
+          try {
+            gatherBatch();
+            long target = written;
+            lock.unlock();
+            try {
+              flush.flush();
+            } finally {
+              lock.lock();
+            }
+            durable = Math.max(durable, target);
+          } catch (Exception e) {
+            // If something happened here, that is a serious bug so we need to assert.
+            throw Assert.failure("Failure flushing persistent storage", e);
+          } finally {
+            flushing = false;
+            flushed.signalAll();
+          }
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void gatherBatch() {
+    long remaining = maxLatencyNanos;
+    gathering = true;
+    try {
+      while ((remaining > 0) && (written - durable < maxBatchSize)) {
+        remaining = arrived.awaitNanos(remaining);
+      }
+    } catch (InterruptedException e) {
+      // Flush what we have, now, but preserve the interrupt for the caller.
+      Thread.currentThread().interrupt();
+    } finally {
+      gathering = false;
+    }
+  }
+
+  private class OpenTransaction implements IPersistentStorage.Transaction {
+    private final OpenTransaction parent;
+    // Newest first.
+    private Deque<Runnable> undo = new ArrayDeque<>();
+    private long sequence;
+    private volatile boolean closed;
+
+    private OpenTransaction(OpenTransaction parent) {
+      this.parent = parent;
+    }
+
+    @Override
+    public void commit() {
+      Deque<Runnable> done = close();
+      if (null != parent) {
+        parent.fold(sequence, done);
+      } else {
+        awaitDurable(sequence);
+      }
+    }
+
+    @Override
+    public void abort() {
+      Deque<Runnable> discarded = close();
+      // The undos are a transaction of their own, within the parent, so they share a single flush.
+      OpenTransaction previous = openTransaction.get();
+      OpenTransaction undoing = new OpenTransaction(parent);
+      openTransaction.set(undoing);
+      try {
+        for (Runnable action : discarded) {
+          action.run();
+        }
+      } finally {
+        bind(previous);
+        undoing.commit();
+      }
+    }
+
+    private synchronized void undoWith(Runnable action) {
+      Assert.assertFalse(closed);
+      undo.addFirst(action);
+    }
+
+    private synchronized void include(long written) {
+      sequence = Math.max(sequence, written);
+    }
+
+    private synchronized void fold(long written, Deque<Runnable> actions) {
+      Assert.assertFalse(closed);
+      sequence = Math.max(sequence, written);
+      // The folded mutations are all newer than this transaction's own.
+      actions.descendingIterator().forEachRemaining(undo::addFirst);
+    }
+
+    private synchronized Deque<Runnable> close() {
+      Assert.assertFalse(closed);
+      closed = true;
+      Deque<Runnable> actions = undo;
+      undo = null;
+      if (openTransaction.get() == this) {
+        bind(parent);
+      }
+      return actions;
+    }
+  }
+}
@@ -16,7 +16,6 @@
  *  Terracotta, Inc., a Software AG company
  *
  */
-
 package com.tc.objectserver.persistence;
 
 import org.terracotta.persistence.IPersistentStorage;
@@ -27,39 +26,72 @@ import com.tc.object.tx.TransactionID;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * Stores the information mapping the client-local TransactionIDs of in-flight transactions into a global order.
  * This is persisted because reconnect on restart needs to ensure that the transactions being replayed are done so in
  * the same order as their original order.
+ * <p>
+ * In memory, each client's in-flight transactions are kept in a ring of primitive (transactionID, globalID) pairs,
+ * sorted by transactionID.  Appending and trimming the oldest transactions are O(1), amortized.  The global order
+ * is only materialized (as a sorted array of globalIDs) when a resend asks for it, after which each lookup is a pair
+ * of binary searches.  It is only rebuilt if a ring has changed since, which doesn't happen while resends are handled.
+ * <p>
+ * In storage, each transaction is its own entry, keyed by its globalID, so an update only writes the new transaction
+ * and removes those which were trimmed instead of re-writing the client's entire list.
+ * <p>
+ * New messages are handled concurrently, by several threads, so each client's ring is locked on its own and globalIDs
+ * come from a shared counter.  The global order is only needed for resends, which are handled before any new message.
  */
 public class TransactionOrderPersistor {
+  // The storage used by older versions, which held a List<ClientTransaction> per client.  Only read for migration.
   private static final String CLIENT_LOCAL_LISTS = "client_local_lists";
+  // Set in the storage properties once the storage of older versions has been migrated (or found not to exist).
+  private static final String CLIENT_LOCAL_LISTS_MIGRATED = "transaction_order:client_local_lists_migrated";
+  private static final String CLIENT_TRANSACTIONS = "client_transactions";
   private static final String LOCAL_VARIABLES = "local_variables";
   private static final String RECEIVED_TRANSACTION_COUNT = "local_variables:received_transaction_count";
-//  must be a LinkedHashSet to preserve entry order.  Using set for constant time removal
-  private final KeyValueStorage<NodeID, List<ClientTransaction>> clientLocals;
+  private final KeyValueStorage<Long, PersistedTransaction> clientTransactions;
   private final KeyValueStorage<String, Long> localVariables;
+  private final IPersistentStorage storageManager;
+  private final ConcurrentMap<NodeID, ClientOrder> clientOrders = new ConcurrentHashMap<>();
     
-  private List<ClientTransaction> globalList = null;
-  private boolean rebuild = true;
-  // Unchecked and raw warnings because we are trying to use Class<List<?>>, which the compiler doesn't like but has no runtime meaning.
-  @SuppressWarnings({ "unchecked", "rawtypes" })
+  // The sorted globalIDs of all tracked transactions, when last built, and the version of each ring it was built from.
+  // Both are guarded by the persistor's monitor.
+  private long[] globalOrder = null;
+  private Map<ClientOrder, Long> globalOrderVersions = null;
+  private final AtomicLong receivedCount;
+
   public TransactionOrderPersistor(IPersistentStorage storageManager) {
-    // In the future, we probably want a different storage approach since storing the information, this way, doesn't
-    // work well with the type system (Lists inside KeyValueStorage) and will perform terribly.
-    this.clientLocals = storageManager.getKeyValueStorage(CLIENT_LOCAL_LISTS, NodeID.class, (Class)LinkedHashSet.class);
-    this.localVariables = storageManager.getKeyValueStorage(LOCAL_VARIABLES, String.class, (Class)Long.class);
+    this.storageManager = storageManager;
+    this.clientTransactions = storageManager.getKeyValueStorage(CLIENT_TRANSACTIONS, Long.class, PersistedTransaction.class);
+    this.localVariables = storageManager.getKeyValueStorage(LOCAL_VARIABLES, String.class, Long.class);
     if (!this.localVariables.containsKey(RECEIVED_TRANSACTION_COUNT)) {
       this.localVariables.put(RECEIVED_TRANSACTION_COUNT, 0L);
     }
+    long persistedCount = this.localVariables.get(RECEIVED_TRANSACTION_COUNT);
+    migrateClientLocalLists();
+    
+    // Rebuild the in-memory rings, in global order, from what was persisted.
+    TreeMap<Long, PersistedTransaction> sorted = new TreeMap<>();
+    for (Long globalID : this.clientTransactions.keySet()) {
+      sorted.put(globalID, this.clientTransactions.get(globalID));
+    }
+    for (Map.Entry<Long, PersistedTransaction> entry : sorted.entrySet()) {
+      getOrCreateClientOrder(entry.getValue().client).append(entry.getValue().transactionID, entry.getKey());
+    }
+    // Concurrent updates can persist their counts out of order so the newest transaction may be ahead of the count.
+    this.receivedCount = new AtomicLong(sorted.isEmpty() ? persistedCount : Math.max(persistedCount, sorted.lastKey()));
   }
 
   /**
@@ -67,9 +99,8 @@ public class TransactionOrderPersistor {
    * This new transactionID will be enqueued as the most recent transaction for the given source but also globally.
    * Any transactions for this source which are older than oldestTransactionOnClient will be removed from persistence.
    */
-  public synchronized void updateWithNewMessage(NodeID source, TransactionID transactionID, TransactionID oldestTransactionOnClient) {
+  public void updateWithNewMessage(NodeID source, TransactionID transactionID, TransactionID oldestTransactionOnClient) {
     // We need to ensure that the arguments are sane.
-    rebuild = true;
     if ((null == oldestTransactionOnClient) || (null == transactionID)) {
       throw new IllegalArgumentException("Transactions cannot be null");
     }
@@ -77,34 +108,39 @@ public class TransactionOrderPersistor {
       throw new IllegalArgumentException("Oldest transaction cannot come after new transaction");
     }
     
-    // Get the local list for this client.
-    List<ClientTransaction> localList = clientLocals.get(source);
-    if (null == localList) {
-      localList = new LinkedList<>();
-    }
-    
-    // Increment the number of received transactions.
-    long received = (long)this.localVariables.get(RECEIVED_TRANSACTION_COUNT) + 1;
-    this.localVariables.put(RECEIVED_TRANSACTION_COUNT, received);
-    
-    // Create the new pair.
-    ClientTransaction transaction = new ClientTransaction();
-    transaction.id = transactionID;
-    transaction.globalID = received;
-    
-    Iterator<ClientTransaction> walk = localList.iterator();
-    while (walk.hasNext()) {
-      ClientTransaction next = walk.next();
-      if (-1 == next.id.compareTo(oldestTransactionOnClient)) {
-        walk.remove();
-      } else {
-        break;
+    while (true) {
+      ClientOrder order = getOrCreateClientOrder(source);
+      synchronized (order) {
+        if (order.removed) {
+          // Tracking for this client was removed after we looked it up so start a new ring.
+          continue;
+        }
+        // Increment the number of received transactions, which is also the new transaction's globalID.  This is done
+        // under the client's lock so that a client's transactions get their globalIDs in the order they are recorded.
+        long globalID = this.receivedCount.incrementAndGet();
+        
+        // Expire everything older than what the client is still waiting on.
+        List<Long> expired = null;
+        long oldest = oldestTransactionOnClient.toLong();
+        while (!order.isEmpty() && (order.firstTransactionID() < oldest)) {
+          if (null == expired) {
+            expired = new ArrayList<>();
+          }
+          expired.add(order.removeFirst());
+        }
+        order.append(transactionID.toLong(), globalID);
+        
+        // All of these changes are made durable together, when the transaction commits.
+        IPersistentStorage.Transaction persistenceTransaction = this.storageManager.begin();
+        this.localVariables.put(RECEIVED_TRANSACTION_COUNT, globalID);
+        if (null != expired) {
+          this.clientTransactions.removeAll(expired);
+        }
+        this.clientTransactions.put(globalID, new PersistedTransaction(source, transactionID.toLong()));
+        persistenceTransaction.commit();
+        return;
       }
     }
-    
-    // Create this new pair and add it to the global list.
-    localList.add(transaction);
-    clientLocals.put(source, localList);
   }
 
   /**
@@ -112,61 +148,36 @@ public class TransactionOrderPersistor {
    */
   public void removeTrackingForClient(NodeID source) {
     // Remove the local list for this client.
-    clientLocals.remove(source);
-  }
-
-  private static class ClientTransaction implements Serializable {
-    private static final long serialVersionUID = 1L;
-    public transient NodeID client;
-    public TransactionID id;
-    public long globalID;
-
-    @Override
-    public int hashCode() {
-      return (7 * this.client.hashCode()) ^ this.id.hashCode();
-    }
-    @Override
-    public boolean equals(Object obj) {
-      boolean isEqual = (obj == this);
-      if (!isEqual && (obj instanceof ClientTransaction)) {
-        ClientTransaction other = (ClientTransaction) obj;
-        isEqual = this.client.equals(other.client)
-              & this.id.equals(other.id);
-      }
-      return isEqual;
-    }
-  }
-  
-  private List<ClientTransaction> buildGlobalListIfNessessary() {
-    if (rebuild || globalList == null) {
-      TreeMap<Long, ClientTransaction> sortMap = new TreeMap<>();
-      for (NodeID client : clientLocals.keySet()) {
-        List<ClientTransaction> transactions = clientLocals.get(client);
-        for (ClientTransaction ct : transactions) {
-          ct.client = client;
-          sortMap.put(ct.globalID, ct);
+    ClientOrder order = this.clientOrders.remove(source);
+    if (null != order) {
+      synchronized (order) {
+        order.removed = true;
+        List<Long> removed = new ArrayList<>(order.size());
+        while (!order.isEmpty()) {
+          removed.add(order.removeFirst());
         }
+        this.clientTransactions.removeAll(removed);
       }
-      globalList = Collections.unmodifiableList(new ArrayList(sortMap.values()));
     }
-    rebuild = false;
-    return globalList;
   }
 
   /**
    * Called to ask where a given client-local transaction exists in the global transaction list.
    * Returns the index or -1 if it isn't known.
+   * <p>
+   * NOTE:  this is only called for resends, while no new messages are being handled.
    */
-  public int getIndexToReplay(NodeID source, TransactionID transactionID) {
+  public synchronized int getIndexToReplay(NodeID source, TransactionID transactionID) {
     int index = -1;
-    List<ClientTransaction> list = buildGlobalListIfNessessary();
-    int seek = 0;
-    for (ClientTransaction transaction : list) {
-      if (source.equals(transaction.client) && transactionID.equals(transaction.id)) {
-        index = seek;
-        break;
+    ClientOrder order = this.clientOrders.get(source);
+    if (null != order) {
+      long globalID;
+      synchronized (order) {
+        globalID = order.findGlobalID(transactionID.toLong());
+      }
+      if (globalID > 0) {
+        index = Arrays.binarySearch(buildGlobalOrderIfNecessary(), globalID);
       }
-      seek += 1;
     }
     return index;
   }
@@ -174,16 +185,231 @@ public class TransactionOrderPersistor {
   /**
    * Clears all internal state.
    */
-  public void clearAllRecords() {
-    this.clientLocals.clear();
-    this.globalList = null;
-    this.rebuild = true;
+  public synchronized void clearAllRecords() {
+    for (ClientOrder order : this.clientOrders.values()) {
+      synchronized (order) {
+        order.removed = true;
+      }
+    }
+    this.clientOrders.clear();
+    this.clientTransactions.clear();
+    this.globalOrder = null;
+    this.globalOrderVersions = null;
   }
 
   /**
    * @return The number of transactions which have been observed by the persistor (NOT the number persisted).
    */
   public long getReceivedTransactionCount() {
-    return this.localVariables.get(RECEIVED_TRANSACTION_COUNT);
+    return this.receivedCount.get();
+  }
+
+  private ClientOrder getOrCreateClientOrder(NodeID source) {
+    return this.clientOrders.computeIfAbsent(source, (client) -> new ClientOrder());
+  }
+
+  private long[] buildGlobalOrderIfNecessary() {
+    long[] current = this.globalOrder;
+    if ((null == current) || !isGlobalOrderCurrent()) {
+      Map<ClientOrder, Long> versions = new HashMap<>();
+      List<long[]> snapshots = new ArrayList<>(this.clientOrders.size());
+      int total = 0;
+      for (ClientOrder order : this.clientOrders.values()) {
+        synchronized (order) {
+          long[] globalIDs = new long[order.size()];
+          order.copyGlobalIDsTo(globalIDs, 0);
+          snapshots.add(globalIDs);
+          versions.put(order, order.version);
+          total += globalIDs.length;
+        }
+      }
+      current = new long[total];
+      int next = 0;
+      for (long[] globalIDs : snapshots) {
+        System.arraycopy(globalIDs, 0, current, next, globalIDs.length);
+        next += globalIDs.length;
+      }
+      Arrays.sort(current);
+      this.globalOrder = current;
+      this.globalOrderVersions = versions;
+    }
+    return current;
+  }
+
+  /**
+   * The global order is still current if no ring it was built from has changed (a removed ring is drained, which
+   * changes its version) and no other ring has been appended to.
+   */
+  private boolean isGlobalOrderCurrent() {
+    for (Map.Entry<ClientOrder, Long> entry : this.globalOrderVersions.entrySet()) {
+      ClientOrder order = entry.getKey();
+      synchronized (order) {
+        if (order.version != entry.getValue()) {
+          return false;
+        }
+      }
+    }
+    for (ClientOrder order : this.clientOrders.values()) {
+      if (!this.globalOrderVersions.containsKey(order)) {
+        synchronized (order) {
+          if (order.version != 0) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Older versions persisted a list of ClientTransaction per client.  Convert any which are found into the per-transaction
+   * records and then drop the old storage.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private void migrateClientLocalLists() {
+    Map<String, String> properties = this.storageManager.getProperties();
+    if (Boolean.parseBoolean(properties.get(CLIENT_LOCAL_LISTS_MIGRATED))) {
+      return;
+    }
+    KeyValueStorage<NodeID, Collection<ClientTransaction>> legacy = this.storageManager.getKeyValueStorage(CLIENT_LOCAL_LISTS, NodeID.class, (Class)Collection.class);
+    if (legacy.size() > 0) {
+      IPersistentStorage.Transaction persistenceTransaction = this.storageManager.begin();
+      for (NodeID client : legacy.keySet()) {
+        for (ClientTransaction transaction : legacy.get(client)) {
+          this.clientTransactions.put(transaction.globalID, new PersistedTransaction(client, transaction.id.toLong()));
+        }
+      }
+      persistenceTransaction.commit();
+    }
+    this.storageManager.destroyKeyValueStorage(CLIENT_LOCAL_LISTS);
+    properties.put(CLIENT_LOCAL_LISTS_MIGRATED, Boolean.TRUE.toString());
+  }
+
+  /**
+   * The persisted form of a single transaction, keyed by its globalID.
+   */
+  private static class PersistedTransaction implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final NodeID client;
+    private final long transactionID;
+
+    PersistedTransaction(NodeID client, long transactionID) {
+      this.client = client;
+      this.transactionID = transactionID;
+    }
+  }
+
+  /**
+   * The element type of the lists persisted by older versions.  Only retained so that those can still be deserialized.
+   */
+  private static class ClientTransaction implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public TransactionID id;
+    public long globalID;
+  }
+
+  /**
+   * A growable ring of (transactionID, globalID) pairs for a single client, sorted by transactionID so that lookups are
+   * binary searches and the oldest transactions are always at the head.  Clients assign their transactionIDs in
+   * ascending order but the transactions of one client, for different entities, are recorded by several stage threads
+   * so they can arrive slightly out of order.  Those are inserted in place, which only moves the few pairs that
+   * arrived ahead of them.
+   * <p>
+   * All access is synchronized on the ring.
+   */
+  private static class ClientOrder {
+    // Set, under the ring's lock, once it is no longer in clientOrders so that a racing update doesn't write to it.
+    private boolean removed;
+    // Changed by every append and removal so that the persistor can tell if its global order is still current.
+    private long version;
+    private long[] transactionIDs = new long[16];
+    private long[] globalIDs = new long[16];
+    private int head;
+    private int size;
+
+    boolean isEmpty() {
+      return 0 == this.size;
+    }
+
+    int size() {
+      return this.size;
+    }
+
+    void append(long transactionID, long globalID) {
+      if (this.size == this.transactionIDs.length) {
+        grow();
+      }
+      int index = this.size;
+      while ((index > 0) && (this.transactionIDs[slot(index - 1)] > transactionID)) {
+        this.transactionIDs[slot(index)] = this.transactionIDs[slot(index - 1)];
+        this.globalIDs[slot(index)] = this.globalIDs[slot(index - 1)];
+        index -= 1;
+      }
+      this.transactionIDs[slot(index)] = transactionID;
+      this.globalIDs[slot(index)] = globalID;
+      this.size += 1;
+      this.version += 1;
+    }
+
+    long firstTransactionID() {
+      return this.transactionIDs[this.head];
+    }
+
+    /**
+     * @return The globalID of the removed transaction
+     */
+    long removeFirst() {
+      long globalID = this.globalIDs[this.head];
+      this.head = slot(1);
+      this.size -= 1;
+      this.version += 1;
+      if (0 == this.size) {
+        this.head = 0;
+      }
+      return globalID;
+    }
+
+    /**
+     * @return The globalID of the given transaction or 0 if it isn't in the ring (globalIDs start at 1)
+     */
+    long findGlobalID(long transactionID) {
+      int low = 0;
+      int high = this.size - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        long value = this.transactionIDs[slot(mid)];
+        if (value < transactionID) {
+          low = mid + 1;
+        } else if (value > transactionID) {
+          high = mid - 1;
+        } else {
+          return this.globalIDs[slot(mid)];
+        }
+      }
+      return 0;
+    }
+
+    int copyGlobalIDsTo(long[] target, int offset) {
+      for (int i = 0; i < this.size; ++i) {
+        target[offset + i] = this.globalIDs[slot(i)];
+      }
+      return offset + this.size;
+    }
+
+    private int slot(int index) {
+      return (this.head + index) & (this.transactionIDs.length - 1);
+    }
+
+    private void grow() {
+      long[] newTransactionIDs = new long[this.transactionIDs.length * 2];
+      long[] newGlobalIDs = new long[this.globalIDs.length * 2];
+      for (int i = 0; i < this.size; ++i) {
+        newTransactionIDs[i] = this.transactionIDs[slot(i)];
+        newGlobalIDs[i] = this.globalIDs[slot(i)];
+      }
+      this.transactionIDs = newTransactionIDs;
+      this.globalIDs = newGlobalIDs;
+      this.head = 0;
+    }
   }
 }
@@ -80,7 +80,7 @@ public class EntityMessengerService implements IEntityMessenger {
     // to deserialize, but also because we may have to replicate the message to the passive).
     byte[] serializedMessage = this.codec.encodeMessage(message);
     FakeEntityMessage interEntityMessage = new FakeEntityMessage(this.fakeDescriptor, message, serializedMessage);
-    this.messageSink.addSingleThreaded(interEntityMessage);
+    this.messageSink.addMultiThreaded(interEntityMessage);
   }
 
 
@@ -129,5 +129,13 @@ public class EntityMessengerService implements IEntityMessenger {
     public EntityMessage getEntityMessage() {
       return this.identityMessage;
     }
+    @Override
+    public Object getSchedulingKey() {
+      return this.descriptor.getEntityID();
+    }
+    @Override
+    public boolean flush() {
+      return false;
+    }
   }
 }
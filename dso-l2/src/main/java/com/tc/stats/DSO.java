@@ -22,6 +22,11 @@ import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.management.RemoteManagement;
 import com.tc.management.beans.L2MBeanNames;
+import com.tc.net.TCSocketAddress;
+import com.tc.net.core.MessageGroupingStats;
+import com.tc.net.core.TCConnection;
+import com.tc.net.core.TCConnectionManager;
+import com.tc.net.core.WorkerCommLoad;
 import com.tc.net.protocol.tcm.MessageChannel;
 import com.tc.net.protocol.transport.ConnectionPolicy;
 import com.tc.object.ObjectID;
@@ -88,6 +93,7 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
   private final TerracottaOperatorEventHistoryProvider operatorEventHistoryProvider;
   private final ConnectionPolicy                       connectionPolicy;
   private final RemoteManagement                       remoteManagement;
+  private final TCConnectionManager                    connectionManager;
 
   public DSO(ServerManagementContext managementContext, ServerConfigurationContext configContext,
              MBeanServer mbeanServer,
@@ -107,6 +113,7 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     this.operatorEventHistoryProvider = operatorEventHistoryProvider;
     this.connectionPolicy = managementContext.getConnectionPolicy();
     this.remoteManagement = managementContext.getRemoteManagement();
+    this.connectionManager = managementContext.getConnectionManager();
 
     // add various listeners (do this before the setupXXX() methods below so we don't ever miss anything)
     channelMgr.addEventListener(new ChannelManagerListener());
@@ -434,6 +441,42 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     return result;
   }
 
+  @Override
+  public Map<String, Map<String, Object>> getConnectionGroupingStatistics() {
+    Map<String, Map<String, Object>> result = new HashMap<>();
+    for (TCConnection connection : connectionManager.getAllConnections()) {
+      TCSocketAddress remote = connection.getRemoteAddress();
+      if (connection.isClosed() || remote == null) {
+        continue;
+      }
+      MessageGroupingStats stats = connection.getMessageGroupingStats();
+      Map<String, Object> statsMap = new HashMap<>();
+      statsMap.put("FlushCount", stats.getFlushCount());
+      statsMap.put("MessageCount", stats.getMessageCount());
+      statsMap.put("AverageGroupSize", stats.getAverageGroupSize());
+      statsMap.put("DelayedFlushCount", stats.getDelayedFlushCount());
+      statsMap.put("AverageDelayMicros", stats.getAverageDelayMicros());
+      statsMap.put("MaxDelayMicros", stats.getMaxDelayMicros());
+      result.put(remote.getStringForm(), statsMap);
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Map<String, Object>> getWorkerCommLoads() {
+    Map<String, Map<String, Object>> result = new HashMap<>();
+    for (WorkerCommLoad load : connectionManager.getTcComm().getWorkerCommLoads()) {
+      Map<String, Object> loadMap = new HashMap<>();
+      loadMap.put("ConnectionCount", load.getConnectionCount());
+      loadMap.put("Weight", load.getWeight());
+      loadMap.put("BytesReadPerSecond", load.getBytesReadPerSecond());
+      loadMap.put("BytesWrittenPerSecond", load.getBytesWrittenPerSecond());
+      loadMap.put("IoEventsPerSecond", load.getIoEventsPerSecond());
+      result.put(load.getName(), loadMap);
+    }
+    return result;
+  }
+
   @Override
   public long getGlobalServerMapGetSizeRequestsCount() {
     return getStats().getGlobalServerMapGetSizeRequestsCount();
@@ -68,6 +68,16 @@ public interface DSOMBean extends Stats, TerracottaMBean {
 
   Map<ObjectName, Integer> getClientLiveObjectCount();
 
+  /**
+   * @return The message grouping statistics of each client connection, keyed by its remote address
+   */
+  Map<String, Map<String, Object>> getConnectionGroupingStatistics();
+
+  /**
+   * @return The load of each worker comm thread handling client connections, keyed by its name
+   */
+  Map<String, Map<String, Object>> getWorkerCommLoads();
+
   List<TerracottaOperatorEvent> getOperatorEvents();
 
   /**
@@ -21,9 +21,12 @@ package com.tc.objectserver.entity;
 import com.tc.net.NodeID;
 import com.tc.util.Assert;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -45,6 +48,48 @@ public class ActivePassiveAckWaiterTest {
     Assert.assertTrue(waiter.isCompleted());
   }
 
+  @Test
+  public void testRunWhenCompleted() throws Exception {
+    Set<NodeID> passives = new HashSet<NodeID>();
+    NodeID onePassive = mock(NodeID.class);
+    passives.add(onePassive);
+    NodeID twoPassive = mock(NodeID.class);
+    passives.add(twoPassive);
+    ActivePassiveAckWaiter waiter = new ActivePassiveAckWaiter(passives);
+    AtomicInteger runs = new AtomicInteger();
+    waiter.runWhenCompleted(runs::incrementAndGet);
+    waiter.didCompleteOnPassive(onePassive, true);
+    Assert.assertEquals(0, runs.get());
+    // The last completion runs the action.
+    Assert.assertTrue(waiter.didCompleteOnPassive(twoPassive, true));
+    Assert.assertEquals(1, runs.get());
+    // Once complete, actions run immediately.
+    waiter.runWhenCompleted(runs::incrementAndGet);
+    Assert.assertEquals(2, runs.get());
+  }
+
+  @Test
+  public void testRunWhenCompletedHandsOff() throws Exception {
+    Set<NodeID> passives = new HashSet<NodeID>();
+    NodeID onePassive = mock(NodeID.class);
+    passives.add(onePassive);
+    ActivePassiveAckWaiter waiter = new ActivePassiveAckWaiter(passives);
+    AtomicInteger runs = new AtomicInteger();
+    List<Runnable> handedOff = new ArrayList<Runnable>();
+    waiter.runWhenCompleted(runs::incrementAndGet, handedOff::add);
+    // The completing thread only hands the action off.
+    Assert.assertTrue(waiter.didCompleteOnPassive(onePassive, true));
+    Assert.assertEquals(0, runs.get());
+    Assert.assertEquals(1, handedOff.size());
+    handedOff.get(0).run();
+    Assert.assertEquals(1, runs.get());
+    // A failing action which runs immediately doesn't escape to the caller.
+    waiter.runWhenCompleted(() -> {
+      throw new IllegalStateException();
+    }, handedOff::add);
+    Assert.assertEquals(1, handedOff.size());
+  }
+
   @Test
   public void testSingleWait() throws Exception {
     Set<NodeID> passives = new HashSet<NodeID>();
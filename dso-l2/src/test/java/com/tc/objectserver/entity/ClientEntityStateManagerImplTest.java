@@ -94,7 +94,7 @@ public class ClientEntityStateManagerImplTest {
     clientEntityStateManager.addReference(clientID, new EntityDescriptor(entityID, clientInstanceID, version));
     clientEntityStateManager.channelRemoved(messageChannel);
 
-    verify(requestSink).addSingleThreaded(argThat(hasClientAndEntityIDs(clientID, entityID)));
+    verify(requestSink).addMultiThreaded(argThat(hasClientAndEntityIDs(clientID, entityID)));
     verify(collector).expectedReleases(Matchers.eq(clientID), Matchers.eq(Arrays.asList(new EntityDescriptor(entityID, clientInstanceID, version))));
   }
 
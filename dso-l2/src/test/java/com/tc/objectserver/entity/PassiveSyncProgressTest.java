@@ -0,0 +1,83 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.l2.msg.PassiveSyncMessage;
+import com.tc.net.NodeID;
+import com.tc.net.ServerID;
+import com.tc.object.EntityID;
+import com.tc.util.Assert;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class PassiveSyncProgressTest {
+  private final NodeID passive = new ServerID("passive", new byte[] { 1 });
+
+  /**
+   * Test that a full window blocks the next message until the passive completes one of the messages in flight.
+   */
+  @Test
+  public void testWindowBlocksUntilCompleted() throws Exception {
+    PassiveSyncProgress progress = new PassiveSyncProgress(passive, 1, 1);
+    ActivePassiveAckWaiter first = new ActivePassiveAckWaiter(Collections.singleton(passive));
+    progress.acquire(payload(10));
+    progress.release(first);
+    CountDownLatch sent = new CountDownLatch(1);
+    Thread sender = new Thread(()->{
+      try {
+        progress.acquire(payload(20));
+        sent.countDown();
+      } catch (InterruptedException ie) {
+        throw new AssertionError(ie);
+      }
+    });
+    sender.start();
+    Assert.assertFalse(sent.await(100, TimeUnit.MILLISECONDS));
+    first.didCompleteOnPassive(passive, true);
+    Assert.assertTrue(sent.await(10, TimeUnit.SECONDS));
+    sender.join();
+    Assert.assertEquals(2, progress.getMessagesSent());
+    Assert.assertEquals(30, progress.getBytesSent());
+  }
+
+  @Test
+  public void testProgress() throws Exception {
+    PassiveSyncProgress progress = new PassiveSyncProgress(passive, 4, 8);
+    Assert.assertEquals(-1, progress.getEstimatedMillisRemaining());
+    Assert.assertEquals(1, progress.entitySynced());
+    Assert.assertEquals(2, progress.entitySynced());
+    Assert.assertTrue(progress.getEstimatedMillisRemaining() >= 0);
+    Assert.assertFalse(progress.isFinished());
+    progress.entitySynced();
+    progress.entitySynced();
+    progress.finished();
+    Assert.assertTrue(progress.isFinished());
+    Assert.assertEquals(4, progress.getEntitiesDone());
+    Assert.assertEquals(0, progress.getEstimatedMillisRemaining());
+  }
+
+  private static PassiveSyncMessage payload(int size) {
+    return PassiveSyncMessage.createPayloadMessage(new EntityID("TEST", "test"), 1, 1, new byte[size]);
+  }
+}
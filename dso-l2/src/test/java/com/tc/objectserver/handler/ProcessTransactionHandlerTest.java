@@ -306,7 +306,7 @@ public class ProcessTransactionHandlerTest {
     }
     @Override
     public void addMultiThreaded(VoltronEntityMessage context) {
-      throw new UnsupportedOperationException();
+      addSingleThreaded(context);
     }
 
     @Override
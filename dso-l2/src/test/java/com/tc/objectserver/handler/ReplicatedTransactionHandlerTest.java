@@ -33,6 +33,7 @@ import com.tc.entity.VoltronEntityAppliedResponse;
 import com.tc.entity.VoltronEntityReceivedResponse;
 import com.tc.l2.msg.PassiveSyncMessage;
 import com.tc.l2.msg.ReplicationMessage;
+import com.tc.l2.msg.ReplicationMessageAck;
 import com.tc.l2.state.StateManager;
 import com.tc.net.ClientID;
 import com.tc.net.ServerID;
@@ -55,12 +56,17 @@ import com.tc.objectserver.persistence.EntityPersistor;
 import com.tc.objectserver.persistence.TransactionOrderPersistor;
 import com.tc.stats.Stats;
 import com.tc.util.Assert;
+import com.tc.util.concurrent.Runners;
+import com.tc.util.concurrent.TaskRunner;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.function.Consumer;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyLong;
@@ -84,6 +90,7 @@ public class ReplicatedTransactionHandlerTest {
   private EntityManager entityManager;
   private ManagedEntity platform;
   private GroupManager<AbstractGroupMessage> groupManager;
+  private TaskRunner taskRunner;
   
   private long rid = 0;
   
@@ -101,7 +108,8 @@ public class ReplicatedTransactionHandlerTest {
       return null;
     }).when(platform).addRequestMessage(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
     when(entityManager.getEntity(Matchers.eq(PlatformEntity.PLATFORM_ID), Matchers.eq(PlatformEntity.VERSION))).thenReturn(Optional.of(platform));
-    this.rth = new ReplicatedTransactionHandler(stateManager, this.transactionOrderPersistor, this.entityManager, this.entityPersistor, this.groupManager);
+    this.taskRunner = Runners.newScheduledTaskRunner(1);
+    this.rth = new ReplicatedTransactionHandler(stateManager, this.transactionOrderPersistor, this.entityManager, this.entityPersistor, this.groupManager, this.taskRunner);
     this.source = mock(ClientID.class);
     
     MessageChannel messageChannel = mock(MessageChannel.class);
@@ -156,7 +164,8 @@ public class ReplicatedTransactionHandlerTest {
 //  verify there was an attempt to decode the invoke message
     verify(msg).getExtendedData();
     verify(entity).getCodec();
-    // Note that we want to verify 2 ACK messages:  RECEIVED and COMPLETED.
+    // Note that we want to verify 2 ACK messages:  RECEIVED at the end of its batch and COMPLETED at the end of the 
+    // batch which ends the sync of its key.
     verify(groupManager, times(2)).sendTo(Matchers.eq(sid), Matchers.any());
   }  
   
@@ -192,8 +201,37 @@ public class ReplicatedTransactionHandlerTest {
     this.loopbackSink.addSingleThreaded(msg);
     verify(msg).getExtendedData();
     verify(msg).getConcurrency();  // make sure RTH is pulling the concurrency from the message
-    // Note that we want to verify 2 ACK messages:  RECEIVED and COMPLETED.
-    verify(groupManager, times(2)).sendTo(Matchers.eq(sid), Matchers.any());
+    // Note that we want to verify 1 ACK message:  RECEIVED and COMPLETED in the same batch go together.
+    verify(groupManager, times(1)).sendTo(Matchers.eq(sid), Matchers.any());
+  }
+  
+  @Test
+  public void testOneAckPerBatch() throws Exception {
+    EntityID eid = new EntityID("foo", "bar");
+    ServerID sid = new ServerID("test", "test".getBytes());
+    ManagedEntity entity = mock(ManagedEntity.class);
+    MessageCodec codec = mock(MessageCodec.class);
+    when(this.entityManager.getEntity(Matchers.any(), Matchers.anyInt())).thenReturn(Optional.of(entity));
+    when(entity.getCodec()).thenReturn(codec);
+    Mockito.doAnswer(invocation->{
+      ((Consumer)invocation.getArguments()[2]).accept(new byte[0]);
+      return null;
+    }).when(entity).addRequestMessage(Matchers.any(), Matchers.any(), Matchers.any(), Matchers.any());
+    this.loopbackSink.addSingleThreaded(PassiveSyncMessage.createStartSyncMessage());
+    this.loopbackSink.addSingleThreaded(PassiveSyncMessage.createEndSyncMessage(new byte[0]));
+    List<ReplicationMessage> batch = new ArrayList<>();
+    for (int x = 0; x < 10; x++) {
+      ReplicationMessage msg = createMockReplicationMessage(eid, 1, new byte[0], 1);
+      msg.setReplicationID(x);
+      msg.setMessageOrginator(sid);
+      batch.add(msg);
+    }
+//  with the default properties, the acks of the whole batch go out as one message
+    this.rth.getEventHandler().handleEvents(batch);
+    ArgumentCaptor<AbstractGroupMessage> ack = ArgumentCaptor.forClass(AbstractGroupMessage.class);
+    verify(groupManager, times(1)).sendTo(Matchers.eq(sid), ack.capture());
+    Assert.assertEquals(9, ((ReplicationMessageAck)ack.getValue()).getReceivedID());
+    Assert.assertEquals(9, ((ReplicationMessageAck)ack.getValue()).getCompletedID());
   }
   
   @Test
@@ -326,6 +364,7 @@ public class ReplicatedTransactionHandlerTest {
   @After
   public void tearDown() throws Exception {
     this.rth.getEventHandler().destroy();
+    this.taskRunner.shutdown();
   }
   
   private ReplicationMessage createMockReplicationMessage(EntityID eid, long VERSION, byte[] payload, int concurrency) {
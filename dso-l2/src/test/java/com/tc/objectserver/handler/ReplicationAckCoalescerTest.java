@@ -0,0 +1,203 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import com.tc.l2.msg.ReplicationMessage;
+import com.tc.l2.msg.ReplicationMessageAck;
+import com.tc.net.ClientID;
+import com.tc.net.NodeID;
+import com.tc.net.ServerID;
+import com.tc.net.groups.AbstractGroupMessage;
+import com.tc.net.groups.GroupManager;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.EntityID;
+import com.tc.object.tx.TransactionID;
+import com.tc.util.concurrent.Runners;
+import com.tc.util.concurrent.TaskRunner;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+
+public class ReplicationAckCoalescerTest {
+  
+  private final ServerID active = new ServerID("active", new byte[] { 1 });
+  private final List<ReplicationMessageAck> acks = new CopyOnWriteArrayList<>();
+  private GroupManager<AbstractGroupMessage> groupManager;
+  private TaskRunner taskRunner;
+  
+  @SuppressWarnings("unchecked")
+  @Before
+  public void setUp() throws Exception {
+    taskRunner = Runners.newScheduledTaskRunner(1);
+    groupManager = mock(GroupManager.class);
+    doAnswer((invoke)-> {
+      Object[] args = invoke.getArguments();
+      assertEquals(active, args[0]);
+      acks.add((ReplicationMessageAck)args[1]);
+      return null;
+    }).when(groupManager).sendTo(Matchers.any(NodeID.class), Matchers.any(AbstractGroupMessage.class));
+  }
+  
+  @After
+  public void tearDown() throws Exception {
+    taskRunner.shutdown();
+  }
+  
+  @Test
+  public void testCoalescesUpToMaxPending() throws Exception {
+    ReplicationAckCoalescer coalescer = new ReplicationAckCoalescer(groupManager, taskRunner.newTimer(), TimeUnit.MINUTES.toMillis(1), 6);
+    ReplicationMessage[] msgs = makeMessages(3);
+    for (ReplicationMessage msg : msgs) {
+      coalescer.received(msg);
+    }
+    for (ReplicationMessage msg : msgs) {
+      assertTrue(acks.isEmpty());
+      coalescer.completed(msg);
+    }
+    assertEquals(1, acks.size());
+    assertEquals(2, acks.get(0).getReceivedID());
+    assertEquals(2, acks.get(0).getCompletedID());
+    assertEquals(0, acks.get(0).getCompletedOutOfOrder().length);
+    coalescer.close();
+  }
+  
+  @Test
+  public void testOutOfOrderCompletions() throws Exception {
+    ReplicationAckCoalescer coalescer = new ReplicationAckCoalescer(groupManager, taskRunner.newTimer(), TimeUnit.MINUTES.toMillis(1), 100);
+    ReplicationMessage[] msgs = makeMessages(4);
+    for (ReplicationMessage msg : msgs) {
+      coalescer.received(msg);
+    }
+    coalescer.completed(msgs[0]);
+    coalescer.completed(msgs[3]);
+    coalescer.completed(msgs[2]);
+    coalescer.flush();
+    assertEquals(1, acks.size());
+    assertEquals(3, acks.get(0).getReceivedID());
+    assertEquals(0, acks.get(0).getCompletedID());
+    assertArrayEquals(new long[] { 3, 2 }, acks.get(0).getCompletedOutOfOrder());
+//  the ones already reported aren't sent again once the completed ID catches up
+    coalescer.completed(msgs[1]);
+    coalescer.flush();
+    assertEquals(2, acks.size());
+    assertEquals(3, acks.get(1).getCompletedID());
+    assertEquals(0, acks.get(1).getCompletedOutOfOrder().length);
+//  nothing new, nothing sent
+    coalescer.flush();
+    assertEquals(2, acks.size());
+    coalescer.close();
+  }
+  
+  @Test
+  public void testOneAckPerBatch() throws Exception {
+    ReplicationAckCoalescer coalescer = new ReplicationAckCoalescer(groupManager, taskRunner.newTimer(), 0, 64);
+    ReplicationMessage[] msgs = makeMessages(10);
+    coalescer.batchStarted();
+    for (ReplicationMessage msg : msgs) {
+      coalescer.received(msg);
+      if (msg.getSequenceID() % 2 == 0) {
+        coalescer.completed(msg);
+      }
+    }
+    assertTrue(acks.isEmpty());
+    coalescer.batchEnded();
+    assertEquals(1, acks.size());
+    assertEquals(9, acks.get(0).getReceivedID());
+    assertEquals(0, acks.get(0).getCompletedID());
+//  completions between batches wait until nothing received is still running
+    for (ReplicationMessage msg : msgs) {
+      if (msg.getSequenceID() % 2 != 0) {
+        assertEquals(1, acks.size());
+        coalescer.completed(msg);
+      }
+    }
+    assertEquals(2, acks.size());
+    assertEquals(9, acks.get(1).getCompletedID());
+    assertEquals(0, acks.get(1).getCompletedOutOfOrder().length);
+    coalescer.close();
+  }
+
+  @Test
+  public void testDelayedFlush() throws Exception {
+    ReplicationAckCoalescer coalescer = new ReplicationAckCoalescer(groupManager, taskRunner.newTimer(), 10, 100);
+    ReplicationMessage[] msgs = makeMessages(2);
+    coalescer.batchStarted();
+    coalescer.received(msgs[0]);
+    coalescer.received(msgs[1]);
+    coalescer.batchEnded();
+    assertEquals(1, acks.size());
+//  msgs[1] is still running so only the delay sends this one
+    coalescer.completed(msgs[0]);
+    long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (acks.size() < 2 && System.currentTimeMillis() < end) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(2, acks.size());
+    assertEquals(0, acks.get(1).getCompletedID());
+    coalescer.close();
+  }
+  
+  @Test
+  public void testStreamRestart() throws Exception {
+    ReplicationAckCoalescer coalescer = new ReplicationAckCoalescer(groupManager, taskRunner.newTimer(), 0, 100);
+    ReplicationMessage[] old = makeMessages(2);
+    coalescer.batchStarted();
+    coalescer.received(old[0]);
+    coalescer.received(old[1]);
+    coalescer.batchEnded();
+    assertEquals(1, acks.size());
+    ReplicationMessage[] msgs = makeMessages(2);
+    coalescer.batchStarted();
+    coalescer.received(msgs[0]);
+    coalescer.received(msgs[1]);
+//  a completion from before the restart doesn't count for the new message with the same ID
+    coalescer.completed(old[1]);
+    coalescer.batchEnded();
+    assertEquals(2, acks.size());
+    assertEquals(-1, acks.get(1).getCompletedID());
+    assertEquals(0, acks.get(1).getCompletedOutOfOrder().length);
+    coalescer.completed(msgs[0]);
+    coalescer.completed(msgs[1]);
+    assertEquals(3, acks.size());
+    assertEquals(1, acks.get(2).getCompletedID());
+    coalescer.close();
+  }
+  
+  private ReplicationMessage[] makeMessages(int count) {
+    ReplicationMessage[] msgs = new ReplicationMessage[count];
+    for (int x = 0; x < count; x++) {
+      msgs[x] = ReplicationMessage.createReplicatedMessage(new EntityDescriptor(new EntityID("foo", "bar"), ClientInstanceID.NULL_ID, 1), 
+          ClientID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, ReplicationMessage.ReplicationType.INVOKE_ACTION, new byte[0], 1);
+      msgs[x].setReplicationID(x);
+      msgs[x].setMessageOrginator(active);
+    }
+    return msgs;
+  }
+}
@@ -20,17 +20,21 @@ package com.tc.objectserver.handler;
 
 import com.tc.async.api.EventHandlerException;
 import com.tc.l2.msg.PassiveSyncMessage;
+import com.tc.l2.msg.ReplicationBatchMessage;
 import com.tc.l2.msg.ReplicationEnvelope;
 import com.tc.l2.msg.ReplicationMessage;
 import com.tc.l2.msg.ReplicationMessage.ReplicationType;
 import com.tc.net.ClientID;
 import com.tc.net.NodeID;
 import com.tc.net.groups.GroupManager;
+import com.tc.net.groups.GroupMessage;
 import com.tc.object.ClientInstanceID;
 import com.tc.object.EntityDescriptor;
 import com.tc.object.EntityID;
 import com.tc.object.tx.TransactionID;
 import com.tc.util.Assert;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -52,6 +56,7 @@ public class ReplicationSenderTest {
   NodeID node = mock(NodeID.class);
   GroupManager groupMgr = mock(GroupManager.class);
   List<ReplicationEnvelope> collector = new LinkedList<>();
+  List<ReplicationBatchMessage> batches = new LinkedList<>();
   ReplicationSender testSender = new ReplicationSender(groupMgr);
   EntityID entity = EntityID.NULL_ID;
   int concurrency = 1;
@@ -71,9 +76,13 @@ public class ReplicationSenderTest {
   public void setUp() throws Exception {
     doAnswer((invoke)-> {
       Object[] args = invoke.getArguments();
-      collector.add(((ReplicationMessage)args[1]).target((NodeID)args[0]));
+      if (args[1] instanceof ReplicationBatchMessage) {
+        batches.add((ReplicationBatchMessage)args[1]);
+      } else {
+        collector.add(((ReplicationMessage)args[1]).target((NodeID)args[0]));
+      }
       return null;
-    }).when(groupMgr).sendTo(Matchers.any(NodeID.class), Matchers.any(ReplicationMessage.class));
+    }).when(groupMgr).sendTo(Matchers.any(NodeID.class), Matchers.any(GroupMessage.class));
   }
   
   private void makeAndSendSequence(Collection<ReplicationType> list) throws Exception {
@@ -227,6 +236,70 @@ public class ReplicationSenderTest {
     validateCollector(validation);
   }
   
+  @Test
+  public void filterInterleavedEntities() throws Exception {
+    EntityID first = new EntityID("TEST", "first");
+    EntityID second = new EntityID("TEST", "second");
+    List<ReplicationMessage> origin = new LinkedList<>();
+    List<ReplicationMessage> validation = new LinkedList<>();
+    buildTest(origin, validation, ReplicationMessage.createStartMessage(), true);
+    buildTest(origin, validation, makeMessage(ReplicationType.SYNC_BEGIN), false);
+    buildTest(origin, validation, PassiveSyncMessage.createStartEntityMessage(first, 1, new byte[0], true), false);
+    buildTest(origin, validation, PassiveSyncMessage.createStartEntityMessage(second, 1, new byte[0], true), false);
+    buildTest(origin, validation, PassiveSyncMessage.createStartEntityKeyMessage(first, 1, 1), false);
+    buildTest(origin, validation, PassiveSyncMessage.createStartEntityKeyMessage(second, 1, 1), false);
+    buildTest(origin, validation, PassiveSyncMessage.createPayloadMessage(second, 1, 1, new byte[0]), false);
+    buildTest(origin, validation, PassiveSyncMessage.createPayloadMessage(first, 1, 1, new byte[0]), false);
+    buildTest(origin, validation, PassiveSyncMessage.createEndEntityKeyMessage(first, 1, 1), false);
+//  the key of the first entity is synced, the second key of either entity is not
+    buildTest(origin, validation, makeInvoke(first, 1), false);
+    buildTest(origin, validation, makeInvoke(first, 2), true);
+    buildTest(origin, validation, makeInvoke(second, 2), true);
+    buildTest(origin, validation, PassiveSyncMessage.createEndEntityKeyMessage(second, 1, 1), false);
+    buildTest(origin, validation, PassiveSyncMessage.createEndEntityMessage(second, 1), false);
+    buildTest(origin, validation, makeInvoke(second, 2), false);
+    buildTest(origin, validation, PassiveSyncMessage.createEndEntityMessage(first, 1), false);
+    buildTest(origin, validation, makeMessage(ReplicationType.SYNC_END), false);
+
+    origin.stream().forEach(msg-> {
+      try {
+        testSender.handleEvent(msg.target(node));
+      } catch (EventHandlerException h) {
+        throw new RuntimeException(h);
+      }
+    });
+    
+    validateCollector(validation);
+  }
+  
+  @Test
+  public void batchConsecutiveMessages() throws Exception {
+    entity = new EntityID("TEST", "test");
+    List<Long> sent = new ArrayList<>();
+    List<ReplicationEnvelope> envelopes = new ArrayList<>();
+    envelopes.add(ReplicationMessage.createStartMessage().target(node));
+    for (ReplicationType type : Arrays.asList(ReplicationType.CREATE_ENTITY, ReplicationType.INVOKE_ACTION, ReplicationType.INVOKE_ACTION)) {
+      envelopes.add(makeMessage(type).target(node, null, sent::add));
+    }
+    testSender.handleEvents(envelopes);
+    Assert.assertEquals(1, batches.size());
+    Assert.assertEquals(3, batches.get(0).size());
+    Assert.assertEquals(Arrays.asList(0L, 1L, 2L), sent);
+    Assert.assertTrue(collector.isEmpty());
+//  a lone message goes on its own and a flush sends what is pending first
+    envelopes.clear();
+    envelopes.add(makeMessage(ReplicationType.INVOKE_ACTION).target(node, null, sent::add));
+    envelopes.add(new ReplicationEnvelope(node, null, null));
+    testSender.handleEvents(envelopes);
+    Assert.assertEquals(1, batches.size());
+    Assert.assertEquals(1, collector.size());
+    Assert.assertEquals(3L, collector.get(0).getMessage().getSequenceID());
+  }
+  
+  private ReplicationMessage makeInvoke(EntityID eid, int key) {
+    return ReplicationMessage.createReplicatedMessage(new EntityDescriptor(eid, ClientInstanceID.NULL_ID, 1), ClientID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, ReplicationType.INVOKE_ACTION, new byte[0], key);
+  }
+  
   private void validateCollector(Collection<ReplicationMessage> valid) {
     Iterator<ReplicationMessage> next = valid.iterator();
     collector.stream().forEach(cmsg->{
@@ -114,7 +114,7 @@ public class ServerClientHandshakeManagerTest {
     assertFalse(this.manager.isStarting());
     assertTrue(this.manager.isStarted());
     
-    verify(this.voltronSink).addSingleThreaded(any(NoopEntityMessage.class));
+    verify(this.voltronSink).addMultiThreaded(any(NoopEntityMessage.class));
   }
 
   @Test
@@ -150,7 +150,7 @@ public class ServerClientHandshakeManagerTest {
     this.manager.notifyClientConnect(message1, entityManager, transactionHandler);
     assertFalse(this.manager.isStarted());
     verify(this.transactionHandler).handleResentMessage(resend);
-    verify(this.voltronSink, never()).addSingleThreaded(any(NoopEntityMessage.class));
+    verify(this.voltronSink, never()).addMultiThreaded(any(NoopEntityMessage.class));
     
     // This second message will now start the server.
     ClientHandshakeMessage message2 = mock(ClientHandshakeMessage.class);
@@ -161,7 +161,7 @@ public class ServerClientHandshakeManagerTest {
     this.manager.notifyClientConnect(message2, entityManager, transactionHandler);
     assertFalse(this.manager.isStarting());
     assertTrue(this.manager.isStarted());
-    verify(this.voltronSink).addSingleThreaded(any(NoopEntityMessage.class));
+    verify(this.voltronSink).addMultiThreaded(any(NoopEntityMessage.class));
   }
 
   @Test
@@ -0,0 +1,94 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.LongLockID;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class GreedyLockPolicyTest extends TestCase {
+  private long time = 0;
+
+  private GreedyLockPolicy createPolicy(int maxTrackedLocks) {
+    return new GreedyLockPolicy(64, 4, 1000, 10000, maxTrackedLocks) {
+      @Override
+      protected long now() {
+        return time;
+      }
+    };
+  }
+
+  public void testLeaseShrinksWithRecalls() {
+    GreedyLockPolicy policy = createPolicy(10);
+    LockID lid = new LongLockID(1);
+    assertEquals(64, policy.recalled(lid));
+    assertEquals(32, policy.recalled(lid));
+    assertEquals(16, policy.recalled(lid));
+    assertTrue(policy.awardGreedily(lid));
+
+    // a new window starts over
+    advance(1000);
+    assertEquals(64, policy.recalled(lid));
+    assertTrue(policy.awardGreedily(lid));
+  }
+
+  public void testHotLockIsNonGreedyUntilCooledDown() {
+    GreedyLockPolicy policy = createPolicy(10);
+    LockID hot = new LongLockID(1);
+    LockID cold = new LongLockID(2);
+    for (int i = 0; i < 4; i++) {
+      policy.recalled(hot);
+    }
+    policy.recalled(cold);
+    assertFalse(policy.awardGreedily(hot));
+    assertTrue(policy.awardGreedily(cold));
+    assertEquals(1, policy.getNonGreedyLockCount());
+
+    advance(9999);
+    assertFalse(policy.awardGreedily(hot));
+    advance(1);
+    assertTrue(policy.awardGreedily(hot));
+    assertEquals(0, policy.getNonGreedyLockCount());
+  }
+
+  public void testTrackedLocksAreBounded() {
+    GreedyLockPolicy policy = createPolicy(2);
+    for (int i = 0; i < 4; i++) {
+      policy.recalled(new LongLockID(1));
+      policy.recalled(new LongLockID(2));
+    }
+    // no room, so the third lock isn't tracked and keeps the full lease
+    for (int i = 0; i < 4; i++) {
+      assertEquals(64, policy.recalled(new LongLockID(3)));
+    }
+    assertTrue(policy.awardGreedily(new LongLockID(3)));
+
+    // once the other locks cool down they make room
+    advance(10000);
+    policy.recalled(new LongLockID(3));
+    assertEquals(32, policy.recalled(new LongLockID(3)));
+  }
+
+  private void advance(long millis) {
+    time += TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.LongLockID;
+import com.tc.object.locks.StringLockID;
+import com.tc.objectserver.locks.factory.ServerLockFactoryImpl;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.PerfTests;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the heap used by the LockStore for 1M and 10M locks, next to the same locks held in a HashMap (which is how
+ * the store used to keep them). The numbers are only printed since they depend on the JVM and its settings.
+ */
+@Category(PerfTests.class)
+public class LockStoreHeapBenchmarkTest {
+  private static final LockFactory FACTORY = new ServerLockFactoryImpl();
+
+  @Test
+  public void testOneMillionLocks() {
+    measure(1000000);
+  }
+
+  @Test
+  public void testTenMillionLocks() {
+    // the HashMap comparison alone needs more than a gigabyte
+    assumeTrue(Runtime.getRuntime().maxMemory() >= 6L * 1024 * 1024 * 1024);
+    measure(10000000);
+  }
+
+  private static void measure(int count) {
+    for (boolean longIDs : new boolean[] { true, false }) {
+      String kind = longIDs ? "long" : "string";
+      long base = usedHeap();
+      LockStore store = new LockStore(FACTORY);
+      for (int i = 0; i < count; i++) {
+        store.checkIn(store.checkOut(lockID(longIDs, i)));
+      }
+      report("lock store", kind, count, usedHeap() - base);
+      store.clear();
+      store = null;
+
+      base = usedHeap();
+      Map<LockID, ServerLock> map = new HashMap<>();
+      for (int i = 0; i < count; i++) {
+        LockID lid = lockID(longIDs, i);
+        map.put(lid, FACTORY.createLock(lid));
+      }
+      report("hash map", kind, count, usedHeap() - base);
+      map.clear();
+      map = null;
+    }
+  }
+
+  private static LockID lockID(boolean longIDs, int i) {
+    return longIDs ? new LongLockID(i) : new StringLockID("lock-" + i);
+  }
+
+  private static void report(String container, String kind, int count, long bytes) {
+    System.out.println(container + ", " + count + " " + kind + " locks: " + (bytes >> 20) + "MB, " + (bytes / count)
+                       + " bytes per lock");
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.StringLockID;
+import com.tc.objectserver.locks.factory.ServerLockFactoryImpl;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+public class LockStoreTest extends TestCase {
+
+  public void testSegmentFor() {
+    LockStore store = new LockStore(8, new ServerLockFactoryImpl());
+    assertEquals(8, store.getSegmentCount());
+    for (int i = 0; i < 100; i++) {
+      LockID lid = new StringLockID("lock-" + i);
+      int segment = store.segmentFor(lid);
+      assertTrue(segment >= 0 && segment < store.getSegmentCount());
+      assertEquals(segment, store.segmentFor(new StringLockID("lock-" + i)));
+    }
+  }
+
+  public void testContention() throws Exception {
+    final LockStore store = new LockStore(8, new ServerLockFactoryImpl());
+    final LockID lid = new StringLockID("contended");
+    final int segment = store.segmentFor(lid);
+
+    ServerLock lock = store.checkOut(lid);
+    store.checkIn(lock);
+    assertEquals(0, store.getContention()[segment]);
+
+    lock = store.checkOut(lid);
+    final CountDownLatch done = new CountDownLatch(1);
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        store.checkIn(store.checkOut(lid));
+        done.countDown();
+      }
+    };
+    other.start();
+    while (store.getContention()[segment] == 0) {
+      Thread.sleep(10);
+    }
+    store.checkIn(lock);
+    done.await();
+    other.join();
+
+    long[] contention = store.getContention();
+    assertEquals(1, contention[segment]);
+    for (int i = 0; i < contention.length; i++) {
+      if (i != segment) {
+        assertEquals(0, contention[i]);
+      }
+    }
+  }
+}
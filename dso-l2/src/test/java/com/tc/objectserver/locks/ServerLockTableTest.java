@@ -0,0 +1,139 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.LongLockID;
+import com.tc.object.locks.StringLockID;
+import com.tc.objectserver.locks.factory.ServerLockFactoryImpl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class ServerLockTableTest extends TestCase {
+  private final LockFactory factory = new ServerLockFactoryImpl();
+
+  public void testAddGetRemove() {
+    ServerLockTable table = new ServerLockTable();
+    for (int i = 0; i < 1000; i++) {
+      table.add(factory.createLock(new LongLockID(i)));
+      table.add(factory.createLock(new StringLockID("lock-" + i)));
+    }
+    assertEquals(2000, table.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(new LongLockID(i), table.get(new LongLockID(i)).getLockID());
+      assertEquals(new StringLockID("lock-" + i), table.get(new StringLockID("lock-" + i)).getLockID());
+    }
+    assertNull(table.get(new LongLockID(1000)));
+
+    for (int i = 0; i < 1000; i += 2) {
+      assertNotNull(table.remove(new LongLockID(i)));
+    }
+    assertNull(table.remove(new LongLockID(0)));
+    assertEquals(1500, table.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 2 != 0, table.get(new LongLockID(i)) != null);
+    }
+  }
+
+  public void testTombstonesAreReclaimed() {
+    ServerLockTable table = new ServerLockTable();
+    for (int i = 0; i < 100000; i++) {
+      LockID lid = new LongLockID(i);
+      table.add(factory.createLock(lid));
+      assertNotNull(table.remove(lid));
+    }
+    assertEquals(0, table.size());
+    assertEquals(16, table.capacity());
+
+    for (int i = 0; i < 10000; i++) {
+      table.add(factory.createLock(new LongLockID(i)));
+    }
+    int capacity = table.capacity();
+    for (int i = 0; i < 10000; i++) {
+      assertNotNull(table.remove(new LongLockID(i)));
+    }
+    // the table gives the space back as the locks go and grows to the same size again
+    assertEquals(16, table.capacity());
+    for (int i = 10000; i < 20000; i++) {
+      table.add(factory.createLock(new LongLockID(i)));
+    }
+    assertEquals(10000, table.size());
+    assertEquals(capacity, table.capacity());
+  }
+
+  public void testShrinksOnRemove() {
+    ServerLockTable table = new ServerLockTable();
+    for (int i = 0; i < 10000; i++) {
+      table.add(factory.createLock(new LongLockID(i)));
+    }
+    int capacity = table.capacity();
+    for (int i = 0; i < 9900; i++) {
+      assertNotNull(table.remove(new LongLockID(i)));
+    }
+    assertTrue(table.capacity() < capacity / 8);
+    for (int i = 9900; i < 10000; i++) {
+      assertEquals(new LongLockID(i), table.get(new LongLockID(i)).getLockID());
+    }
+  }
+
+  public void testNoShrinkWhileIterating() {
+    ServerLockTable table = new ServerLockTable();
+    for (int i = 0; i < 1000; i++) {
+      table.add(factory.createLock(new LongLockID(i)));
+    }
+    int capacity = table.capacity();
+    table.startIteration();
+    for (int i = 0; i < 1000; i++) {
+      assertNotNull(table.remove(new LongLockID(i)));
+    }
+    assertEquals(capacity, table.capacity());
+    table.endIteration();
+    assertEquals(16, table.capacity());
+  }
+
+  public void testIterateAndRemove() {
+    LockStore store = new LockStore(4, factory);
+    for (int i = 0; i < 1000; i++) {
+      store.checkIn(store.checkOut(new LongLockID(i)));
+    }
+    Set<LockID> seen = new HashSet<>();
+    LockStore.LockIterator iter = store.iterator();
+    ServerLock lock = iter.getNextLock(null);
+    while (lock != null) {
+      assertTrue(seen.add(lock.getLockID()));
+      if (seen.size() % 3 == 1) {
+        iter.remove();
+      }
+      lock = iter.getNextLock(lock);
+    }
+    assertEquals(1000, seen.size());
+
+    seen.clear();
+    iter = store.iterator();
+    lock = iter.getNextLock(null);
+    while (lock != null) {
+      assertTrue(seen.add(lock.getLockID()));
+      lock = iter.getNextLock(lock);
+    }
+    assertEquals(666, seen.size());
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import com.tc.test.TCTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.terracotta.persistence.IPersistentStorage;
+import org.terracotta.persistence.KeyValueStorage;
+
+
+public class FlatFileLogPersistentStorageTest extends TCTestCase {
+  private static final String TEMP_FILE = "log_temp_file";
+
+  public void testReopenAfterClose() throws IOException {
+    FlatFileLogPersistentStorage storage = new FlatFileLogPersistentStorage(getTempFile(TEMP_FILE), Long.MAX_VALUE);
+    storage.create();
+    KeyValueStorage<Integer, String> numbers = storage.getKeyValueStorage("numbers", Integer.class, String.class);
+    numbers.put(1, "one");
+    numbers.put(2, "two");
+    numbers.remove(1);
+    storage.getProperties().put("key", "value");
+    storage.close();
+
+    storage = new FlatFileLogPersistentStorage(getTempFile(TEMP_FILE), Long.MAX_VALUE);
+    storage.open();
+    numbers = storage.getKeyValueStorage("numbers", Integer.class, String.class);
+    assertEquals(1, numbers.size());
+    assertEquals("two", numbers.get(2));
+    assertEquals("value", storage.getProperties().get("key"));
+  }
+
+  /**
+   * Tests that mutations which were only logged, and never compacted into a snapshot, are replayed.
+   */
+  public void testReplayWithoutClose() throws IOException {
+    FlatFileLogPersistentStorage storage = new FlatFileLogPersistentStorage(getTempFile(TEMP_FILE), Long.MAX_VALUE);
+    storage.create();
+    KeyValueStorage<Integer, Integer> numbers = storage.getKeyValueStorage("numbers", Integer.class, Integer.class);
+    for (int i = 0; i < 100; ++i) {
+      numbers.put(i % 10, i);
+    }
+    storage.destroyKeyValueStorage("other");
+    storage.getKeyValueStorage("other", Integer.class, Integer.class).put(1, 1);
+    storage.destroyKeyValueStorage("other");
+
+    FlatFileLogPersistentStorage reloaded = new FlatFileLogPersistentStorage(getTempFile(TEMP_FILE), Long.MAX_VALUE);
+    reloaded.open();
+    numbers = reloaded.getKeyValueStorage("numbers", Integer.class, Integer.class);
+    assertEquals(10, numbers.size());
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(Integer.valueOf(90 + i), numbers.get(i));
+    }
+    assertEquals(0, reloaded.getKeyValueStorage("other", Integer.class, Integer.class).size());
+  }
+
+  /**
+   * Tests that aborting a transaction undoes its mutations, in memory and in the log, but leaves those made before it.
+   */
+  public void testAbortUndoesTransaction() throws IOException {
+    FlatFileLogPersistentStorage storage = new FlatFileLogPersistentStorage(getTempFile(TEMP_FILE), Long.MAX_VALUE);
+    storage.create();
+    KeyValueStorage<Integer, String> numbers = storage.getKeyValueStorage("numbers", Integer.class, String.class);
+    numbers.put(1, "one");
+    numbers.put(2, "two");
+    storage.getProperties().put("key", "value");
+    IPersistentStorage.Transaction transaction = storage.begin();
+    numbers.put(1, "uno");
+    numbers.remove(2);
+    numbers.put(3, "tres");
+    storage.getProperties().put("key", "changed");
+    storage.getProperties().put("other", "added");
+    storage.getKeyValueStorage("created", Integer.class, String.class).put(1, "one");
+    transaction.abort();
+    assertEquals("one", numbers.get(1));
+    assertEquals("two", numbers.get(2));
+    assertFalse(numbers.containsKey(3));
+
+    FlatFileLogPersistentStorage reloaded = new FlatFileLogPersistentStorage(getTempFile(TEMP_FILE), Long.MAX_VALUE);
+    reloaded.open();
+    numbers = reloaded.getKeyValueStorage("numbers", Integer.class, String.class);
+    assertEquals(2, numbers.size());
+    assertEquals("one", numbers.get(1));
+    assertEquals("two", numbers.get(2));
+    assertEquals("value", reloaded.getProperties().get("key"));
+    assertNull(reloaded.getProperties().get("other"));
+    assertEquals(0, reloaded.getKeyValueStorage("created", Integer.class, String.class).size());
+  }
+
+  /**
+   * Tests that a partially written record at the end of the log is discarded instead of failing the open.
+   */
+  public void testTornTailIsDiscarded() throws IOException {
+    File file = getTempFile(TEMP_FILE);
+    FlatFileLogPersistentStorage storage = new FlatFileLogPersistentStorage(file, Long.MAX_VALUE);
+    storage.create();
+    storage.getKeyValueStorage("numbers", Integer.class, String.class).put(1, "one");
+    try (FileOutputStream segment = new FileOutputStream(new File(file.getParentFile(), file.getName() + ".1.log"), true)) {
+      segment.write(new byte[] { 0, 0, 0, 100, 1, 2, 3 });
+    }
+
+    storage = new FlatFileLogPersistentStorage(file, Long.MAX_VALUE);
+    storage.open();
+    KeyValueStorage<Integer, String> numbers = storage.getKeyValueStorage("numbers", Integer.class, String.class);
+    assertEquals("one", numbers.get(1));
+    // The log must still be usable for appending after the tail was trimmed.
+    numbers.put(2, "two");
+
+    storage = new FlatFileLogPersistentStorage(file, Long.MAX_VALUE);
+    storage.open();
+    assertEquals("two", storage.getKeyValueStorage("numbers", Integer.class, String.class).get(2));
+  }
+
+  public void testCompaction() throws Exception {
+    File file = getTempFile(TEMP_FILE);
+    FlatFileLogPersistentStorage storage = new FlatFileLogPersistentStorage(file, 1024);
+    storage.create();
+    KeyValueStorage<Integer, Integer> numbers = storage.getKeyValueStorage("numbers", Integer.class, Integer.class);
+    for (int i = 0; i < 1000; ++i) {
+      numbers.put(i % 10, i);
+    }
+    // Only the newest segments should survive once the background compaction has caught up.
+    long deadline = System.currentTimeMillis() + 10000;
+    while (file.getParentFile().list((dir, name) -> name.startsWith(TEMP_FILE + ".")).length > 2) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+    storage.close();
+
+    storage = new FlatFileLogPersistentStorage(file, 1024);
+    storage.open();
+    numbers = storage.getKeyValueStorage("numbers", Integer.class, Integer.class);
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(Integer.valueOf(990 + i), numbers.get(i));
+    }
+  }
+}
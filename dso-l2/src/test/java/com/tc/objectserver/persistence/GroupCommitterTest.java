@@ -0,0 +1,132 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import org.terracotta.persistence.IPersistentStorage;
+
+import com.tc.test.TCTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class GroupCommitterTest extends TCTestCase {
+  private final AtomicInteger flushes = new AtomicInteger();
+
+  public void testWriteOutsideTransactionIsFlushed() {
+    GroupCommitter committer = new GroupCommitter(flushes::incrementAndGet, 0, 1);
+    committer.commit(committer.written());
+    assertEquals(1, flushes.get());
+    committer.commit(committer.written());
+    assertEquals(2, flushes.get());
+  }
+
+  public void testTransactionFlushesOnceOnCommit() {
+    GroupCommitter committer = new GroupCommitter(flushes::incrementAndGet, 0, 1);
+    IPersistentStorage.Transaction transaction = committer.begin();
+    committer.commit(committer.written());
+    committer.commit(committer.written());
+    // Nested transactions are only flushed by the outermost commit.
+    IPersistentStorage.Transaction nested = committer.begin();
+    committer.commit(committer.written());
+    nested.commit();
+    assertEquals(0, flushes.get());
+    transaction.commit();
+    assertEquals(1, flushes.get());
+  }
+
+  public void testAbortUndoesNewestFirst() {
+    GroupCommitter committer = new GroupCommitter(flushes::incrementAndGet, 0, 1);
+    List<Integer> undone = new ArrayList<>();
+    IPersistentStorage.Transaction transaction = committer.begin();
+    committer.commit(committer.written(() -> undone.add(1)));
+    IPersistentStorage.Transaction nested = committer.begin();
+    committer.commit(committer.written(() -> undone.add(2)));
+    nested.commit();
+    committer.commit(committer.written(() -> undone.add(3)));
+    transaction.abort();
+    assertEquals(Arrays.asList(3, 2, 1), undone);
+    // Nothing which was undone needed to be flushed.
+    assertEquals(0, flushes.get());
+    assertFalse(committer.inTransaction());
+  }
+
+  public void testAbortNestedKeepsOuter() {
+    GroupCommitter committer = new GroupCommitter(flushes::incrementAndGet, 0, 1);
+    List<Integer> undone = new ArrayList<>();
+    IPersistentStorage.Transaction transaction = committer.begin();
+    committer.commit(committer.written(() -> undone.add(1)));
+    IPersistentStorage.Transaction nested = committer.begin();
+    committer.commit(committer.written(() -> undone.add(2)));
+    nested.abort();
+    assertEquals(Arrays.asList(2), undone);
+    assertTrue(committer.inTransaction());
+    transaction.commit();
+    assertEquals(Arrays.asList(2), undone);
+    assertEquals(1, flushes.get());
+  }
+
+  public void testCommitFromAnotherThread() throws Exception {
+    GroupCommitter committer = new GroupCommitter(flushes::incrementAndGet, 0, 1);
+    IPersistentStorage.Transaction transaction = committer.begin();
+    committer.commit(committer.written());
+    Thread committing = new Thread(transaction::commit);
+    committing.start();
+    committing.join();
+    assertEquals(1, flushes.get());
+    // The transaction is no longer open on the thread which began it.
+    assertFalse(committer.inTransaction());
+    committer.commit(committer.written());
+    assertEquals(2, flushes.get());
+  }
+
+  public void testConcurrentWritersShareFlushes() throws Exception {
+    int writers = 8;
+    int writesPerWriter = 100;
+    // A slow flush ensures writers pile up behind the one in progress.
+    GroupCommitter committer = new GroupCommitter(() -> {
+      flushes.incrementAndGet();
+      Thread.sleep(2);
+    }, 1000, writers);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < writers; ++i) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        for (int j = 0; j < writesPerWriter; ++j) {
+          committer.commit(committer.written());
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(flushes.get() < writers * writesPerWriter);
+  }
+}
@@ -246,6 +246,72 @@ public class TransactionOrderPersistorTest extends TCTestCase {
     assertEquals(0, this.orderPersistor.getIndexToReplay(this.client1, newTransaction));
   }
 
+  /**
+   * Test that expiring old transactions of one client shifts the global index of the remaining ones.
+   */
+  public void testExpiryShiftsGlobalOrder() {
+    TransactionID oldest = new TransactionID(0);
+    for (int i = 1; i < 10; ++i) {
+      TransactionID transaction = new TransactionID(i);
+      this.orderPersistor.updateWithNewMessage(this.client1, transaction, oldest);
+      this.orderPersistor.updateWithNewMessage(this.client2, transaction, oldest);
+    }
+    // client1 now says that it is only waiting on transaction 10 or later.
+    this.orderPersistor.updateWithNewMessage(this.client1, new TransactionID(10), new TransactionID(10));
+    assertEquals(-1, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(9)));
+    for (int i = 1; i < 10; ++i) {
+      assertEquals(i - 1, this.orderPersistor.getIndexToReplay(this.client2, new TransactionID(i)));
+    }
+    assertEquals(9, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(10)));
+  }
+
+  /**
+   * Test that transactions recorded out of order are still found and trimmed once the client moves past them.
+   */
+  public void testOutOfOrderTransactionsAreTrimmed() {
+    TransactionID oldest = new TransactionID(0);
+    long[] arrival = new long[] {1, 3, 2, 5, 4, 6};
+    for (long id : arrival) {
+      this.orderPersistor.updateWithNewMessage(this.client1, new TransactionID(id), oldest);
+    }
+    for (int i = 0; i < arrival.length; ++i) {
+      assertEquals(i, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(arrival[i])));
+    }
+    // client1 now says that it is only waiting on transaction 4 or later.
+    this.orderPersistor.updateWithNewMessage(this.client1, new TransactionID(7), new TransactionID(4));
+    assertEquals(-1, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(1)));
+    assertEquals(-1, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(2)));
+    assertEquals(-1, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(3)));
+    assertEquals(0, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(5)));
+    assertEquals(1, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(4)));
+    assertEquals(2, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(6)));
+    assertEquals(3, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(7)));
+  }
+
+  public void testSaveReloadKeepsGlobalOrder() throws IOException {
+    final String reloadable = "reloadable_file";
+    TransactionID oldest = new TransactionID(0);
+
+    FlatFilePersistentStorage storage = new FlatFilePersistentStorage(getTempFile(reloadable));
+    storage.create();
+    TransactionOrderPersistor persistor = new TransactionOrderPersistor(storage);
+    for (int i = 1; i < 10; ++i) {
+      TransactionID transaction = new TransactionID(i);
+      persistor.updateWithNewMessage(this.client1, transaction, oldest);
+      persistor.updateWithNewMessage(this.client2, transaction, oldest);
+    }
+    persistor.removeTrackingForClient(this.client1);
+
+    storage = new FlatFilePersistentStorage(getTempFile(reloadable));
+    storage.open();
+    persistor = new TransactionOrderPersistor(storage);
+    assertEquals(18, persistor.getReceivedTransactionCount());
+    assertEquals(-1, persistor.getIndexToReplay(this.client1, new TransactionID(1)));
+    for (int i = 1; i < 10; ++i) {
+      assertEquals(i - 1, persistor.getIndexToReplay(this.client2, new TransactionID(i)));
+    }
+  }
+
   public void testSaveReloadEmpty() throws IOException {
     final String reloadable = "reloadable_file";
     
@@ -317,7 +383,62 @@ public class TransactionOrderPersistorTest extends TCTestCase {
     thread2.join();
   }
 
+  /**
+   * Test that a client's transactions can arrive on several threads at once (as they do when they target different
+   * entities) and still all be ordered, and reloaded, correctly.
+   */
+  public void testOneClientMultipleThreads() throws IOException, InterruptedException {
+    final String reloadable = "reloadable_file";
+    ClientID client = new ClientID(1);
+    TransactionID oldest = new TransactionID(0);
 
+    FlatFilePersistentStorage storage = new FlatFilePersistentStorage(getTempFile(reloadable));
+    storage.create();
+    TransactionOrderPersistor persistor = new TransactionOrderPersistor(storage);
+    ClientThread thread1 = new ClientThread(persistor, client, oldest, 1, 100);
+    ClientThread thread2 = new ClientThread(persistor, client, oldest, 100, 200);
+    thread1.start();
+    thread2.start();
+    thread1.join();
+    thread2.join();
+    assertEquals(199, persistor.getReceivedTransactionCount());
+
+    storage = new FlatFilePersistentStorage(getTempFile(reloadable));
+    storage.open();
+    persistor = new TransactionOrderPersistor(storage);
+    assertEquals(199, persistor.getReceivedTransactionCount());
+    boolean[] seen = new boolean[199];
+    for (int i = 1; i < 200; ++i) {
+      int index = persistor.getIndexToReplay(client, new TransactionID(i));
+      assertFalse(seen[index]);
+      seen[index] = true;
+    }
+    // Each thread's transactions must keep their relative order.
+    for (int i = 2; i < 100; ++i) {
+      assertTrue(persistor.getIndexToReplay(client, new TransactionID(i - 1)) < persistor.getIndexToReplay(client, new TransactionID(i)));
+      assertTrue(persistor.getIndexToReplay(client, new TransactionID(i + 99)) < persistor.getIndexToReplay(client, new TransactionID(i + 100)));
+    }
+  }
+
+
+  /**
+   * Test that the storage of older versions is only looked for the first time a storage is opened.
+   */
+  public void testLegacyMigrationOnlyOnce() throws IOException {
+    final String reloadable = "migrated_file";
+    FlatFilePersistentStorage storage = new FlatFilePersistentStorage(getTempFile(reloadable));
+    storage.create();
+    new TransactionOrderPersistor(storage);
+    assertEquals("true", storage.getProperties().get("transaction_order:client_local_lists_migrated"));
+    storage.close();
+
+    storage = new FlatFilePersistentStorage(getTempFile(reloadable));
+    storage.open();
+    // Any legacy storage found now would be from after the migration so it must be left alone.
+    storage.getKeyValueStorage("client_local_lists", NodeID.class, String.class).put(this.client1, "not migrated");
+    new TransactionOrderPersistor(storage);
+    assertEquals(1, storage.getKeyValueStorage("client_local_lists", NodeID.class, String.class).size());
+  }
   private static class ClientThread extends Thread {
     private TransactionOrderPersistor persistor;
     private ClientID client;
@@ -84,6 +84,6 @@ public class EntityMessengerProviderTest {
     
     // Verify the calls we observed.
     verify(this.messageCodec).encodeMessage(message);
-    verify(this.messageSink).addSingleThreaded(any(VoltronEntityMessage.class));
+    verify(this.messageSink).addMultiThreaded(any(VoltronEntityMessage.class));
   }
 }
@@ -138,7 +138,7 @@ public class NetworkVoltronEntityMessageImpl extends DSOMessageBase implements N
     outputStream.writeInt(type.ordinal());
     
     outputStream.writeInt(extendedData.length);
-    outputStream.write(extendedData);
+    outputStream.writeShared(extendedData);
     
     outputStream.writeBoolean(requiresReplication);
     
@@ -179,4 +179,14 @@ public class NetworkVoltronEntityMessageImpl extends DSOMessageBase implements N
   public EntityMessage getEntityMessage() {
     return this.message;
   }
+
+  @Override
+  public Object getSchedulingKey() {
+    return this.entityDescriptor.getEntityID();
+  }
+
+  @Override
+  public boolean flush() {
+    return false;
+  }
 }
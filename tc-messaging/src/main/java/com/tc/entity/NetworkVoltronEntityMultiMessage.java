@@ -0,0 +1,40 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.net.protocol.tcm.TCMessage;
+import java.util.List;
+
+
+/**
+ * Carries several VoltronEntityMessages from one client in a single network message.  The server hands them on, in
+ * order, exactly as if they had arrived one after another as individual messages.
+ */
+public interface NetworkVoltronEntityMultiMessage extends TCMessage {
+  /**
+   * @return false if the message has already been sent and can't take any more
+   */
+  boolean addMessage(VoltronEntityMessage message);
+
+  int size();
+
+  List<VoltronEntityMessage> getMessages();
+
+  void setMessageCodecSupplier(MessageCodecSupplier supplier);
+}
@@ -0,0 +1,202 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.entity.VoltronEntityMessage.Type;
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.msg.DSOMessageBase;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+import com.tc.util.Assert;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.entity.MessageCodec;
+import org.terracotta.entity.MessageCodecException;
+
+
+public class NetworkVoltronEntityMultiMessageImpl extends DSOMessageBase implements NetworkVoltronEntityMultiMessage {
+  private static final byte MESSAGES_ID = 0;
+  
+  private List<VoltronEntityMessage> messages = new ArrayList<VoltronEntityMessage>();
+  private MessageCodecSupplier supplier;
+
+  public NetworkVoltronEntityMultiMessageImpl(SessionID sessionID, MessageMonitor monitor, TCByteBufferOutputStream out, MessageChannel channel, TCMessageType type) {
+    super(sessionID, monitor, out, channel, type);
+  }
+
+  public NetworkVoltronEntityMultiMessageImpl(SessionID sessionID, MessageMonitor monitor, MessageChannel channel, TCMessageHeader header, TCByteBuffer[] data) {
+    super(sessionID, monitor, channel, header, data);
+  }
+
+  @Override
+  public synchronized boolean addMessage(VoltronEntityMessage message) {
+    if (!isSealed()) {
+      messages.add(message);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public synchronized int size() {
+    return messages.size();
+  }
+
+  @Override
+  public synchronized List<VoltronEntityMessage> getMessages() {
+    return Collections.unmodifiableList(messages);
+  }
+
+  @Override
+  public void setMessageCodecSupplier(MessageCodecSupplier supplier) {
+    this.supplier = supplier;
+  }
+
+  @Override
+  protected synchronized void dehydrateValues() {
+    TCByteBufferOutputStream outputStream = getOutputStream();
+    putNVPair(MESSAGES_ID, messages.size());
+    for (VoltronEntityMessage message : messages) {
+      message.getSource().serializeTo(outputStream);
+      outputStream.writeLong(message.getTransactionID().toLong());
+      message.getEntityDescriptor().serializeTo(outputStream);
+      outputStream.writeInt(message.getVoltronType().ordinal());
+      byte[] extendedData = message.getExtendedData();
+      outputStream.writeInt(extendedData.length);
+      outputStream.writeShared(extendedData);
+      outputStream.writeBoolean(message.doesRequireReplication());
+      outputStream.writeLong(message.getOldestTransactionOnClient().toLong());
+    }
+  }
+
+  @Override
+  protected boolean hydrateValue(byte name) throws IOException {
+    Assert.assertTrue(MESSAGES_ID == name);
+    TCByteBufferInputStream input = getInputStream();
+    int size = getIntValue();
+    messages = new ArrayList<VoltronEntityMessage>(size);
+    for (int x = 0; x < size; x++) {
+      ClientID source = ClientID.readFrom(input);
+      TransactionID transactionID = new TransactionID(input.readLong());
+      EntityDescriptor descriptor = EntityDescriptor.readFrom(input);
+      Type type = Type.values()[input.readInt()];
+      byte[] extendedData = getBytesArray();
+      boolean requiresReplication = input.readBoolean();
+      TransactionID oldest = new TransactionID(input.readLong());
+      messages.add(new Entry(source, transactionID, descriptor, type, requiresReplication, extendedData, oldest, decode(descriptor, type, extendedData)));
+    }
+    return true;
+  }
+
+  private EntityMessage decode(EntityDescriptor descriptor, Type type, byte[] extendedData) {
+    if (type == Type.INVOKE_ACTION && supplier != null) {
+      try {
+        MessageCodec<EntityMessage, EntityResponse> codec = supplier.getMessageCodec(descriptor.getEntityID());
+        return codec.decodeMessage(extendedData);
+      } catch (MessageCodecException exception) {
+//  swallow it, as for a single message.  A later stage decodes it again and handles the failure.
+      }
+    }
+    return null;
+  }
+
+  private static class Entry implements VoltronEntityMessage {
+    private final ClientID source;
+    private final TransactionID transactionID;
+    private final EntityDescriptor entityDescriptor;
+    private final Type type;
+    private final boolean requiresReplication;
+    private final byte[] extendedData;
+    private final TransactionID oldestTransactionPending;
+    private final EntityMessage message;
+
+    private Entry(ClientID source, TransactionID transactionID, EntityDescriptor entityDescriptor, Type type, boolean requiresReplication, byte[] extendedData, TransactionID oldestTransactionPending, EntityMessage message) {
+      this.source = source;
+      this.transactionID = transactionID;
+      this.entityDescriptor = entityDescriptor;
+      this.type = type;
+      this.requiresReplication = requiresReplication;
+      this.extendedData = extendedData;
+      this.oldestTransactionPending = oldestTransactionPending;
+      this.message = message;
+    }
+
+    @Override
+    public ClientID getSource() {
+      return source;
+    }
+
+    @Override
+    public TransactionID getTransactionID() {
+      return transactionID;
+    }
+
+    @Override
+    public EntityDescriptor getEntityDescriptor() {
+      return entityDescriptor;
+    }
+
+    @Override
+    public boolean doesRequireReplication() {
+      return requiresReplication;
+    }
+
+    @Override
+    public Type getVoltronType() {
+      return type;
+    }
+
+    @Override
+    public byte[] getExtendedData() {
+      return extendedData;
+    }
+
+    @Override
+    public TransactionID getOldestTransactionOnClient() {
+      return oldestTransactionPending;
+    }
+
+    @Override
+    public EntityMessage getEntityMessage() {
+      return message;
+    }
+
+    @Override
+    public Object getSchedulingKey() {
+      return entityDescriptor.getEntityID();
+    }
+
+    @Override
+    public boolean flush() {
+      return false;
+    }
+  }
+}
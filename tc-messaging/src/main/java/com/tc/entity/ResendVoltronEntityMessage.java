@@ -128,4 +128,14 @@ public class ResendVoltronEntityMessage implements VoltronEntityMessage, TCSeria
     // There is no built-in message.
     return null;
   }
+
+  @Override
+  public Object getSchedulingKey() {
+    return this.entityDescriptor.getEntityID();
+  }
+
+  @Override
+  public boolean flush() {
+    return false;
+  }
 }
@@ -21,12 +21,18 @@ package com.tc.entity;
 
 import org.terracotta.entity.EntityMessage;
 
+import com.tc.async.api.MultiThreadedEventContext;
 import com.tc.net.ClientID;
 import com.tc.object.EntityDescriptor;
 import com.tc.object.tx.TransactionID;
 
 
-public interface VoltronEntityMessage {
+/**
+ * Messages are scheduled, on the server, by the EntityID they target (see {@link #getSchedulingKey()}) so that messages
+ * for the same entity are handled in the order they arrive but messages for different entities can be handled
+ * concurrently.
+ */
+public interface VoltronEntityMessage extends MultiThreadedEventContext {
   enum Type {
     /**
      * Called to add a reference from a client to an existing entity.
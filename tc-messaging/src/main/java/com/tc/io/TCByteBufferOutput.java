@@ -27,4 +27,10 @@ public interface TCByteBufferOutput extends TCDataOutput, Recyclable {
 
   public void write(TCByteBuffer[] data);
 
+  /**
+   * Write the array as it is, without copying it into the stream's own buffers, if it is big enough to be sent as a
+   * buffer of its own.  The array must not be modified once written.
+   */
+  public void writeShared(byte[] data);
+
 }
@@ -148,6 +148,19 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
     }
   }
 
+  /**
+   * Arrays smaller than the max block size are not worth wrapping since they would be copied when the stream
+   * consolidates its small buffers anyway.
+   */
+  @Override
+  public void writeShared(byte[] data) {
+    if (data.length < maxBlockSize) {
+      write(data);
+    } else {
+      write(TCByteBufferFactory.wrap(data));
+    }
+  }
+
   public int getBytesWritten() {
     return written;
   }
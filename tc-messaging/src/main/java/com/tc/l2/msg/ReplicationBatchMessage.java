@@ -0,0 +1,117 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.l2.msg;
+
+import com.tc.io.TCByteBufferInput;
+import com.tc.io.TCByteBufferOutput;
+import com.tc.net.groups.AbstractGroupMessage;
+import com.tc.util.Assert;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs consecutive replicated messages for one passive into a single group message.  Each message keeps its own
+ * replication ID so the passive feeds them through the same ordering as messages sent on their own.
+ */
+public class ReplicationBatchMessage extends AbstractGroupMessage {
+  public static final int BATCH = 1;
+
+  private final List<Entry> entries = new ArrayList<>();
+  private List<ReplicationMessage> messages;
+
+  public ReplicationBatchMessage() {
+    super(BATCH);
+  }
+
+  /**
+   * Adds a message with the replication ID and action it has for the destination of this batch.  These are kept apart
+   * from the message since it is shared by every passive it is replicated to.
+   */
+  public void add(ReplicationMessage msg, long replicationID, ReplicationMessage.ReplicationType replicationType) {
+    entries.add(new Entry(msg, replicationID, replicationType));
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * A batch of one is cheaper to send as the plain message.
+   * 
+   * @return a copy of the only message of the batch with the replication ID and action it was added with
+   */
+  public ReplicationMessage getSingleMessage() {
+    Assert.assertEquals(1, entries.size());
+    Entry entry = entries.get(0);
+    ReplicationMessage copy = (entry.msg.getType() == ReplicationMessage.SYNC) ? new PassiveSyncMessage() : new ReplicationMessage(entry.msg.getType());
+    copy.initialize(entry.msg.descriptor, entry.msg.src, entry.msg.tid, entry.msg.oldest, entry.replicationType, entry.msg.payload, entry.msg.concurrency);
+    copy.setReplicationID(entry.replicationID);
+    return copy;
+  }
+
+  /**
+   * @return the messages of the batch, in replication order
+   */
+  public List<ReplicationMessage> getMessages() {
+    for (ReplicationMessage msg : messages) {
+      msg.setMessageOrginator(messageFrom());
+    }
+    return messages;
+  }
+
+  @Override
+  protected void basicDeserializeFrom(TCByteBufferInput in) throws IOException {
+    int count = in.readInt();
+    messages = new ArrayList<>(count);
+    for (int x = 0; x < count; x++) {
+      int type = in.readInt();
+      ReplicationMessage msg = (type == ReplicationMessage.SYNC) ? new PassiveSyncMessage() : new ReplicationMessage(type);
+      msg.basicDeserializeFrom(in);
+      messages.add(msg);
+    }
+  }
+
+  @Override
+  protected void basicSerializeTo(TCByteBufferOutput out) {
+    out.writeInt(entries.size());
+    for (Entry entry : entries) {
+      out.writeInt(entry.msg.getType());
+      entry.msg.writeBody(out, entry.replicationID, entry.replicationType);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ReplicationBatchMessage{" + "size=" + (messages != null ? messages.size() : entries.size()) + '}';
+  }
+
+  private static class Entry {
+    private final ReplicationMessage msg;
+    private final long replicationID;
+    private final ReplicationMessage.ReplicationType replicationType;
+
+    private Entry(ReplicationMessage msg, long replicationID, ReplicationMessage.ReplicationType replicationType) {
+      this.msg = msg;
+      this.replicationID = replicationID;
+      this.replicationType = replicationType;
+    }
+  }
+}
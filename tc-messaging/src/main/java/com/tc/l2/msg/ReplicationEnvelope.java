@@ -19,6 +19,7 @@
 package com.tc.l2.msg;
 
 import com.tc.net.NodeID;
+import java.util.function.LongConsumer;
 
 /**
  *
@@ -28,11 +29,17 @@ public class ReplicationEnvelope {
   private final NodeID dest;
   private final ReplicationMessage msg;
   private final Runnable waitRelease;
+  private final LongConsumer sent;
 
   public ReplicationEnvelope(NodeID dest, ReplicationMessage msg, Runnable waitRelease) {
+    this(dest, msg, waitRelease, null);
+  }
+
+  public ReplicationEnvelope(NodeID dest, ReplicationMessage msg, Runnable waitRelease, LongConsumer sent) {
     this.dest = dest;
     this.msg = msg;
     this.waitRelease = waitRelease;
+    this.sent = sent;
   }
   
   public NodeID getDestination() {
@@ -48,4 +55,14 @@ public class ReplicationEnvelope {
       waitRelease.run();
     }
   }
+  
+  /**
+   * Called with the replication ID the message is sent to the destination with, before it is sent.  The acks of the
+   * passive refer to messages by this ID.
+   */
+  public void sent(long replicationID) {
+    if (sent != null) {
+      sent.accept(replicationID);
+    }
+  }
 }
@@ -31,6 +31,7 @@ import com.tc.object.EntityID;
 import com.tc.object.tx.TransactionID;
 import com.tc.util.Assert;
 import java.io.IOException;
+import java.util.function.LongConsumer;
 
 /**
  *
@@ -126,6 +127,10 @@ public class ReplicationMessage extends AbstractGroupMessage implements OrderedE
     return new ReplicationEnvelope(node, this, waitRelease);
   }
   
+  public ReplicationEnvelope target(NodeID node, Runnable waitRelease, LongConsumer sent) {
+    return new ReplicationEnvelope(node, this, waitRelease, sent);
+  }
+  
   public void setReplicationID(long rid) {
     this.rid = rid;
   }
@@ -209,6 +214,15 @@ public class ReplicationMessage extends AbstractGroupMessage implements OrderedE
 
   @Override
   protected void basicSerializeTo(TCByteBufferOutput out) {
+    writeBody(out, this.rid, this.action);
+  }
+
+  /**
+   * Writes the message with the given replication ID and action instead of its own.  A message replicated to several
+   * passives is given a different ID (and possibly filtered to a NOOP) for each one, so a batch which is written 
+   * after the message has moved on to the next passive has to supply them.
+   */
+  void writeBody(TCByteBufferOutput out, long replicationID, ReplicationType replicationType) {
     int messageType = getType();
     switch (messageType) {
       case INVALID:
@@ -220,16 +234,16 @@ public class ReplicationMessage extends AbstractGroupMessage implements OrderedE
         break;
       case REPLICATE:
       case SYNC:
-        out.writeLong(rid);
+        out.writeLong(replicationID);
         this.descriptor.serializeTo(out);
         out.write(this.src.getNodeType());
         this.src.serializeTo(out);
         out.writeLong(tid.toLong());
         out.writeLong(oldest.toLong());
-        out.writeInt(this.action.ordinal());
+        out.writeInt(replicationType.ordinal());
         if (payload != null) {
           out.writeInt(payload.length);
-          out.write(payload);
+          out.writeShared(payload);
         } else {
           out.writeInt(0);
         }
@@ -21,17 +21,18 @@ package com.tc.l2.msg;
 import com.tc.io.TCByteBufferInput;
 import com.tc.io.TCByteBufferOutput;
 import com.tc.net.groups.AbstractGroupMessage;
-import com.tc.net.groups.MessageID;
 import java.io.IOException;
+import java.util.Collection;
 
 /**
- *
+ * A passive coalesces the acks of the replicated messages it receives.  An ACKNOWLEDGE covers every message up to its
+ * received replication ID as received, every message up to its completed replication ID as completed and, on top of 
+ * that, the listed messages which completed out of order.
  */
 public class ReplicationMessageAck extends AbstractGroupMessage {
   //message types  
   public static final int INVALID               = 0; // Sent to replicate a request on the passive
-  public static final int RECEIVED                = 2; // Means that the replicated action has been received by the passive
-  public static final int COMPLETED                = 3; // response that the replicated action completed
+  public static final int ACKNOWLEDGE                = 2; // Means that the replicated actions have been received or completed by the passive
   public static final int START_SYNC                = 4; // Sent from the passive when it wants the active to start passive sync.
 
   // Factory methods.
@@ -39,13 +40,13 @@ public class ReplicationMessageAck extends AbstractGroupMessage {
     return new ReplicationMessageAck(START_SYNC);
   }
 
-  public static ReplicationMessageAck createReceivedAck(MessageID requestToAck) {
-    return new ReplicationMessageAck(RECEIVED, requestToAck);
+  public static ReplicationMessageAck createAck(long receivedID, long completedID, Collection<Long> completedOutOfOrder) {
+    return new ReplicationMessageAck(ACKNOWLEDGE, receivedID, completedID, completedOutOfOrder.stream().mapToLong(Long::longValue).toArray());
   }
 
-  public static ReplicationMessageAck createCompletedAck(MessageID requestToAck) {
-    return new ReplicationMessageAck(COMPLETED, requestToAck);
-  }
+  private long receivedID;
+  private long completedID;
+  private long[] completedOutOfOrder;
 
 
   public ReplicationMessageAck() {
@@ -57,17 +58,61 @@ public class ReplicationMessageAck extends AbstractGroupMessage {
     super(type);
   }
   
-  private ReplicationMessageAck(int type, MessageID requestID) {
-    super(type, requestID);
+  private ReplicationMessageAck(int type, long receivedID, long completedID, long[] completedOutOfOrder) {
+    super(type);
+    this.receivedID = receivedID;
+    this.completedID = completedID;
+    this.completedOutOfOrder = completedOutOfOrder;
+  }
+
+  /**
+   * @return the replication ID up to which every message has been received
+   */
+  public long getReceivedID() {
+    return receivedID;
+  }
+
+  /**
+   * @return the replication ID up to which every message has been completed
+   */
+  public long getCompletedID() {
+    return completedID;
+  }
+
+  /**
+   * @return the replication IDs, above the completed one, of messages which have also completed
+   */
+  public long[] getCompletedOutOfOrder() {
+    return completedOutOfOrder;
   }
 
   @Override
   protected void basicDeserializeFrom(TCByteBufferInput in) throws IOException {
-    // Do nothing - no instance variables.
+    if (getType() == ACKNOWLEDGE) {
+      this.receivedID = in.readLong();
+      this.completedID = in.readLong();
+      this.completedOutOfOrder = new long[in.readInt()];
+      for (int x = 0; x < this.completedOutOfOrder.length; x++) {
+        this.completedOutOfOrder[x] = in.readLong();
+      }
+    }
   }
 
   @Override
   protected void basicSerializeTo(TCByteBufferOutput out) {
-    // Do nothing - no instance variables.
+    if (getType() == ACKNOWLEDGE) {
+      out.writeLong(this.receivedID);
+      out.writeLong(this.completedID);
+      out.writeInt(this.completedOutOfOrder.length);
+      for (long rid : this.completedOutOfOrder) {
+        out.writeLong(rid);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ReplicationMessageAck{" + "type=" + getType() + ", received=" + receivedID + ", completed=" + completedID + 
+        ", outOfOrder=" + (completedOutOfOrder == null ? 0 : completedOutOfOrder.length) + '}';
   }
 }
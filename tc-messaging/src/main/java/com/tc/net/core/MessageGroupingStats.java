@@ -0,0 +1,80 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of how the writer of a connection has grouped its outgoing messages. Each flush takes every message
+ * queued at the time and writes them together, framed into as few wire protocol groups as the grouping limits allow.
+ * A delayed flush is one that was held back to let more messages join it.
+ */
+public final class MessageGroupingStats {
+  private final long flushes;
+  private final long messages;
+  private final long delayedFlushes;
+  private final long totalDelayNanos;
+  private final long maxDelayNanos;
+
+  public MessageGroupingStats(long flushes, long messages, long delayedFlushes, long totalDelayNanos,
+                              long maxDelayNanos) {
+    this.flushes = flushes;
+    this.messages = messages;
+    this.delayedFlushes = delayedFlushes;
+    this.totalDelayNanos = totalDelayNanos;
+    this.maxDelayNanos = maxDelayNanos;
+  }
+
+  public long getFlushCount() {
+    return flushes;
+  }
+
+  public long getMessageCount() {
+    return messages;
+  }
+
+  /**
+   * @return The average number of messages written by a flush
+   */
+  public double getAverageGroupSize() {
+    return flushes == 0 ? 0 : (double) messages / flushes;
+  }
+
+  public long getDelayedFlushCount() {
+    return delayedFlushes;
+  }
+
+  /**
+   * @return The average time a delayed flush was held back, in microseconds
+   */
+  public long getAverageDelayMicros() {
+    return delayedFlushes == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalDelayNanos / delayedFlushes);
+  }
+
+  public long getMaxDelayMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(maxDelayNanos);
+  }
+
+  @Override
+  public String toString() {
+    return "flushes=" + flushes + ", messages=" + messages + ", avg group=" + String.format("%.1f", getAverageGroupSize())
+           + ", delayed=" + delayedFlushes + ", avg delay=" + getAverageDelayMicros() + "us, max delay="
+           + getMaxDelayMicros() + "us";
+  }
+}
@@ -144,6 +144,11 @@ public interface TCConnection extends NetworkMessageSink {
 
   public boolean isTransportEstablished();
 
+  /**
+   * How the messages sent on this connection have been grouped on the wire
+   */
+  public MessageGroupingStats getMessageGroupingStats();
+
   /**
    *
    * @return true iff the connection as been marked for close but hasn't been closed yet
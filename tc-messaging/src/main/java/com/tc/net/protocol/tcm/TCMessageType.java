@@ -52,7 +52,8 @@ public final class TCMessageType {
   public static final int           TYPE_VOLTRON_ENTITY_RETIRED_RESPONSE              = 19;
   public static final int           TYPE_VOLTRON_ENTITY_MULTI_RESPONSE              = 20;
   public static final int           TYPE_NOOP_MESSAGE              = 21;
-  public static final int           TYPE_LAST_MESSAGE_DO_NOT_USE              = 22;
+  public static final int           TYPE_VOLTRON_ENTITY_MULTI_MESSAGE              = 22;
+  public static final int           TYPE_LAST_MESSAGE_DO_NOT_USE              = 23;
 
   public static final TCMessageType PING_MESSAGE                                      = new TCMessageType();
   public static final TCMessageType CLIENT_HANDSHAKE_MESSAGE                          = new TCMessageType();
@@ -73,6 +74,7 @@ public final class TCMessageType {
   public static final TCMessageType VOLTRON_ENTITY_RETIRED_RESPONSE                   = new TCMessageType();
   public static final TCMessageType VOLTRON_ENTITY_MULTI_RESPONSE                   = new TCMessageType();
   public static final TCMessageType NOOP_MESSAGE                   = new TCMessageType();  
+  public static final TCMessageType VOLTRON_ENTITY_MULTI_MESSAGE                   = new TCMessageType();
   public static final TCMessageType LAST_MESSAGE_DO_NOT_USE                   = new TCMessageType();  // this one must always be the last
 
   public static TCMessageType getInstance(int i) {
@@ -0,0 +1,121 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object.locks;
+
+import com.tc.io.TCByteBufferInput;
+import com.tc.io.TCByteBufferOutput;
+import com.tc.io.TCSerializable;
+import com.tc.object.msg.LockResponseMessage;
+import com.tc.object.msg.LockResponseMessage.ResponseType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * One of the lock responses carried by a batched {@link LockResponseMessage}.
+ */
+public class LockResponseBatchContext implements TCSerializable<LockResponseBatchContext> {
+  private static final ResponseType[]                       RESPONSE_TYPE_VALUES     = ResponseType.values();
+  private static final ServerLockLevel[]                    SERVER_LOCK_LEVEL_VALUES = ServerLockLevel.values();
+
+  private final Collection<ClientServerExchangeLockContext> contexts                 = new ArrayList<ClientServerExchangeLockContext>();
+
+  private ResponseType                                      responseType;
+  private LockID                                            lockID;
+  private ThreadID                                          threadID;
+  private ServerLockLevel                                   lockLevel;
+  private int                                               leaseTimeInMs;
+
+  public LockResponseBatchContext() {
+    // To make TCSerializable happy
+  }
+
+  public LockResponseBatchContext(ResponseType responseType, LockID lockID, ThreadID threadID,
+                                  ServerLockLevel lockLevel, int leaseTimeInMs) {
+    this.responseType = responseType;
+    this.lockID = lockID;
+    this.threadID = threadID;
+    this.lockLevel = lockLevel;
+    this.leaseTimeInMs = leaseTimeInMs;
+  }
+
+  @Override
+  public LockResponseBatchContext deserializeFrom(TCByteBufferInput in) throws IOException {
+    this.responseType = RESPONSE_TYPE_VALUES[in.readByte()];
+    LockIDSerializer ls = new LockIDSerializer();
+    ls.deserializeFrom(in);
+    this.lockID = ls.getLockID();
+    this.threadID = new ThreadID(in.readLong());
+    byte level = in.readByte();
+    this.lockLevel = (level < 0) ? null : SERVER_LOCK_LEVEL_VALUES[level];
+    this.leaseTimeInMs = in.readInt();
+    int length = in.readInt();
+    for (int i = 0; i < length; i++) {
+      contexts.add((new ClientServerExchangeLockContext().deserializeFrom(in)));
+    }
+    return this;
+  }
+
+  @Override
+  public void serializeTo(TCByteBufferOutput out) {
+    out.writeByte((byte) responseType.ordinal());
+    new LockIDSerializer(lockID).serializeTo(out);
+    out.writeLong(threadID.toLong());
+    out.writeByte((lockLevel == null) ? -1 : (byte) lockLevel.ordinal());
+    out.writeInt(leaseTimeInMs);
+    out.writeInt(contexts.size());
+    for (ClientServerExchangeLockContext lockContext : contexts) {
+      lockContext.serializeTo(out);
+    }
+  }
+
+  public void addContext(ClientServerExchangeLockContext ctxt) {
+    contexts.add(ctxt);
+  }
+
+  public Collection<ClientServerExchangeLockContext> getContexts() {
+    return contexts;
+  }
+
+  public ResponseType getResponseType() {
+    return responseType;
+  }
+
+  public LockID getLockID() {
+    return lockID;
+  }
+
+  public ThreadID getThreadID() {
+    return threadID;
+  }
+
+  public ServerLockLevel getLockLevel() {
+    return lockLevel;
+  }
+
+  public int getAwardLeaseTime() {
+    return leaseTimeInMs;
+  }
+
+  @Override
+  public String toString() {
+    return "LockResponseBatchContext(" + responseType + ", " + lockID + ", " + threadID + ", " + lockLevel + ")";
+  }
+}
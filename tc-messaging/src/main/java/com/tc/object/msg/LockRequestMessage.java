@@ -27,6 +27,7 @@ import com.tc.net.protocol.tcm.TCMessageHeader;
 import com.tc.net.protocol.tcm.TCMessageType;
 import com.tc.object.locks.ClientServerExchangeLockContext;
 import com.tc.object.locks.LockID;
+import com.tc.object.locks.LockRequestBatchContext;
 import com.tc.object.locks.RecallBatchContext;
 import com.tc.object.locks.ServerLockLevel;
 import com.tc.object.locks.ThreadID;
@@ -34,9 +35,11 @@ import com.tc.object.session.SessionID;
 import com.tc.util.Assert;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -56,14 +59,16 @@ public class LockRequestMessage extends DSOMessageBase implements MultiThreadedE
   private final static byte WAIT_MILLIS            = 5;
   private final static byte CONTEXT                = 6;
   private final static byte BATCHED_RECALL_CONTEXT = 7;
+  private final static byte BATCHED_REQUEST        = 8;
 
   // request types
   public static enum RequestType {
-    LOCK, UNLOCK, WAIT, RECALL_COMMIT, QUERY, TRY_LOCK, INTERRUPT_WAIT, BATCHED_RECALL_COMMIT;
+    LOCK, UNLOCK, WAIT, RECALL_COMMIT, QUERY, TRY_LOCK, INTERRUPT_WAIT, BATCHED_RECALL_COMMIT, BATCHED_REQUESTS;
   }
 
   private final Set<ClientServerExchangeLockContext> contexts        = new LinkedHashSet<ClientServerExchangeLockContext>();
   private final LinkedList<RecallBatchContext>       recallContexts  = new LinkedList<RecallBatchContext>();
+  private final List<LockRequestBatchContext>        requests        = new ArrayList<LockRequestBatchContext>();
 
   private LockID                                     lockID          = null;
   private ServerLockLevel                            lockLevel       = null;
@@ -128,6 +133,11 @@ public class LockRequestMessage extends DSOMessageBase implements MultiThreadedE
           putNVPair(BATCHED_RECALL_CONTEXT, batchContext);
         }
         break;
+      case BATCHED_REQUESTS:
+        for (LockRequestBatchContext request : requests) {
+          putNVPair(BATCHED_REQUEST, request);
+        }
+        break;
       default:
         throw new AssertionError("unexpected type: " + requestType);
     }
@@ -149,6 +159,9 @@ public class LockRequestMessage extends DSOMessageBase implements MultiThreadedE
     if (recallContexts.size() > 0) {
       rv.append("RecallCommits contexts size = ").append(recallContexts.size()).append('\n');
     }
+    if (requests.size() > 0) {
+      rv.append("Batched requests size = ").append(requests.size()).append('\n');
+    }
 
     return rv.toString();
   }
@@ -186,6 +199,9 @@ public class LockRequestMessage extends DSOMessageBase implements MultiThreadedE
       case BATCHED_RECALL_CONTEXT:
         recallContexts.add(getObject(new RecallBatchContext()));
         return true;
+      case BATCHED_REQUEST:
+        requests.add(getObject(new LockRequestBatchContext()));
+        return true;
       default:
         return false;
     }
@@ -215,6 +231,10 @@ public class LockRequestMessage extends DSOMessageBase implements MultiThreadedE
     this.recallContexts.add(recallBatchContext);
   }
 
+  public void addRequestBatchContext(LockRequestBatchContext request) {
+    this.requests.add(request);
+  }
+
   public Collection<ClientServerExchangeLockContext> getContexts() {
     return contexts;
   }
@@ -223,6 +243,10 @@ public class LockRequestMessage extends DSOMessageBase implements MultiThreadedE
     return recallContexts;
   }
 
+  public List<LockRequestBatchContext> getBatchedRequests() {
+    return requests;
+  }
+
   public long getTimeout() {
     return waitMillis;
   }
@@ -259,6 +283,18 @@ public class LockRequestMessage extends DSOMessageBase implements MultiThreadedE
     initialize(null, ThreadID.VM_ID, null, RequestType.BATCHED_RECALL_COMMIT, -1);
   }
 
+  public void initializeBatchedRequests() {
+    initialize(null, ThreadID.VM_ID, null, RequestType.BATCHED_REQUESTS, -1);
+  }
+
+  /**
+   * Initializes this message to carry just the given request, in the same form as the other initialize methods.
+   */
+  public void initializeRequest(LockRequestBatchContext request) {
+    initialize(request.getLockID(), request.getThreadID(), request.getLockLevel(), request.getRequestType(),
+               request.getTimeout());
+  }
+
   private void initialize(LockID lid, ThreadID id, ServerLockLevel level, RequestType reqType, long millis) {
     this.lockID = lid;
     this.lockLevel = level;
@@ -27,6 +27,7 @@ import com.tc.net.protocol.tcm.TCMessageHeader;
 import com.tc.net.protocol.tcm.TCMessageType;
 import com.tc.object.locks.ClientServerExchangeLockContext;
 import com.tc.object.locks.LockID;
+import com.tc.object.locks.LockResponseBatchContext;
 import com.tc.object.locks.ServerLockLevel;
 import com.tc.object.locks.ThreadID;
 import com.tc.object.session.SessionID;
@@ -34,6 +35,7 @@ import com.tc.object.session.SessionID;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 public class LockResponseMessage extends DSOMessageBase implements MultiThreadedEventContext {
 
@@ -46,12 +48,14 @@ public class LockResponseMessage extends DSOMessageBase implements MultiThreaded
   private static final byte LOCK_LEVEL        = 4;
   private static final byte CONTEXT           = 5;
   private static final byte LOCK_LEASE_MILLIS = 6;
+  private static final byte BATCHED_RESPONSE  = 7;
 
   public static enum ResponseType {
-    AWARD, RECALL, RECALL_WITH_TIMEOUT, WAIT_TIMEOUT, INFO, REFUSE;
+    AWARD, RECALL, RECALL_WITH_TIMEOUT, WAIT_TIMEOUT, INFO, REFUSE, BATCHED_RESPONSES;
   }
 
-  private final Collection<ClientServerExchangeLockContext> contexts = new ArrayList<ClientServerExchangeLockContext>();
+  private final Collection<ClientServerExchangeLockContext> contexts  = new ArrayList<ClientServerExchangeLockContext>();
+  private final List<LockResponseBatchContext>              responses = new ArrayList<LockResponseBatchContext>();
 
   private ResponseType                                      responseType;
   private ThreadID                                          threadID;
@@ -97,6 +101,11 @@ public class LockResponseMessage extends DSOMessageBase implements MultiThreaded
           putNVPair(CONTEXT, cselc);
         }
         break;
+      case BATCHED_RESPONSES:
+        for (LockResponseBatchContext response : responses) {
+          putNVPair(BATCHED_RESPONSE, response);
+        }
+        break;
       default:
         throw new AssertionError(responseType);
     }
@@ -107,6 +116,9 @@ public class LockResponseMessage extends DSOMessageBase implements MultiThreaded
     StringBuffer rv = new StringBuffer();
     rv.append("Type : ").append(responseType).append('\n');
     rv.append(lockID).append(' ').append(threadID).append(' ').append("Lock Type: ").append(lockLevel).append('\n');
+    if (responses.size() > 0) {
+      rv.append("Batched responses size = ").append(responses.size()).append('\n');
+    }
     return rv.toString();
   }
 
@@ -141,6 +153,9 @@ public class LockResponseMessage extends DSOMessageBase implements MultiThreaded
       case LOCK_LEASE_MILLIS:
         leaseTimeInMs = getIntValue();
         return true;
+      case BATCHED_RESPONSE:
+        responses.add(getObject(new LockResponseBatchContext()));
+        return true;
       default:
         return false;
     }
@@ -174,6 +189,14 @@ public class LockResponseMessage extends DSOMessageBase implements MultiThreaded
     return contexts;
   }
 
+  public void addBatchedResponse(LockResponseBatchContext response) {
+    responses.add(response);
+  }
+
+  public List<LockResponseBatchContext> getBatchedResponses() {
+    return responses;
+  }
+
   public void initializeAward(LockID lid, ThreadID sid, ServerLockLevel level) {
     initialize(ResponseType.AWARD, lid, sid, level, -1);
   }
@@ -198,6 +221,19 @@ public class LockResponseMessage extends DSOMessageBase implements MultiThreaded
     initialize(ResponseType.INFO, lid, sid, level, -1);
   }
 
+  public void initializeBatchedResponses() {
+    initialize(ResponseType.BATCHED_RESPONSES, null, ThreadID.VM_ID, null, -1);
+  }
+
+  /**
+   * Initializes this message to carry just the given response, in the same form as the other initialize methods.
+   */
+  public void initializeResponse(LockResponseBatchContext response) {
+    initialize(response.getResponseType(), response.getLockID(), response.getThreadID(), response.getLockLevel(),
+               response.getAwardLeaseTime());
+    contexts.addAll(response.getContexts());
+  }
+
   private void initialize(ResponseType requestType, LockID lid, ThreadID sid, ServerLockLevel level,
                           int leaseTimeInMills) {
     this.responseType = requestType;
@@ -0,0 +1,102 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.entity.VoltronEntityMessage.Type;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.EntityID;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+import java.util.List;
+
+import org.junit.Test;
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.entity.MessageCodec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class NetworkVoltronEntityMultiMessageImplTest {
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testSerialization() throws Exception {
+    MessageMonitor monitor = mock(MessageMonitor.class);
+    TCByteBufferOutputStream outputStream = new TCByteBufferOutputStream(4, 4096, false);
+    NetworkVoltronEntityMultiMessageImpl message = new NetworkVoltronEntityMultiMessageImpl(new SessionID(0), monitor, outputStream, null, TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE);
+    
+    ClientID clientID = new ClientID(1);
+    EntityDescriptor first = new EntityDescriptor(new EntityID("foo", "bar"), new ClientInstanceID(1), 3);
+    EntityDescriptor second = new EntityDescriptor(new EntityID("foo", "baz"), new ClientInstanceID(2), 3);
+    byte[] large = new byte[3 * 4096];
+    assertTrue(message.addMessage(new ResendVoltronEntityMessage(clientID, new TransactionID(2), first, Type.INVOKE_ACTION, true, new byte[] { 1, 2 }, new TransactionID(1))));
+    assertTrue(message.addMessage(new ResendVoltronEntityMessage(clientID, new TransactionID(3), second, Type.INVOKE_ACTION, false, large, new TransactionID(1))));
+    assertTrue(message.addMessage(new ResendVoltronEntityMessage(clientID, new TransactionID(4), first, Type.RELEASE_ENTITY, false, new byte[0], new TransactionID(2))));
+    assertEquals(3, message.size());
+    message.dehydrate();
+//  nothing can be added once the message is on its way
+    assertFalse(message.addMessage(new ResendVoltronEntityMessage(clientID, new TransactionID(5), first, Type.INVOKE_ACTION, false, new byte[0], new TransactionID(2))));
+    
+    TCMessageHeader header = (TCMessageHeader) message.getHeader();
+    TCByteBuffer[] payload = message.getPayload();
+    outputStream.close();
+    NetworkVoltronEntityMultiMessageImpl decodingMessage = new NetworkVoltronEntityMultiMessageImpl(SessionID.NULL_ID, monitor, null, header, payload);
+    MessageCodec<EntityMessage, EntityResponse> codec = mock(MessageCodec.class);
+    EntityMessage decoded = mock(EntityMessage.class);
+    when(codec.decodeMessage(any(byte[].class))).thenReturn(decoded);
+    decodingMessage.setMessageCodecSupplier((eid)->codec);
+    decodingMessage.hydrate();
+    
+    List<VoltronEntityMessage> messages = decodingMessage.getMessages();
+    assertEquals(3, messages.size());
+    assertEquals(clientID, messages.get(0).getSource());
+    assertEquals(new TransactionID(2), messages.get(0).getTransactionID());
+    assertEquals(first, messages.get(0).getEntityDescriptor());
+    assertEquals(Type.INVOKE_ACTION, messages.get(0).getVoltronType());
+    assertTrue(messages.get(0).doesRequireReplication());
+    assertArrayEquals(new byte[] { 1, 2 }, messages.get(0).getExtendedData());
+    assertEquals(new TransactionID(1), messages.get(0).getOldestTransactionOnClient());
+    assertEquals(decoded, messages.get(0).getEntityMessage());
+    assertEquals(first.getEntityID(), messages.get(0).getSchedulingKey());
+    
+    assertEquals(second, messages.get(1).getEntityDescriptor());
+    assertFalse(messages.get(1).doesRequireReplication());
+    assertArrayEquals(large, messages.get(1).getExtendedData());
+    
+    assertEquals(new TransactionID(4), messages.get(2).getTransactionID());
+    assertEquals(Type.RELEASE_ENTITY, messages.get(2).getVoltronType());
+    assertEquals(new TransactionID(2), messages.get(2).getOldestTransactionOnClient());
+//  only invokes are decoded
+    assertNull(messages.get(2).getEntityMessage());
+  }
+}
@@ -510,6 +510,43 @@ public class TCByteBufferOutputStreamTest {
     }
   }
 
+  @Test
+  public void testWriteShared() throws IOException {
+    int blockSize = 64;
+    TCByteBufferOutputStream bbos = new TCByteBufferOutputStream(16, blockSize, false);
+    byte[] small = new byte[blockSize - 1];
+    byte[] large = new byte[blockSize * 3];
+    random.nextBytes(small);
+    random.nextBytes(large);
+    bbos.writeInt(small.length);
+    bbos.writeShared(small);
+    bbos.writeInt(large.length);
+    bbos.writeShared(large);
+    bbos.writeInt(42);
+    TCByteBuffer[] data = bbos.toArray();
+    assertEquals(3 * 4 + small.length + large.length, length(data));
+
+    // only the large array is sent as it is, the small one is copied into the stream
+    int shared = 0;
+    for (TCByteBuffer buf : data) {
+      if (buf.array() == large) {
+        shared++;
+      }
+      assertFalse(buf.array() == small);
+    }
+    assertEquals(1, shared);
+
+    TCByteBufferInputStream in = new TCByteBufferInputStream(data);
+    byte[] read = new byte[in.readInt()];
+    in.readFully(read);
+    assertTrue(Arrays.equals(small, read));
+    read = new byte[in.readInt()];
+    in.readFully(read);
+    assertTrue(Arrays.equals(large, read));
+    assertEquals(42, in.readInt());
+    bbos.recycle();
+  }
+
   @Test
   public void testExceptions() {
     TCByteBufferOutputStream bbos = null;
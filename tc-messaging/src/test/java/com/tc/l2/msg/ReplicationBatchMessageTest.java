@@ -0,0 +1,133 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.l2.msg;
+
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.ServerID;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.EntityID;
+import com.tc.object.tx.TransactionID;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicationBatchMessageTest {
+
+  @SuppressWarnings("resource")
+  private ReplicationBatchMessage writeAndRead(ReplicationBatchMessage batch) throws Exception {
+    TCByteBufferOutputStream bo = new TCByteBufferOutputStream();
+    batch.serializeTo(bo);
+    TCByteBufferInputStream bi = new TCByteBufferInputStream(bo.toArray());
+    ReplicationBatchMessage read = new ReplicationBatchMessage();
+    read.deserializeFrom(bi);
+    return read;
+  }
+
+  @Test
+  public void testBasicSerialization() throws Exception {
+    EntityID eid = new EntityID("foo", "bar");
+    ReplicationMessage invoke = ReplicationMessage.createReplicatedMessage(new EntityDescriptor(eid, new ClientInstanceID(1), 1), 
+        new ClientID(2), new TransactionID(3), new TransactionID(1), ReplicationMessage.ReplicationType.INVOKE_ACTION, new byte[] { 1, 2, 3 }, 4);
+    PassiveSyncMessage sync = PassiveSyncMessage.createPayloadMessage(eid, 1, 4, new byte[] { 5 });
+    
+    ReplicationBatchMessage batch = new ReplicationBatchMessage();
+    batch.add(invoke, 7, invoke.getReplicationType());
+    batch.add(sync, 8, sync.getReplicationType());
+//  the batch keeps what the messages have for its passive, even once they are sent on to another one
+    invoke.setReplicationID(20);
+    invoke.setNoop();
+    assertEquals(2, batch.size());
+    
+    ReplicationBatchMessage read = writeAndRead(batch);
+    ServerID active = new ServerID("30001", new byte[] { 54, -125, 34, -4 });
+    read.setMessageOrginator(active);
+    List<ReplicationMessage> messages = read.getMessages();
+    assertEquals(2, messages.size());
+    
+    ReplicationMessage first = messages.get(0);
+    assertEquals(ReplicationMessage.REPLICATE, first.getType());
+    assertEquals(7, first.getSequenceID());
+    assertEquals(ReplicationMessage.ReplicationType.INVOKE_ACTION, first.getReplicationType());
+    assertEquals(eid, first.getEntityID());
+    assertEquals(new ClientID(2), first.getSource());
+    assertEquals(new TransactionID(3), first.getTransactionID());
+    assertEquals(4, first.getConcurrency());
+    assertArrayEquals(new byte[] { 1, 2, 3 }, first.getExtendedData());
+    assertEquals(active, first.messageFrom());
+    
+    ReplicationMessage second = messages.get(1);
+    assertTrue(second instanceof PassiveSyncMessage);
+    assertEquals(8, second.getSequenceID());
+    assertEquals(ReplicationMessage.ReplicationType.SYNC_ENTITY_CONCURRENCY_PAYLOAD, second.getReplicationType());
+    assertArrayEquals(new byte[] { 5 }, second.getExtendedData());
+    assertEquals(active, second.messageFrom());
+  }
+
+  @Test
+  public void testSingleMessage() throws Exception {
+    ReplicationMessage invoke = ReplicationMessage.createReplicatedMessage(new EntityDescriptor(new EntityID("foo", "bar"), new ClientInstanceID(1), 1), 
+        new ClientID(2), new TransactionID(3), new TransactionID(1), ReplicationMessage.ReplicationType.INVOKE_ACTION, new byte[0], 4);
+    ReplicationBatchMessage batch = new ReplicationBatchMessage();
+    batch.add(invoke, 3, ReplicationMessage.ReplicationType.INVOKE_ACTION);
+    invoke.setReplicationID(9);
+    invoke.setNoop();
+    ReplicationMessage single = batch.getSingleMessage();
+    assertEquals(3, single.getSequenceID());
+    assertEquals(ReplicationMessage.ReplicationType.INVOKE_ACTION, single.getReplicationType());
+  }
+
+  @Test
+  public void testLargePayload() throws Exception {
+    byte[] payload = new byte[3 * 4096 + 5];
+    new Random().nextBytes(payload);
+    ReplicationMessage invoke = ReplicationMessage.createReplicatedMessage(new EntityDescriptor(new EntityID("foo", "bar"), new ClientInstanceID(1), 1), 
+        new ClientID(2), new TransactionID(3), new TransactionID(1), ReplicationMessage.ReplicationType.INVOKE_ACTION, payload, 4);
+    ReplicationBatchMessage batch = new ReplicationBatchMessage();
+    batch.add(invoke, 1, invoke.getReplicationType());
+    batch.add(invoke, 2, invoke.getReplicationType());
+    ReplicationBatchMessage read = writeAndRead(batch);
+    read.setMessageOrginator(new ServerID("30001", new byte[] { 54, -125, 34, -4 }));
+    for (ReplicationMessage msg : read.getMessages()) {
+      assertArrayEquals(payload, msg.getExtendedData());
+      assertEquals(4, msg.getConcurrency());
+    }
+  }
+
+  @Test
+  public void testAckSerialization() throws Exception {
+    ReplicationMessageAck ack = ReplicationMessageAck.createAck(15, 12, Arrays.asList(13L, 15L));
+    TCByteBufferOutputStream bo = new TCByteBufferOutputStream();
+    ack.serializeTo(bo);
+    ReplicationMessageAck read = new ReplicationMessageAck();
+    read.deserializeFrom(new TCByteBufferInputStream(bo.toArray()));
+    assertEquals(ReplicationMessageAck.ACKNOWLEDGE, read.getType());
+    assertEquals(15, read.getReceivedID());
+    assertEquals(12, read.getCompletedID());
+    assertArrayEquals(new long[] { 13, 15 }, read.getCompletedOutOfOrder());
+  }
+}
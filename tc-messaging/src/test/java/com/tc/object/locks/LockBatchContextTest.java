@@ -0,0 +1,103 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object.locks;
+
+import com.tc.io.TCByteBufferInput;
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutput;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.io.TCSerializable;
+import com.tc.net.ClientID;
+import com.tc.object.locks.ServerLockContext.State;
+import com.tc.object.msg.LockRequestMessage.RequestType;
+import com.tc.object.msg.LockResponseMessage.ResponseType;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LockBatchContextTest {
+
+  @Test
+  public void testRequest() {
+    LockRequestBatchContext in = new LockRequestBatchContext(RequestType.TRY_LOCK, new StringLockID("FortyTwo"),
+                                                             new ThreadID(7), ServerLockLevel.WRITE, 100);
+    LockRequestBatchContext out = passThrough(in, new LockRequestBatchContext());
+    Assert.assertEquals(RequestType.TRY_LOCK, out.getRequestType());
+    Assert.assertEquals(in.getLockID(), out.getLockID());
+    Assert.assertEquals(in.getThreadID(), out.getThreadID());
+    Assert.assertEquals(ServerLockLevel.WRITE, out.getLockLevel());
+    Assert.assertEquals(100, out.getTimeout());
+  }
+
+  @Test
+  public void testRequestWithoutLevel() {
+    LockRequestBatchContext in = new LockRequestBatchContext(RequestType.UNLOCK, new LongLockID(42L), new ThreadID(7),
+                                                             null, -1);
+    LockRequestBatchContext out = passThrough(in, new LockRequestBatchContext());
+    Assert.assertEquals(RequestType.UNLOCK, out.getRequestType());
+    Assert.assertEquals(in.getLockID(), out.getLockID());
+    Assert.assertNull(out.getLockLevel());
+  }
+
+  @Test
+  public void testResponse() {
+    LockID lock = new LongLockID(42L);
+    LockResponseBatchContext in = new LockResponseBatchContext(ResponseType.INFO, lock, new ThreadID(7), null, -1);
+    ClientServerExchangeLockContext context = new ClientServerExchangeLockContext(lock, new ClientID(1), new ThreadID(8),
+                                                                                  State.HOLDER_READ);
+    in.addContext(context);
+    LockResponseBatchContext out = passThrough(in, new LockResponseBatchContext());
+    Assert.assertEquals(ResponseType.INFO, out.getResponseType());
+    Assert.assertEquals(lock, out.getLockID());
+    Assert.assertEquals(in.getThreadID(), out.getThreadID());
+    Assert.assertNull(out.getLockLevel());
+    Assert.assertEquals(1, out.getContexts().size());
+    Assert.assertEquals(context, out.getContexts().iterator().next());
+
+    in = new LockResponseBatchContext(ResponseType.RECALL_WITH_TIMEOUT, lock, ThreadID.VM_ID, ServerLockLevel.READ, 150);
+    out = passThrough(in, new LockResponseBatchContext());
+    Assert.assertEquals(ResponseType.RECALL_WITH_TIMEOUT, out.getResponseType());
+    Assert.assertEquals(ServerLockLevel.READ, out.getLockLevel());
+    Assert.assertEquals(150, out.getAwardLeaseTime());
+    Assert.assertTrue(out.getContexts().isEmpty());
+  }
+
+  private <T extends TCSerializable<T>> T passThrough(T in, T target) {
+    try {
+      TCByteBufferOutput tcOut = new TCByteBufferOutputStream();
+      try {
+        in.serializeTo(tcOut);
+      } finally {
+        tcOut.close();
+      }
+
+      TCByteBufferInput tcIn = new TCByteBufferInputStream(tcOut.toArray());
+
+      try {
+        return target.deserializeFrom(tcIn);
+      } finally {
+        tcIn.close();
+      }
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+}